@@ -1,15 +1,44 @@
 package Controller;
 
 import Model.Account;
+import Model.Follow;
+import Model.AccountStats;
 import Model.Message;
+import Model.MessageChange;
+import Model.MessageFields;
+import Model.MessageLookup;
+import Model.PosterCount;
+import Model.VolumeBucket;
+import Service.MessageEventBus;
+import Service.MessageSnapshot;
 import Service.SocialMediaService;
+import Util.ConcurrencyLimiter;
+import Util.HotKeyTracker;
+import Util.ConnectionUtil;
+import Util.MessageExportWriter;
+import Util.TokenBucketLimiter;
 import io.javalin.Javalin;
 import io.javalin.http.Context;
+import io.javalin.http.Handler;
+import io.javalin.http.sse.SseClient;
+import io.javalin.http.sse.SseHandler;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
+import com.fasterxml.jackson.annotation.JsonFilter;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.ser.impl.SimpleBeanPropertyFilter;
+import com.fasterxml.jackson.databind.ser.impl.SimpleFilterProvider;
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper;
 
 /**
  * Handles the HTTP endpoints for the Social Media Application.
@@ -19,13 +48,120 @@ import com.fasterxml.jackson.databind.ObjectMapper;
  */
 public class SocialMediaController {
 
+    /*
+     * The most changes returned by a single GET /messages/changes request.
+     */
+    public static final int MAX_CHANGES = 1000;
+
+    /*
+     * The number of messages on a page of GET /messages?posted_by= when the request does not say, the most it may 
+     * ask for, and the most accounts it may name.
+     */
+    public static final int DEFAULT_PAGE_LIMIT = 50;
+    public static final int MAX_PAGE_LIMIT = 1000;
+    public static final int MAX_PAGE_ACCOUNTS = 1000;
+
+    /*
+     * The name of the Jackson filter that writes only the Message properties named in a fields query parameter.
+     */
+    private static final String MESSAGE_FIELDS_FILTER = "messageFields";
+
+    /*
+     * The most message_ids one POST /messages/lookup may ask for.
+     */
+    public static final int MAX_LOOKUP_IDS = 1000;
+
+    /*
+     * The response header on a page of GET /messages?posted_by= that holds the cursor to send for the next page.
+     */
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
+    /*
+     * The number of entries the analytics endpoints return when the request does not say.
+     */
+    public static final int DEFAULT_TOP_POSTERS = 10;
+    public static final int DEFAULT_HOT_KEYS = 10;
+    public static final int DEFAULT_VOLUME_BUCKETS = 60;
+
+    /*
+     * The media type of the binary JSON (Smile) encoding. Clients that send it as Content-Type have their request 
+     * bodies parsed as Smile, and clients that list it in Accept are answered in Smile. JSON is always the default.
+     */
+    public static final String SMILE = "application/x-jackson-smile";
+
+    /*
+     * The response header on message lists that holds the number of messages in the whole list.
+     */
+    public static final String TOTAL_COUNT_HEADER = "X-Total-Count";
+
+    /*
+     * The response header on message writes and on GET /messages that holds the messages version after the write, 
+     * or the one the list includes, and the request header on GET /messages that asks for a list at least that new.
+     */
+    public static final String MESSAGES_VERSION_HEADER = "X-Messages-Version";
+    public static final String MIN_MESSAGES_VERSION_HEADER = "X-Min-Messages-Version";
+
+    /*
+     * The response header on requests turned away by a limit, holding how many seconds to wait before trying again.
+     */
+    public static final String RETRY_AFTER_HEADER = "Retry-After";
+
+    /*
+     * The system property that turns the per-endpoint concurrency limits on (the default) or off.
+     */
+    public static final String LIMITS_ENABLED_PROPERTY = "socialmedia.limit.enabled";
+
+    /*
+     * The response headers on rate-limited requests that hold the most tokens an account's bucket holds and the 
+     * whole tokens it has left.
+     */
+    public static final String RATE_LIMIT_HEADER = "X-RateLimit-Limit";
+    public static final String RATE_LIMIT_REMAINING_HEADER = "X-RateLimit-Remaining";
+
+    /*
+     * The system property that turns the per-account rate limits on writes on (the default) or off.
+     */
+    public static final String RATE_LIMITS_ENABLED_PROPERTY = "socialmedia.ratelimit.enabled";
+
     private SocialMediaService socialMediaService;
+    private final ObjectMapper jsonMapper = new ObjectMapper();
+    private final ObjectMapper smileMapper = new SmileMapper();
+    private final ObjectMapper jsonFieldsMapper = new ObjectMapper().addMixIn(Message.class, FilteredMessage.class);
+    private final ObjectMapper smileFieldsMapper = new SmileMapper().addMixIn(Message.class, FilteredMessage.class);
+    private final Map<MessageFields, ObjectWriter> jsonFieldsWriters = new ConcurrentHashMap<>();
+    private final Map<MessageFields, ObjectWriter> smileFieldsWriters = new ConcurrentHashMap<>();
+    private volatile boolean ready = true;
+    private final Map<String, ConcurrencyLimiter> limiters = new LinkedHashMap<>();
+    private final TokenBucketLimiter postMessageRateLimit = createRateLimit("postMessage");
+    private final TokenBucketLimiter updateMessageRateLimit = createRateLimit("updateMessage");
+    private volatile Object readyDetails;
+    private final HotKeyTracker messageKeys = new HotKeyTracker("message_id");
+    private final HotKeyTracker accountKeys = new HotKeyTracker("account_id");
 
     /*
      * default constructor
      */
     public SocialMediaController() {
-        socialMediaService = new SocialMediaService();
+        this(new SocialMediaService());
+    }
+
+    /*
+     * @param socialMediaService the service that handles the requests, for example one backed by in-memory stores.
+     */
+    public SocialMediaController(SocialMediaService socialMediaService) {
+        this.socialMediaService = socialMediaService;
+    }
+
+    /*
+     * Set whether GET /health/ready reports this process as ready to take traffic. A controller is ready from the
+     * start unless Main marks it not ready while it warms up.
+     *
+     * @param ready whether the process is ready.
+     * @param details what to report alongside, for example the warmup report, or null.
+     */
+    public void setReady(boolean ready, Object details) {
+        this.readyDetails = details;
+        this.ready = ready;
     }
 
     /**
@@ -40,24 +176,147 @@ public class SocialMediaController {
      * ## 6: delete a message identified by a message ID on the endpoint DELETE localhost:8080/messages/{message_id}
      * ## 7: update a message text identified by a message ID on the endpoint PATCH localhost:8080/messages/{message_id}
      * ## 8: retrieve all messages written by a particular user on the endpoint GET localhost:8080/accounts/{account_id}/messages
+     * ## 9: stream message changes as Server-Sent Events on the endpoint GET localhost:8080/messages/stream
+     *        (requests must send the header "Accept: text/event-stream")
+     * ## 10: retrieve the changes made to messages after a change sequence on the endpoint 
+     *        GET localhost:8080/messages/changes?since={change_seq}
+     * ## 11: report how busy the database read and write connection pools are on the endpoint GET localhost:8080/debug/pools
+     * ## 12: retrieve the number of messages on the endpoint GET localhost:8080/messages/count
+     * ## 13: retrieve the statistics of a particular user on the endpoint GET localhost:8080/accounts/{account_id}/stats
+     * ## 14: retrieve the users who have posted the most messages on the endpoint GET localhost:8080/analytics/top-posters
+     * ## 15: retrieve the number of messages posted per minute or hour on the endpoint GET localhost:8080/analytics/volume
+     * ## 16: export messages as NDJSON or CSV on the endpoint GET localhost:8080/export/messages
+     * ## 17: report whether the process has finished warming up on the endpoint GET localhost:8080/health/ready
+     * ## 18: report the concurrency limit of each endpoint on the endpoint GET localhost:8080/debug/limits
+     * ## 19: report how many concurrent message lookups were shared on the endpoint GET localhost:8080/debug/coalescing
+     * ## 20: report pooled connections held too long or never closed on the endpoint GET localhost:8080/debug/connections
+     * ## 21: retrieve one page of the messages of several users, newest first, on the endpoint 
+     *        GET localhost:8080/messages?posted_by={account_id},{account_id},...&limit={limit}
+     * ## 22: retrieve many messages by their IDs at once on the endpoint POST localhost:8080/messages/lookup
+     * ## 23: make a user follow another on the endpoint POST localhost:8080/accounts/{account_id}/follows
+     * ## 24: make a user stop following another on the endpoint 
+     *        DELETE localhost:8080/accounts/{account_id}/follows/{followee_id}
+     * ## 25: retrieve one page of a user's feed, newest first, on the endpoint GET localhost:8080/accounts/{account_id}/feed
+     * ## 26: report the message_ids and account_ids read most often on the endpoint GET localhost:8080/debug/hotkeys
+     * 
+     * Every endpoint accepts and returns JSON, or Smile when the request sends Content-Type or Accept SMILE.
+     *
+     * The endpoints that return messages (## 4, 5, 8, 21, 22 and 25) take an optional fields query parameter naming the 
+     * message properties wanted, such as fields=message_id,message_text. Only those properties are written, and ## 4, 
+     * 5 and 8 read only those columns. A fields parameter naming anything but message_id, posted_by, message_text and 
+     * time_posted_epoch is answered with status 400.
+     *
+     * Every endpoint except the stream, the debug endpoints and the health check runs behind its own adaptive
+     * concurrency limit (see Util.ConcurrencyLimiter). A request over the limit is answered at once with status 503 and
+     * a Retry-After header. Set -Dsocialmedia.limit.enabled=false to turn the limits off.
+     *
+     * POST /messages and PATCH /messages/{message_id} are also rate limited for each account that posts (see 
+     * Util.TokenBucketLimiter). A request over the rate is answered with status 429 and a Retry-After header. Set 
+     * -Dsocialmedia.ratelimit.enabled=false to turn the rate limits off.
      *
      * @return a Javalin app object which defines the behavior of the Javalin controller.
      */
     public Javalin startAPI() {
         Javalin app = Javalin.create();
 
-        app.post("/register", this::postAccountHandler);
-        app.post("/login", this::postLoginHandler);
-        app.post("/messages", this::postMessageHandler);
-        app.get("/messages", this::getAllMessagesHandler);
-        app.get("/messages/{message_id}", this::getMessageHandler);
-        app.delete("/messages/{message_id}", this::deleteMessageHandler);
-        app.patch("/messages/{message_id}", this::updateMessageHandler);
-        app.get("/accounts/{account_id}/messages", this::getAllAccountMessagesHandler);
+        app.post("/register", limited("register", this::postAccountHandler));
+        app.post("/login", limited("login", this::postLoginHandler));
+        app.post("/messages", limited("postMessage", this::postMessageHandler));
+        app.get("/messages", limited("getAllMessages", this::getAllMessagesHandler));
+        app.get("/messages/stream", this::streamMessagesHandler);
+        app.get("/messages/changes", limited("getMessageChanges", this::getMessageChangesHandler));
+        app.get("/messages/count", limited("getMessageCount", this::getMessageCountHandler));
+        app.post("/messages/lookup", limited("lookupMessages", this::lookupMessagesHandler));
+        app.get("/messages/{message_id}", limited("getMessage", this::getMessageHandler));
+        app.delete("/messages/{message_id}", limited("deleteMessage", this::deleteMessageHandler));
+        app.patch("/messages/{message_id}", limited("updateMessage", this::updateMessageHandler));
+        app.get("/accounts/{account_id}/messages", limited("getAccountMessages", this::getAllAccountMessagesHandler));
+        app.post("/accounts/{account_id}/follows", limited("follow", this::postFollowHandler));
+        app.delete("/accounts/{account_id}/follows/{followee_id}", limited("unfollow", this::deleteFollowHandler));
+        app.get("/accounts/{account_id}/feed", limited("getFeed", this::getFeedHandler));
+        app.get("/accounts/{account_id}/stats", limited("getAccountStats", this::getAccountStatsHandler));
+        app.get("/analytics/top-posters", limited("getTopPosters", this::getTopPostersHandler));
+        app.get("/analytics/volume", limited("getMessageVolume", this::getMessageVolumeHandler));
+        app.get("/export/messages", limited("exportMessages", this::exportMessagesHandler));
+        app.get("/debug/pools", this::getPoolStatsHandler);
+        app.get("/debug/limits", this::getLimiterStatsHandler);
+        app.get("/debug/coalescing", this::getCoalescingStatsHandler);
+        app.get("/debug/connections", this::getLeakReportHandler);
+        app.get("/debug/hotkeys", this::getHotKeysHandler);
+        app.get("/health/ready", this::getReadyHandler);
 
         return app;
     }
 
+    /*
+     * Wrap a handler so that it runs behind the route's own concurrency limiter, unless limits are turned off.
+     * 
+     * - If the limit is reached: the response status will be 503 and the Retry-After header will say how many seconds
+     *   to wait before trying again. The handler is not run.
+     * 
+     * @param route the name of the route, which selects its limiter configuration.
+     * @param handler the handler to run.
+     * @return the wrapped handler.
+     */
+    private Handler limited(String route, Handler handler) {
+        if(!Boolean.parseBoolean(System.getProperty(LIMITS_ENABLED_PROPERTY, "true"))) {
+            return handler;
+        }
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(route);
+        limiters.put(route, limiter);
+        return ctx -> {
+            if(!limiter.tryAcquire()) {
+                ctx.header(RETRY_AFTER_HEADER, Long.toString(limiter.getRetryAfterSeconds()));
+                ctx.status(503);
+                return;
+            }
+            long start = System.nanoTime();
+            try {
+                handler.handle(ctx);
+            } finally {
+                limiter.release(System.nanoTime() - start);
+            }
+        };
+    }
+
+    /*
+     * @param route the name of the route, which selects its rate limit configuration.
+     * @return the route's per-account rate limit, or null if rate limits are turned off.
+     */
+    private static TokenBucketLimiter createRateLimit(String route) {
+        if(!Boolean.parseBoolean(System.getProperty(RATE_LIMITS_ENABLED_PROPERTY, "true"))) {
+            return null;
+        }
+        return new TokenBucketLimiter(route);
+    }
+
+    /*
+     * Take a token from an account's bucket for a rate-limited route, and say how many are left in the 
+     * X-RateLimit-Limit and X-RateLimit-Remaining headers.
+     * 
+     * - If the bucket is empty: the response status will be 429 and the Retry-After header will say how many seconds
+     *   to wait before a token will be there.
+     * 
+     * @param ctx the context object handles HTTP requests and generates responses.
+     * @param rateLimit the route's rate limit, or null if rate limits are turned off.
+     * @param account_id the account making the request.
+     * @return whether the request may go ahead.
+     */
+    private boolean checkRateLimit(Context ctx, TokenBucketLimiter rateLimit, int account_id) {
+        if(rateLimit == null) {
+            return true;
+        }
+        long result = rateLimit.tryAcquire(account_id);
+        ctx.header(RATE_LIMIT_HEADER, Integer.toString(rateLimit.getBurst()));
+        ctx.header(RATE_LIMIT_REMAINING_HEADER, Long.toString(TokenBucketLimiter.getRemaining(result)));
+        if(!TokenBucketLimiter.isAllowed(result)) {
+            ctx.header(RETRY_AFTER_HEADER, Long.toString(TokenBucketLimiter.getRetryAfterSeconds(result)));
+            ctx.status(429);
+            return false;
+        }
+        return true;
+    }
+
     /*
      * Handler to process new user registration, or post a new account.  The registration will be successful if and only 
      * if the username is not blank, the password is at least 4 characters long, and an Account with that username does 
@@ -69,16 +328,15 @@ public class SocialMediaController {
      * - If the registration is not successful, the response status should be 400. (Client error)
      * 
      * @param ctx the context object handles HTTP requests and generates responses.
-     * @throws JsonProcessingException will be thrown if there is an issue converting JSON into an object.
+     * @throws IOException will be thrown if there is an issue converting the request body into an object.
      */
-    public void postAccountHandler(Context ctx) throws JsonProcessingException {
-        ObjectMapper mapper = new ObjectMapper();
-        Account requestAccount = mapper.readValue(ctx.body(), Account.class);
+    public void postAccountHandler(Context ctx) throws IOException {
+        Account requestAccount = readBody(ctx, Account.class);
         Account responseAccount = socialMediaService.addAccount(requestAccount);
         if(responseAccount == null) {
             ctx.status(400);
         } else {
-            ctx.json(mapper.writeValueAsString(responseAccount));
+            writeBody(ctx, responseAccount);
         }
     }
 
@@ -93,16 +351,15 @@ public class SocialMediaController {
      * - If the login is not successful, the response status should be 401. (Unauthorized)
      * 
      * @param ctx the context object handles HTTP requests and generates responses.
-     * @throws JsonProcessingException will be thrown if there is an issue converting JSON into an object.
+     * @throws IOException will be thrown if there is an issue converting the request body into an object.
      */
-    public void postLoginHandler(Context ctx) throws JsonProcessingException {
-        ObjectMapper mapper = new ObjectMapper();
-        Account requestAccount = mapper.readValue(ctx.body(), Account.class);
+    public void postLoginHandler(Context ctx) throws IOException {
+        Account requestAccount = readBody(ctx, Account.class);
         Account responseAccount = socialMediaService.login(requestAccount);
         if(responseAccount == null) {
             ctx.status(401);
         } else {
-            ctx.json(mapper.writeValueAsString(responseAccount));
+            writeBody(ctx, responseAccount);
         }
     }
 
@@ -113,18 +370,22 @@ public class SocialMediaController {
      *  - If successful, the response body should contain a JSON of the message in the response body, including 
      *    its message_id. The response status should be 200 OK, which is the default.
      *  - If the creation of the message is not successful, the response status should be 400. (Client error)
+     *  - If the posting account has used up its rate limit, the response status should be 429. (Too Many Requests)
      * 
      * @param ctx the context object handles HTTP requests and generates responses.
-     * @throws JsonProcessingException will be thrown if there is an issue converting JSON into an object.
+     * @throws IOException will be thrown if there is an issue converting the request body into an object.
     */
-    public void postMessageHandler(Context ctx) throws JsonProcessingException {
-       ObjectMapper mapper = new ObjectMapper();
-       Message requestMessage = mapper.readValue(ctx.body(), Message.class);
+    public void postMessageHandler(Context ctx) throws IOException {
+       Message requestMessage = readBody(ctx, Message.class);
+       if(!checkRateLimit(ctx, postMessageRateLimit, requestMessage.getPosted_by())) {
+           return;
+       }
        Message responseMessage = socialMediaService.addMessage(requestMessage);
        if(responseMessage == null || responseMessage.getMessage_id() <= 0) {
             ctx.status(400);
        } else {
-           ctx.json(mapper.writeValueAsString(responseMessage));
+           ctx.header(MESSAGES_VERSION_HEADER, String.valueOf(socialMediaService.getMessagesVersion()));
+           writeBody(ctx, responseMessage);
        }
     }
 
@@ -133,19 +394,127 @@ public class SocialMediaController {
      * 
      * - The response body should contain a JSON representation of a list containing all messages retrieved from the 
      *   database. It is expected for the list to simply be empty if there are no messages. The response status should 
-     *   always be 200, which is the default.
+     *   always be 200, which is the default. The X-Total-Count header holds the number of messages.
+     * - JSON responses are written from the service's pre-serialized snapshot, and the X-Messages-Version header says
+     *   which writes it includes. A client that must see its own write sends the X-Messages-Version its write 
+     *   returned as X-Min-Messages-Version; if that is not a number, the response status will be 400. Requests that
+     *   name fields are answered from a query of just those columns.
+     * - With a posted_by query parameter, one page of those users' messages is returned instead (see 
+     *   getRecentMessagesHandler).
      * 
      * @param ctx the context object handles HTTP requests and generates responses.
      * @throws JsonProcessingException will be thrown if there is an issue converting JSON into an object.
      */
     public void getAllMessagesHandler(Context ctx) throws JsonProcessingException {
-        List<Message> messages = socialMediaService.getAllMessages();
+        if(ctx.queryParam("posted_by") != null) {
+            getRecentMessagesHandler(ctx);
+            return;
+        }
+        MessageFields fields = readFields(ctx);
+        if(fields == null) {
+            return;
+        }
+        String accept = ctx.header("Accept");
+        if(fields.isAll() && (accept == null || !accept.contains(SMILE))) {
+            Long minVersion = readLong(ctx, ctx.header(MIN_MESSAGES_VERSION_HEADER), 0);
+            if(minVersion == null) {
+                return;
+            }
+            MessageSnapshot.Snapshot snapshot = socialMediaService.getAllMessagesSnapshot(minVersion);
+            if(snapshot != null) {
+                ctx.header(TOTAL_COUNT_HEADER, String.valueOf(snapshot.count));
+                ctx.header(MESSAGES_VERSION_HEADER, String.valueOf(snapshot.version));
+                ctx.contentType("application/json");
+                ctx.result(snapshot.json);
+                return;
+            }
+        }
+        List<Message> messages = socialMediaService.getAllMessages(fields);
         if(messages != null ) {
-            ObjectMapper mapper = new ObjectMapper();
-            ctx.json(mapper.writeValueAsString(messages));
+            ctx.header(TOTAL_COUNT_HEADER, String.valueOf(socialMediaService.getMessageCount()));
+            writeBody(ctx, messages, fields);
         }
     }
 
+    /*
+     * Handler to retrieve one page of the messages of several users, newest first, as a feed shows them.
+     * 
+     * - The posted_by query parameter is a comma-separated list of account_ids (at most MAX_PAGE_ACCOUNTS). The 
+     *   optional limit query parameter caps the messages on the page (default DEFAULT_PAGE_LIMIT, at most 
+     *   MAX_PAGE_LIMIT), and the optional per_account query parameter caps the messages of any one user on it 
+     *   (default the limit), so that one busy user cannot fill the page. A page that reaches a user's cap ends just 
+     *   before that user's next message, which then starts the next page.
+     * - The response body should contain a JSON representation of a list of the messages, ordered by 
+     *   time_posted_epoch and then message_id, newest first. The response status should be 200, which is the default.
+     * - If the page is full, or a user's messages were capped, the X-Next-Cursor header holds the cursor to send as 
+     *   the cursor query parameter for the next, older page. Following the cursors visits every message once.
+     * - If posted_by names no accounts or too many, or anything but account_ids, if limit or per_account is not a 
+     *   positive integer, or if cursor is not one sent in X-Next-Cursor, the response status should be 400. (Client 
+     *   error)
+     * 
+     * @param ctx the context object handles HTTP requests and generates responses.
+     * @throws JsonProcessingException will be thrown if there is an issue converting JSON into an object.
+     */
+    public void getRecentMessagesHandler(Context ctx) throws JsonProcessingException {
+        MessageFields fields = readFields(ctx);
+        if(fields == null) {
+            return;
+        }
+        List<Integer> account_ids = new ArrayList<>();
+        try {
+            for(String account_id : ctx.queryParam("posted_by").split(",")) {
+                if(!account_id.isBlank()) {
+                    account_ids.add(Integer.parseInt(account_id.trim()));
+                }
+            }
+        } catch(NumberFormatException e) {
+            ctx.status(400);
+            return;
+        }
+        Integer limit = readPositiveInt(ctx, "limit", DEFAULT_PAGE_LIMIT);
+        if(limit == null) {
+            return;
+        }
+        limit = Math.min(limit, MAX_PAGE_LIMIT);
+        Integer perAccount = readPositiveInt(ctx, "per_account", limit);
+        long[] cursor = readCursor(ctx);
+        if(perAccount == null || cursor == null) {
+            return;
+        }
+        if(account_ids.size() > MAX_PAGE_ACCOUNTS) {
+            ctx.status(400);
+            return;
+        }
+        for(int account_id : account_ids) {
+            accountKeys.record(account_id);
+        }
+
+        List<Message> messages = socialMediaService.getRecentMessages(account_ids, perAccount, limit, cursor[0],
+                (int) cursor[1]);
+        if(messages == null) {
+            ctx.status(400);
+            return;
+        }
+        if(!messages.isEmpty() && (messages.size() == limit || hasCappedAccount(messages, perAccount))) {
+            Message last = messages.get(messages.size() - 1);
+            ctx.header(NEXT_CURSOR_HEADER, last.getTime_posted_epoch() + "_" + last.getMessage_id());
+        }
+        writeBody(ctx, messages, fields);
+    }
+
+    /*
+     * @return whether any account has perAccount messages on the page, so that it may have more.
+     */
+    private static boolean hasCappedAccount(List<Message> messages, int perAccount) {
+        Map<Integer, Integer> counts = new HashMap<>();
+        for(Message message : messages) {
+            if(counts.merge(message.getPosted_by(), 1, Integer::sum) >= perAccount) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /* 
      * Handler to retrieve a message by its ID.
      * 
@@ -158,11 +527,46 @@ public class SocialMediaController {
     */
     public void getMessageHandler(Context ctx) throws JsonProcessingException {
         int message_id = Integer.parseInt(ctx.pathParam("message_id"));
-        Message message = socialMediaService.getMessage(message_id);
+        messageKeys.record(message_id);
+        MessageFields fields = readFields(ctx);
+        if(fields == null) {
+            return;
+        }
+        Message message = socialMediaService.getMessage(message_id, fields);
         if(message != null ) {
-            ObjectMapper mapper = new ObjectMapper();
-            ctx.json(mapper.writeValueAsString(message));
+            writeBody(ctx, message, fields);
+        }
+    }
+
+    /*
+     * Handler to retrieve many messages by their IDs at once, for clients holding lists of ids such as search hits.
+     * 
+     * The request body will contain a JSON array of message_ids (at most MAX_LOOKUP_IDS).
+     * - The response body should contain a JSON representation of a MessageLookup: the messages found, in the order 
+     *   their ids were asked for, under "messages", and the ids that matched no message under "missing_ids". The 
+     *   response status should be 200, which is the default.
+     * - If the request asks for more than MAX_LOOKUP_IDS ids, the response status should be 400. (Client error)
+     * 
+     * @param ctx the context object handles HTTP requests and generates responses.
+     * @throws IOException will be thrown if there is an issue converting the request body into an object.
+     */
+    public void lookupMessagesHandler(Context ctx) throws IOException {
+        int[] message_ids = readBody(ctx, int[].class);
+        MessageFields fields = readFields(ctx);
+        if(fields == null) {
+            return;
+        }
+        if(message_ids.length > MAX_LOOKUP_IDS) {
+            ctx.status(400);
+            return;
         }
+        List<Integer> ids = new ArrayList<>();
+        for(int message_id : message_ids) {
+            messageKeys.record(message_id);
+            ids.add(message_id);
+        }
+        MessageLookup lookup = socialMediaService.getMessages(ids);
+        writeBody(ctx, lookup, fields);
     }
 
     /* 
@@ -170,20 +574,227 @@ public class SocialMediaController {
      * 
      * - The response body should contain a JSON representation of a list containing all messages posted by a particular 
      *   user. It is expected for the list to simply be empty if there are no messages. The response status should always
-     *   be 200, which is the default.
+     *   be 200, which is the default. The X-Total-Count header holds the number of messages the user has posted.
      * 
      * @param ctx the context object handles HTTP requests and generates responses.
      * @throws JsonProcessingException will be thrown if there is an issue converting JSON into an object.
      */
      public void getAllAccountMessagesHandler(Context ctx) throws JsonProcessingException {
         int account_id = Integer.parseInt(ctx.pathParam("account_id"));
-        List<Message> messages = socialMediaService.getAllMessages(account_id);
+        accountKeys.record(account_id);
+        MessageFields fields = readFields(ctx);
+        if(fields == null) {
+            return;
+        }
+        List<Message> messages = socialMediaService.getAllMessages(account_id, fields);
         if(messages != null ) {
-            ObjectMapper mapper = new ObjectMapper();
-            ctx.json(mapper.writeValueAsString(messages));
+            ctx.header(TOTAL_COUNT_HEADER, String.valueOf(socialMediaService.getMessageCount(account_id)));
+            writeBody(ctx, messages, fields);
         }
      }   
 
+    /*
+     * Handler to make a user follow another.
+     * 
+     * The request body will contain a JSON representation of a follow, with only its followee_id: the account_id of
+     * the user to be followed by the user in the path.
+     * - If the follow is successful, the response body should contain a JSON of the follow. The response status 
+     *   should be 200, which is the default. Following a user already followed is successful.
+     * - If either user does not exist, or they are the same user, the response status should be 400. (Client error)
+     * 
+     * @param ctx the context object handles HTTP requests and generates responses.
+     * @throws IOException will be thrown if there is an issue converting the request body into an object.
+     */
+    public void postFollowHandler(Context ctx) throws IOException {
+        Follow requestFollow = readBody(ctx, Follow.class);
+        int account_id = Integer.parseInt(ctx.pathParam("account_id"));
+        Follow follow = socialMediaService.follow(account_id, requestFollow.getFollowee_id());
+        if(follow != null) {
+            writeBody(ctx, follow);
+        } else {
+            ctx.status(400);
+        }
+    }
+
+    /*
+     * Handler to make a user stop following another.
+     * 
+     * - The response body should contain a JSON of the follow that was removed. It is expected for the response body
+     *   to simply be empty if the user was not following the other. The response status should always be 200, 
+     *   which is the default.
+     * 
+     * @param ctx the context object handles HTTP requests and generates responses.
+     * @throws JsonProcessingException will be thrown if there is an issue converting JSON into an object.
+     */
+    public void deleteFollowHandler(Context ctx) throws JsonProcessingException {
+        int account_id = Integer.parseInt(ctx.pathParam("account_id"));
+        int followee_id = Integer.parseInt(ctx.pathParam("followee_id"));
+        Follow follow = socialMediaService.unfollow(account_id, followee_id);
+        if(follow != null) {
+            writeBody(ctx, follow);
+        }
+    }
+
+    /*
+     * Handler to retrieve one page of a user's feed: the messages of the users they follow.
+     * 
+     * - The optional limit query parameter caps the messages on the page (default DEFAULT_PAGE_LIMIT, at most 
+     *   MAX_PAGE_LIMIT).
+     * - The response body should contain a JSON representation of a list of the messages, ordered by 
+     *   time_posted_epoch and then message_id, newest first. It is expected for the list to simply be empty if the 
+     *   user follows nobody. The response status should be 200, which is the default.
+     * - If the page is full, the X-Next-Cursor header holds the cursor to send as the cursor query parameter for the
+     *   next, older page.
+     * - If limit is not a positive integer, or cursor is not one sent in X-Next-Cursor, the response status should be 
+     *   400. (Client error)
+     * 
+     * @param ctx the context object handles HTTP requests and generates responses.
+     * @throws JsonProcessingException will be thrown if there is an issue converting JSON into an object.
+     */
+    public void getFeedHandler(Context ctx) throws JsonProcessingException {
+        int account_id = Integer.parseInt(ctx.pathParam("account_id"));
+        accountKeys.record(account_id);
+        MessageFields fields = readFields(ctx);
+        if(fields == null) {
+            return;
+        }
+        Integer limit = readPositiveInt(ctx, "limit", DEFAULT_PAGE_LIMIT);
+        long[] cursor = limit == null ? null : readCursor(ctx);
+        if(cursor == null) {
+            return;
+        }
+        limit = Math.min(limit, MAX_PAGE_LIMIT);
+
+        List<Message> messages = socialMediaService.getFeed(account_id, limit, cursor[0], (int) cursor[1]);
+        if(messages == null) {
+            ctx.status(400);
+            return;
+        }
+        if(messages.size() == limit) {
+            Message last = messages.get(messages.size() - 1);
+            ctx.header(NEXT_CURSOR_HEADER, last.getTime_posted_epoch() + "_" + last.getMessage_id());
+        }
+        writeBody(ctx, messages, fields);
+    }
+
+    /*
+     * Handler to retrieve the number of messages, without retrieving the messages themselves.
+     * 
+     * - The response body should contain a JSON object whose message_count field is the number of messages. The 
+     *   response status should always be 200, which is the default.
+     * 
+     * @param ctx the context object handles HTTP requests and generates responses.
+     * @throws JsonProcessingException will be thrown if there is an issue converting JSON into an object.
+     */
+    public void getMessageCountHandler(Context ctx) throws JsonProcessingException {
+        writeBody(ctx, Map.of("message_count", socialMediaService.getMessageCount()));
+    }
+
+    /*
+     * Handler to retrieve the statistics of a particular user.
+     * 
+     * - The response body should contain a JSON representation of the user's AccountStats, which counts the messages 
+     *   they have posted (0 if there are none). The response status should always be 200, which is the default.
+     * 
+     * @param ctx the context object handles HTTP requests and generates responses.
+     * @throws JsonProcessingException will be thrown if there is an issue converting JSON into an object.
+     */
+    public void getAccountStatsHandler(Context ctx) throws JsonProcessingException {
+        int account_id = Integer.parseInt(ctx.pathParam("account_id"));
+        accountKeys.record(account_id);
+        writeBody(ctx, new AccountStats(account_id, socialMediaService.getMessageCount(account_id)));
+    }
+
+    /*
+     * Handler to stream the messages created, updated and deleted, as Server-Sent Events.  Each event is named after 
+     * the kind of change (created, updated or deleted) and its data is a JSON representation of the message.
+     * 
+     * - The optional posted_by query parameter limits the stream to the messages of a particular user. If it is not 
+     *   an account_id, the response status will be 400. (Client error)
+     * - A client that falls too far behind, or stops reading, is sent a "lagging" comment and disconnected, so that 
+     *   it can reconnect and catch up with GET localhost:8080/messages.
+     * 
+     * @param ctx the context object handles HTTP requests and generates responses.
+     * @throws Exception will be thrown if the Server-Sent Events response cannot be started.
+     */
+    public void streamMessagesHandler(Context ctx) throws Exception {
+        String posted_by = ctx.queryParam("posted_by");
+        Integer account_id = null;
+        if(posted_by != null) {
+            try {
+                account_id = Integer.parseInt(posted_by);
+            } catch(NumberFormatException e) {
+                ctx.status(400);
+                return;
+            }
+        }
+        Integer subscribed_to = account_id;
+        new SseHandler(client -> streamMessages(client, subscribed_to)).handle(ctx);
+    }
+
+    /*
+     * Subscribe a Server-Sent Events client to the message stream (see streamMessagesHandler).
+     * 
+     * @param client the Server-Sent Events client connection.
+     * @param account_id only stream the messages of this account, or null for all messages.
+     */
+    private void streamMessages(SseClient client, Integer account_id) {
+        MessageEventBus.Subscription subscription = socialMediaService.subscribeToMessages(account_id, 
+            event -> {
+                try {
+                    client.sendEvent(event.getEvent_type(), jsonMapper.writeValueAsString(event.getMessage()));
+                } catch(JsonProcessingException e) {
+                    System.out.println(e.getMessage());
+                }
+            }, 
+            () -> {
+                client.sendComment("lagging");
+                client.close();
+            });
+        client.onClose(subscription::cancel);
+        client.sendComment("connected");
+        client.keepAlive();
+    }
+
+    /*
+     * Handler to retrieve the inserts, updates and deletes made to messages after a given change sequence, so that a 
+     * client can poll for changes without reading every message.
+     * 
+     * - The since query parameter is the change_seq of the last change the client has seen (0 if none), and the 
+     *   optional limit query parameter caps the number of changes returned (at most MAX_CHANGES).
+     * - If since is not a non-negative number or limit is not a positive number: the response status should be 
+     *   400. (Client error)
+     * - The response body should contain a JSON representation of a list of changes, oldest first, and the 
+     *   X-Change-Sequence header holds the change_seq to send as since on the next poll. The response status 
+     *   should be 200, which is the default.
+     * - If the changes after since are no longer held, or since is past the newest change (as a change_seq from 
+     *   before a store without a persistent change log was reopened can be), the response status should be 410 
+     *   (Gone) and the client should reload GET localhost:8080/messages.
+     * 
+     * @param ctx the context object handles HTTP requests and generates responses.
+     * @throws JsonProcessingException will be thrown if there is an issue converting JSON into an object.
+     */
+    public void getMessageChangesHandler(Context ctx) throws JsonProcessingException {
+        Long since = readLong(ctx, ctx.queryParam("since"), 0);
+        Integer limit = readPositiveInt(ctx, "limit", MAX_CHANGES);
+        if(since == null || limit == null) {
+            return;
+        }
+        if(since < 0) {
+            ctx.status(400);
+            return;
+        }
+
+        List<MessageChange> changes = socialMediaService.getChangesSince(since, Math.min(limit, MAX_CHANGES));
+        if(changes == null) {
+            ctx.status(410);
+        } else {
+            long next = changes.isEmpty() ? since : changes.get(changes.size() - 1).getChange_seq();
+            ctx.header("X-Change-Sequence", String.valueOf(next));
+            writeBody(ctx, changes);
+        }
+    }
+
     /*
      * Handler to delete a message identified by a message ID.
      * 
@@ -200,8 +811,8 @@ public class SocialMediaController {
         int message_id = Integer.parseInt(ctx.pathParam("message_id"));
         Message message = socialMediaService.deleteMessage(message_id);
         if(message != null ) {
-            ObjectMapper mapper = new ObjectMapper();
-            ctx.json(mapper.writeValueAsString(message));
+            ctx.header(MESSAGES_VERSION_HEADER, String.valueOf(socialMediaService.getMessagesVersion()));
+            writeBody(ctx, message);
         }
     }
 
@@ -212,23 +823,389 @@ public class SocialMediaController {
      * (including message_id, posted_by, message_text, and time_posted_epoch), and the response status 
      *   should be 200, which is the default. 
      * - If the update of the message is not successful for any reason, the response status should be 400. (Client error) 
+     * - If the account that posted the message has used up its rate limit, the response status should be 429.
      * 
      * @param ctx the context object handles HTTP requests and generates responses.
-     * @throws JsonProcessingException will be thrown if there is an issue converting JSON into an object.
+     * @throws IOException will be thrown if there is an issue converting the request body into an object.
      */
-    public void updateMessageHandler(Context ctx) throws JsonProcessingException {
-        ObjectMapper mapper = new ObjectMapper();
-        Message requestMessage = mapper.readValue(ctx.body(), Message.class);
+    public void updateMessageHandler(Context ctx) throws IOException {
+        Message requestMessage = readBody(ctx, Message.class);
         
         int message_id = Integer.parseInt(ctx.pathParam("message_id"));
         requestMessage.setMessage_id(message_id);        
-        Message responseMessage = socialMediaService.updateMessage(requestMessage);
+        // the rate limit is keyed by the poster found by the update's own read of the message
+        Message responseMessage = socialMediaService.updateMessage(requestMessage,
+                posted_by -> checkRateLimit(ctx, updateMessageRateLimit, posted_by));
 
+        if(ctx.statusCode() == 429) {
+            return;
+        }
         if(responseMessage == null || responseMessage.getMessage_id() <= 0) {
              ctx.status(400);
         } else {
-            ctx.json(mapper.writeValueAsString(responseMessage));
+            ctx.header(MESSAGES_VERSION_HEADER, String.valueOf(socialMediaService.getMessagesVersion()));
+            writeBody(ctx, responseMessage);
+        }
+    }
+
+    /*
+     * Handler to retrieve the users who have posted the most messages.
+     * 
+     * - The optional limit query parameter is the number of users wanted (default DEFAULT_TOP_POSTERS, at most 
+     *   MessageAnalytics.TOP_POSTER_COUNTERS).
+     * - The response body should contain a JSON representation of a list of poster counts, most messages first. The 
+     *   response status should be 200, which is the default.
+     * - If limit is not a positive number, the response status should be 400. (Client error)
+     * 
+     * @param ctx the context object handles HTTP requests and generates responses.
+     * @throws JsonProcessingException will be thrown if there is an issue converting JSON into an object.
+     */
+    public void getTopPostersHandler(Context ctx) throws JsonProcessingException {
+        Integer limit = readPositiveInt(ctx, "limit", DEFAULT_TOP_POSTERS);
+        if(limit == null) {
+            return;
+        }
+        List<PosterCount> posters = socialMediaService.getTopPosters(limit);
+        writeBody(ctx, posters);
+    }
+
+    /*
+     * Handler to retrieve the number of messages posted per minute or per hour, by time_posted_epoch.
+     * 
+     * - The interval query parameter is minute (the default) or hour. The optional buckets query parameter is the 
+     *   number of intervals wanted (default DEFAULT_VOLUME_BUCKETS), and the optional to query parameter is a time, in 
+     *   seconds since the epoch, in the last interval wanted (default the newest interval with messages).
+     * - The response body should contain a JSON representation of a list of volume buckets, oldest first. The response 
+     *   status should be 200, which is the default.
+     * - If the interval is not minute or hour, buckets is not a positive number or to is not a number, the response 
+     *   status should be 400. (Client error)
+     * 
+     * @param ctx the context object handles HTTP requests and generates responses.
+     * @throws JsonProcessingException will be thrown if there is an issue converting JSON into an object.
+     */
+    public void getMessageVolumeHandler(Context ctx) throws JsonProcessingException {
+        String intervalParam = ctx.queryParam("interval");
+        String bucketsParam = ctx.queryParam("buckets");
+        String toParam = ctx.queryParam("to");
+        String interval = intervalParam == null ? "minute" : intervalParam;
+        Integer buckets = readPositiveInt(ctx, "buckets", DEFAULT_VOLUME_BUCKETS);
+        Long to = toParam == null ? null : readLong(ctx, toParam, 0);
+        if(buckets == null || (toParam != null && to == null)) {
+            return;
+        }
+
+        List<VolumeBucket> volume = socialMediaService.getMessageVolume(interval, to, buckets);
+        if(volume == null) {
+            ctx.status(400);
+        } else {
+            writeBody(ctx, volume);
+        }
+    }
+
+    /*
+     * Handler to export messages in bulk. The messages are written to the response as they are read from the 
+     * database, so the export of any number of messages uses the same, small amount of memory.
+     * 
+     * - The optional format query parameter is ndjson (the default, one JSON message per line) or csv. The optional 
+     *   posted_by, from and to query parameters limit the export to one user's messages and to a range of 
+     *   time_posted_epoch.
+     * - If the gzip query parameter is true, the response body is gzipped as it is written, with the Content-Type 
+     *   application/gzip. Otherwise the response may still be compressed in transit if the request's Accept-Encoding 
+     *   allows it.
+     * - The response status should be 200, which is the default, with the messages in message_id order.
+     * - If the format is not ndjson or csv, or posted_by, from or to is not a number, the response status should be 
+     *   400. (Client error)
+     * 
+     * @param ctx the context object handles HTTP requests and generates responses.
+     */
+    public void exportMessagesHandler(Context ctx) {
+        String formatParam = ctx.queryParam("format");
+        String postedByParam = ctx.queryParam("posted_by");
+        String fromParam = ctx.queryParam("from");
+        String toParam = ctx.queryParam("to");
+        String format = formatParam == null ? MessageExportWriter.NDJSON : formatParam;
+        Integer posted_by;
+        long from;
+        long to;
+        try {
+            posted_by = postedByParam == null ? null : Integer.parseInt(postedByParam);
+            from = fromParam == null ? Long.MIN_VALUE : Long.parseLong(fromParam);
+            to = toParam == null ? Long.MAX_VALUE : Long.parseLong(toParam);
+        } catch(NumberFormatException e) {
+            ctx.status(400);
+            return;
+        }
+        boolean gzip = Boolean.parseBoolean(ctx.queryParam("gzip"));
+
+        if(!MessageExportWriter.isFormat(format)) {
+            ctx.status(400);
+            return;
+        }
+        if(gzip) {
+            ctx.contentType("application/gzip");
+            ctx.header("Content-Disposition", "attachment; filename=\"messages." + format + ".gz\"");
+        } else {
+            ctx.contentType(MessageExportWriter.NDJSON.equals(format) ? "application/x-ndjson" : "text/csv");
+        }
+
+        try(MessageExportWriter writer = new MessageExportWriter(ctx.outputStream(), format, gzip)) {
+            socialMediaService.exportMessages(posted_by, from, to, writer);
+        } catch(IOException | UncheckedIOException e) {
+            // the client went away part way through; there is nobody left to tell
+            System.out.println(e.getMessage());
+        }
+    }
+
+    /*
+     * Handler to report how busy the database connection pools are.
+     * 
+     * - The response body should contain a JSON representation of the read and write pools: the connections in use 
+     *   (active), the pool size (max), the total checkouts, and how many checkouts found the pool saturated (waits) 
+     *   and how long they waited in total (wait_ms). The response status should always be 200, which is the default.
+     * 
+     * @param ctx the context object handles HTTP requests and generates responses.
+     * @throws JsonProcessingException will be thrown if there is an issue converting JSON into an object.
+     */
+    public void getPoolStatsHandler(Context ctx) throws JsonProcessingException {
+        writeBody(ctx, ConnectionUtil.getPoolStats());
+    }
+
+    /*
+     * Handler to report the concurrency limit of each endpoint.
+     * 
+     * - The response body should contain a JSON representation of each endpoint's limiter: its current limit, the 
+     *   requests in flight, how many have been accepted and rejected, and the recent average (rtt_ms) and 
+     *   minimum (min_rtt_ms) latency. The response status should always be 200, which is the default.
+     * 
+     * @param ctx the context object handles HTTP requests and generates responses.
+     * @throws JsonProcessingException will be thrown if there is an issue converting JSON into an object.
+     */
+    public void getLimiterStatsHandler(Context ctx) throws JsonProcessingException {
+        List<ConcurrencyLimiter.LimiterStats> stats = new ArrayList<>();
+        for(ConcurrencyLimiter limiter : limiters.values()) {
+            stats.add(limiter.getStats());
         }
+        writeBody(ctx, stats);
+    }
+
+    /*
+     * Handler to report how many concurrent identical message lookups were shared.
+     * 
+     * - The response body should contain a JSON representation of each kind of lookup: the lookups run (leaders), the 
+     *   callers that shared a lookup already running (coalesced), and the lookups running now (in_flight). The 
+     *   response status should always be 200, which is the default.
+     * 
+     * @param ctx the context object handles HTTP requests and generates responses.
+     * @throws JsonProcessingException will be thrown if there is an issue converting JSON into an object.
+     */
+    public void getCoalescingStatsHandler(Context ctx) throws JsonProcessingException {
+        writeBody(ctx, socialMediaService.getCoalescingStats());
+    }
+
+    /*
+     * Handler to report the pooled connections the leak detector has found held too long or never closed.
+     * 
+     * - The response body should contain a JSON representation of the report: the fraction of checkouts tracked 
+     *   (sample_rate), the connections tracked, still open, closed and leaked, the statements left open when their 
+     *   connection was closed, and the connections held too long and most recently leaked, each with the pool, the 
+     *   thread and the stack that checked it out. The response status should always be 200, which is the default.
+     * 
+     * @param ctx the context object handles HTTP requests and generates responses.
+     * @throws JsonProcessingException will be thrown if there is an issue converting JSON into an object.
+     */
+    public void getLeakReportHandler(Context ctx) throws JsonProcessingException {
+        writeBody(ctx, ConnectionUtil.getLeakReport());
+    }
+
+    /*
+     * Handler to report the keys read most often over the last minute, so that caches can be warmed or hot keys 
+     * pinned before the database struggles with them (see Util.HotKeyTracker).
+     * 
+     * - The message_ids read by GET /messages/{message_id} and POST /messages/lookup are counted, and the account_ids 
+     *   read by GET /messages?posted_by=..., GET /accounts/{account_id}/messages, /stats and /feed.
+     * - The optional limit query parameter is the most keys of each kind to return (default DEFAULT_HOT_KEYS).
+     * - The response body should contain a JSON list of two reports, for message_id and account_id, each with the 
+     *   sample rate, the window in seconds, about how many reads were counted, and the hottest keys with about how 
+     *   many times each was read, most first. The response status should be 200, which is the default.
+     * - If limit is not a positive number, the response status should be 400. (Client error)
+     * 
+     * @param ctx the context object handles HTTP requests and generates responses.
+     * @throws JsonProcessingException will be thrown if there is an issue converting JSON into an object.
+     */
+    public void getHotKeysHandler(Context ctx) throws JsonProcessingException {
+        Integer limit = readPositiveInt(ctx, "limit", DEFAULT_HOT_KEYS);
+        if(limit == null) {
+            return;
+        }
+        writeBody(ctx, List.of(messageKeys.getReport(limit), accountKeys.getReport(limit)));
+    }
+
+    /*
+     * Handler to report whether the process is ready to take traffic, which it is not while it warms up.
+     * 
+     * - If it is ready: the response body will contain {"ready":true} and what the warmup did, if there was one, under
+     *   "warmup". The response status should be 200, which is the default.
+     * - If it is not ready: the response body will contain {"ready":false} and the response status should be 503.
+     * 
+     * @param ctx the context object handles HTTP requests and generates responses.
+     * @throws JsonProcessingException will be thrown if there is an issue converting JSON into an object.
+     */
+    public void getReadyHandler(Context ctx) throws JsonProcessingException {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("ready", ready);
+        if(!ready) {
+            ctx.status(503);
+        } else if(readyDetails != null) {
+            body.put("warmup", readyDetails);
+        }
+        writeBody(ctx, body);
+    }
+
+    /*
+     * Read the fields query parameter, which names the message properties the client wants.
+     * 
+     * - If it names anything but the message properties: the response status will be 400. (Client error)
+     * 
+     * @return the properties named, every property if the parameter is not sent, or null if it is not valid.
+     */
+    private MessageFields readFields(Context ctx) {
+        String fieldsParam = ctx.queryParam("fields");
+        if(fieldsParam == null) {
+            return MessageFields.ALL;
+        }
+        MessageFields fields = MessageFields.parse(fieldsParam);
+        if(fields == null) {
+            ctx.status(400);
+        }
+        return fields;
+    }
+
+    /*
+     * Read a query parameter that must be a positive integer, such as a page limit.
+     * 
+     * - If it is anything else: the response status will be 400. (Client error)
+     * 
+     * @return its value, defaultValue if it is not sent, or null if it is not valid.
+     */
+    private Integer readPositiveInt(Context ctx, String name, int defaultValue) {
+        String param = ctx.queryParam(name);
+        if(param == null) {
+            return defaultValue;
+        }
+        int value;
+        try {
+            value = Integer.parseInt(param);
+        } catch(NumberFormatException e) {
+            value = 0;
+        }
+        if(value < 1) {
+            ctx.status(400);
+            return null;
+        }
+        return value;
+    }
+
+    /*
+     * Read a whole number sent as a query parameter or header.
+     * 
+     * - If it is not one: the response status will be 400. (Client error)
+     * 
+     * @param value the parameter or header as sent, or null if it was not.
+     * @return its value, defaultValue if it is not sent, or null if it is not valid.
+     */
+    private Long readLong(Context ctx, String value, long defaultValue) {
+        if(value == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch(NumberFormatException e) {
+            ctx.status(400);
+            return null;
+        }
+    }
+
+    /*
+     * Read the cursor query parameter, which is "<time_posted_epoch>_<message_id>" as sent in X-Next-Cursor.
+     * 
+     * - If it is anything else: the response status will be 400. (Client error)
+     * 
+     * @return {time_posted_epoch, message_id} of the end of the previous page, {Long.MAX_VALUE, Integer.MAX_VALUE} 
+     *         if the parameter is not sent, or null if it is not valid.
+     */
+    private long[] readCursor(Context ctx) {
+        String param = ctx.queryParam("cursor");
+        if(param == null) {
+            return new long[] { Long.MAX_VALUE, Integer.MAX_VALUE };
+        }
+        String[] cursor = param.split("_", -1);
+        if(cursor.length == 2) {
+            try {
+                return new long[] { Long.parseLong(cursor[0]), Integer.parseInt(cursor[1]) };
+            } catch(NumberFormatException e) {
+                System.out.println(e.getMessage());
+            }
+        }
+        ctx.status(400);
+        return null;
+    }
+
+    /*
+     * Convert the request body into an object, reading it as Smile if the request Content-Type says so, and as JSON
+     * otherwise.
+     */
+    private <T> T readBody(Context ctx, Class<T> type) throws IOException {
+        String contentType = ctx.contentType();
+        if(contentType != null && contentType.startsWith(SMILE)) {
+            return smileMapper.readValue(ctx.bodyAsBytes(), type);
+        }
+        return jsonMapper.readValue(ctx.body(), type);
+    }
+
+    /*
+     * Write an object as the response body, as Smile if the request Accept header asks for it, and as JSON otherwise.
+     */
+    private void writeBody(Context ctx, Object body) throws JsonProcessingException {
+        String accept = ctx.header("Accept");
+        if(accept != null && accept.contains(SMILE)) {
+            ctx.contentType(SMILE);
+            ctx.result(smileMapper.writeValueAsBytes(body));
+        } else {
+            ctx.json(jsonMapper.writeValueAsString(body));
+        }
+    }
+
+    /*
+     * Write an object as the response body like writeBody, but with only the requested properties of any messages in
+     * it. The writer for each projection is built once and reused.
+     */
+    private void writeBody(Context ctx, Object body, MessageFields fields) throws JsonProcessingException {
+        if(fields.isAll()) {
+            writeBody(ctx, body);
+            return;
+        }
+        String accept = ctx.header("Accept");
+        if(accept != null && accept.contains(SMILE)) {
+            ctx.contentType(SMILE);
+            ctx.result(smileFieldsWriters.computeIfAbsent(fields, f -> fieldsWriter(smileFieldsMapper, f))
+                    .writeValueAsBytes(body));
+        } else {
+            ctx.json(jsonFieldsWriters.computeIfAbsent(fields, f -> fieldsWriter(jsonFieldsMapper, f))
+                    .writeValueAsString(body));
+        }
+    }
+
+    private static ObjectWriter fieldsWriter(ObjectMapper mapper, MessageFields fields) {
+        return mapper.writer(new SimpleFilterProvider().addFilter(MESSAGE_FIELDS_FILTER,
+                SimpleBeanPropertyFilter.filterOutAllExcept(fields.getNames())));
+    }
+
+    /*
+     * Mixed into Message for the fields mappers, so that they write Messages through the fields filter without 
+     * Message itself being annotated.
+     */
+    @JsonFilter(MESSAGE_FIELDS_FILTER)
+    private static abstract class FilteredMessage {
     }
 
 }
@@ -0,0 +1,43 @@
+package DAO;
+
+import java.util.List;
+import Model.Account;
+
+/*
+ * The storage operations SocialMediaService needs for accounts.  AccountDAO implements them on the H2 account
+ * table; other implementations keep accounts elsewhere but follow the same rules:
+ *   - account_id values are generated by the store, are positive, and are never reused.
+ *   - usernames are unique: inserting an account whose username is taken does not add it.
+ */
+public interface AccountStore {
+
+    /**
+     * @return all accounts.
+     */
+    List<Account> getAllAccounts();
+
+    /**
+     * @param account the account to add. Its account_id is ignored.
+     * @return the generated account_id, or 0 if the account was not added.
+     */
+    int insertAccount(Account account);
+
+    /**
+     * @param username the account username.
+     * @return the account with that username, or null if it does not exist.
+     */
+    Account getAccountByUsername(String username);
+
+    /**
+     * @param username the account username.
+     * @param password the account password.
+     * @return the account with that username and password, or null if it does not exist.
+     */
+    Account getAccountByLogin(String username, String password);
+
+    /**
+     * @param ID the account_id.
+     * @return the account with that account_id, or null if it does not exist.
+     */
+    Account getAccountByID(int ID);
+}
@@ -0,0 +1,284 @@
+package DAO;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import Model.Message;
+import Model.MessageChange;
+import Model.MessageEvent;
+
+/*
+ * An in-memory message store for read-heavy deployments, which keeps messages in columns of primitive arrays
+ * instead of one Message object and String per row:
+ *   message_id          int[]           ascending, so lookups are a binary search
+ *   posted_by           int[]
+ *   time_posted_epoch   long[]
+ *   message_text        one UTF-8 byte arena, addressed by an int[] offset and int[] length per row
+ *
+ * Message objects are only built for the rows a caller asks for.  Appends and updates write new text to the end of
+ * the arena, and deletes only set a tombstone bit, so the space they leave behind is reclaimed by a background
+ * compaction once it passes COMPACTION_THRESHOLD.  Readers share a read lock; writers take the write lock.
+ *
+ * Nothing is persisted: the store starts empty every time the process starts.
+ */
+public class ColumnarMessageDAO implements MessageStore {
+
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final double COMPACTION_THRESHOLD = 0.25;
+    private static final long COMPACTION_INTERVAL_MS = 1000;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final MessageChangeLog changeLog = new MessageChangeLog();
+
+    private int[] messageIds = new int[INITIAL_CAPACITY];
+    private int[] postedBy = new int[INITIAL_CAPACITY];
+    private long[] timePosted = new long[INITIAL_CAPACITY];
+    private int[] textOffset = new int[INITIAL_CAPACITY];
+    private int[] textLength = new int[INITIAL_CAPACITY];
+    private BitSet deleted = new BitSet();
+    private byte[] arena = new byte[INITIAL_CAPACITY * 32];
+
+    private int rowCount = 0;
+    private int deletedCount = 0;
+    private int arenaSize = 0;
+    private int deadTextBytes = 0;
+    private int nextMessageId = 1;
+
+    /*
+     * no-args constructor, which also starts the background compaction.
+     */
+    public ColumnarMessageDAO() {
+        ScheduledExecutorService compactor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "columnar-message-compactor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        compactor.scheduleWithFixedDelay(this::compactIfNeeded, COMPACTION_INTERVAL_MS, COMPACTION_INTERVAL_MS,
+                TimeUnit.MILLISECONDS);
+    }
+
+    public List<Message> getAllMessages() {
+        lock.readLock().lock();
+        try {
+            List<Message> messages = new ArrayList<>(rowCount - deletedCount);
+            for(int row = 0; row < rowCount; row++) {
+                if(!deleted.get(row)) {
+                    messages.add(toMessage(row));
+                }
+            }
+            return messages;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public List<Message> getAllMessages(int ID) {
+        lock.readLock().lock();
+        try {
+            List<Message> messages = new ArrayList<>();
+            for(int row = 0; row < rowCount; row++) {
+                if(postedBy[row] == ID && !deleted.get(row)) {
+                    messages.add(toMessage(row));
+                }
+            }
+            return messages;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public List<Message> getMessagesPostedBetween(long from, long to) {
+        lock.readLock().lock();
+        try {
+            List<Message> messages = new ArrayList<>();
+            for(int row = 0; row < rowCount; row++) {
+                if(timePosted[row] >= from && timePosted[row] <= to && !deleted.get(row)) {
+                    messages.add(toMessage(row));
+                }
+            }
+            return messages;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public Message getMessage(int ID) {
+        lock.readLock().lock();
+        try {
+            int row = findRow(ID);
+            return row < 0 ? null : toMessage(row);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int insertMessage(Message message) {
+        byte[] text = encode(message.getMessage_text());
+        lock.writeLock().lock();
+        try {
+            ensureRowCapacity(rowCount + 1);
+            int row = rowCount++;
+            messageIds[row] = nextMessageId++;
+            postedBy[row] = message.getPosted_by();
+            timePosted[row] = message.getTime_posted_epoch();
+            writeText(row, text);
+            changeLog.record(MessageEvent.CREATED, toMessage(row));
+            return messageIds[row];
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int updateMessageText(Message message) {
+        byte[] text = encode(message.getMessage_text());
+        lock.writeLock().lock();
+        try {
+            int row = findRow(message.getMessage_id());
+            if(row < 0) {
+                return 0;
+            }
+            deadTextBytes += textLength[row];
+            writeText(row, text);
+            changeLog.record(MessageEvent.UPDATED, toMessage(row));
+            return messageIds[row];
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public boolean deleteMessage(int ID) {
+        lock.writeLock().lock();
+        try {
+            int row = findRow(ID);
+            if(row < 0) {
+                return false;
+            }
+            changeLog.record(MessageEvent.DELETED, toMessage(row));
+            deleted.set(row);
+            deletedCount++;
+            deadTextBytes += textLength[row];
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public List<MessageChange> getChangesSince(long since, int limit) {
+        return changeLog.getChangesSince(since, limit);
+    }
+
+    public long[] getChangeSequenceRange() {
+        return changeLog.getChangeSequenceRange();
+    }
+
+    /*
+     * Rewrite the columns and the text arena with only the live rows, dropping tombstoned rows and text that has
+     * been replaced by an update.
+     */
+    public void compact() {
+        lock.writeLock().lock();
+        try {
+            int liveRows = rowCount - deletedCount;
+            int[] newIds = new int[Math.max(INITIAL_CAPACITY, withHeadroom(liveRows))];
+            int[] newPostedBy = new int[newIds.length];
+            long[] newTimePosted = new long[newIds.length];
+            int[] newOffset = new int[newIds.length];
+            int[] newLength = new int[newIds.length];
+            byte[] newArena = new byte[Math.max(INITIAL_CAPACITY * 32, withHeadroom(arenaSize - deadTextBytes))];
+
+            int newRow = 0;
+            int newArenaSize = 0;
+            for(int row = 0; row < rowCount; row++) {
+                if(deleted.get(row)) {
+                    continue;
+                }
+                newIds[newRow] = messageIds[row];
+                newPostedBy[newRow] = postedBy[row];
+                newTimePosted[newRow] = timePosted[row];
+                newOffset[newRow] = newArenaSize;
+                newLength[newRow] = textLength[row];
+                System.arraycopy(arena, textOffset[row], newArena, newArenaSize, textLength[row]);
+                newArenaSize += textLength[row];
+                newRow++;
+            }
+
+            messageIds = newIds;
+            postedBy = newPostedBy;
+            timePosted = newTimePosted;
+            textOffset = newOffset;
+            textLength = newLength;
+            arena = newArena;
+            deleted = new BitSet();
+            rowCount = newRow;
+            arenaSize = newArenaSize;
+            deletedCount = 0;
+            deadTextBytes = 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void compactIfNeeded() {
+        boolean needed;
+        lock.readLock().lock();
+        try {
+            needed = deletedCount > rowCount * COMPACTION_THRESHOLD || deadTextBytes > arenaSize * COMPACTION_THRESHOLD;
+        } finally {
+            lock.readLock().unlock();
+        }
+        if(needed) {
+            compact();
+        }
+    }
+
+    /*
+     * @return the row holding the live message with this message_id, or -1 if there is none.
+     */
+    private int findRow(int ID) {
+        int row = Arrays.binarySearch(messageIds, 0, rowCount, ID);
+        return row < 0 || deleted.get(row) ? -1 : row;
+    }
+
+    private Message toMessage(int row) {
+        return new Message(messageIds[row], postedBy[row],
+                new String(arena, textOffset[row], textLength[row], StandardCharsets.UTF_8), timePosted[row]);
+    }
+
+    private void writeText(int row, byte[] text) {
+        if(arenaSize + text.length > arena.length) {
+            arena = Arrays.copyOf(arena, Math.max(arena.length * 2, arenaSize + text.length));
+        }
+        System.arraycopy(text, 0, arena, arenaSize, text.length);
+        textOffset[row] = arenaSize;
+        textLength[row] = text.length;
+        arenaSize += text.length;
+    }
+
+    private void ensureRowCapacity(int rows) {
+        if(rows > messageIds.length) {
+            int capacity = Math.max(rows, messageIds.length * 2);
+            messageIds = Arrays.copyOf(messageIds, capacity);
+            postedBy = Arrays.copyOf(postedBy, capacity);
+            timePosted = Arrays.copyOf(timePosted, capacity);
+            textOffset = Arrays.copyOf(textOffset, capacity);
+            textLength = Arrays.copyOf(textLength, capacity);
+        }
+    }
+
+    /*
+     * Compaction leaves an eighth of spare room, so that appends right after it do not have to grow the arrays.
+     */
+    private static int withHeadroom(int size) {
+        return size + size / 8;
+    }
+
+    private static byte[] encode(String text) {
+        return text == null ? new byte[0] : text.getBytes(StandardCharsets.UTF_8);
+    }
+}
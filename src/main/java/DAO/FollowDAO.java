@@ -0,0 +1,166 @@
+package DAO;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import Util.ConnectionUtil;
+
+/*
+ * Mediates between the follow graph and rows in the database table follow.
+ *
+ * The database table named 'follow', one row per account following another:
+ *   follower_id         int             foreign key to account.account_id
+ *   followee_id         int             foreign key to account.account_id
+ *   primary key (follower_id, followee_id), so an account's followees are read through the primary key, and its
+ *   followers through the index H2 keeps for the followee_id foreign key.
+ *
+ * The table is created when the DAO is, if it does not exist yet, so databases made before it was added keep working.
+ * Reads use a connection from its database's read pool and writes one from the write pool. Every connection, statement and
+ * result set is closed before the method returns.
+ */
+public class FollowDAO implements FollowStore {
+
+    private final ConnectionUtil.Database database;
+
+    /*
+     * no-args constructor, which uses the application's database.
+     */
+    public FollowDAO() {
+        this(ConnectionUtil.getDatabase());
+    }
+
+    /*
+     * Creates the follow table if it does not exist.
+     *
+     * @param database the database holding the account and follow tables.
+     */
+    public FollowDAO(ConnectionUtil.Database database) {
+        this.database = database;
+        String sql = "CREATE TABLE IF NOT EXISTS follow (follower_id int, followee_id int, " +
+                     "primary key (follower_id, followee_id), " +
+                     "foreign key (follower_id) references account(account_id), " +
+                     "foreign key (followee_id) references account(account_id));";
+
+        try(Connection connection = database.getWriteConnection();
+            Statement statement = connection.createStatement()) {
+            statement.executeUpdate(sql);
+        }catch(SQLException e){
+            System.out.println(e.getMessage());
+        }
+    }
+
+    /**
+     * Add a follow record, unless it already exists.
+     *
+     * @param follower_id the account that follows.
+     * @param followee_id the account that is followed.
+     * @return true if the record was added.
+     */
+    public boolean insertFollow(int follower_id, int followee_id) {
+        String sql = "INSERT INTO follow (follower_id, followee_id) SELECT ?, ? " +
+                     "WHERE NOT EXISTS (SELECT 1 FROM follow WHERE follower_id = ? AND followee_id = ?);";
+
+        try(Connection connection = database.getWriteConnection();
+            PreparedStatement ps = connection.prepareStatement(sql)) {
+            ps.setInt(1, follower_id);
+            ps.setInt(2, followee_id);
+            ps.setInt(3, follower_id);
+            ps.setInt(4, followee_id);
+            return ps.executeUpdate() > 0;
+        }catch(SQLException e){
+            System.out.println(e.getMessage());
+        }
+        return false;
+    }
+
+    /**
+     * Delete a follow record.
+     *
+     * @param follower_id the account that follows.
+     * @param followee_id the account that is followed.
+     * @return true if the record existed and was deleted.
+     */
+    public boolean deleteFollow(int follower_id, int followee_id) {
+        String sql = "DELETE FROM follow WHERE follower_id = ? AND followee_id = ?;";
+
+        try(Connection connection = database.getWriteConnection();
+            PreparedStatement ps = connection.prepareStatement(sql)) {
+            ps.setInt(1, follower_id);
+            ps.setInt(2, followee_id);
+            return ps.executeUpdate() > 0;
+        }catch(SQLException e){
+            System.out.println(e.getMessage());
+        }
+        return false;
+    }
+
+    /**
+     * Retrieve the accounts an account follows.
+     *
+     * @param follower_id the account that follows.
+     * @return the followee_ids.
+     */
+    public List<Integer> getFollowees(int follower_id) {
+        String sql = "SELECT followee_id FROM follow WHERE follower_id = ?;";
+        return readIds(sql, follower_id);
+    }
+
+    /**
+     * Retrieve the accounts that follow an account.
+     *
+     * @param followee_id the account that is followed.
+     * @return the follower_ids.
+     */
+    public List<Integer> getFollowers(int followee_id) {
+        String sql = "SELECT follower_id FROM follow WHERE followee_id = ?;";
+        return readIds(sql, followee_id);
+    }
+
+    /**
+     * Count the followers of each account.
+     *
+     * @return a map from account_id to its number of followers, for accounts that have any.
+     */
+    public Map<Integer, Long> countFollowersByAccount() {
+        Map<Integer, Long> counts = new HashMap<>();
+        String sql = "SELECT followee_id, COUNT(*) FROM follow GROUP BY followee_id;";
+
+        try(Connection connection = database.getReadConnection();
+            PreparedStatement ps = connection.prepareStatement(sql);
+            ResultSet rs = ps.executeQuery()) {
+            while(rs.next()){
+                counts.put(rs.getInt(1), rs.getLong(2));
+            }
+        }catch(SQLException e){
+            System.out.println(e.getMessage());
+        }
+        return counts;
+    }
+
+    /*
+     * Run a query with one account_id parameter that returns one column of account_ids.
+     */
+    private List<Integer> readIds(String sql, int account_id) {
+        List<Integer> ids = new ArrayList<>();
+
+        try(Connection connection = database.getReadConnection();
+            PreparedStatement ps = connection.prepareStatement(sql)) {
+            ps.setInt(1, account_id);
+
+            try(ResultSet rs = ps.executeQuery()) {
+                while(rs.next()){
+                    ids.add(rs.getInt(1));
+                }
+            }
+        }catch(SQLException e){
+            System.out.println(e.getMessage());
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,43 @@
+package DAO;
+
+import java.util.List;
+import java.util.Map;
+
+/*
+ * The storage operations SocialMediaService needs for the follow graph: which accounts follow which.  FollowDAO
+ * implements them on the H2 follow table; InMemoryFollowDAO keeps them in memory.  Following is not symmetric, and
+ * an account follows another at most once.
+ */
+public interface FollowStore {
+
+    /**
+     * @param follower_id the account that follows.
+     * @param followee_id the account that is followed.
+     * @return true if the follow was added, false if it already existed or could not be added.
+     */
+    boolean insertFollow(int follower_id, int followee_id);
+
+    /**
+     * @param follower_id the account that follows.
+     * @param followee_id the account that is followed.
+     * @return true if the follow existed and was removed.
+     */
+    boolean deleteFollow(int follower_id, int followee_id);
+
+    /**
+     * @param follower_id an account.
+     * @return the account_ids of the accounts it follows.
+     */
+    List<Integer> getFollowees(int follower_id);
+
+    /**
+     * @param followee_id an account.
+     * @return the account_ids of the accounts that follow it.
+     */
+    List<Integer> getFollowers(int followee_id);
+
+    /**
+     * @return the number of followers of each account that has any.
+     */
+    Map<Integer, Long> countFollowersByAccount();
+}
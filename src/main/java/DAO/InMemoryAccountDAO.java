@@ -0,0 +1,62 @@
+package DAO;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import Model.Account;
+
+/*
+ * Keeps accounts in memory instead of the H2 account table, for tests and edge caching nodes.  Nothing is
+ * persisted: the store starts empty every time it is created.
+ *
+ * The username map is the source of truth for uniqueness: an account is only added if it wins the putIfAbsent for
+ * its username, so two concurrent registrations of the same username cannot both succeed.  The loser's account_id
+ * is simply never used.
+ */
+public class InMemoryAccountDAO implements AccountStore {
+
+    private final AtomicInteger accountSequence = new AtomicInteger();
+    private final ConcurrentSkipListMap<Integer, Account> accountsById = new ConcurrentSkipListMap<>();
+    private final ConcurrentHashMap<String, Account> accountsByUsername = new ConcurrentHashMap<>();
+
+    public List<Account> getAllAccounts() {
+        List<Account> accounts = new ArrayList<>();
+        for(Account account : accountsById.values()) {
+            accounts.add(copy(account));
+        }
+        return accounts;
+    }
+
+    public int insertAccount(Account account) {
+        if(account.getUsername() == null) {
+            return 0;
+        }
+        Account newAccount = new Account(accountSequence.incrementAndGet(), account.getUsername(), account.getPassword());
+        if(accountsByUsername.putIfAbsent(newAccount.getUsername(), newAccount) != null) {
+            return 0;
+        }
+        accountsById.put(newAccount.getAccount_id(), newAccount);
+        return newAccount.getAccount_id();
+    }
+
+    public Account getAccountByUsername(String username) {
+        Account account = username == null ? null : accountsByUsername.get(username);
+        return account == null ? null : copy(account);
+    }
+
+    public Account getAccountByLogin(String username, String password) {
+        Account account = getAccountByUsername(username);
+        return account != null && account.getPassword() != null && account.getPassword().equals(password) ? account : null;
+    }
+
+    public Account getAccountByID(int ID) {
+        Account account = accountsById.get(ID);
+        return account == null ? null : copy(account);
+    }
+
+    private static Account copy(Account account) {
+        return new Account(account.getAccount_id(), account.getUsername(), account.getPassword());
+    }
+}
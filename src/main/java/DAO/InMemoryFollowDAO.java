@@ -0,0 +1,60 @@
+package DAO;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ * Keeps the follow graph in memory instead of the H2 follow table, for tests and edge caching nodes.  Nothing is
+ * persisted: the store starts empty every time it is created.
+ *
+ * Each follow is held twice, in the follower's set of followees and in the followee's set of followers.  The
+ * followee set decides whether a follow is new, and the follower set is updated after it, so a reader may briefly
+ * see a new follow from one side only.
+ */
+public class InMemoryFollowDAO implements FollowStore {
+
+    private final Map<Integer, Set<Integer>> followees = new ConcurrentHashMap<>();
+    private final Map<Integer, Set<Integer>> followers = new ConcurrentHashMap<>();
+
+    public boolean insertFollow(int follower_id, int followee_id) {
+        if(!followees.computeIfAbsent(follower_id, id -> ConcurrentHashMap.newKeySet()).add(followee_id)) {
+            return false;
+        }
+        followers.computeIfAbsent(followee_id, id -> ConcurrentHashMap.newKeySet()).add(follower_id);
+        return true;
+    }
+
+    public boolean deleteFollow(int follower_id, int followee_id) {
+        Set<Integer> following = followees.get(follower_id);
+        if(following == null || !following.remove(followee_id)) {
+            return false;
+        }
+        Set<Integer> followedBy = followers.get(followee_id);
+        if(followedBy != null) {
+            followedBy.remove(follower_id);
+        }
+        return true;
+    }
+
+    public List<Integer> getFollowees(int follower_id) {
+        return new ArrayList<>(followees.getOrDefault(follower_id, Set.of()));
+    }
+
+    public List<Integer> getFollowers(int followee_id) {
+        return new ArrayList<>(followers.getOrDefault(followee_id, Set.of()));
+    }
+
+    public Map<Integer, Long> countFollowersByAccount() {
+        Map<Integer, Long> counts = new HashMap<>();
+        for(Map.Entry<Integer, Set<Integer>> entry : followers.entrySet()) {
+            if(!entry.getValue().isEmpty()) {
+                counts.put(entry.getKey(), (long) entry.getValue().size());
+            }
+        }
+        return counts;
+    }
+}
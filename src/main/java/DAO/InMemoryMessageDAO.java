@@ -0,0 +1,127 @@
+package DAO;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import Model.Message;
+import Model.MessageChange;
+import Model.MessageEvent;
+
+/*
+ * Keeps messages in memory instead of the H2 message table, for tests and edge caching nodes.  Nothing is
+ * persisted: the store starts empty every time it is created.
+ *
+ * Messages are held in a ConcurrentSkipListMap by message_id and in one per posted_by, so reads never lock.
+ * Writes to the messages of one account are serialised on that account's lock stripe, which keeps the two maps
+ * in step without making writers for different accounts wait on each other.  Stored messages are never changed in
+ * place: an update replaces the object, and callers only ever get copies.
+ */
+public class InMemoryMessageDAO implements MessageStore {
+
+    private static final int STRIPES = 64;
+
+    private final AtomicInteger messageSequence = new AtomicInteger();
+    private final ConcurrentSkipListMap<Integer, Message> messagesById = new ConcurrentSkipListMap<>();
+    private final ConcurrentHashMap<Integer, ConcurrentSkipListMap<Integer, Message>> messagesByAccount =
+            new ConcurrentHashMap<>();
+    private final Object[] stripes = new Object[STRIPES];
+    private final MessageChangeLog changeLog = new MessageChangeLog();
+
+    /*
+     * no-args constructor
+     */
+    public InMemoryMessageDAO() {
+        for(int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Object();
+        }
+    }
+
+    public List<Message> getAllMessages() {
+        return copy(messagesById);
+    }
+
+    public List<Message> getAllMessages(int ID) {
+        Map<Integer, Message> messages = messagesByAccount.get(ID);
+        return messages == null ? new ArrayList<>() : copy(messages);
+    }
+
+    public Message getMessage(int ID) {
+        Message message = messagesById.get(ID);
+        return message == null ? null : copy(message);
+    }
+
+    public int insertMessage(Message message) {
+        Message newMessage = new Message(messageSequence.incrementAndGet(), message.getPosted_by(),
+                message.getMessage_text(), message.getTime_posted_epoch());
+        synchronized(stripe(newMessage.getPosted_by())) {
+            messagesById.put(newMessage.getMessage_id(), newMessage);
+            messagesByAccount.computeIfAbsent(newMessage.getPosted_by(), k -> new ConcurrentSkipListMap<>())
+                    .put(newMessage.getMessage_id(), newMessage);
+            changeLog.record(MessageEvent.CREATED, newMessage);
+        }
+        return newMessage.getMessage_id();
+    }
+
+    public int updateMessageText(Message message) {
+        Message existing = messagesById.get(message.getMessage_id());
+        if(existing == null) {
+            return 0;
+        }
+        synchronized(stripe(existing.getPosted_by())) {
+            Message current = messagesById.get(message.getMessage_id());
+            if(current == null) {
+                return 0;
+            }
+            Message updated = new Message(current.getMessage_id(), current.getPosted_by(), message.getMessage_text(),
+                    current.getTime_posted_epoch());
+            messagesById.put(updated.getMessage_id(), updated);
+            messagesByAccount.get(updated.getPosted_by()).put(updated.getMessage_id(), updated);
+            changeLog.record(MessageEvent.UPDATED, updated);
+            return updated.getMessage_id();
+        }
+    }
+
+    public boolean deleteMessage(int ID) {
+        Message existing = messagesById.get(ID);
+        if(existing == null) {
+            return false;
+        }
+        synchronized(stripe(existing.getPosted_by())) {
+            Message current = messagesById.remove(ID);
+            if(current == null) {
+                return false;
+            }
+            messagesByAccount.get(current.getPosted_by()).remove(ID);
+            changeLog.record(MessageEvent.DELETED, current);
+            return true;
+        }
+    }
+
+    public List<MessageChange> getChangesSince(long since, int limit) {
+        return changeLog.getChangesSince(since, limit);
+    }
+
+    public long[] getChangeSequenceRange() {
+        return changeLog.getChangeSequenceRange();
+    }
+
+    private Object stripe(int posted_by) {
+        return stripes[Math.floorMod(posted_by, STRIPES)];
+    }
+
+    private static List<Message> copy(Map<Integer, Message> messages) {
+        List<Message> copies = new ArrayList<>(messages.size());
+        for(Message message : messages.values()) {
+            copies.add(copy(message));
+        }
+        return copies;
+    }
+
+    private static Message copy(Message message) {
+        return new Message(message.getMessage_id(), message.getPosted_by(), message.getMessage_text(),
+                message.getTime_posted_epoch());
+    }
+}
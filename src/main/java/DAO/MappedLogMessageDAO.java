@@ -0,0 +1,486 @@
+package DAO;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+import Model.Message;
+import Model.MessageChange;
+import Model.MessageEvent;
+
+/*
+ * A persistent message store that skips the SQL engine.  Messages are kept in an append-only log, split into fixed
+ * size segment files that are written through a memory-mapped FileChannel.  Every insert, update and delete appends
+ * a record; nothing is ever written in place.
+ *
+ * A record is laid out as:
+ *   int     length              the number of bytes after the crc
+ *   int     crc                 CRC32 of the bytes after it, so a torn write is detected
+ *   byte    type                HEADER, CREATED, UPDATED or DELETED
+ *   long    change_seq          for a HEADER, the next change_seq when the segment was started
+ *   int     message_id          for a HEADER, the next message_id when the segment was started
+ *   int     posted_by
+ *   long    time_posted_epoch
+ *   byte[]  message_text        UTF-8
+ *
+ * A primary index from message_id to the position of its latest record, and a secondary index from posted_by to
+ * message_ids, are rebuilt by replaying the segments in order when the store is opened.  Replay of a segment stops
+ * at the first record that is zero-length or fails its crc, which is where the process stopped writing, and new
+ * records are written from there.
+ *
+ * Once most of the records in the sealed segments are superseded, a background compaction copies their live
+ * messages to the end of the log and deletes them.
+ */
+public class MappedLogMessageDAO implements MessageStore, AutoCloseable {
+
+    public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+    private static final byte HEADER = 0;
+    private static final byte CREATED = 1;
+    private static final byte UPDATED = 2;
+    private static final byte DELETED = 3;
+    private static final int RECORD_PREFIX_SIZE = 8;
+    private static final int RECORD_BODY_SIZE = 25;
+    private static final long MAINTENANCE_INTERVAL_MS = 1000;
+
+    private final Path directory;
+    private final int segmentSize;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final TreeMap<Integer, Segment> segments = new TreeMap<>();
+    private final TreeMap<Integer, Long> primaryIndex = new TreeMap<>();
+    private final Map<Integer, TreeSet<Integer>> postedByIndex = new HashMap<>();
+    private final ScheduledExecutorService maintenance;
+    private final MessageChangeLog changeLog;
+
+    private Segment active;
+    private int nextMessageId = 1;
+    private long nextChangeSeq = 1;
+    private long sealedRecords = 0;
+
+    /*
+     * Open the store in a directory, creating it if it does not exist, and replay any segments already in it.
+     *
+     * @param directory the directory holding the segment files.
+     * @param segmentSize the size of each segment file in bytes.
+     */
+    public MappedLogMessageDAO(Path directory, int segmentSize) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        try {
+            Files.createDirectories(directory);
+            recover();
+        } catch(IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        changeLog = new MessageChangeLog((int) MessageDAO.CHANGE_LOG_RETENTION, nextChangeSeq);
+
+        maintenance = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "message-log-maintenance");
+            thread.setDaemon(true);
+            return thread;
+        });
+        maintenance.scheduleWithFixedDelay(this::maintain, MAINTENANCE_INTERVAL_MS, MAINTENANCE_INTERVAL_MS,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /*
+     * @param directory the directory holding the segment files.
+     */
+    public MappedLogMessageDAO(String directory) {
+        this(Paths.get(directory), DEFAULT_SEGMENT_SIZE);
+    }
+
+    public List<Message> getAllMessages() {
+        lock.readLock().lock();
+        try {
+            List<Message> messages = new ArrayList<>(primaryIndex.size());
+            for(long position : primaryIndex.values()) {
+                messages.add(readMessage(position));
+            }
+            return messages;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public List<Message> getAllMessages(int ID) {
+        lock.readLock().lock();
+        try {
+            List<Message> messages = new ArrayList<>();
+            TreeSet<Integer> message_ids = postedByIndex.get(ID);
+            if(message_ids != null) {
+                for(int message_id : message_ids) {
+                    messages.add(readMessage(primaryIndex.get(message_id)));
+                }
+            }
+            return messages;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public Message getMessage(int ID) {
+        lock.readLock().lock();
+        try {
+            Long position = primaryIndex.get(ID);
+            return position == null ? null : readMessage(position);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int insertMessage(Message message) {
+        lock.writeLock().lock();
+        try {
+            Message newMessage = new Message(nextMessageId++, message.getPosted_by(), message.getMessage_text(),
+                    message.getTime_posted_epoch());
+            long position = append(CREATED, changeLog.record(MessageEvent.CREATED, newMessage), newMessage);
+            index(newMessage, position);
+            return newMessage.getMessage_id();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int updateMessageText(Message message) {
+        lock.writeLock().lock();
+        try {
+            Long position = primaryIndex.get(message.getMessage_id());
+            if(position == null) {
+                return 0;
+            }
+            Message updated = readMessage(position);
+            updated.setMessage_text(message.getMessage_text());
+            long newPosition = append(UPDATED, changeLog.record(MessageEvent.UPDATED, updated), updated);
+            primaryIndex.put(updated.getMessage_id(), newPosition);
+            return updated.getMessage_id();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public boolean deleteMessage(int ID) {
+        lock.writeLock().lock();
+        try {
+            Long position = primaryIndex.get(ID);
+            if(position == null) {
+                return false;
+            }
+            Message deleted = readMessage(position);
+            append(DELETED, changeLog.record(MessageEvent.DELETED, deleted), deleted);
+            unindex(deleted);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public List<MessageChange> getChangesSince(long since, int limit) {
+        return changeLog.getChangesSince(since, limit);
+    }
+
+    public long[] getChangeSequenceRange() {
+        return changeLog.getChangeSequenceRange();
+    }
+
+    /*
+     * Copy the live messages out of every sealed segment to the end of the log, force the copies to disk, then delete
+     * those segments.  Records keep their original type and change_seq, so replaying the log afterwards gives the same
+     * messages, even after a crash right after the delete.
+     */
+    public void compact() {
+        lock.writeLock().lock();
+        try {
+            List<Segment> sealed = new ArrayList<>(segments.headMap(active.number).values());
+            if(sealed.isEmpty()) {
+                return;
+            }
+            int firstCopy = active.number;
+            for(Map.Entry<Integer, Long> entry : new ArrayList<>(primaryIndex.entrySet())) {
+                Segment segment = segments.get(segmentOf(entry.getValue()));
+                if(segment != active) {
+                    ByteBuffer record = readRecord(segment, offsetOf(entry.getValue()));
+                    entry.setValue(appendRaw(record));
+                }
+            }
+            // the copies, which may have rolled over into new segments, must be on disk before the originals go
+            for(Segment segment : segments.tailMap(firstCopy, true).values()) {
+                segment.buffer.force();
+            }
+            for(Segment segment : sealed) {
+                segments.remove(segment.number);
+                segment.channel.close();
+                Files.delete(segment.path);
+            }
+            sealedRecords = 0;
+            for(Segment segment : segments.headMap(active.number).values()) {
+                sealedRecords += segment.records;
+            }
+        } catch(IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /*
+     * Force the mapped segments to disk and release them.
+     */
+    public void close() {
+        maintenance.shutdownNow();
+        lock.writeLock().lock();
+        try {
+            for(Segment segment : segments.values()) {
+                segment.buffer.force();
+                segment.channel.close();
+            }
+            segments.clear();
+        } catch(IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /*
+     * Flush dirty pages of the active segment, and compact once most sealed records are superseded.
+     */
+    private void maintain() {
+        try {
+            boolean compactionNeeded;
+            lock.readLock().lock();
+            try {
+                active.buffer.force();
+                compactionNeeded = sealedRecords > 0 && sealedRecords > primaryIndex.size() * 2L;
+            } finally {
+                lock.readLock().unlock();
+            }
+            if(compactionNeeded) {
+                compact();
+            }
+        } catch(RuntimeException e) {
+            System.out.println(e.getMessage());
+        }
+    }
+
+    /*
+     * Replay every segment in the directory in order, rebuilding the indexes and finding where to append.
+     */
+    private void recover() throws IOException {
+        try(DirectoryStream<Path> files = Files.newDirectoryStream(directory, "segment-*.log")) {
+            for(Path path : files) {
+                String name = path.getFileName().toString();
+                int number = Integer.parseInt(name.substring("segment-".length(), name.length() - ".log".length()));
+                segments.put(number, openSegment(number, path));
+            }
+        }
+        for(Segment segment : segments.values()) {
+            replay(segment);
+        }
+        if(segments.isEmpty()) {
+            startSegment(1);
+        } else {
+            active = segments.lastEntry().getValue();
+            sealedRecords = 0;
+            for(Segment segment : segments.headMap(active.number).values()) {
+                sealedRecords += segment.records;
+            }
+        }
+    }
+
+    private void replay(Segment segment) {
+        int offset = 0;
+        while(offset + RECORD_PREFIX_SIZE + RECORD_BODY_SIZE <= segmentSize) {
+            ByteBuffer record = readRecord(segment, offset);
+            if(record == null) {
+                break;
+            }
+            byte type = record.get(0);
+            long change_seq = record.getLong(1);
+            int message_id = record.getInt(9);
+            if(type == HEADER) {
+                nextChangeSeq = Math.max(nextChangeSeq, change_seq);
+                nextMessageId = Math.max(nextMessageId, message_id);
+            } else {
+                nextChangeSeq = Math.max(nextChangeSeq, change_seq + 1);
+                nextMessageId = Math.max(nextMessageId, message_id + 1);
+                unindex(message_id);
+                if(type != DELETED) {
+                    index(toMessage(record), position(segment.number, offset));
+                }
+            }
+            segment.records++;
+            offset += RECORD_PREFIX_SIZE + record.limit();
+        }
+        segment.writePosition = offset;
+        // anything after the last good record is a torn write; clear it so it is not mistaken for a record later.
+        for(int i = offset; i < Math.min(segmentSize, offset + RECORD_PREFIX_SIZE + RECORD_BODY_SIZE + 1024); i++) {
+            segment.buffer.put(i, (byte) 0);
+        }
+    }
+
+    /*
+     * @return the body of the record at offset (type onwards), or null if there is no complete, valid record there.
+     */
+    private ByteBuffer readRecord(Segment segment, int offset) {
+        ByteBuffer buffer = segment.buffer.duplicate();
+        int length = buffer.getInt(offset);
+        if(length < RECORD_BODY_SIZE || offset + RECORD_PREFIX_SIZE + length > segmentSize) {
+            return null;
+        }
+        int crc = buffer.getInt(offset + 4);
+        buffer.position(offset + RECORD_PREFIX_SIZE);
+        buffer.limit(offset + RECORD_PREFIX_SIZE + length);
+        ByteBuffer body = buffer.slice();
+        CRC32 checksum = new CRC32();
+        checksum.update(body.duplicate());
+        return (int) checksum.getValue() == crc ? body : null;
+    }
+
+    private Message readMessage(long position) {
+        return toMessage(readRecord(segments.get(segmentOf(position)), offsetOf(position)));
+    }
+
+    private Message toMessage(ByteBuffer record) {
+        byte[] text = new byte[record.limit() - RECORD_BODY_SIZE];
+        ByteBuffer textBuffer = record.duplicate();
+        textBuffer.position(RECORD_BODY_SIZE);
+        textBuffer.get(text);
+        return new Message(record.getInt(9), record.getInt(13), new String(text, StandardCharsets.UTF_8),
+                record.getLong(17));
+    }
+
+    private long append(byte type, long change_seq, Message message) {
+        byte[] text = message.getMessage_text() == null ? new byte[0]
+                : message.getMessage_text().getBytes(StandardCharsets.UTF_8);
+        ByteBuffer body = ByteBuffer.allocate(RECORD_BODY_SIZE + text.length);
+        body.put(type);
+        body.putLong(change_seq);
+        body.putInt(message.getMessage_id());
+        body.putInt(message.getPosted_by());
+        body.putLong(message.getTime_posted_epoch());
+        body.put(text);
+        body.flip();
+        if(type != HEADER) {
+            nextChangeSeq = Math.max(nextChangeSeq, change_seq + 1);
+        }
+        return appendRaw(body);
+    }
+
+    /*
+     * Write a record body to the end of the log, starting a new segment if it does not fit in the active one.
+     *
+     * @return the position of the new record.
+     */
+    private long appendRaw(ByteBuffer body) {
+        int length = body.remaining();
+        if(active.writePosition + RECORD_PREFIX_SIZE + length > segmentSize) {
+            sealedRecords += active.records;
+            startSegment(active.number + 1);
+        }
+        CRC32 checksum = new CRC32();
+        checksum.update(body.duplicate());
+
+        int offset = active.writePosition;
+        ByteBuffer buffer = active.buffer.duplicate();
+        buffer.position(offset + RECORD_PREFIX_SIZE);
+        buffer.put(body.duplicate());
+        buffer.putInt(offset + 4, (int) checksum.getValue());
+        // the length goes in last, so a record is never seen until the rest of it has been written.
+        buffer.putInt(offset, length);
+        active.writePosition = offset + RECORD_PREFIX_SIZE + length;
+        active.records++;
+        return position(active.number, offset);
+    }
+
+    private void startSegment(int number) {
+        try {
+            Segment segment = openSegment(number, directory.resolve(String.format("segment-%06d.log", number)));
+            segments.put(number, segment);
+            active = segment;
+            Message header = new Message(nextMessageId, 0, "", 0);
+            append(HEADER, nextChangeSeq, header);
+        } catch(IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Segment openSegment(int number, Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        return new Segment(number, path, channel, buffer);
+    }
+
+    private void index(Message message, long position) {
+        primaryIndex.put(message.getMessage_id(), position);
+        postedByIndex.computeIfAbsent(message.getPosted_by(), k -> new TreeSet<>()).add(message.getMessage_id());
+    }
+
+    private void unindex(Message message) {
+        primaryIndex.remove(message.getMessage_id());
+        TreeSet<Integer> message_ids = postedByIndex.get(message.getPosted_by());
+        if(message_ids != null) {
+            message_ids.remove(message.getMessage_id());
+            if(message_ids.isEmpty()) {
+                postedByIndex.remove(message.getPosted_by());
+            }
+        }
+    }
+
+    private void unindex(int message_id) {
+        Long position = primaryIndex.get(message_id);
+        if(position != null) {
+            unindex(readMessage(position));
+        }
+    }
+
+    private static long position(int segment, int offset) {
+        return ((long) segment << 32) | (offset & 0xFFFFFFFFL);
+    }
+
+    private static int segmentOf(long position) {
+        return (int) (position >>> 32);
+    }
+
+    private static int offsetOf(long position) {
+        return (int) position;
+    }
+
+    /*
+     * One segment file of the log and its mapping.
+     */
+    private static class Segment {
+        final int number;
+        final Path path;
+        final FileChannel channel;
+        final MappedByteBuffer buffer;
+        int writePosition = 0;
+        long records = 0;
+
+        Segment(int number, Path path, FileChannel channel, MappedByteBuffer buffer) {
+            this.number = number;
+            this.path = path;
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+    }
+}
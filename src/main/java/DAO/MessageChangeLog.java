@@ -0,0 +1,93 @@
+package DAO;
+
+import java.util.ArrayList;
+import java.util.List;
+import Model.Message;
+import Model.MessageChange;
+
+/*
+ * An in-memory change log for message stores that do not keep one in a table.  Changes are numbered by a
+ * change_seq that increases with every change, and kept in a ring buffer of the most recent
+ * MessageDAO.CHANGE_LOG_RETENTION changes, so the oldest changes are overwritten rather than trimmed.
+ */
+public class MessageChangeLog {
+
+    private final MessageChange[] ring;
+    private final long firstSeq;
+    private long nextSeq;
+
+    /*
+     * no-args constructor
+     */
+    public MessageChangeLog() {
+        this((int) MessageDAO.CHANGE_LOG_RETENTION);
+    }
+
+    /*
+     * @param retention the number of most recent changes to keep.
+     */
+    public MessageChangeLog(int retention) {
+        this(retention, 1);
+    }
+
+    /*
+     * @param retention the number of most recent changes to keep.
+     * @param firstSeq the change_seq of the first change recorded, so that a store which is reopened can carry on
+     *        after the change_seq values it handed out before.
+     */
+    public MessageChangeLog(int retention, long firstSeq) {
+        this.ring = new MessageChange[retention];
+        this.firstSeq = firstSeq;
+        this.nextSeq = firstSeq;
+    }
+
+    /*
+     * Record a change.  The message is copied, so later changes to the object do not alter the log.
+     *
+     * @param change_type one of MessageEvent.CREATED, MessageEvent.UPDATED or MessageEvent.DELETED.
+     * @param message the message as it was after the change, or just before it was deleted.
+     * @return the change_seq given to the change.
+     */
+    public synchronized long record(String change_type, Message message) {
+        long seq = nextSeq++;
+        Message copy = new Message(message.getMessage_id(), message.getPosted_by(), message.getMessage_text(),
+                message.getTime_posted_epoch());
+        ring[(int) ((seq - firstSeq) % ring.length)] = new MessageChange(seq, change_type, copy);
+        return seq;
+    }
+
+    /*
+     * @return the change_seq the next change recorded will be given.
+     */
+    public synchronized long getNextSeq() {
+        return nextSeq;
+    }
+
+    /*
+     * @param since only changes with a change_seq larger than this are returned.
+     * @param limit the maximum number of changes to return.
+     * @return the changes still held that were made after since, oldest first.
+     */
+    public synchronized List<MessageChange> getChangesSince(long since, int limit) {
+        List<MessageChange> changes = new ArrayList<>();
+        long oldest = getOldest();
+        for(long seq = Math.max(since + 1, oldest); seq < nextSeq && changes.size() < limit; seq++) {
+            changes.add(ring[(int) ((seq - firstSeq) % ring.length)]);
+        }
+        return changes;
+    }
+
+    /*
+     * @return a two element array of the oldest and newest change_seq still held, both 0 if nothing has changed yet.
+     */
+    public synchronized long[] getChangeSequenceRange() {
+        if(nextSeq == firstSeq) {
+            return new long[2];
+        }
+        return new long[] { getOldest(), nextSeq - 1 };
+    }
+
+    private long getOldest() {
+        return Math.max(firstSeq, nextSeq - ring.length);
+    }
+}
@@ -6,45 +6,149 @@ import java.sql.ResultSet;
 import java.sql.Statement;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.WeakHashMap;
+import java.util.function.Consumer;
+import java.util.concurrent.atomic.AtomicInteger;
 import Model.Message;
+import Model.MessageChange;
+import Model.MessageEvent;
+import Model.MessageFields;
 import Util.ConnectionUtil;
+import Util.UnitOfWork;
 
 /*
  * Mediates the transformation of data between the Java Class Message to rows in the
  * database table message.
- *  
+ *
  * The database table named 'message':
- *   message_id          int             primary key 
+ *   message_id          int             primary key
  *   posted_by           int             foreign key to account.account_id
  *   message_text        varchar(255)
  *   time_posted_epoch   bigint
  *
+ * Every insert, update and delete is also recorded in the change log table named 'message_change', so that
+ * clients can poll for just the changes made after a given change_seq.  Only the most recent changes are kept.
+ *   change_seq          bigint          primary key, increases with every change
+ * A change_seq is handed out before its row is inserted, but the row is only visible once its transaction commits,
+ * and transactions may commit out of order.  So that a poller never moves past a change that is still to appear,
+ * changes are only returned below the lowest change_seq still in flight in this process.
+ *   change_type         varchar(8)      created, updated or deleted
+ *   message_id, posted_by, message_text, time_posted_epoch    copied from the message
+ *
+ * The message counts kept by the service are checkpointed to the table named 'message_stats', one row per account:
+ *   account_id          int             primary key
+ *   message_count       bigint
+ *   change_seq          bigint          the newest change the counts include, the same in every row
+ * A checkpoint is brought up to date by folding in the creates and deletes in the change log after its change_seq,
+ * so it never has to count the message table again unless the change log no longer holds all of them.
+ *
+ * The change log and message_stats tables are created when the DAO is, if they do not exist yet, so databases made
+ * before they were added keep recording changes and checkpointing counts.
+ *
+ * Reads use a connection from its database's read pool and writes one from the write pool. Every connection, statement
+ * and result set is closed before the method returns.
+ *
  * @author Jennifer Gardner
  */
-public class MessageDAO {
-    
+public class MessageDAO implements MessageStore {
+
+    /*
+     * The number of most recent changes kept in the change log, and how many writes happen between trims.
+     */
+    public static final long CHANGE_LOG_RETENTION = 10000;
+    private static final int CHANGE_LOG_TRIM_INTERVAL = 256;
+
+    /*
+     * The number of rows fetched at a time when streaming messages with forEachMessage.
+     */
+    public static final int STREAM_FETCH_SIZE = 5000;
+
+    private final AtomicInteger writesSinceTrim = new AtomicInteger();
+
+    /*
+     * The change sequence of each database. Shared by every MessageDAO of a database, as they all write the same table.
+     */
+    private static final Map<ConnectionUtil.Database, ChangeSequence> changeSequences =
+            Collections.synchronizedMap(new WeakHashMap<>());
+
+    private final ConnectionUtil.Database database;
+    private final ChangeSequence changeSequence;
+
+    /*
+     * no-args constructor, which uses the application's database.
+     */
+    public MessageDAO() {
+        this(ConnectionUtil.getDatabase());
+    }
+
+    /*
+     * Creates the change log and message_stats tables if they do not exist.
+     *
+     * @param database the database holding the message tables.
+     */
+    public MessageDAO(ConnectionUtil.Database database) {
+        this.database = database;
+        this.changeSequence = changeSequences.computeIfAbsent(database, key -> new ChangeSequence());
+        String changeTable = "CREATE TABLE IF NOT EXISTS message_change (change_seq bigint primary key auto_increment, " +
+                             "change_type varchar(8), message_id int, posted_by int, message_text varchar(255), " +
+                             "time_posted_epoch bigint);";
+        String statsTable = "CREATE TABLE IF NOT EXISTS message_stats (account_id int primary key, message_count bigint, " +
+                            "change_seq bigint);";
+        String statsChangeSeq = "ALTER TABLE message_stats ADD COLUMN IF NOT EXISTS change_seq bigint;";
+
+        try(Connection connection = database.getWriteConnection();
+            Statement statement = connection.createStatement()) {
+            statement.executeUpdate(changeTable);
+            statement.executeUpdate(statsTable);
+            statement.executeUpdate(statsChangeSeq);
+        }catch(SQLException e){
+            System.out.println(e.getMessage());
+        }
+        synchronized(changeSequence) {
+            if(changeSequence.inFlight.isEmpty()) {
+                changeSequence.next = 0;
+            }
+        }
+    }
+
+    /*
+     * @return the database holding the message tables.
+     */
+    public ConnectionUtil.Database getDatabase() {
+        return database;
+    }
+
     /**
      * Retrieve all messages from the message table.
      *
      * @return all messages.  List of Message objects which model a message record.
      */
     public List<Message> getAllMessages(){
-        Connection connection = ConnectionUtil.getConnection();
+        return getAllMessages(MessageFields.ALL);
+    }
+
+    /**
+     * Retrieve all messages from the message table, selecting only the requested columns.  Each projection always
+     * has the same statement text, so its prepared statement is reused.
+     *
+     * @param fields the columns to read.
+     * @return all messages, with only the requested fields set.  List of Message objects.
+     */
+    public List<Message> getAllMessages(MessageFields fields){
         List<Message> messages = new ArrayList<>();
-        try {
-            //Write SQL logic here
-            String sql = "SELECT message_id, posted_by, message_text, time_posted_epoch FROM message;";
+        String sql = "SELECT " + fields.getColumns() + " FROM message;";
 
+        try(Connection connection = database.getReadConnection();
             PreparedStatement ps = connection.prepareStatement(sql);
-
-            ResultSet rs = ps.executeQuery();
+            ResultSet rs = ps.executeQuery()) {
             while(rs.next()){
-                Message message = new Message(rs.getInt("message_id"), 
-                                              rs.getInt("posted_by"),
-                                              rs.getString("message_text"), 
-                                              rs.getLong("time_posted_epoch"));
-                messages.add(message);
+                messages.add(readMessage(rs, fields));
             }
         }catch(SQLException e){
             System.out.println(e.getMessage());
@@ -59,22 +163,57 @@ public class MessageDAO {
      * @return all messages.  List of Message objects.
      */
     public List<Message> getAllMessages(int ID){
-        Connection connection = ConnectionUtil.getConnection();
+        return getAllMessages(ID, MessageFields.ALL);
+    }
+
+    /**
+     * Retrieve all messages from the message table which have the requested account_id as the posted_by value,
+     * selecting only the requested columns.
+     *
+     * @param ID the account_id for the requested posted_by.
+     * @param fields the columns to read.
+     * @return all messages, with only the requested fields set.  List of Message objects.
+     */
+    public List<Message> getAllMessages(int ID, MessageFields fields){
         List<Message> messages = new ArrayList<>();
-        try {
-            //Write SQL logic here
-            String sql = "SELECT message_id, posted_by, message_text, time_posted_epoch FROM message WHERE posted_by = ?;";
+        String sql = "SELECT " + fields.getColumns() + " FROM message WHERE posted_by = ?;";
 
-            PreparedStatement ps = connection.prepareStatement(sql);
+        try(Connection connection = database.getReadConnection();
+            PreparedStatement ps = connection.prepareStatement(sql)) {
             ps.setInt(1, ID);
 
-            ResultSet rs = ps.executeQuery();
-            while(rs.next()){
-                Message message = new Message(rs.getInt("message_id"), 
-                                              rs.getInt("posted_by"),
-                                              rs.getString("message_text"), 
-                                              rs.getLong("time_posted_epoch"));
-                messages.add(message);
+            try(ResultSet rs = ps.executeQuery()) {
+                while(rs.next()){
+                    messages.add(readMessage(rs, fields));
+                }
+            }
+        }catch(SQLException e){
+            System.out.println(e.getMessage());
+        }
+        return messages;
+    }
+
+    /**
+     * Retrieve all messages from the message table which were posted within the requested time range.
+     *
+     * @param from the earliest time_posted_epoch to include.
+     * @param to the latest time_posted_epoch to include.
+     * @return all matching messages.  List of Message objects.
+     */
+    public List<Message> getMessagesPostedBetween(long from, long to){
+        List<Message> messages = new ArrayList<>();
+        String sql = "SELECT message_id, posted_by, message_text, time_posted_epoch FROM message " +
+                     "WHERE time_posted_epoch BETWEEN ? AND ? ORDER BY message_id;";
+
+        try(Connection connection = database.getReadConnection();
+            PreparedStatement ps = connection.prepareStatement(sql)) {
+            ps.setLong(1, from);
+            ps.setLong(2, to);
+
+            try(ResultSet rs = ps.executeQuery()) {
+                while(rs.next()){
+                    messages.add(readMessage(rs));
+                }
             }
         }catch(SQLException e){
             System.out.println(e.getMessage());
@@ -82,28 +221,112 @@ public class MessageDAO {
         return messages;
     }
 
+    /**
+     * Retrieve one page of the messages posted by a set of accounts, newest first, in one query.  The accounts are
+     * passed as a single array parameter, so the statement text is the same whatever their number, and the rows are
+     * found through the posted_by index.  Each account's messages are ranked with ROW_NUMBER() to cap them.
+     *
+     * @param posted_by the account_ids whose messages are wanted.
+     * @param perAccount the most messages of any one account on the page.
+     * @param limit the most messages on the page.
+     * @param beforeTime only messages posted before this time_posted_epoch, or at it with a message_id below
+     *        beforeId, are included.
+     * @param beforeId see beforeTime.
+     * @return the matching messages, ordered by time_posted_epoch and then message_id, newest first.
+     */
+    public List<Message> getRecentMessages(List<Integer> posted_by, int perAccount, int limit, long beforeTime,
+            int beforeId){
+        List<Message> messages = new ArrayList<>();
+        String sql = "SELECT message_id, posted_by, message_text, time_posted_epoch FROM (" +
+                     "SELECT message_id, posted_by, message_text, time_posted_epoch, ROW_NUMBER() OVER (" +
+                     "PARTITION BY posted_by ORDER BY time_posted_epoch DESC, message_id DESC) AS account_rank " +
+                     "FROM message WHERE posted_by = ANY(?) " +
+                     "AND (time_posted_epoch < ? OR (time_posted_epoch = ? AND message_id < ?))) " +
+                     "WHERE account_rank <= ? ORDER BY time_posted_epoch DESC, message_id DESC LIMIT ?;";
+
+        try(Connection connection = database.getReadConnection();
+            PreparedStatement ps = connection.prepareStatement(sql)) {
+            ps.setObject(1, posted_by.toArray(new Integer[0]));
+            ps.setLong(2, beforeTime);
+            ps.setLong(3, beforeTime);
+            ps.setInt(4, beforeId);
+            ps.setInt(5, perAccount);
+            ps.setInt(6, limit);
+
+            try(ResultSet rs = ps.executeQuery()) {
+                while(rs.next()){
+                    messages.add(readMessage(rs));
+                }
+            }
+        }catch(SQLException e){
+            System.out.println(e.getMessage());
+        }
+        return messages;
+    }
+
+    /**
+     * Stream the messages matching a filter from the message table, one row at a time.  The query runs with H2's
+     * lazy query execution, so rows are read as they are fetched rather than the whole result being built first,
+     * and memory use does not grow with the number of rows.
+     *
+     * @param posted_by only messages posted by this account, or null for every account.
+     * @param from the earliest time_posted_epoch to include.
+     * @param to the latest time_posted_epoch to include.
+     * @param sink receives each message, in message_id order.
+     */
+    public void forEachMessage(Integer posted_by, long from, long to, Consumer<Message> sink){
+        String sql = "SELECT message_id, posted_by, message_text, time_posted_epoch FROM message " +
+                     "WHERE time_posted_epoch BETWEEN ? AND ?" + (posted_by == null ? "" : " AND posted_by = ?") +
+                     " ORDER BY message_id;";
+
+        try(Connection connection = database.getReadConnection()) {
+            setLazyQueryExecution(connection, true);
+            try(PreparedStatement ps = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY,
+                                                                   ResultSet.CONCUR_READ_ONLY)) {
+                ps.setFetchSize(STREAM_FETCH_SIZE);
+                ps.setLong(1, from);
+                ps.setLong(2, to);
+                if(posted_by != null) {
+                    ps.setInt(3, posted_by);
+                }
+
+                try(ResultSet rs = ps.executeQuery()) {
+                    while(rs.next()){
+                        sink.accept(readMessage(rs));
+                    }
+                }
+            } finally {
+                setLazyQueryExecution(connection, false);
+            }
+        }catch(SQLException e){
+            System.out.println(e.getMessage());
+        }
+    }
+
     /*
      * Add a message record into the database which matches the values contained in the message object.
-     * 
+     *
      * @param message an object modelling a Message. The message object does not contain a message_id.
      * @return the generated message_id of the newly inserted message record in the database.
      */
     public int insertMessage(Message message) {
-        Connection connection = ConnectionUtil.getConnection();
         int generated_message_id = 0;
-        try {
-            //Write SQL logic here.
-            String sql = "INSERT INTO message (posted_by, message_text, time_posted_epoch) VALUES (?, ?, ?);" ;
-            
-            PreparedStatement ps = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
+        String sql = "INSERT INTO message (posted_by, message_text, time_posted_epoch) VALUES (?, ?, ?);" ;
+
+        try(Connection connection = database.getWriteConnection();
+            PreparedStatement ps = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
             ps.setInt(1, message.getPosted_by());
             ps.setString(2, message.getMessage_text());
             ps.setLong(3, message.getTime_posted_epoch());
             ps.executeUpdate();
 
-            ResultSet pkrs = ps.getGeneratedKeys();
-            if(pkrs.next()){
-                generated_message_id = (int) pkrs.getLong(1);
+            try(ResultSet pkrs = ps.getGeneratedKeys()) {
+                if(pkrs.next()){
+                    generated_message_id = (int) pkrs.getLong(1);
+                }
+            }
+            if(generated_message_id > 0) {
+                recordChange(connection, MessageEvent.CREATED, generated_message_id);
             }
         }catch(SQLException e){
             System.out.println(e.getMessage());
@@ -112,26 +335,25 @@ public class MessageDAO {
     }
 
     /*
-     * Update a message record's message_text field in the database which matches the values 
+     * Update a message record's message_text field in the database which matches the values
      * contained in the message object.
-     * 
-     * @param message an object modelling a Message. 
+     *
+     * @param message an object modelling a Message.
      * @return The message_id of the record updated in the database.
      */
     public int updateMessageText(Message message) {
-        Connection connection = ConnectionUtil.getConnection();
         int id = 0;
-        try {
-            //Write SQL logic here.
-            String sql = "UPDATE message SET message_text = ? WHERE message_id = ?;" ;
-            
-            PreparedStatement ps = connection.prepareStatement(sql);
+        String sql = "UPDATE message SET message_text = ? WHERE message_id = ?;" ;
+
+        try(Connection connection = database.getWriteConnection();
+            PreparedStatement ps = connection.prepareStatement(sql)) {
             ps.setString(1, message.getMessage_text());
             ps.setInt(2, message.getMessage_id());
 
             int result = ps.executeUpdate();
             if(result > 0) {
                 id = message.getMessage_id();
+                recordChange(connection, MessageEvent.UPDATED, id);
             }
         }catch(SQLException e){
             System.out.println(e.getMessage());
@@ -141,27 +363,34 @@ public class MessageDAO {
 
     /**
      * Get a message record from the database which has the requested message_id.
-     * 
+     *
      * @param ID the requested message_id.
      * @return the Message object matching the record retrieved from the database.
      */
     public Message getMessage(int ID) {
-        Connection connection = ConnectionUtil.getConnection();
+        return getMessage(ID, MessageFields.ALL);
+    }
+
+    /**
+     * Get a message record from the database which has the requested message_id, selecting only the requested
+     * columns.
+     *
+     * @param ID the requested message_id.
+     * @param fields the columns to read.
+     * @return the Message object matching the record, with only the requested fields set.
+     */
+    public Message getMessage(int ID, MessageFields fields) {
         Message message = null;
-        
-        try {
-            //Write SQL logic here.
-            String sql = "SELECT message_id, posted_by, message_text, time_posted_epoch FROM message WHERE message_id = ?;";
-            
-            PreparedStatement ps = connection.prepareStatement(sql);
+        String sql = "SELECT " + fields.getColumns() + " FROM message WHERE message_id = ?;";
+
+        try(Connection connection = database.getReadConnection();
+            PreparedStatement ps = connection.prepareStatement(sql)) {
             ps.setInt(1, ID);
 
-            ResultSet rs = ps.executeQuery();
-            if(rs.next()){
-                 message = new Message(rs.getInt("message_id"), 
-                                rs.getInt("posted_by"),
-                                rs.getString("message_text"), 
-                                rs.getLong("time_posted_epoch"));
+            try(ResultSet rs = ps.executeQuery()) {
+                if(rs.next()){
+                    message = readMessage(rs, fields);
+                }
             }
         }catch(SQLException e){
             System.out.println(e.getMessage());
@@ -170,26 +399,447 @@ public class MessageDAO {
     }
 
     /**
-     * Deleted a message record from the the database which has the requsted message_id.  
-     * 
+     * Get the message records from the database which have any of the requested message_ids, in one query.  The ids
+     * are passed as a single array parameter, so the statement text is the same whatever their number.
+     *
+     * @param IDs the requested message_ids.
+     * @return the Message objects found, keyed by message_id.  Ids with no record are left out.
+     */
+    public Map<Integer, Message> getMessages(List<Integer> IDs) {
+        Map<Integer, Message> messages = new HashMap<>();
+        String sql = "SELECT message_id, posted_by, message_text, time_posted_epoch FROM message WHERE message_id = ANY(?);";
+
+        try(Connection connection = database.getReadConnection();
+            PreparedStatement ps = connection.prepareStatement(sql)) {
+            ps.setObject(1, IDs.toArray(new Integer[0]));
+
+            try(ResultSet rs = ps.executeQuery()) {
+                while(rs.next()){
+                    Message message = readMessage(rs);
+                    messages.put(message.getMessage_id(), message);
+                }
+            }
+        }catch(SQLException e){
+            System.out.println(e.getMessage());
+        }
+        return messages;
+    }
+
+    /**
+     * Deleted a message record from the the database which has the requsted message_id.
+     *
      * @param ID the requested message_id.
      * @return true if the matching record was deleted or false if no matching record existed.
      */
     public boolean deleteMessage(int ID) {
-        Connection connection = ConnectionUtil.getConnection();
         int result = 0;
-        try {
-            //Write SQL logic here.
-            String sql = "DELETE FROM message WHERE message_id = ?;" ;
-            PreparedStatement preparedStatement = connection.prepareStatement(sql);
+        String sql = "DELETE FROM message WHERE message_id = ?;" ;
+
+        try(Connection connection = database.getWriteConnection();
+            PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
+            // the change log keeps the deleted message, so it is copied before the row is gone.
+            recordChange(connection, MessageEvent.DELETED, ID);
 
-            //write preparedStatement's setString and setInt methods here.
             preparedStatement.setInt(1, ID);
             result = preparedStatement.executeUpdate();
-
         }catch(SQLException e){
             System.out.println(e.getMessage());
         }
         return result > 0 ? true : false;
     }
+
+    /**
+     * Retrieve the changes made to messages after the requested change_seq, oldest first.  Changes are only returned
+     * up to the first one whose transaction has not ended, so none is skipped by a poller that carries on from the
+     * last change_seq it was given.
+     *
+     * @param since only changes with a change_seq larger than this are returned.
+     * @param limit the maximum number of changes to return.
+     * @return List of MessageChange objects. List will be empty if there have been no changes since then.
+     */
+    public List<MessageChange> getChangesSince(long since, int limit) {
+        List<MessageChange> changes = new ArrayList<>();
+        String sql = "SELECT change_seq, change_type, message_id, posted_by, message_text, time_posted_epoch " +
+                     "FROM message_change WHERE change_seq > ? AND change_seq < ? ORDER BY change_seq LIMIT ?;";
+
+        try(Connection connection = database.getReadConnection();
+            PreparedStatement ps = connection.prepareStatement(sql)) {
+            ps.setLong(1, since);
+            ps.setLong(2, lowestChangeInFlight());
+            ps.setInt(3, limit);
+
+            try(ResultSet rs = ps.executeQuery()) {
+                while(rs.next()){
+                    changes.add(new MessageChange(rs.getLong("change_seq"), rs.getString("change_type"), readMessage(rs)));
+                }
+            }
+        }catch(SQLException e){
+            System.out.println(e.getMessage());
+        }
+        return changes;
+    }
+
+    /**
+     * Get the oldest and newest change_seq still held in the change log.
+     *
+     * @return a two element array of the oldest and newest change_seq, both 0 if nothing has changed yet.
+     */
+    public long[] getChangeSequenceRange() {
+        long[] range = new long[2];
+        String sql = "SELECT MIN(change_seq), MAX(change_seq) FROM message_change;";
+
+        try(Connection connection = database.getReadConnection();
+            PreparedStatement ps = connection.prepareStatement(sql);
+            ResultSet rs = ps.executeQuery()) {
+            if(rs.next()){
+                range[0] = rs.getLong(1);
+                range[1] = rs.getLong(2);
+            }
+        }catch(SQLException e){
+            System.out.println(e.getMessage());
+        }
+        return range;
+    }
+
+    /**
+     * Count the messages in the message table.
+     *
+     * @return the number of messages.
+     */
+    public long countMessages() {
+        String sql = "SELECT COUNT(*) FROM message;";
+
+        try(Connection connection = database.getReadConnection();
+            PreparedStatement ps = connection.prepareStatement(sql);
+            ResultSet rs = ps.executeQuery()) {
+            if(rs.next()){
+                return rs.getLong(1);
+            }
+        }catch(SQLException e){
+            System.out.println(e.getMessage());
+        }
+        return 0;
+    }
+
+    /**
+     * Count the messages in the message table posted by each account.
+     *
+     * @return a map from account_id to its number of messages, for accounts that have posted any.
+     */
+    public Map<Integer, Long> countMessagesByAccount() {
+        String sql = "SELECT posted_by, COUNT(*) FROM message GROUP BY posted_by;";
+        return readCounts(sql);
+    }
+
+    /**
+     * Count the messages in the message table posted within each time bucket.
+     *
+     * @param bucketSeconds the length of a time bucket, in seconds.
+     * @return a map from bucket number (time_posted_epoch / bucketSeconds) to its number of messages, in bucket order.
+     */
+    public TreeMap<Long, Long> countMessagesByTimeBucket(long bucketSeconds) {
+        TreeMap<Long, Long> counts = new TreeMap<>();
+        String sql = "SELECT FLOOR(time_posted_epoch / ?) AS bucket, COUNT(*) FROM message GROUP BY bucket;";
+
+        try(Connection connection = database.getReadConnection();
+            PreparedStatement ps = connection.prepareStatement(sql)) {
+            ps.setDouble(1, bucketSeconds);
+
+            try(ResultSet rs = ps.executeQuery()) {
+                while(rs.next()){
+                    counts.put(rs.getLong(1), rs.getLong(2));
+                }
+            }
+        }catch(SQLException e){
+            System.out.println(e.getMessage());
+        }
+        return counts;
+    }
+
+    /**
+     * Read the message counts last saved to the message_stats table.
+     *
+     * @return a map from account_id to its number of messages, empty if nothing has been saved.
+     */
+    public Map<Integer, Long> loadCountCheckpoint() {
+        String sql = "SELECT account_id, message_count FROM message_stats;";
+        return readCounts(sql);
+    }
+
+    /**
+     * Bring the message_stats checkpoint up to date: fold the creates and deletes made after its change_seq, up to
+     * the lowest change still in flight, into its counts and save them, in one transaction.
+     *
+     * @return a map from account_id to its number of messages, or null if there is no checkpoint or the change log
+     *         no longer holds every change made after it.
+     */
+    public Map<Integer, Long> updateCountCheckpoint() {
+        String checkpoint = "SELECT account_id, message_count, change_seq FROM message_stats WHERE change_seq IS NOT NULL;";
+        String oldest = "SELECT MIN(change_seq) FROM message_change;";
+        String changes = "SELECT change_type, posted_by FROM message_change " +
+                         "WHERE change_seq > ? AND change_seq <= ? AND change_type <> ?;";
+
+        try(Connection connection = database.getWriteConnection()) {
+            connection.setAutoCommit(false);
+            try(Statement statement = connection.createStatement();
+                PreparedStatement ps = connection.prepareStatement(changes)) {
+                Map<Integer, Long> counts = new HashMap<>();
+                long checkpointSeq = -1;
+                try(ResultSet rs = statement.executeQuery(checkpoint)) {
+                    while(rs.next()){
+                        counts.put(rs.getInt(1), rs.getLong(2));
+                        checkpointSeq = rs.getLong(3);
+                    }
+                }
+                long upTo = lastEndedChange(connection);
+                if(checkpointSeq < 0 || upTo < checkpointSeq) {
+                    return null;
+                }
+                if(upTo == checkpointSeq) {
+                    return counts;
+                }
+                try(ResultSet rs = statement.executeQuery(oldest)) {
+                    rs.next();
+                    if(rs.getLong(1) > checkpointSeq + 1) {
+                        return null;
+                    }
+                }
+
+                ps.setLong(1, checkpointSeq);
+                ps.setLong(2, upTo);
+                ps.setString(3, MessageEvent.UPDATED);
+                try(ResultSet rs = ps.executeQuery()) {
+                    while(rs.next()){
+                        counts.merge(rs.getInt(2), MessageEvent.CREATED.equals(rs.getString(1)) ? 1L : -1L, Long::sum);
+                    }
+                }
+                counts.values().removeIf(count -> count <= 0);
+                saveCounts(connection, counts, upTo);
+                connection.commit();
+                return counts;
+            } catch(SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        }catch(SQLException e){
+            System.out.println(e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * Count the messages in the message table posted by each account and save the counts as a new message_stats
+     * checkpoint, in one transaction.  The counts are taken to include every change in the change log, so this must
+     * run while no messages are being written, as at startup.
+     *
+     * @return a map from account_id to its number of messages, for accounts that have posted any.
+     */
+    public Map<Integer, Long> resetCountCheckpoint() {
+        String count = "SELECT posted_by, COUNT(*) FROM message GROUP BY posted_by;";
+        String newest = "SELECT COALESCE(MAX(change_seq), 0) FROM message_change;";
+        Map<Integer, Long> counts = new HashMap<>();
+
+        try(Connection connection = database.getWriteConnection()) {
+            connection.setAutoCommit(false);
+            try(Statement statement = connection.createStatement()) {
+                try(ResultSet rs = statement.executeQuery(count)) {
+                    while(rs.next()){
+                        counts.put(rs.getInt(1), rs.getLong(2));
+                    }
+                }
+                long upTo;
+                try(ResultSet rs = statement.executeQuery(newest)) {
+                    rs.next();
+                    upTo = rs.getLong(1);
+                }
+                saveCounts(connection, counts, upTo);
+                connection.commit();
+            } catch(SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        }catch(SQLException e){
+            System.out.println(e.getMessage());
+        }
+        return counts;
+    }
+
+    /*
+     * Replace the contents of the message_stats table on a connection whose transaction the caller commits.
+     */
+    private void saveCounts(Connection connection, Map<Integer, Long> counts, long change_seq) throws SQLException {
+        String delete = "DELETE FROM message_stats;";
+        String insert = "INSERT INTO message_stats (account_id, message_count, change_seq) VALUES (?, ?, ?);";
+
+        try(PreparedStatement deleteAll = connection.prepareStatement(delete);
+            PreparedStatement ps = connection.prepareStatement(insert)) {
+            deleteAll.executeUpdate();
+            for(Map.Entry<Integer, Long> count : counts.entrySet()) {
+                ps.setInt(1, count.getKey());
+                ps.setLong(2, count.getValue());
+                ps.setLong(3, change_seq);
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+    }
+
+    /*
+     * Run a query returning (account_id, count) rows and collect them into a map.
+     */
+    private Map<Integer, Long> readCounts(String sql) {
+        Map<Integer, Long> counts = new HashMap<>();
+
+        try(Connection connection = database.getReadConnection();
+            PreparedStatement ps = connection.prepareStatement(sql);
+            ResultSet rs = ps.executeQuery()) {
+            while(rs.next()){
+                counts.put(rs.getInt(1), rs.getLong(2));
+            }
+        }catch(SQLException e){
+            System.out.println(e.getMessage());
+        }
+        return counts;
+    }
+
+    /*
+     * Turn H2's lazy query execution on or off for a connection.  Pooled connections must be switched back off
+     * before they are returned.
+     */
+    private void setLazyQueryExecution(Connection connection, boolean lazy) throws SQLException {
+        try(Statement statement = connection.createStatement()) {
+            statement.execute("SET LAZY_QUERY_EXECUTION " + lazy + ";");
+        }
+    }
+
+    /*
+     * Build a Message from the current row of a result set holding the four message columns.
+     */
+    private Message readMessage(ResultSet rs) throws SQLException {
+        return new Message(rs.getInt("message_id"),
+                           rs.getInt("posted_by"),
+                           rs.getString("message_text"),
+                           rs.getLong("time_posted_epoch"));
+    }
+
+    /*
+     * Build a Message from the current row of a result set holding the columns of a projection.  The fields not
+     * selected are left at their defaults.
+     */
+    private Message readMessage(ResultSet rs, MessageFields fields) throws SQLException {
+        if(fields.isAll()) {
+            return readMessage(rs);
+        }
+        Message message = new Message();
+        if(fields.contains("message_id")) {
+            message.setMessage_id(rs.getInt("message_id"));
+        }
+        if(fields.contains("posted_by")) {
+            message.setPosted_by(rs.getInt("posted_by"));
+        }
+        if(fields.contains("message_text")) {
+            message.setMessage_text(rs.getString("message_text"));
+        }
+        if(fields.contains("time_posted_epoch")) {
+            message.setTime_posted_epoch(rs.getLong("time_posted_epoch"));
+        }
+        return message;
+    }
+
+    /*
+     * Hand out the next change_seq and mark it in flight until its transaction ends (see endChange).  The first
+     * change_seq after the DAO is created carries on from the newest one in the change log.
+     */
+    private long beginChange(Connection connection) throws SQLException {
+        synchronized(changeSequence) {
+            if(changeSequence.next == 0) {
+                try(Statement statement = connection.createStatement();
+                    ResultSet rs = statement.executeQuery("SELECT COALESCE(MAX(change_seq), 0) FROM message_change;")) {
+                    rs.next();
+                    changeSequence.next = rs.getLong(1) + 1;
+                }
+            }
+            long change_seq = changeSequence.next++;
+            changeSequence.inFlight.add(change_seq);
+            return change_seq;
+        }
+    }
+
+    /*
+     * @return the newest change_seq below which every change's transaction has ended.  While none is in flight no
+     *         new one can begin, so the newest in the change log is the answer.
+     */
+    private long lastEndedChange(Connection connection) throws SQLException {
+        synchronized(changeSequence) {
+            if(!changeSequence.inFlight.isEmpty()) {
+                return changeSequence.inFlight.first() - 1;
+            }
+            try(Statement statement = connection.createStatement();
+                ResultSet rs = statement.executeQuery("SELECT COALESCE(MAX(change_seq), 0) FROM message_change;")) {
+                rs.next();
+                return rs.getLong(1);
+            }
+        }
+    }
+
+    /*
+     * Mark a change_seq's transaction as committed or rolled back, so changes after it may be returned.
+     */
+    private void endChange(long change_seq) {
+        synchronized(changeSequence) {
+            changeSequence.inFlight.remove(change_seq);
+        }
+    }
+
+    /*
+     * @return the lowest change_seq whose transaction has not ended, or Long.MAX_VALUE if there is none.
+     */
+    private long lowestChangeInFlight() {
+        synchronized(changeSequence) {
+            return changeSequence.inFlight.isEmpty() ? Long.MAX_VALUE : changeSequence.inFlight.first();
+        }
+    }
+
+    /*
+     * Copy the current state of a message into the change log, and every so often trim the log back to
+     * CHANGE_LOG_RETENTION entries.  Runs on the connection of the write being recorded.
+     */
+    private void recordChange(Connection connection, String change_type, int message_id) throws SQLException {
+        String sql = "INSERT INTO message_change (change_seq, change_type, message_id, posted_by, message_text, " +
+                     "time_posted_epoch) SELECT ?, ?, message_id, posted_by, message_text, time_posted_epoch " +
+                     "FROM message WHERE message_id = ?;";
+        long change_seq = beginChange(connection);
+        try(PreparedStatement ps = connection.prepareStatement(sql)) {
+            ps.setLong(1, change_seq);
+            ps.setString(2, change_type);
+            ps.setInt(3, message_id);
+            ps.executeUpdate();
+        } finally {
+            if(!UnitOfWork.afterCompletion(() -> endChange(change_seq))) {
+                endChange(change_seq);
+            }
+        }
+
+        if(writesSinceTrim.incrementAndGet() >= CHANGE_LOG_TRIM_INTERVAL) {
+            writesSinceTrim.set(0);
+            String trim = "DELETE FROM message_change WHERE change_seq <= (SELECT MAX(change_seq) FROM message_change) - ?;";
+            try(PreparedStatement ps = connection.prepareStatement(trim)) {
+                ps.setLong(1, CHANGE_LOG_RETENTION);
+                ps.executeUpdate();
+            }
+        }
+    }
+
+    /*
+     * The next change_seq to hand out, or 0 if it must first be read from the change log, and those handed out whose
+     * transactions have not yet ended.
+     */
+    private static class ChangeSequence {
+        long next;
+        final TreeSet<Long> inFlight = new TreeSet<>();
+    }
 }
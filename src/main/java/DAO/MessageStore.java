@@ -0,0 +1,244 @@
+package DAO;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+import Model.Message;
+import Model.MessageChange;
+import Model.MessageFields;
+
+/*
+ * The storage operations SocialMediaService needs for messages.  MessageDAO implements them on the H2 message
+ * table; other implementations keep messages elsewhere but follow the same rules:
+ *   - message_id values are generated by the store, are positive, and are never reused.
+ *   - every insert, update and delete is recorded in the store's change log.
+ */
+public interface MessageStore {
+
+    /**
+     * @return all messages, in message_id order.
+     */
+    List<Message> getAllMessages();
+
+    /**
+     * @param ID the account_id for the requested posted_by.
+     * @return all messages posted by the account, in message_id order.
+     */
+    List<Message> getAllMessages(int ID);
+
+    /**
+     * @param ID the requested message_id.
+     * @return the message, or null if it does not exist.
+     */
+    Message getMessage(int ID);
+
+    /**
+     * Retrieve all messages, reading only some of their properties. Stores that read properties separately override
+     * this to skip the others; the rest return whole messages, and the caller ignores what it did not ask for.
+     *
+     * @param fields the properties wanted.
+     * @return all messages, in message_id order, with at least the wanted properties set.
+     */
+    default List<Message> getAllMessages(MessageFields fields) {
+        return getAllMessages();
+    }
+
+    /**
+     * @param ID the account_id for the requested posted_by.
+     * @param fields the properties wanted.
+     * @return all messages posted by the account, in message_id order, with at least the wanted properties set.
+     */
+    default List<Message> getAllMessages(int ID, MessageFields fields) {
+        return getAllMessages(ID);
+    }
+
+    /**
+     * @param ID the requested message_id.
+     * @param fields the properties wanted.
+     * @return the message with at least the wanted properties set, or null if it does not exist.
+     */
+    default Message getMessage(int ID, MessageFields fields) {
+        return getMessage(ID);
+    }
+
+    /**
+     * Retrieve several messages by message_id. Stores that can look them all up at once override this.
+     *
+     * @param IDs the requested message_ids, without repeats.
+     * @return the messages found, keyed by message_id. Ids that match no message are left out.
+     */
+    default Map<Integer, Message> getMessages(List<Integer> IDs) {
+        Map<Integer, Message> messages = new HashMap<>();
+        for(int ID : IDs) {
+            Message message = getMessage(ID);
+            if(message != null) {
+                messages.put(ID, message);
+            }
+        }
+        return messages;
+    }
+
+    /**
+     * @param message the message to add. Its message_id is ignored.
+     * @return the generated message_id, or 0 if the message was not added.
+     */
+    int insertMessage(Message message);
+
+    /**
+     * @param message holds the message_id of the message to update and its new message_text.
+     * @return the message_id of the updated message, or 0 if it does not exist.
+     */
+    int updateMessageText(Message message);
+
+    /**
+     * @param ID the message_id of the message to remove.
+     * @return true if the message existed and was removed.
+     */
+    boolean deleteMessage(int ID);
+
+    /**
+     * @param since only changes with a change_seq larger than this are returned.
+     * @param limit the maximum number of changes to return.
+     * @return the changes made after since, oldest first.
+     */
+    List<MessageChange> getChangesSince(long since, int limit);
+
+    /**
+     * @return a two element array of the oldest and newest change_seq still held, both 0 if nothing has changed yet.
+     */
+    long[] getChangeSequenceRange();
+
+    /**
+     * Retrieve the messages posted within a time range. Stores that can scan by time more cheaply override this.
+     *
+     * @param from the earliest time_posted_epoch to include.
+     * @param to the latest time_posted_epoch to include.
+     * @return the matching messages, in message_id order.
+     */
+    default List<Message> getMessagesPostedBetween(long from, long to) {
+        List<Message> messages = new ArrayList<>();
+        for(Message message : getAllMessages()) {
+            if(message.getTime_posted_epoch() >= from && message.getTime_posted_epoch() <= to) {
+                messages.add(message);
+            }
+        }
+        return messages;
+    }
+
+    /**
+     * Retrieve one page of the messages posted by a set of accounts, newest first, as a feed shows them. Pages are
+     * found by keyset: the next page starts after the last message of the one before, so later posts do not shift
+     * it. Stores that can answer this in one query override it.
+     *
+     * @param posted_by the account_ids whose messages are wanted.
+     * @param perAccount the most messages of any one account on the page, so that one busy account cannot fill it.
+     * @param limit the most messages on the page.
+     * @param beforeTime only messages posted before this time_posted_epoch, or at it with a message_id below
+     *        beforeId, are included.
+     * @param beforeId see beforeTime.
+     * @return the matching messages, ordered by time_posted_epoch and then message_id, newest first.
+     */
+    default List<Message> getRecentMessages(List<Integer> posted_by, int perAccount, int limit, long beforeTime,
+            int beforeId) {
+        List<Message> messages = new ArrayList<>();
+        for(int account_id : posted_by) {
+            List<Message> accountMessages = new ArrayList<>();
+            for(Message message : getAllMessages(account_id)) {
+                if(isBefore(message, beforeTime, beforeId)) {
+                    accountMessages.add(message);
+                }
+            }
+            accountMessages.sort(NEWEST_FIRST);
+            messages.addAll(accountMessages.subList(0, Math.min(perAccount, accountMessages.size())));
+        }
+        messages.sort(NEWEST_FIRST);
+        return new ArrayList<>(messages.subList(0, Math.min(limit, messages.size())));
+    }
+
+    /**
+     * Orders messages by time_posted_epoch and then message_id, newest first.
+     */
+    Comparator<Message> NEWEST_FIRST = Comparator.comparingLong(Message::getTime_posted_epoch)
+            .thenComparingInt(Message::getMessage_id).reversed();
+
+    /**
+     * @return whether a message comes after the keyset position (beforeTime, beforeId) in NEWEST_FIRST order.
+     */
+    static boolean isBefore(Message message, long beforeTime, int beforeId) {
+        return message.getTime_posted_epoch() < beforeTime
+                || (message.getTime_posted_epoch() == beforeTime && message.getMessage_id() < beforeId);
+    }
+
+    /**
+     * Hand the matching messages to a sink one at a time, in message_id order, without collecting them into a list
+     * first. Stores that can stream from their storage override this.
+     *
+     * @param posted_by only messages posted by this account, or null for every account.
+     * @param from the earliest time_posted_epoch to include.
+     * @param to the latest time_posted_epoch to include.
+     * @param sink receives each message. Anything it throws stops the scan and is passed on to the caller.
+     */
+    default void forEachMessage(Integer posted_by, long from, long to, Consumer<Message> sink) {
+        for(Message message : posted_by == null ? getAllMessages() : getAllMessages(posted_by)) {
+            if(message.getTime_posted_epoch() >= from && message.getTime_posted_epoch() <= to) {
+                sink.accept(message);
+            }
+        }
+    }
+
+    /**
+     * @return the number of messages held. Stores that can count without reading every message override this.
+     */
+    default long countMessages() {
+        return getAllMessages().size();
+    }
+
+    /**
+     * @return the number of messages posted by each account that has posted any.
+     */
+    default Map<Integer, Long> countMessagesByAccount() {
+        Map<Integer, Long> counts = new HashMap<>();
+        for(Message message : getAllMessages()) {
+            counts.merge(message.getPosted_by(), 1L, Long::sum);
+        }
+        return counts;
+    }
+
+    /**
+     * @param bucketSeconds the length of a time bucket, in seconds.
+     * @return the number of messages whose time_posted_epoch falls in each bucket that has any, keyed and ordered
+     *         by bucket number (time_posted_epoch / bucketSeconds).
+     */
+    default TreeMap<Long, Long> countMessagesByTimeBucket(long bucketSeconds) {
+        TreeMap<Long, Long> counts = new TreeMap<>();
+        for(Message message : getAllMessages()) {
+            counts.merge(Math.floorDiv(message.getTime_posted_epoch(), bucketSeconds), 1L, Long::sum);
+        }
+        return counts;
+    }
+
+    /**
+     * Bring the saved per-account message counts up to date with the messages created and deleted since they were
+     * saved, and save them again, so that they need not be recounted at the next startup.
+     *
+     * @return the number of messages posted by each account that has posted any, or null if the store does not keep
+     *         counts or cannot bring them up to date. Stores that are rebuilt in memory at startup can simply recount.
+     */
+    default Map<Integer, Long> updateCountCheckpoint() {
+        return null;
+    }
+
+    /**
+     * Count the messages posted by each account and save the counts, for when updateCountCheckpoint cannot be used.
+     * Must run while no messages are being written, as at startup.
+     *
+     * @return the number of messages posted by each account that has posted any.
+     */
+    default Map<Integer, Long> resetCountCheckpoint() {
+        return countMessagesByAccount();
+    }
+}
@@ -0,0 +1,487 @@
+package DAO;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import org.h2.jdbcx.JdbcConnectionPool;
+
+import Model.Message;
+import Model.MessageChange;
+import Model.MessageEvent;
+import Util.ConnectionUtil;
+
+/*
+ * Spreads the message table across several H2 databases (shards), so that writes are not limited by one database
+ * file.  Each shard holds a table named 'message' with the same columns as the main one, minus the foreign key.
+ *
+ * Messages are placed by posted_by: each account hashes to one of BUCKETS virtual buckets, and bucket b lives on
+ * shard b % shardCount.  The message_id is generated so that message_id % BUCKETS is the bucket, which means:
+ *   - the messages of one account, and any single message_id, are found on exactly one shard.
+ *   - changing the shard count only moves whole buckets between shards; message_ids never change (see
+ *     Util.ShardRebalancer, which does this offline).
+ *   - at most 2^31 / BUCKETS messages can be created.
+ *
+ * The sequence message_ids are made from is never reused, even when the newest messages are deleted: shard 0 keeps a
+ * high-water mark in its message_sequence table, reserved ID_BLOCK sequence numbers at a time so that inserts do not
+ * all write to one shard. Reopening starts past the mark, so up to ID_BLOCK sequence numbers are skipped per restart.
+ *
+ * GET /messages is answered by querying every shard in parallel and merging their results in message_id order; if
+ * any shard fails the whole query fails, rather than answering without that shard's messages.
+ * forEachMessage merges the same way, but reads every shard's result set a row at a time instead of collecting it.
+ *
+ * The change log is kept in memory (MessageChangeLog), because no single shard sees every change, so its changes are
+ * lost when the store is reopened. Its change_seq is never reused though: it is reserved in message_sequence the same
+ * way, so a poller holding a change_seq from before the restart finds it is behind the log and reloads, rather than
+ * being handed new changes that reuse old numbers.
+ */
+public class ShardedMessageDAO implements MessageStore, AutoCloseable {
+
+    public static final int BUCKETS = 32;
+    public static final int POOL_SIZE = 4;
+    public static final int ID_BLOCK = 1000;
+
+    private static final int MESSAGE_ID_SEQUENCE = 1;
+    private static final int CHANGE_SEQUENCE = 2;
+
+    private final int shardCount;
+    private final JdbcConnectionPool[] shards;
+    private final ExecutorService scatter;
+    private final AtomicInteger idSequence;
+    private final Object reserveLock = new Object();
+    private volatile int reservedSequence;
+    private final MessageChangeLog changeLog;
+    private long reservedChangeSeq;
+
+    /*
+     * Open the shards in a directory, creating any that do not exist yet.
+     *
+     * @param directory the directory holding the shard databases.
+     * @param shardCount the number of shards, at most BUCKETS.
+     */
+    public ShardedMessageDAO(String directory, int shardCount) {
+        if(shardCount < 1 || shardCount > BUCKETS) {
+            throw new IllegalArgumentException("shard count must be between 1 and " + BUCKETS);
+        }
+        this.shardCount = shardCount;
+        this.shards = new JdbcConnectionPool[shardCount];
+        int highestSequence = 0;
+        for(int shard = 0; shard < shardCount; shard++) {
+            shards[shard] = ConnectionUtil.createPool(shardUrl(directory, shard), POOL_SIZE);
+            try(Connection connection = shards[shard].getConnection()) {
+                createSchema(connection);
+                highestSequence = Math.max(highestSequence, getMaxMessageId(connection) / BUCKETS);
+            } catch(SQLException e) {
+                throw new IllegalStateException("cannot open message shard " + shard, e);
+            }
+        }
+        try(Connection connection = shards[0].getConnection()) {
+            createSequence(connection);
+            highestSequence = Math.max(highestSequence, (int) getReserved(connection, MESSAGE_ID_SEQUENCE));
+            reservedChangeSeq = getReserved(connection, CHANGE_SEQUENCE);
+        } catch(SQLException e) {
+            throw new IllegalStateException("cannot read the message_id high-water mark", e);
+        }
+        this.changeLog = new MessageChangeLog((int) MessageDAO.CHANGE_LOG_RETENTION, reservedChangeSeq + 1);
+        this.idSequence = new AtomicInteger(highestSequence);
+        this.reservedSequence = highestSequence;
+        this.scatter = Executors.newFixedThreadPool(shardCount, runnable -> {
+            Thread thread = new Thread(runnable, "message-shard-scatter");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public List<Message> getAllMessages() {
+        return scatterGather("SELECT message_id, posted_by, message_text, time_posted_epoch FROM message " +
+                             "ORDER BY message_id;");
+    }
+
+    public List<Message> getAllMessages(int ID) {
+        List<Message> messages = new ArrayList<>();
+        String sql = "SELECT message_id, posted_by, message_text, time_posted_epoch FROM message " +
+                     "WHERE posted_by = ? ORDER BY message_id;";
+
+        try(Connection connection = shards[shardOfBucket(bucketOf(ID), shardCount)].getConnection();
+            PreparedStatement ps = connection.prepareStatement(sql)) {
+            ps.setInt(1, ID);
+            try(ResultSet rs = ps.executeQuery()) {
+                while(rs.next()){
+                    messages.add(readMessage(rs));
+                }
+            }
+        }catch(SQLException e){
+            System.out.println(e.getMessage());
+        }
+        return messages;
+    }
+
+    public List<Message> getMessagesPostedBetween(long from, long to) {
+        return scatterGather("SELECT message_id, posted_by, message_text, time_posted_epoch FROM message " +
+                             "WHERE time_posted_epoch BETWEEN ? AND ? ORDER BY message_id;", from, to);
+    }
+
+    public void forEachMessage(Integer posted_by, long from, long to, Consumer<Message> sink) {
+        String sql = "SELECT message_id, posted_by, message_text, time_posted_epoch FROM message " +
+                     "WHERE time_posted_epoch BETWEEN ? AND ?" + (posted_by == null ? "" : " AND posted_by = ?") +
+                     " ORDER BY message_id;";
+        List<JdbcConnectionPool> targets = posted_by == null ? List.of(shards)
+                : List.of(shards[shardOfBucket(bucketOf(posted_by), shardCount)]);
+        List<Connection> connections = new ArrayList<>();
+        List<PreparedStatement> statements = new ArrayList<>();
+        try {
+            // each queue entry is a result set positioned on its shard's next message
+            PriorityQueue<ResultSet> heads = new PriorityQueue<>(Comparator.comparingInt(rs -> {
+                try {
+                    return rs.getInt("message_id");
+                } catch(SQLException e) {
+                    throw new IllegalStateException(e);
+                }
+            }));
+            for(JdbcConnectionPool shard : targets) {
+                Connection connection = shard.getConnection();
+                connections.add(connection);
+                try(Statement statement = connection.createStatement()) {
+                    statement.execute("SET LAZY_QUERY_EXECUTION TRUE;");
+                }
+                PreparedStatement ps = connection.prepareStatement(sql);
+                statements.add(ps);
+                ps.setFetchSize(MessageDAO.STREAM_FETCH_SIZE);
+                ps.setLong(1, from);
+                ps.setLong(2, to);
+                if(posted_by != null) {
+                    ps.setInt(3, posted_by);
+                }
+                ResultSet rs = ps.executeQuery();
+                if(rs.next()) {
+                    heads.add(rs);
+                }
+            }
+            while(!heads.isEmpty()) {
+                ResultSet rs = heads.poll();
+                sink.accept(readMessage(rs));
+                if(rs.next()) {
+                    heads.add(rs);
+                }
+            }
+        }catch(SQLException e){
+            System.out.println(e.getMessage());
+        } finally {
+            // closing a statement closes its result set
+            for(PreparedStatement ps : statements) {
+                try {
+                    ps.close();
+                } catch(SQLException e) {
+                    System.out.println(e.getMessage());
+                }
+            }
+            for(Connection connection : connections) {
+                try(Statement statement = connection.createStatement()) {
+                    statement.execute("SET LAZY_QUERY_EXECUTION FALSE;");
+                } catch(SQLException e) {
+                    System.out.println(e.getMessage());
+                }
+                try {
+                    connection.close();
+                } catch(SQLException e) {
+                    System.out.println(e.getMessage());
+                }
+            }
+        }
+    }
+
+    public Message getMessage(int ID) {
+        if(ID <= 0) {
+            return null;
+        }
+        try(Connection connection = shards[shardOfMessage(ID, shardCount)].getConnection()) {
+            return getMessage(connection, ID);
+        }catch(SQLException e){
+            System.out.println(e.getMessage());
+        }
+        return null;
+    }
+
+    public int insertMessage(Message message) {
+        int bucket = bucketOf(message.getPosted_by());
+        String sql = "INSERT INTO message (message_id, posted_by, message_text, time_posted_epoch) VALUES (?, ?, ?, ?);";
+
+        try(Connection connection = shards[shardOfBucket(bucket, shardCount)].getConnection();
+            PreparedStatement ps = connection.prepareStatement(sql)) {
+            int message_id = nextSequence() * BUCKETS + bucket;
+            ps.setInt(1, message_id);
+            ps.setInt(2, message.getPosted_by());
+            ps.setString(3, message.getMessage_text());
+            ps.setLong(4, message.getTime_posted_epoch());
+            ps.executeUpdate();
+            recordChange(MessageEvent.CREATED, new Message(message_id, message.getPosted_by(),
+                    message.getMessage_text(), message.getTime_posted_epoch()));
+            return message_id;
+        }catch(SQLException e){
+            System.out.println(e.getMessage());
+        }
+        return 0;
+    }
+
+    public int updateMessageText(Message message) {
+        String sql = "UPDATE message SET message_text = ? WHERE message_id = ?;";
+
+        try(Connection connection = shards[shardOfMessage(message.getMessage_id(), shardCount)].getConnection();
+            PreparedStatement ps = connection.prepareStatement(sql)) {
+            ps.setString(1, message.getMessage_text());
+            ps.setInt(2, message.getMessage_id());
+            if(ps.executeUpdate() > 0) {
+                recordChange(MessageEvent.UPDATED, getMessage(connection, message.getMessage_id()));
+                return message.getMessage_id();
+            }
+        }catch(SQLException e){
+            System.out.println(e.getMessage());
+        }
+        return 0;
+    }
+
+    public boolean deleteMessage(int ID) {
+        String sql = "DELETE FROM message WHERE message_id = ?;";
+
+        try(Connection connection = shards[shardOfMessage(ID, shardCount)].getConnection();
+            PreparedStatement ps = connection.prepareStatement(sql)) {
+            Message deleted = getMessage(connection, ID);
+            ps.setInt(1, ID);
+            if(deleted != null && ps.executeUpdate() > 0) {
+                recordChange(MessageEvent.DELETED, deleted);
+                return true;
+            }
+        }catch(SQLException e){
+            System.out.println(e.getMessage());
+        }
+        return false;
+    }
+
+    public List<MessageChange> getChangesSince(long since, int limit) {
+        return changeLog.getChangesSince(since, limit);
+    }
+
+    public long[] getChangeSequenceRange() {
+        return changeLog.getChangeSequenceRange();
+    }
+
+    /*
+     * Release the shard connections and the scatter threads.
+     */
+    public void close() {
+        scatter.shutdownNow();
+        for(JdbcConnectionPool shard : shards) {
+            shard.dispose();
+        }
+    }
+
+    /*
+     * @return the virtual bucket the messages of an account are placed in.
+     */
+    public static int bucketOf(int posted_by) {
+        // spread consecutive account ids across the buckets
+        int hash = posted_by * 0x9E3779B9;
+        return Math.floorMod(hash ^ (hash >>> 16), BUCKETS);
+    }
+
+    /*
+     * @return the shard a bucket lives on when there are shardCount shards.
+     */
+    public static int shardOfBucket(int bucket, int shardCount) {
+        return bucket % shardCount;
+    }
+
+    /*
+     * @return the shard a message lives on when there are shardCount shards.
+     */
+    public static int shardOfMessage(int message_id, int shardCount) {
+        return shardOfBucket(Math.floorMod(message_id, BUCKETS), shardCount);
+    }
+
+    /*
+     * @return the JDBC url of a shard database.
+     */
+    public static String shardUrl(String directory, int shard) {
+        return "jdbc:h2:" + directory + "/shard-" + shard + ";";
+    }
+
+    /*
+     * Create the message table and its posted_by index in a shard, if they do not exist yet.
+     */
+    public static void createSchema(Connection connection) throws SQLException {
+        try(Statement statement = connection.createStatement()) {
+            statement.executeUpdate("CREATE TABLE IF NOT EXISTS message (" +
+                    "message_id int primary key, " +
+                    "posted_by int, " +
+                    "message_text varchar(255), " +
+                    "time_posted_epoch bigint);");
+            statement.executeUpdate("CREATE INDEX IF NOT EXISTS message_posted_by ON message (posted_by);");
+        }
+    }
+
+    /*
+     * Create the table holding the message_id and change_seq high-water marks, if it does not exist yet. Only shard 0
+     * has one.
+     */
+    private static void createSequence(Connection connection) throws SQLException {
+        try(Statement statement = connection.createStatement()) {
+            statement.executeUpdate("CREATE TABLE IF NOT EXISTS message_sequence (" +
+                    "sequence_id int primary key, " +
+                    "reserved bigint);");
+        }
+    }
+
+    /*
+     * Record a change in the change log, after reserving a new block of change_seq values in shard 0 if the current
+     * block is used up. If the block cannot be saved the change is still recorded.
+     */
+    private void recordChange(String change_type, Message message) {
+        synchronized(changeLog) {
+            long seq = changeLog.getNextSeq();
+            if(seq > reservedChangeSeq) {
+                try {
+                    saveReserved(CHANGE_SEQUENCE, seq + ID_BLOCK - 1);
+                    reservedChangeSeq = seq + ID_BLOCK - 1;
+                } catch(SQLException e) {
+                    System.out.println(e.getMessage());
+                }
+            }
+            changeLog.record(change_type, message);
+        }
+    }
+
+    private void saveReserved(int sequence_id, long reserved) throws SQLException {
+        String sql = "MERGE INTO message_sequence (sequence_id, reserved) KEY (sequence_id) VALUES (?, ?);";
+        try(Connection connection = shards[0].getConnection();
+            PreparedStatement ps = connection.prepareStatement(sql)) {
+            ps.setInt(1, sequence_id);
+            ps.setLong(2, reserved);
+            ps.executeUpdate();
+        }
+    }
+
+    /*
+     * @return the next sequence number a message_id is made from, after reserving a new block of them in shard 0 if
+     * the current block is used up.
+     */
+    private int nextSequence() throws SQLException {
+        int sequence = idSequence.incrementAndGet();
+        if(sequence > reservedSequence) {
+            synchronized(reserveLock) {
+                if(sequence > reservedSequence) {
+                    int reserved = sequence + ID_BLOCK - 1;
+                    saveReserved(MESSAGE_ID_SEQUENCE, reserved);
+                    reservedSequence = reserved;
+                }
+            }
+        }
+        return sequence;
+    }
+
+    /*
+     * Run the same query on every shard in parallel and merge the results, which each shard returns in message_id
+     * order, into one list in message_id order.
+     *
+     * @throws IllegalStateException if any shard cannot be read.
+     */
+    private List<Message> scatterGather(String sql, Object... parameters) {
+        List<Future<List<Message>>> results = new ArrayList<>();
+        for(JdbcConnectionPool shard : shards) {
+            results.add(scatter.submit(() -> {
+                List<Message> messages = new ArrayList<>();
+                try(Connection connection = shard.getConnection();
+                    PreparedStatement ps = connection.prepareStatement(sql)) {
+                    for(int i = 0; i < parameters.length; i++) {
+                        ps.setObject(i + 1, parameters[i]);
+                    }
+                    try(ResultSet rs = ps.executeQuery()) {
+                        while(rs.next()){
+                            messages.add(readMessage(rs));
+                        }
+                    }
+                }
+                return messages;
+            }));
+        }
+
+        List<List<Message>> shardMessages = new ArrayList<>();
+        int total = 0;
+        try {
+            for(Future<List<Message>> result : results) {
+                shardMessages.add(result.get());
+                total += shardMessages.get(shardMessages.size() - 1).size();
+            }
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while reading the message shards", e);
+        } catch(ExecutionException e) {
+            // a missing shard would silently drop its messages from the result, so fail the whole read instead
+            throw new IllegalStateException("cannot read a message shard", e.getCause());
+        }
+
+        // each queue entry is {shard, position in that shard's list}
+        PriorityQueue<int[]> heads = new PriorityQueue<>(Comparator.comparingInt(
+                head -> shardMessages.get(head[0]).get(head[1]).getMessage_id()));
+        for(int shard = 0; shard < shardMessages.size(); shard++) {
+            if(!shardMessages.get(shard).isEmpty()) {
+                heads.add(new int[] { shard, 0 });
+            }
+        }
+        List<Message> merged = new ArrayList<>(total);
+        while(!heads.isEmpty()) {
+            int[] head = heads.poll();
+            List<Message> messages = shardMessages.get(head[0]);
+            merged.add(messages.get(head[1]));
+            if(head[1] + 1 < messages.size()) {
+                heads.add(new int[] { head[0], head[1] + 1 });
+            }
+        }
+        return merged;
+    }
+
+    private Message getMessage(Connection connection, int ID) throws SQLException {
+        String sql = "SELECT message_id, posted_by, message_text, time_posted_epoch FROM message WHERE message_id = ?;";
+        try(PreparedStatement ps = connection.prepareStatement(sql)) {
+            ps.setInt(1, ID);
+            try(ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? readMessage(rs) : null;
+            }
+        }
+    }
+
+    private static int getMaxMessageId(Connection connection) throws SQLException {
+        try(Statement statement = connection.createStatement();
+            ResultSet rs = statement.executeQuery("SELECT COALESCE(MAX(message_id), 0) FROM message;")) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    private static long getReserved(Connection connection, int sequence_id) throws SQLException {
+        String sql = "SELECT COALESCE(MAX(reserved), 0) FROM message_sequence WHERE sequence_id = ?;";
+        try(PreparedStatement ps = connection.prepareStatement(sql)) {
+            ps.setInt(1, sequence_id);
+            try(ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : 0;
+            }
+        }
+    }
+
+    private static Message readMessage(ResultSet rs) throws SQLException {
+        return new Message(rs.getInt("message_id"),
+                           rs.getInt("posted_by"),
+                           rs.getString("message_text"),
+                           rs.getLong("time_posted_epoch"));
+    }
+}
@@ -1,14 +1,45 @@
 import Controller.SocialMediaController;
+import Util.ConnectionUtil;
+import Util.Warmup;
 import io.javalin.Javalin;
 
 /**
  * This class is provided with a main method to allow you to manually run and test your application. This class will not
  * affect your program in any way and you may write whatever code you like here.
+ *
+ * The database and its connection pools are opened before the port is bound, and the application then warms up (see
+ * Util.Warmup) while GET /health/ready answers 503. Set -Dsocialmedia.warmup=false to skip the warmup. Choose how the
+ * database is stored with -Dsocialmedia.storage.profile=memory, file-sync, file-async or file-large-cache (see
+ * Util.StorageProfile).
+ *
+ * Class loading at startup can be cut further with an AppCDS archive made by a training run, which warms up and exits.
+ * CDS only archives classes from jar files, so build the jar and its classpath first:
+ *   mvn -q package -DskipTests && mvn -q dependency:build-classpath -Dmdep.outputFile=cp.txt
+ *   java -XX:ArchiveClassesAtExit=socialmedia.jsa -Dsocialmedia.trainingRun=true -cp target/Challenges-1.1.jar:$(cat cp.txt) Main
+ *   java -XX:SharedArchiveFile=socialmedia.jsa -cp target/Challenges-1.1.jar:$(cat cp.txt) Main
  */
 public class Main {
-    public static void main(String[] args) {
+    public static final String WARMUP_PROPERTY = "socialmedia.warmup";
+    public static final String TRAINING_RUN_PROPERTY = "socialmedia.trainingRun";
+
+    public static void main(String[] args) throws Exception {
+        ConnectionUtil.openPools();
         SocialMediaController controller = new SocialMediaController();
+        boolean warmup = Boolean.parseBoolean(System.getProperty(WARMUP_PROPERTY, "true"));
+        if(warmup) {
+            controller.setReady(false, null);
+        }
         Javalin app = controller.startAPI();
         app.start(8090);
+        if(warmup) {
+            Warmup.Report report = Warmup.run(app.port());
+            controller.setReady(true, report);
+            System.out.println("Warmed up in " + report.warmup_ms + " ms over " + report.rounds
+                    + " rounds; first fast request " + report.time_to_first_fast_request_ms + " ms after start");
+        }
+        if(Boolean.getBoolean(TRAINING_RUN_PROPERTY)) {
+            app.stop();
+            System.exit(0);
+        }
     }
 }
@@ -0,0 +1,55 @@
+package Model;
+
+/**
+ * This is a class that models the statistics reported for one account.
+ */
+public class AccountStats {
+    /**
+     * The id of the account the statistics are for.
+     */
+    public int account_id;
+    /**
+     * The number of messages the account has posted.
+     */
+    public long message_count;
+
+    /**
+     * A default, no-args constructor, as well as correctly formatted getters and setters, are needed for
+     * Jackson Objectmapper to work.
+     */
+    public AccountStats() {
+    }
+
+    /**
+     * @param account_id the id of the account.
+     * @param message_count the number of messages the account has posted.
+     */
+    public AccountStats(int account_id, long message_count) {
+        this.account_id = account_id;
+        this.message_count = message_count;
+    }
+
+    public int getAccount_id() {
+        return account_id;
+    }
+
+    public void setAccount_id(int account_id) {
+        this.account_id = account_id;
+    }
+
+    public long getMessage_count() {
+        return message_count;
+    }
+
+    public void setMessage_count(long message_count) {
+        this.message_count = message_count;
+    }
+
+    @Override
+    public String toString() {
+        return "AccountStats{" +
+                "account_id=" + account_id +
+                ", message_count=" + message_count +
+                '}';
+    }
+}
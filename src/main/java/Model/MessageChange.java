@@ -0,0 +1,72 @@
+package Model;
+
+/**
+ * This is a class that models one entry in the message change log: an insert, update or delete of a message,
+ * numbered by a sequence that increases with every change.
+ */
+public class MessageChange {
+    /**
+     * The position of this change in the change log. Later changes always have a larger change_seq.
+     */
+    public long change_seq;
+    /**
+     * One of MessageEvent.CREATED, MessageEvent.UPDATED or MessageEvent.DELETED.
+     */
+    public String change_type;
+    /**
+     * The message as it was after the change. For a deleted message, this is the message as it was just before
+     * it was removed.
+     */
+    public Message message;
+
+    /**
+     * A default, no-args constructor, as well as correctly formatted getters and setters, are needed for
+     * Jackson Objectmapper to work.
+     */
+    public MessageChange() {
+    }
+
+    /**
+     * @param change_seq the position of this change in the change log.
+     * @param change_type the kind of change.
+     * @param message the message the change was made to.
+     */
+    public MessageChange(long change_seq, String change_type, Message message) {
+        this.change_seq = change_seq;
+        this.change_type = change_type;
+        this.message = message;
+    }
+
+    public long getChange_seq() {
+        return change_seq;
+    }
+
+    public void setChange_seq(long change_seq) {
+        this.change_seq = change_seq;
+    }
+
+    public String getChange_type() {
+        return change_type;
+    }
+
+    public void setChange_type(String change_type) {
+        this.change_type = change_type;
+    }
+
+    public Message getMessage() {
+        return message;
+    }
+
+    public void setMessage(Message message) {
+        this.message = message;
+    }
+
+    @Override
+    public String toString() {
+        return "MessageChange{" +
+                "change_seq=" + change_seq +
+                ", change_type='" + change_type + '\'' +
+                ", message=" + message +
+                '}';
+    }
+}
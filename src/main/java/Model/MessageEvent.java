@@ -0,0 +1,63 @@
+package Model;
+
+/**
+ * This is a class that models a change made to a Message, which is pushed to subscribers of the message stream.
+ */
+public class MessageEvent {
+    /**
+     * The kind of change that was made to the message.
+     */
+    public static final String CREATED = "created";
+    public static final String UPDATED = "updated";
+    public static final String DELETED = "deleted";
+
+    /**
+     * One of CREATED, UPDATED or DELETED.
+     */
+    public String event_type;
+    /**
+     * The message as it was after the change. For a deleted message, this is the message as it was just before
+     * it was removed.
+     */
+    public Message message;
+
+    /**
+     * A default, no-args constructor, as well as correctly formatted getters and setters, are needed for
+     * Jackson Objectmapper to work.
+     */
+    public MessageEvent() {
+    }
+
+    /**
+     * @param event_type one of CREATED, UPDATED or DELETED.
+     * @param message the message the change was made to.
+     */
+    public MessageEvent(String event_type, Message message) {
+        this.event_type = event_type;
+        this.message = message;
+    }
+
+    public String getEvent_type() {
+        return event_type;
+    }
+
+    public void setEvent_type(String event_type) {
+        this.event_type = event_type;
+    }
+
+    public Message getMessage() {
+        return message;
+    }
+
+    public void setMessage(Message message) {
+        this.message = message;
+    }
+
+    @Override
+    public String toString() {
+        return "MessageEvent{" +
+                "event_type='" + event_type + '\'' +
+                ", message=" + message +
+                '}';
+    }
+}
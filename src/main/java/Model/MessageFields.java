@@ -0,0 +1,110 @@
+package Model;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * This is a class that models a projection of a Message: the properties a client asked for with the fields query
+ * parameter, such as "message_id,message_text".
+ *
+ * Only the four Message properties may be named. There are fifteen possible projections, and each is a single shared
+ * instance whose columns are always listed in the same order, so every query for a projection has the same text and
+ * its prepared statement can be reused.
+ */
+public class MessageFields {
+    /**
+     * The properties that may be named, in the order their columns are selected.
+     */
+    public static final String[] NAMES = { "message_id", "posted_by", "message_text", "time_posted_epoch" };
+
+    private static final MessageFields[] PROJECTIONS = new MessageFields[1 << NAMES.length];
+
+    static {
+        for(int mask = 1; mask < PROJECTIONS.length; mask++) {
+            PROJECTIONS[mask] = new MessageFields(mask);
+        }
+    }
+
+    /**
+     * Every property of a Message.
+     */
+    public static final MessageFields ALL = PROJECTIONS[PROJECTIONS.length - 1];
+
+    private final int mask;
+    private final Set<String> names;
+    private final String columns;
+
+    private MessageFields(int mask) {
+        this.mask = mask;
+        Set<String> names = new LinkedHashSet<>();
+        for(int i = 0; i < NAMES.length; i++) {
+            if((mask & (1 << i)) != 0) {
+                names.add(NAMES[i]);
+            }
+        }
+        this.names = Collections.unmodifiableSet(names);
+        this.columns = String.join(", ", names);
+    }
+
+    /**
+     * @param fields a comma-separated list of Message property names, in any order.
+     * @return the projection of those properties, or null if the list is empty or names anything else.
+     */
+    public static MessageFields parse(String fields) {
+        int mask = 0;
+        for(String name : fields.split(",")) {
+            int index = indexOf(name.trim());
+            if(index < 0) {
+                return null;
+            }
+            mask |= 1 << index;
+        }
+        return PROJECTIONS[mask];
+    }
+
+    private static int indexOf(String name) {
+        for(int i = 0; i < NAMES.length; i++) {
+            if(NAMES[i].equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param name a Message property name.
+     * @return whether the projection includes it.
+     */
+    public boolean contains(String name) {
+        return names.contains(name);
+    }
+
+    /**
+     * @return whether the projection includes every property.
+     */
+    public boolean isAll() {
+        return mask == ALL.mask;
+    }
+
+    /**
+     * @return the names of the properties included, in select order.
+     */
+    public Set<String> getNames() {
+        return names;
+    }
+
+    /**
+     * @return the columns to select for the projection, such as "message_id, message_text".
+     */
+    public String getColumns() {
+        return columns;
+    }
+
+    @Override
+    public String toString() {
+        return "MessageFields{" +
+                "names=" + names +
+                '}';
+    }
+}
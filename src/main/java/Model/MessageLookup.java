@@ -0,0 +1,58 @@
+package Model;
+
+import java.util.List;
+
+/**
+ * This is a class that models the answer to a batch lookup of messages by message_id: the messages found, in the
+ * order their ids were asked for, and the ids that matched no message.
+ */
+public class MessageLookup {
+    /**
+     * The messages found, in the order their message_ids were asked for. Each message appears once.
+     */
+    public List<Message> messages;
+    /**
+     * The message_ids asked for that matched no message, in the order they were asked for.
+     */
+    public List<Integer> missing_ids;
+
+    /**
+     * A default, no-args constructor, as well as correctly formatted getters and setters, are needed for
+     * Jackson Objectmapper to work.
+     */
+    public MessageLookup() {
+    }
+
+    /**
+     * @param messages the messages found, in request order.
+     * @param missing_ids the message_ids that matched no message.
+     */
+    public MessageLookup(List<Message> messages, List<Integer> missing_ids) {
+        this.messages = messages;
+        this.missing_ids = missing_ids;
+    }
+
+    public List<Message> getMessages() {
+        return messages;
+    }
+
+    public void setMessages(List<Message> messages) {
+        this.messages = messages;
+    }
+
+    public List<Integer> getMissing_ids() {
+        return missing_ids;
+    }
+
+    public void setMissing_ids(List<Integer> missing_ids) {
+        this.missing_ids = missing_ids;
+    }
+
+    @Override
+    public String toString() {
+        return "MessageLookup{" +
+                "messages=" + messages +
+                ", missing_ids=" + missing_ids +
+                '}';
+    }
+}
@@ -0,0 +1,71 @@
+package Model;
+
+/**
+ * This is a class that models one entry of the top posters report: an account and about how many messages it has
+ * posted.
+ */
+public class PosterCount {
+    /**
+     * The id of the account.
+     */
+    public int posted_by;
+    /**
+     * The number of messages counted for the account. It may be over-counted by at most max_error.
+     */
+    public long message_count;
+    /**
+     * The most message_count may exceed the true number of messages by.
+     */
+    public long max_error;
+
+    /**
+     * A default, no-args constructor, as well as correctly formatted getters and setters, are needed for
+     * Jackson Objectmapper to work.
+     */
+    public PosterCount() {
+    }
+
+    /**
+     * @param posted_by the id of the account.
+     * @param message_count the number of messages counted for the account.
+     * @param max_error the most the count may be too high by.
+     */
+    public PosterCount(int posted_by, long message_count, long max_error) {
+        this.posted_by = posted_by;
+        this.message_count = message_count;
+        this.max_error = max_error;
+    }
+
+    public int getPosted_by() {
+        return posted_by;
+    }
+
+    public void setPosted_by(int posted_by) {
+        this.posted_by = posted_by;
+    }
+
+    public long getMessage_count() {
+        return message_count;
+    }
+
+    public void setMessage_count(long message_count) {
+        this.message_count = message_count;
+    }
+
+    public long getMax_error() {
+        return max_error;
+    }
+
+    public void setMax_error(long max_error) {
+        this.max_error = max_error;
+    }
+
+    @Override
+    public String toString() {
+        return "PosterCount{" +
+                "posted_by=" + posted_by +
+                ", message_count=" + message_count +
+                ", max_error=" + max_error +
+                '}';
+    }
+}
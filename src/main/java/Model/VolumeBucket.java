@@ -0,0 +1,55 @@
+package Model;
+
+/**
+ * This is a class that models the number of messages posted within one time bucket, such as one minute or one hour.
+ */
+public class VolumeBucket {
+    /**
+     * The start of the bucket, in seconds since the epoch.
+     */
+    public long bucket_start_epoch;
+    /**
+     * The number of messages whose time_posted_epoch falls within the bucket.
+     */
+    public long message_count;
+
+    /**
+     * A default, no-args constructor, as well as correctly formatted getters and setters, are needed for
+     * Jackson Objectmapper to work.
+     */
+    public VolumeBucket() {
+    }
+
+    /**
+     * @param bucket_start_epoch the start of the bucket, in seconds since the epoch.
+     * @param message_count the number of messages posted within the bucket.
+     */
+    public VolumeBucket(long bucket_start_epoch, long message_count) {
+        this.bucket_start_epoch = bucket_start_epoch;
+        this.message_count = message_count;
+    }
+
+    public long getBucket_start_epoch() {
+        return bucket_start_epoch;
+    }
+
+    public void setBucket_start_epoch(long bucket_start_epoch) {
+        this.bucket_start_epoch = bucket_start_epoch;
+    }
+
+    public long getMessage_count() {
+        return message_count;
+    }
+
+    public void setMessage_count(long message_count) {
+        this.message_count = message_count;
+    }
+
+    @Override
+    public String toString() {
+        return "VolumeBucket{" +
+                "bucket_start_epoch=" + bucket_start_epoch +
+                ", message_count=" + message_count +
+                '}';
+    }
+}
@@ -0,0 +1,294 @@
+package Service;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import DAO.FollowStore;
+import DAO.MessageStore;
+import Model.Message;
+
+/*
+ * Builds each account's home feed: the messages of the accounts it follows, newest first.
+ *
+ * Most accounts have few followers, so their new messages are pushed when they are posted into an inbox kept for
+ * each follower (fan-out on write), and a feed read is one lookup of the inbox's message_ids. Pushing to every
+ * follower of an account with FANOUT_THRESHOLD_PROPERTY or more followers (default 1000) would make each of its posts
+ * cost that many inbox writes, so its messages are never pushed; they are read from the store when a follower asks
+ * for a feed and merged with the inbox (fan-out on read).
+ *
+ * An inbox holds the (time_posted_epoch, message_id) of at most INBOX_SIZE_PROPERTY messages (default 200), newest
+ * first, and is built from the store the first time its account asks for a feed. Only MAX_INBOXES_PROPERTY inboxes
+ * (default 10000) are kept; past that an arbitrary one is dropped and rebuilt when next needed. Following or
+ * unfollowing drops the follower's inbox. A page reaching past the oldest message of an inbox that has had to
+ * discard messages is read from the store instead. Messages are only read by message_id when a page is returned,
+ * so edits are always current, and deleted messages found then are removed from the inbox.
+ */
+public class HomeTimelines {
+
+    public static final String INBOX_SIZE_PROPERTY = "socialmedia.feed.inboxSize";
+    public static final String FANOUT_THRESHOLD_PROPERTY = "socialmedia.feed.fanoutThreshold";
+    public static final String MAX_INBOXES_PROPERTY = "socialmedia.feed.maxInboxes";
+
+    private final FollowStore followStore;
+    private final MessageStore messageStore;
+    private final int inboxSize = Integer.getInteger(INBOX_SIZE_PROPERTY, 200);
+    private final long fanoutThreshold = Long.getLong(FANOUT_THRESHOLD_PROPERTY, 1000);
+    private final int maxInboxes = Integer.getInteger(MAX_INBOXES_PROPERTY, 10000);
+    private final Map<Integer, LongAdder> followerCounts = new ConcurrentHashMap<>();
+    private final Map<Integer, Inbox> inboxes = new ConcurrentHashMap<>();
+
+    /*
+     * Load the number of followers of each account from the store.
+     *
+     * @param followStore the follow graph.
+     * @param messageStore where the messages are read from.
+     */
+    public HomeTimelines(FollowStore followStore, MessageStore messageStore) {
+        this.followStore = followStore;
+        this.messageStore = messageStore;
+        followStore.countFollowersByAccount().forEach((account, count) -> {
+            LongAdder adder = new LongAdder();
+            adder.add(count);
+            followerCounts.put(account, adder);
+        });
+    }
+
+    /*
+     * Push a message that has been added into the built inboxes of its poster's followers, unless the poster has too
+     * many followers for that.
+     */
+    public void added(Message message) {
+        int posted_by = message.getPosted_by();
+        if(getFollowerCount(posted_by) == 0 || isPulled(posted_by)) {
+            return;
+        }
+        for(int follower_id : followStore.getFollowers(posted_by)) {
+            Inbox inbox = inboxes.get(follower_id);
+            if(inbox != null) {
+                inbox.push(message.getTime_posted_epoch(), message.getMessage_id());
+            }
+        }
+    }
+
+    /*
+     * Count a follow that has been added, and rebuild the follower's inbox when it is next read.
+     */
+    public void followed(int follower_id, int followee_id) {
+        followerCounts.computeIfAbsent(followee_id, account -> new LongAdder()).increment();
+        inboxes.remove(follower_id);
+    }
+
+    /*
+     * Count a follow that has been removed, and rebuild the follower's inbox when it is next read.
+     */
+    public void unfollowed(int follower_id, int followee_id) {
+        followerCounts.computeIfAbsent(followee_id, account -> new LongAdder()).decrement();
+        inboxes.remove(follower_id);
+    }
+
+    /*
+     * @return the number of followers of an account, 0 if it has none or does not exist.
+     */
+    public long getFollowerCount(int account_id) {
+        LongAdder count = followerCounts.get(account_id);
+        return count == null ? 0 : count.sum();
+    }
+
+    /*
+     * @param follower_id the account whose feed is wanted.
+     * @param limit the most messages on the page.
+     * @param beforeTime only messages older than the keyset position (beforeTime, beforeId) are returned.
+     * @param beforeId see beforeTime.
+     * @return the messages of the accounts the follower follows, newest first.
+     */
+    public List<Message> getFeed(int follower_id, int limit, long beforeTime, int beforeId) {
+        Inbox inbox = getInbox(follower_id);
+        if(inbox.followees.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        Map<Integer, Message> feed = new LinkedHashMap<>();
+        boolean reachedEnd;
+        while(true) {
+            List<Integer> ids = new ArrayList<>();
+            reachedEnd = inbox.page(ids, limit, beforeTime, beforeId);
+            Map<Integer, Message> found = ids.isEmpty() ? Map.of() : messageStore.getMessages(ids);
+            List<Integer> deleted = new ArrayList<>();
+            for(int message_id : ids) {
+                Message message = found.get(message_id);
+                if(message != null) {
+                    feed.put(message_id, message);
+                } else {
+                    deleted.add(message_id);
+                }
+            }
+            if(deleted.isEmpty()) {
+                break;
+            }
+            inbox.remove(deleted);
+            feed.clear();
+        }
+        if(reachedEnd && inbox.isTruncated()) {
+            return messageStore.getRecentMessages(new ArrayList<>(inbox.followees), limit, limit, beforeTime, beforeId);
+        }
+
+        Set<Integer> pulled = new HashSet<>(inbox.pulledAtBuild);
+        for(int followee_id : inbox.followees) {
+            if(isPulled(followee_id)) {
+                pulled.add(followee_id);
+            }
+        }
+        if(!pulled.isEmpty()) {
+            for(Message message : messageStore.getRecentMessages(new ArrayList<>(pulled), limit, limit, beforeTime,
+                    beforeId)) {
+                feed.putIfAbsent(message.getMessage_id(), message);
+            }
+        }
+
+        List<Message> messages = new ArrayList<>(feed.values());
+        messages.sort(MessageStore.NEWEST_FIRST);
+        return new ArrayList<>(messages.subList(0, Math.min(limit, messages.size())));
+    }
+
+    private boolean isPulled(int account_id) {
+        return getFollowerCount(account_id) >= fanoutThreshold;
+    }
+
+    /*
+     * The inbox is added to the map before it is loaded, so a message committed after the load has read the store
+     * is pushed into it, and one committed before is read by the load; one that is both is only kept once.
+     */
+    private Inbox getInbox(int follower_id) {
+        Inbox inbox = inboxes.get(follower_id);
+        if(inbox == null) {
+            if(inboxes.size() >= maxInboxes) {
+                Iterator<Integer> any = inboxes.keySet().iterator();
+                if(any.hasNext()) {
+                    inboxes.remove(any.next());
+                }
+            }
+            inbox = inboxes.computeIfAbsent(follower_id, id -> new Inbox(inboxSize));
+        }
+        inbox.load(follower_id);
+        return inbox;
+    }
+
+    /*
+     * The (time_posted_epoch, message_id) of the newest messages pushed to one follower, newest first, in two arrays.
+     */
+    private class Inbox {
+        private final long[] times;
+        private final int[] ids;
+        private int size;
+        private boolean loaded;
+        private boolean truncated;
+        private Set<Integer> followees = Set.of();
+        private Set<Integer> pulledAtBuild = Set.of();
+
+        Inbox(int capacity) {
+            times = new long[capacity];
+            ids = new int[capacity];
+        }
+
+        synchronized void load(int follower_id) {
+            if(loaded) {
+                return;
+            }
+            Set<Integer> following = new HashSet<>(followStore.getFollowees(follower_id));
+            Set<Integer> pulled = new HashSet<>();
+            List<Integer> pushed = new ArrayList<>();
+            for(int followee_id : following) {
+                if(isPulled(followee_id)) {
+                    pulled.add(followee_id);
+                } else {
+                    pushed.add(followee_id);
+                }
+            }
+            if(!pushed.isEmpty()) {
+                List<Message> recent = messageStore.getRecentMessages(pushed, ids.length, ids.length, Long.MAX_VALUE,
+                        Integer.MAX_VALUE);
+                for(Message message : recent) {
+                    insert(message.getTime_posted_epoch(), message.getMessage_id());
+                }
+                truncated |= recent.size() >= ids.length;
+            }
+            followees = following;
+            pulledAtBuild = pulled;
+            loaded = true;
+        }
+
+        /*
+         * Add a message that has just been posted. Before the inbox is loaded the load will read it from the store.
+         */
+        synchronized void push(long time, int id) {
+            if(loaded) {
+                insert(time, id);
+            }
+        }
+
+        /*
+         * Insert a message in order, dropping the oldest if the inbox is full.
+         */
+        private void insert(long time, int id) {
+            int position = 0;
+            while(position < size && (times[position] > time || (times[position] == time && ids[position] > id))) {
+                position++;
+            }
+            if(position < size && times[position] == time && ids[position] == id) {
+                return;
+            }
+            if(size == ids.length) {
+                truncated = true;
+                if(position == size) {
+                    return;
+                }
+                size--;
+            }
+            System.arraycopy(times, position, times, position + 1, size - position);
+            System.arraycopy(ids, position, ids, position + 1, size - position);
+            times[position] = time;
+            ids[position] = id;
+            size++;
+        }
+
+        /*
+         * Add the ids of up to limit messages after the keyset position to page.
+         *
+         * @return whether the page ran out of messages before reaching limit.
+         */
+        synchronized boolean page(List<Integer> page, int limit, long beforeTime, int beforeId) {
+            int position = 0;
+            while(position < size && (times[position] > beforeTime
+                    || (times[position] == beforeTime && ids[position] >= beforeId))) {
+                position++;
+            }
+            while(position < size && page.size() < limit) {
+                page.add(ids[position++]);
+            }
+            return page.size() < limit;
+        }
+
+        synchronized void remove(List<Integer> removed) {
+            int kept = 0;
+            for(int i = 0; i < size; i++) {
+                if(!removed.contains(ids[i])) {
+                    times[kept] = times[i];
+                    ids[kept] = ids[i];
+                    kept++;
+                }
+            }
+            size = kept;
+        }
+
+        synchronized boolean isTruncated() {
+            return truncated;
+        }
+    }
+}
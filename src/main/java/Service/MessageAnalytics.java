@@ -0,0 +1,99 @@
+package Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import DAO.MessageStore;
+import Model.Message;
+import Model.PosterCount;
+import Model.VolumeBucket;
+
+/*
+ * Keeps the aggregates served by the analytics endpoints up to date as messages are added and deleted, so that they
+ * never need a scan of the message table:
+ *   - the accounts that have posted the most messages, in a SpaceSavingTopK of TOP_POSTER_COUNTERS counters.
+ *   - the number of messages per minute over the last MINUTE_BUCKETS minutes, and per hour over the last HOUR_BUCKETS
+ *     hours, by time_posted_epoch, in TimeBucketCounters.
+ *
+ * At startup the aggregates are rebuilt from the store's per-account and per-bucket counts.
+ */
+public class MessageAnalytics {
+
+    public static final int TOP_POSTER_COUNTERS = 100;
+    public static final int MINUTE_BUCKETS = 24 * 60;
+    public static final int HOUR_BUCKETS = 30 * 24;
+
+    public static final String MINUTE = "minute";
+    public static final String HOUR = "hour";
+
+    private final SpaceSavingTopK topPosters = new SpaceSavingTopK(TOP_POSTER_COUNTERS);
+    private final TimeBucketCounter perMinute = new TimeBucketCounter(60, MINUTE_BUCKETS);
+    private final TimeBucketCounter perHour = new TimeBucketCounter(60 * 60, HOUR_BUCKETS);
+
+    /*
+     * @param messageStore the store whose messages the aggregates are rebuilt from.
+     */
+    public MessageAnalytics(MessageStore messageStore) {
+        for(Map.Entry<Integer, Long> count : messageStore.countMessagesByAccount().entrySet()) {
+            topPosters.add(count.getKey(), count.getValue());
+        }
+        for(TimeBucketCounter counter : List.of(perMinute, perHour)) {
+            long bucketSeconds = counter.getBucketSeconds();
+            messageStore.countMessagesByTimeBucket(bucketSeconds)
+                    .forEach((bucket, count) -> counter.add(bucket * bucketSeconds, count));
+        }
+    }
+
+    /*
+     * Count a message that has been added.
+     */
+    public void added(Message message) {
+        topPosters.add(message.getPosted_by(), 1);
+        perMinute.add(message.getTime_posted_epoch(), 1);
+        perHour.add(message.getTime_posted_epoch(), 1);
+    }
+
+    /*
+     * Count a message that has been deleted.
+     */
+    public void removed(Message message) {
+        topPosters.remove(message.getPosted_by());
+        perMinute.add(message.getTime_posted_epoch(), -1);
+        perHour.add(message.getTime_posted_epoch(), -1);
+    }
+
+    /*
+     * @param limit the most accounts to return.
+     * @return the accounts that have posted the most messages, most first.
+     */
+    public List<PosterCount> getTopPosters(int limit) {
+        List<PosterCount> posters = new ArrayList<>();
+        for(long[] counter : topPosters.top(limit)) {
+            posters.add(new PosterCount((int) counter[0], counter[1], counter[2]));
+        }
+        return posters;
+    }
+
+    /*
+     * @param interval MINUTE or HOUR.
+     * @param to a time in the last bucket wanted, or null for the newest bucket with messages.
+     * @param buckets the number of buckets wanted.
+     * @return the number of messages posted in each bucket, oldest first, or null if the interval is not known.
+     */
+    public List<VolumeBucket> getVolume(String interval, Long to, int buckets) {
+        TimeBucketCounter counter;
+        if(MINUTE.equals(interval)) {
+            counter = perMinute;
+        } else if(HOUR.equals(interval)) {
+            counter = perHour;
+        } else {
+            return null;
+        }
+        List<VolumeBucket> volume = new ArrayList<>();
+        for(long[] bucket : counter.getCounts(to, buckets)) {
+            volume.add(new VolumeBucket(bucket[0], bucket[1]));
+        }
+        return volume;
+    }
+}
@@ -0,0 +1,106 @@
+package Service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import DAO.MessageStore;
+
+/*
+ * Keeps the total number of messages and the number posted by each account, so that they can be reported without
+ * reading the messages.
+ *
+ * The counts are loaded once when the service starts and then kept up to date by the service's own inserts and
+ * deletes; writers only touch a LongAdder, so they never contend on a shared count. Every CHECKPOINT_INTERVAL_PROPERTY
+ * seconds (default 10), if messages have been written, the store brings its saved counts up to date with the messages
+ * created and deleted since they were saved (see MessageStore.updateCountCheckpoint). At startup the counts are loaded
+ * the same way, so only the changes made since the last checkpoint are read, including those made after it by a
+ * process that then crashed. Only if the store cannot do that are its messages counted by account.
+ */
+public class MessageCounters {
+
+    public static final String CHECKPOINT_INTERVAL_PROPERTY = "socialmedia.stats.checkpointSeconds";
+
+    private final MessageStore messageStore;
+    private final LongAdder total = new LongAdder();
+    private final Map<Integer, LongAdder> byAccount = new ConcurrentHashMap<>();
+    private final AtomicBoolean dirty = new AtomicBoolean(false);
+
+    /*
+     * Load the counts from the store and start checkpointing them.
+     *
+     * @param messageStore the store whose messages are counted, and where the counts are saved.
+     */
+    public MessageCounters(MessageStore messageStore) {
+        this.messageStore = messageStore;
+        load();
+
+        long interval = Long.getLong(CHECKPOINT_INTERVAL_PROPERTY, 10);
+        ScheduledExecutorService checkpointer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "message-count-checkpoint");
+            thread.setDaemon(true);
+            return thread;
+        });
+        checkpointer.scheduleWithFixedDelay(this::checkpoint, interval, interval, TimeUnit.SECONDS);
+    }
+
+    /*
+     * Count a message that has been added.
+     */
+    public void added(int posted_by) {
+        byAccount.computeIfAbsent(posted_by, account -> new LongAdder()).increment();
+        total.increment();
+        dirty.set(true);
+    }
+
+    /*
+     * Count a message that has been deleted.
+     */
+    public void removed(int posted_by) {
+        byAccount.computeIfAbsent(posted_by, account -> new LongAdder()).decrement();
+        total.decrement();
+        dirty.set(true);
+    }
+
+    /*
+     * @return the number of messages.
+     */
+    public long getTotal() {
+        return total.sum();
+    }
+
+    /*
+     * @return the number of messages posted by an account, 0 if it has posted none or does not exist.
+     */
+    public long getCount(int posted_by) {
+        LongAdder count = byAccount.get(posted_by);
+        return count == null ? 0 : count.sum();
+    }
+
+    /*
+     * Bring the store's saved counts up to date, if messages have been written since they last were. If that fails
+     * the counts are tried again at the next checkpoint.
+     */
+    public void checkpoint() {
+        if(dirty.getAndSet(false) && messageStore.updateCountCheckpoint() == null) {
+            dirty.set(true);
+        }
+    }
+
+    private void load() {
+        Map<Integer, Long> counts = messageStore.updateCountCheckpoint();
+        if(counts == null) {
+            counts = messageStore.resetCountCheckpoint();
+        }
+        counts.forEach((account, count) -> {
+            LongAdder adder = new LongAdder();
+            adder.add(count);
+            byAccount.put(account, adder);
+            total.add(count);
+        });
+    }
+}
@@ -0,0 +1,210 @@
+package Service;
+
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+import Model.MessageEvent;
+
+/*
+ * Fans message events out to the subscribers of the message stream.
+ *
+ * Publishing never blocks the writer: each subscriber has its own bounded buffer, and events are handed to the
+ * subscriber's sink on a small shared dispatcher pool. A subscriber whose buffer is full has fallen too far behind,
+ * so it is marked as lagging and dropped rather than being allowed to hold up the writers. So that a client that has
+ * stopped reading cannot hold a dispatcher thread either, a send that takes longer than the send timeout is
+ * interrupted and its subscriber dropped the same way, as is a subscriber whose sink throws.
+ */
+public class MessageEventBus {
+
+    public static final int DEFAULT_BUFFER_SIZE = 256;
+    public static final long DEFAULT_SEND_TIMEOUT_MILLIS = 5000;
+    private static final int DISPATCHER_THREADS = 4;
+
+    private final int bufferSize;
+    private final long sendTimeoutNanos;
+    private final Set<Subscription> subscriptions = ConcurrentHashMap.newKeySet();
+    private final ExecutorService dispatcher;
+    private final ScheduledExecutorService watchdog;
+
+    /*
+     * no-args constructor
+     */
+    public MessageEventBus() {
+        this(DEFAULT_BUFFER_SIZE, DEFAULT_SEND_TIMEOUT_MILLIS);
+    }
+
+    /*
+     * @param bufferSize the number of undelivered events a subscriber may have before it is dropped.
+     * @param sendTimeoutMillis how long the sink may take over one event before the subscriber is dropped.
+     */
+    public MessageEventBus(int bufferSize, long sendTimeoutMillis) {
+        this.bufferSize = bufferSize;
+        this.sendTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(sendTimeoutMillis);
+        this.dispatcher = Executors.newFixedThreadPool(DISPATCHER_THREADS, runnable -> {
+            Thread thread = new Thread(runnable, "message-event-dispatcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.watchdog = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "message-event-watchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(1, sendTimeoutMillis / 4);
+        watchdog.scheduleAtFixedRate(this::timeOutSends, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /*
+     * Register a new subscriber.
+     *
+     * @param posted_by only deliver events for messages posted by this account, or null for all messages.
+     * @param sink receives each event, in order, on a dispatcher thread.
+     * @param onDropped called once if the subscriber is dropped for lagging behind, for a send that timed out, or
+     *        because the sink threw.
+     * @return the subscription, which should be cancelled when the subscriber goes away.
+     */
+    public Subscription subscribe(Integer posted_by, Consumer<MessageEvent> sink, Runnable onDropped) {
+        Subscription subscription = new Subscription(posted_by, sink, onDropped);
+        subscriptions.add(subscription);
+        return subscription;
+    }
+
+    /*
+     * Offer an event to every matching subscriber. Never blocks.
+     *
+     * @param event the change that was made to a message.
+     */
+    public void publish(MessageEvent event) {
+        for(Subscription subscription : subscriptions) {
+            if(subscription.posted_by == null || subscription.posted_by == event.getMessage().getPosted_by()) {
+                subscription.offer(event);
+            }
+        }
+    }
+
+    /*
+     * @return the number of active subscribers.
+     */
+    public int getSubscriberCount() {
+        return subscriptions.size();
+    }
+
+    /*
+     * Drop every subscriber whose sink has been busy with one event for longer than the send timeout.
+     */
+    private void timeOutSends() {
+        long now = System.nanoTime();
+        for(Subscription subscription : subscriptions) {
+            subscription.timeOut(now);
+        }
+    }
+
+    /*
+     * A single subscriber to the message stream, with its own bounded buffer of undelivered events.
+     */
+    public class Subscription {
+        private final Integer posted_by;
+        private final Consumer<MessageEvent> sink;
+        private final Runnable onDropped;
+        private final BlockingQueue<MessageEvent> buffer = new ArrayBlockingQueue<>(bufferSize);
+        private final AtomicBoolean scheduled = new AtomicBoolean(false);
+        private final AtomicBoolean dropped = new AtomicBoolean(false);
+        private volatile boolean lagging = false;
+        private volatile boolean cancelled = false;
+        private Thread sender;
+        private long sendStarted;
+
+        private Subscription(Integer posted_by, Consumer<MessageEvent> sink, Runnable onDropped) {
+            this.posted_by = posted_by;
+            this.sink = sink;
+            this.onDropped = onDropped;
+        }
+
+        /*
+         * @return true if this subscriber was dropped because its buffer filled up.
+         */
+        public boolean isLagging() {
+            return lagging;
+        }
+
+        /*
+         * Stop delivering events to this subscriber.
+         */
+        public void cancel() {
+            cancelled = true;
+            subscriptions.remove(this);
+            buffer.clear();
+        }
+
+        private void offer(MessageEvent event) {
+            if(cancelled) {
+                return;
+            }
+            if(!buffer.offer(event)) {
+                lagging = true;
+                drop();
+                return;
+            }
+            if(scheduled.compareAndSet(false, true)) {
+                dispatcher.execute(this::drain);
+            }
+        }
+
+        private void drain() {
+            do {
+                MessageEvent event;
+                while(!cancelled && (event = buffer.poll()) != null) {
+                    startSend();
+                    try {
+                        sink.accept(event);
+                    } catch(RuntimeException e) {
+                        System.out.println(e.getMessage());
+                        drop();
+                    } finally {
+                        endSend();
+                    }
+                }
+                scheduled.set(false);
+            } while(!cancelled && !buffer.isEmpty() && scheduled.compareAndSet(false, true));
+        }
+
+        /*
+         * Stop delivering events to this subscriber and tell it so, once.
+         */
+        private void drop() {
+            if(!cancelled && dropped.compareAndSet(false, true)) {
+                cancel();
+                dispatcher.execute(onDropped);
+            }
+        }
+
+        private synchronized void startSend() {
+            sender = Thread.currentThread();
+            sendStarted = System.nanoTime();
+        }
+
+        /*
+         * Clear any interrupt timeOut left, so that it cannot reach the next send on this dispatcher thread.
+         */
+        private synchronized void endSend() {
+            sender = null;
+            Thread.interrupted();
+        }
+
+        private synchronized void timeOut(long now) {
+            if(sender != null && now - sendStarted > sendTimeoutNanos) {
+                System.out.println("message stream send timed out");
+                sender.interrupt();
+                drop();
+            }
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package Service;
+
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Model.Message;
+
+/*
+ * Keeps the list of all messages serialized as JSON, so that GET /messages can write the same bytes to every reader
+ * without querying the store or serializing anything.
+ *
+ * Every write through the service moves the messages version on by one; a snapshot records the version it was read
+ * at. The first snapshot is only built when it is first asked for. After a write, the snapshot is rebuilt in the
+ * background DEBOUNCE_MILLIS_PROPERTY milliseconds later (default 50), so that a burst of writes costs one rebuild.
+ * Until then readers get the old snapshot, but only for up to MAX_STALE_MILLIS_PROPERTY milliseconds after the first
+ * write it misses (default 100, longer than the debounce so that the background rebuild usually gets there first);
+ * after that a reader rebuilds it itself, and the others wait for it, since rebuilds are serialized. Set it to 0 for
+ * readers that always see every completed write, at the cost of a rebuild on the first read after each write. A
+ * reader that has to see its own writes passes the version its write returned, and gets a snapshot at least that new.
+ *
+ * Lists longer than MAX_MESSAGES_PROPERTY messages (default 100,000) are not kept, to bound memory; for them get
+ * returns null and readers fall back to querying.
+ */
+public class MessageSnapshot {
+
+    public static final String MAX_STALE_MILLIS_PROPERTY = "socialmedia.snapshot.maxStaleMillis";
+    public static final String DEBOUNCE_MILLIS_PROPERTY = "socialmedia.snapshot.debounceMillis";
+    public static final String MAX_MESSAGES_PROPERTY = "socialmedia.snapshot.maxMessages";
+
+    private final Supplier<List<Message>> allMessages;
+    private final ObjectMapper jsonMapper = new ObjectMapper();
+    private final long maxStaleNanos = TimeUnit.MILLISECONDS.toNanos(Long.getLong(MAX_STALE_MILLIS_PROPERTY, 100));
+    private final long debounceMillis = Long.getLong(DEBOUNCE_MILLIS_PROPERTY, 50);
+    private final int maxMessages = Integer.getInteger(MAX_MESSAGES_PROPERTY, 100_000);
+    private final AtomicLong version = new AtomicLong();
+    private final AtomicBoolean rebuildScheduled = new AtomicBoolean(false);
+    private final ScheduledExecutorService rebuilder;
+    private volatile Snapshot current;
+
+    /*
+     * @param allMessages reads all messages from the store.
+     */
+    public MessageSnapshot(Supplier<List<Message>> allMessages) {
+        this.allMessages = allMessages;
+        this.rebuilder = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "message-snapshot-rebuild");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /*
+     * @return the messages version, which every write through the service moves on by one.
+     */
+    public long getVersion() {
+        return version.get();
+    }
+
+    /*
+     * Record that a write has completed, and schedule a rebuild of the snapshot if there is one.
+     */
+    public void invalidate() {
+        version.incrementAndGet();
+        Snapshot snapshot = current;
+        if(snapshot != null) {
+            snapshot.markStale(System.nanoTime());
+            if(rebuildScheduled.compareAndSet(false, true)) {
+                rebuilder.schedule(() -> {
+                    rebuildScheduled.set(false);
+                    rebuild(0);
+                }, debounceMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    /*
+     * @param minVersion the oldest messages version the caller will accept, for example the one its own write
+     *        returned, or 0.
+     * @return the current snapshot, rebuilt first if it is older than minVersion or has been stale for too long.
+     *         Returns null if the list is too long to keep. A minVersion past the messages version is taken as the
+     *         messages version, since no snapshot can be newer.
+     */
+    public Snapshot get(long minVersion) {
+        minVersion = Math.min(minVersion, version.get());
+        Snapshot snapshot = current;
+        if(snapshot != null && isUsable(snapshot, minVersion, System.nanoTime())) {
+            return snapshot.json == null ? null : snapshot;
+        }
+        snapshot = rebuild(minVersion);
+        return snapshot.json == null ? null : snapshot;
+    }
+
+    private boolean isUsable(Snapshot snapshot, long minVersion, long now) {
+        if(snapshot.version < minVersion) {
+            return false;
+        }
+        long staleSince = snapshot.staleSince.get();
+        return staleSince == 0 || now - staleSince <= maxStaleNanos;
+    }
+
+    /*
+     * Build a new snapshot unless another thread has just built one that will do.
+     */
+    private synchronized Snapshot rebuild(long minVersion) {
+        Snapshot snapshot = current;
+        if(snapshot != null && snapshot.version >= Math.max(minVersion, version.get())) {
+            return snapshot;
+        }
+        long readVersion = version.get();
+        List<Message> messages = allMessages.get();
+        byte[] json = null;
+        if(messages.size() <= maxMessages) {
+            try {
+                json = jsonMapper.writeValueAsBytes(messages);
+            } catch(JsonProcessingException e) {
+                System.out.println(e.getMessage());
+            }
+        }
+        snapshot = new Snapshot(readVersion, json, messages.size());
+        if(version.get() != readVersion) {
+            snapshot.markStale(System.nanoTime());
+        }
+        current = snapshot;
+        return snapshot;
+    }
+
+    /*
+     * One serialized list of all messages. The bytes must not be modified.
+     */
+    public static class Snapshot {
+        public final long version;
+        public final byte[] json;
+        public final int count;
+        private final AtomicLong staleSince = new AtomicLong();
+
+        Snapshot(long version, byte[] json, int count) {
+            this.version = version;
+            this.json = json;
+            this.count = count;
+        }
+
+        void markStale(long now) {
+            staleSince.compareAndSet(0, now);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package Service;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/*
+ * Coalesces concurrent identical lookups: while a lookup for a key is running, other callers asking for the same key
+ * wait for it and share its result instead of running their own. The first caller for a key is the leader and runs
+ * the lookup; the others are coalesced. Nothing is cached once the lookup finishes, so the next caller starts a new
+ * one.
+ *
+ * Coalesced callers receive the very object the leader's lookup returned, so callers must not modify it.
+ *
+ * A write should call forget for every key it affects once it has finished, so that callers arriving after the write
+ * start a new lookup instead of joining one that began before it and may not see it.
+ */
+public class SingleFlight<K, V> {
+
+    private final String name;
+    private final Map<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final LongAdder leaders = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+
+    /*
+     * @param name the name reported in the stats.
+     */
+    public SingleFlight(String name) {
+        this.name = name;
+    }
+
+    /*
+     * Run a lookup for a key, or wait for the one already running for it.
+     *
+     * @param key what is being looked up.
+     * @param lookup runs the lookup.
+     * @return the result of the lookup.
+     */
+    public V get(K key, Supplier<V> lookup) {
+        CompletableFuture<V> flight = new CompletableFuture<>();
+        CompletableFuture<V> running = inFlight.putIfAbsent(key, flight);
+        if(running != null) {
+            coalesced.increment();
+            try {
+                return running.join();
+            } catch(CompletionException e) {
+                if(e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw e;
+            }
+        }
+        leaders.increment();
+        try {
+            V value = lookup.get();
+            flight.complete(value);
+            return value;
+        } catch(RuntimeException | Error e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, flight);
+        }
+    }
+
+    /*
+     * Stop callers from joining the lookup running for a key, if any; they will start a new one.
+     *
+     * @param key the key a write has changed.
+     */
+    public void forget(K key) {
+        inFlight.remove(key);
+    }
+
+    /*
+     * @return how many lookups have been run and how many callers shared another's.
+     */
+    public Stats getStats() {
+        return new Stats(name, leaders.sum(), coalesced.sum(), inFlight.size());
+    }
+
+    /*
+     * How much a SingleFlight has coalesced, as reported by GET /debug/coalescing.
+     */
+    public static class Stats {
+        public final String name;
+        public final long leaders;
+        public final long coalesced;
+        public final int in_flight;
+
+        Stats(String name, long leaders, long coalesced, int in_flight) {
+            this.name = name;
+            this.leaders = leaders;
+            this.coalesced = coalesced;
+            this.in_flight = in_flight;
+        }
+    }
+}
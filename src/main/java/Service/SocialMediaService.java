@@ -1,10 +1,36 @@
 package Service;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.IntPredicate;
+import java.util.function.Supplier;
 import DAO.AccountDAO;
+import DAO.AccountStore;
+import DAO.ColumnarMessageDAO;
+import DAO.FollowDAO;
+import DAO.FollowStore;
+import DAO.InMemoryFollowDAO;
+import DAO.InMemoryAccountDAO;
+import DAO.InMemoryMessageDAO;
+import DAO.MappedLogMessageDAO;
 import DAO.MessageDAO;
+import DAO.MessageStore;
+import DAO.ShardedMessageDAO;
 import Model.Account;
+import Model.Follow;
 import Model.Message;
+import Model.MessageChange;
+import Model.MessageEvent;
+import Model.MessageFields;
+import Model.MessageLookup;
+import Model.PosterCount;
+import Model.VolumeBucket;
+import Util.ConnectionUtil;
+import Util.UnitOfWork;
 
 /*
  * Provides services to the Social Media Application.  Holds business logic and handles calls to the Data Access classes.
@@ -12,16 +38,106 @@ import Model.Message;
  * @author Jennifer Gardner
  */
 public class SocialMediaService {
+
+    /*
+     * The system properties that select where accounts and messages are stored, read by the no-args constructor:
+     *   h2         the H2 account and message tables (the default)
+     *   memory     InMemoryAccountDAO and InMemoryMessageDAO, for tests and edge caching nodes
+     *   columnar   (messages only) the in-memory ColumnarMessageDAO, for read-heavy deployments
+     *   log        (messages only) the MappedLogMessageDAO, an append-only log kept in MESSAGE_LOG_DIR_PROPERTY
+     *   sharded    (messages only) the ShardedMessageDAO, SHARD_COUNT_PROPERTY H2 databases in SHARD_DIR_PROPERTY
+     */
+    public static final String ACCOUNT_STORE_PROPERTY = "socialmedia.accountStore";
+    public static final String MESSAGE_STORE_PROPERTY = "socialmedia.messageStore";
+    public static final String MESSAGE_LOG_DIR_PROPERTY = "socialmedia.messageLogDir";
+    public static final String SHARD_COUNT_PROPERTY = "socialmedia.shards";
+    public static final String SHARD_DIR_PROPERTY = "socialmedia.shardDir";
     
-    AccountDAO accountDAO;
-    MessageDAO messageDAO;
+    AccountStore accountDAO;
+    MessageStore messageDAO;
+    FollowStore followDAO;
+    HomeTimelines homeTimelines;
+    MessageEventBus messageEventBus;
+    MessageCounters messageCounters;
+    MessageAnalytics messageAnalytics;
+    MessageSnapshot messageSnapshot;
+    final boolean useUnitOfWork;
+    final ConnectionUtil.Database database;
+    final SingleFlight<Integer, Message> messageLookups = new SingleFlight<>("getMessage");
+    final SingleFlight<String, List<Message>> allMessagesLookups = new SingleFlight<>("getAllMessages");
+    private static final String ALL_MESSAGES = "all";
 
     /*
-     * no-args constructor
+     * no-args constructor, which picks the stores named by ACCOUNT_STORE_PROPERTY and MESSAGE_STORE_PROPERTY.
      */
     public SocialMediaService() {
-        accountDAO = new AccountDAO();
-        messageDAO = new MessageDAO();
+        this(createAccountStore(System.getProperty(ACCOUNT_STORE_PROPERTY, "h2")), 
+             createMessageStore(System.getProperty(MESSAGE_STORE_PROPERTY, "h2")));
+    }
+
+    /*
+     * @param accountDAO where accounts are stored. Follows are kept in the H2 follow table of its database if it is 
+     *        an AccountDAO, and in memory otherwise.
+     * @param messageDAO where messages are stored.
+     */
+    public SocialMediaService(AccountStore accountDAO, MessageStore messageDAO) {
+        this(accountDAO, messageDAO, accountDAO instanceof AccountDAO 
+                ? new FollowDAO(((AccountDAO) accountDAO).getDatabase()) : new InMemoryFollowDAO());
+    }
+
+    /*
+     * @param accountDAO where accounts are stored.
+     * @param messageDAO where messages are stored.
+     * @param followDAO where the accounts each account follows are stored.
+     */
+    public SocialMediaService(AccountStore accountDAO, MessageStore messageDAO, FollowStore followDAO) {
+        this.accountDAO = accountDAO;
+        this.messageDAO = messageDAO;
+        this.followDAO = followDAO;
+        this.homeTimelines = new HomeTimelines(followDAO, messageDAO);
+        this.messageEventBus = new MessageEventBus();
+        this.messageCounters = new MessageCounters(messageDAO);
+        this.messageAnalytics = new MessageAnalytics(messageDAO);
+        this.messageSnapshot = new MessageSnapshot(this::getAllMessages);
+        this.useUnitOfWork = UnitOfWork.isEnabled() && accountDAO instanceof AccountDAO && messageDAO instanceof MessageDAO;
+        this.database = messageDAO instanceof MessageDAO ? ((MessageDAO) messageDAO).getDatabase() : null;
+    }
+
+    /*
+     * @param name the name of an account store, as set in ACCOUNT_STORE_PROPERTY.
+     * @return a new account store of that kind.
+     */
+    static AccountStore createAccountStore(String name) {
+        switch(name) {
+            case "h2":
+                return new AccountDAO();
+            case "memory":
+                return new InMemoryAccountDAO();
+            default:
+                throw new IllegalArgumentException("unknown account store: " + name);
+        }
+    }
+
+    /*
+     * @param name the name of a message store, as set in MESSAGE_STORE_PROPERTY.
+     * @return a new message store of that kind.
+     */
+    static MessageStore createMessageStore(String name) {
+        switch(name) {
+            case "h2":
+                return new MessageDAO();
+            case "memory":
+                return new InMemoryMessageDAO();
+            case "columnar":
+                return new ColumnarMessageDAO();
+            case "log":
+                return new MappedLogMessageDAO(System.getProperty(MESSAGE_LOG_DIR_PROPERTY, "./messagelog"));
+            case "sharded":
+                return new ShardedMessageDAO(System.getProperty(SHARD_DIR_PROPERTY, "./h2"),
+                                             Integer.getInteger(SHARD_COUNT_PROPERTY, 4));
+            default:
+                throw new IllegalArgumentException("unknown message store: " + name);
+        }
     }
 
     /*
@@ -36,15 +152,17 @@ public class SocialMediaService {
      */
     public Account addAccount(Account account) {
         String username = account.getUsername();
-        String password = account.getPassword();
         Account newAccount = null;
 
-        if( username != null && password != null && password.length() >=4 && username.length() > 0) {
-            Account existingAccount = accountDAO.getAccountByUsername(username);
-            if(existingAccount == null) {
+        if(isValidNewAccount(account)) {
+            newAccount = inUnitOfWork(() -> {
+                Account existingAccount = accountDAO.getAccountByUsername(username);
+                if(existingAccount != null) {
+                    return null;
+                }
                 int new_account_id = accountDAO.insertAccount(account);
-                newAccount = accountDAO.getAccountByID(new_account_id);
-            }
+                return accountDAO.getAccountByID(new_account_id);
+            });
         }
         return newAccount;
     }
@@ -76,14 +194,23 @@ public class SocialMediaService {
      */
     public Message addMessage(Message message) {
         Message newMessage = null;
-        if(message != null && message.getMessage_text() != null 
-                && message.getMessage_text().length() > 0 && message.getMessage_text().length() <= 255) {
-            
-            Account isRealUser = accountDAO.getAccountByID(message.getPosted_by());
-            if(isRealUser != null) {
+        if(message != null && isValidMessageText(message.getMessage_text())) {
+            newMessage = inUnitOfWork(() -> {
+                Account isRealUser = accountDAO.getAccountByID(message.getPosted_by());
+                if(isRealUser == null) {
+                    return null;
+                }
                 int new_message_id = messageDAO.insertMessage(message);
-                newMessage = messageDAO.getMessage(new_message_id);
-            }       
+                return messageDAO.getMessage(new_message_id);
+            });
+            if(newMessage != null) {
+                messageCounters.added(newMessage.getPosted_by());
+                messageAnalytics.added(newMessage);
+                allMessagesLookups.forget(ALL_MESSAGES);
+                messageSnapshot.invalidate();
+                homeTimelines.added(newMessage);
+                publish(MessageEvent.CREATED, newMessage);
+            }
         }
         return newMessage;
     }
@@ -91,11 +218,42 @@ public class SocialMediaService {
     /*
      * ## 4: Our API should be able to retrieve all messages.
      * 
+     * Concurrent callers share one query (see SingleFlight), so the list returned must not be modified.
+     * 
      * @return a list containing all messages retrieved from the database. It is expected 
      * for the list to simply be empty if there are no messages.
     */
     public List<Message> getAllMessages() {
-        return messageDAO.getAllMessages();
+        return allMessagesLookups.get(ALL_MESSAGES, messageDAO::getAllMessages);
+    }
+
+    /*
+     * ## 4: Our API should be able to retrieve all messages with only some of their properties, reading only those
+     * columns where the store allows it.
+     * 
+     * @param fields the properties wanted.
+     * @return a list containing all messages, with at least the wanted properties set.
+    */
+    public List<Message> getAllMessages(MessageFields fields) {
+        return fields.isAll() ? getAllMessages() : messageDAO.getAllMessages(fields);
+    }
+
+    /*
+     * ## 4: Our API should be able to retrieve all messages as JSON ready to send (see MessageSnapshot).
+     * 
+     * @param minVersion the oldest messages version the caller will accept, for example one returned by 
+     *        getMessagesVersion after its own write, or 0.
+     * @return the serialized list of all messages, or null if it is too long to keep serialized.
+     */
+    public MessageSnapshot.Snapshot getAllMessagesSnapshot(long minVersion) {
+        return messageSnapshot.get(minVersion);
+    }
+
+    /*
+     * @return the messages version, which every write to a message moves on by one.
+     */
+    public long getMessagesVersion() {
+        return messageSnapshot.getVersion();
     }
 
     /* 
@@ -107,17 +265,96 @@ public class SocialMediaService {
      */
      public List<Message> getAllMessages(int account_id) {
         return messageDAO.getAllMessages(account_id);
-     }   
+     }
+
+    /* 
+     * ## 8: Our API should be able to retrieve all messages written by a particular user with only some of their 
+     * properties.
+     * 
+     * @param account_id the account_id for a particular user
+     * @param fields the properties wanted.
+     * @return List of messages posted by the account, with at least the wanted properties set.
+     */
+    public List<Message> getAllMessages(int account_id, MessageFields fields) {
+        return messageDAO.getAllMessages(account_id, fields);
+    }
+
+    /*
+     * ## 21: Our API should be able to retrieve a page of the messages of several users at once, newest first, so
+     * that a feed is built with one query instead of one per user.
+     *
+     * @param account_ids the account_ids of the users. Repeated ids are ignored.
+     * @param perAccount the most messages of any one user on the page. The page ends early, just before a user's 
+     *        message that would pass it, so that the next page starts with that message and none are skipped.
+     * @param limit the most messages on the page.
+     * @param beforeTime only messages older than the keyset position (beforeTime, beforeId), that is the
+     *        time_posted_epoch and message_id of the last message on the previous page, are returned.
+     * @param beforeId see beforeTime.
+     * @return the messages, ordered by time_posted_epoch and then message_id, newest first.  Returns null if no
+     *         account_ids are given or perAccount or limit is less than 1.
+     */
+    public List<Message> getRecentMessages(List<Integer> account_ids, int perAccount, int limit, long beforeTime,
+            int beforeId) {
+        if(account_ids.isEmpty() || perAccount < 1 || limit < 1) {
+            return null;
+        }
+        List<Integer> distinct = new ArrayList<>(new LinkedHashSet<>(account_ids));
+        List<Message> messages = messageDAO.getRecentMessages(distinct, perAccount < limit ? perAccount + 1 : limit, 
+                limit, beforeTime, beforeId);
+        Map<Integer, Integer> counts = new HashMap<>();
+        for(int i = 0; i < messages.size(); i++) {
+            if(counts.merge(messages.get(i).getPosted_by(), 1, Integer::sum) > perAccount) {
+                return new ArrayList<>(messages.subList(0, i));
+            }
+        }
+        return messages;
+    }
 
 
     /*
      * ## 5: Our API should be able to retrieve a message by its ID.
      * 
+     * Concurrent callers for the same message share one query (see SingleFlight), so the message returned must not 
+     * be modified.
+     * 
      * @ param message_id the message_id for the requested message.
      * @ return an object representation of the message identified by the message_id. 
      */
     public Message getMessage(int message_id) {
-        return messageDAO.getMessage(message_id);
+        return messageLookups.get(message_id, () -> messageDAO.getMessage(message_id));
+    }
+
+    /*
+     * ## 22: Our API should be able to retrieve many messages by their IDs at once, with one query of the store.
+     * 
+     * @param message_ids the message_ids of the requested messages. Repeated ids are looked up once.
+     * @return the messages found, in the order their ids were asked for, and the ids that matched no message.
+     */
+    public MessageLookup getMessages(List<Integer> message_ids) {
+        List<Integer> distinct = new ArrayList<>(new LinkedHashSet<>(message_ids));
+        Map<Integer, Message> found = distinct.isEmpty() ? Map.of() : messageDAO.getMessages(distinct);
+        List<Message> messages = new ArrayList<>();
+        List<Integer> missing_ids = new ArrayList<>();
+        for(int message_id : distinct) {
+            Message message = found.get(message_id);
+            if(message != null) {
+                messages.add(message);
+            } else {
+                missing_ids.add(message_id);
+            }
+        }
+        return new MessageLookup(messages, missing_ids);
+    }
+
+    /*
+     * ## 5: Our API should be able to retrieve a message by its ID with only some of its properties.
+     * 
+     * @param message_id the message_id for the requested message.
+     * @param fields the properties wanted.
+     * @return the message identified by the message_id, with at least the wanted properties set, or null.
+     */
+    public Message getMessage(int message_id, MessageFields fields) {
+        return fields.isAll() ? getMessage(message_id) : messageDAO.getMessage(message_id, fields);
     }
 
     /* 
@@ -128,14 +365,20 @@ public class SocialMediaService {
      *         from the database.  Returns null if no message exists in the database.
     */
     public Message deleteMessage(int message_id) {
-        Message deletedMessage = messageDAO.getMessage(message_id);
-        if(deletedMessage != null) {
-            boolean deleted = messageDAO.deleteMessage(message_id);
-            if( deleted ) {
-                return deletedMessage;
+        Message deletedMessage = inUnitOfWork(() -> {
+            Message existingMessage = messageDAO.getMessage(message_id);
+            if(existingMessage != null && messageDAO.deleteMessage(message_id)) {
+                return existingMessage;
             }
+            return null;
+        });
+        if(deletedMessage != null) {
+            forgetLookups(message_id);
+            messageCounters.removed(deletedMessage.getPosted_by());
+            messageAnalytics.removed(deletedMessage);
+            publish(MessageEvent.DELETED, deletedMessage);
         }
-        return null;
+        return deletedMessage;
     }
 
     /* 
@@ -150,14 +393,244 @@ public class SocialMediaService {
      *         if no message exists or the update was not sucessful.
     */
     public Message updateMessage(Message message) {
+        return updateMessage(message, posted_by -> true);
+    }
+
+    /*
+     * Update a message text as updateMessage(Message) does, if the account that posted the message may update it.
+     * The message is read once, before the update, and the updated message is built from that read.
+     *
+     * @param message an object representing the message to be updated (has populated message_id and message_text fields)
+     * @param allowed called with the posted_by of the message, if it exists, before it is updated; the update is not
+     *        made if it returns false.
+     * @return an object representation of the message record that was updated (all fields populated).  Returns null
+     *         if no message exists, the update was not sucessful, or allowed refused it.
+     */
+    public Message updateMessage(Message message, IntPredicate allowed) {
         Message newMessage = null;
-        if(message != null && message.getMessage_text() != null 
-                && message.getMessage_text().length() > 0 && message.getMessage_text().length() <= 255) {
-            
-            int new_message_id = messageDAO.updateMessageText(message);
-            newMessage = messageDAO.getMessage(new_message_id);
+        if(message != null && isValidMessageText(message.getMessage_text())) {
+            newMessage = inUnitOfWork(() -> {
+                Message existing = messageDAO.getMessage(message.getMessage_id());
+                if(existing == null || !allowed.test(existing.getPosted_by())
+                        || messageDAO.updateMessageText(message) <= 0) {
+                    return null;
+                }
+                return new Message(existing.getMessage_id(), existing.getPosted_by(), message.getMessage_text(),
+                        existing.getTime_posted_epoch());
+            });
+            if(newMessage != null) {
+                forgetLookups(message.getMessage_id());
+                publish(MessageEvent.UPDATED, newMessage);
+            }
         }
         return newMessage;
     }
 
+    /*
+     * ## 23: Our API should be able to make one user follow another, so that the other's messages appear in their
+     * feed.
+     *
+     * The follow will be successful if and only if both users exist and are not the same user. Following a user
+     * already followed succeeds and changes nothing.
+     *
+     * @param follower_id the account_id of the user who follows.
+     * @param followee_id the account_id of the user to be followed.
+     * @return the follow.  Returns null if either user does not exist or they are the same user.
+     */
+    public Follow follow(int follower_id, int followee_id) {
+        if(follower_id == followee_id) {
+            return null;
+        }
+        Boolean added = inUnitOfWork(() -> {
+            if(accountDAO.getAccountByID(follower_id) == null || accountDAO.getAccountByID(followee_id) == null) {
+                return null;
+            }
+            return followDAO.insertFollow(follower_id, followee_id);
+        });
+        if(added == null) {
+            return null;
+        }
+        if(added) {
+            homeTimelines.followed(follower_id, followee_id);
+        }
+        return new Follow(follower_id, followee_id);
+    }
+
+    /*
+     * ## 24: Our API should be able to make one user stop following another.
+     *
+     * @param follower_id the account_id of the user who follows.
+     * @param followee_id the account_id of the user followed.
+     * @return the follow that was removed.  Returns null if the user was not following the other.
+     */
+    public Follow unfollow(int follower_id, int followee_id) {
+        if(!followDAO.deleteFollow(follower_id, followee_id)) {
+            return null;
+        }
+        homeTimelines.unfollowed(follower_id, followee_id);
+        return new Follow(follower_id, followee_id);
+    }
+
+    /*
+     * ## 25: Our API should be able to retrieve a page of a user's feed: the messages of the users they follow,
+     * newest first (see HomeTimelines).
+     *
+     * @param account_id the account_id of the user whose feed is wanted.
+     * @param limit the most messages on the page.
+     * @param beforeTime only messages older than the keyset position (beforeTime, beforeId), that is the
+     *        time_posted_epoch and message_id of the last message on the previous page, are returned.
+     * @param beforeId see beforeTime.
+     * @return the messages, newest first.  The list is empty if the user follows nobody or does not exist.  Returns
+     *         null if limit is less than 1.
+     */
+    public List<Message> getFeed(int account_id, int limit, long beforeTime, int beforeId) {
+        if(limit < 1) {
+            return null;
+        }
+        return homeTimelines.getFeed(account_id, limit, beforeTime, beforeId);
+    }
+
+    /*
+     * ## 10: Our API should be able to return just the changes made to messages after a given point.
+     * 
+     * @param since the change_seq of the last change the caller has seen, or 0 to start from the beginning.
+     * @param limit the maximum number of changes to return.
+     * @return the inserts, updates and deletes made after since, oldest first.  Returns null if changes after since 
+     *         have already been trimmed from the change log, or since is past the newest change (a change_seq from 
+     *         before the store was reopened), in which case the caller must reload all messages.
+     */
+    public List<MessageChange> getChangesSince(long since, int limit) {
+        long[] range = messageDAO.getChangeSequenceRange();
+        if((range[0] > 0 && since < range[0] - 1) || since > range[1]) {
+            return null;
+        }
+        return messageDAO.getChangesSince(since, limit);
+    }
+
+    /*
+     * ## 12: Our API should be able to report the number of messages without retrieving them.
+     *
+     * @return the number of messages.
+     */
+    public long getMessageCount() {
+        return messageCounters.getTotal();
+    }
+
+    /*
+     * ## 13: Our API should be able to report the number of messages a particular user has posted.
+     *
+     * @param account_id the account_id for a particular user.
+     * @return the number of messages posted by the account, 0 if there are none.
+     */
+    public long getMessageCount(int account_id) {
+        return messageCounters.getCount(account_id);
+    }
+
+    /*
+     * ## 14: Our API should be able to report which users have posted the most messages.
+     *
+     * @param limit the most users to return.
+     * @return the users with the most messages, most first.  Counts may be slightly too high for users near the
+     *         bottom of a long list; each entry says by how much at most.
+     */
+    public List<PosterCount> getTopPosters(int limit) {
+        return messageAnalytics.getTopPosters(limit);
+    }
+
+    /*
+     * ## 15: Our API should be able to report how many messages were posted per minute or per hour.
+     *
+     * @param interval "minute" or "hour".
+     * @param to a time in the last bucket wanted, or null for the newest bucket with messages.
+     * @param buckets the number of buckets wanted.
+     * @return the number of messages posted in each bucket, oldest first.  Returns null if the interval is not known.
+     */
+    public List<VolumeBucket> getMessageVolume(String interval, Long to, int buckets) {
+        return messageAnalytics.getVolume(interval, to, buckets);
+    }
+
+    /*
+     * ## 16: Our API should be able to export every message, or those of one user or time range, without holding
+     * them all in memory.
+     *
+     * @param posted_by only messages posted by this account, or null for every account.
+     * @param from the earliest time_posted_epoch to include.
+     * @param to the latest time_posted_epoch to include.
+     * @param sink receives each message in message_id order, as it is read from the store.
+     */
+    public void exportMessages(Integer posted_by, long from, long to, Consumer<Message> sink) {
+        messageDAO.forEachMessage(posted_by, from, to, sink);
+    }
+
+    /*
+     * @return how many message lookups have been run, and how many callers shared a lookup already running.
+     */
+    public List<SingleFlight.Stats> getCoalescingStats() {
+        return List.of(messageLookups.getStats(), allMessagesLookups.getStats());
+    }
+
+    /*
+     * The registration rules that do not depend on other accounts: the username is not blank and the password is at
+     * least 4 characters long.  Shared with the bulk importer, so imported accounts follow the same rules.
+     *
+     * @param account an object representing a new account.
+     * @return true if the account may be registered, as long as its username is not already taken.
+     */
+    public static boolean isValidNewAccount(Account account) {
+        String username = account.getUsername();
+        String password = account.getPassword();
+        return username != null && password != null && password.length() >= 4 && username.length() > 0;
+    }
+
+    /*
+     * The rules for a message_text: it is not blank and is not over 255 characters.  Shared with the bulk importer,
+     * so imported messages follow the same rules.
+     *
+     * @param message_text the text of a new or updated message.
+     * @return true if the text may be posted.
+     */
+    public static boolean isValidMessageText(String message_text) {
+        return message_text != null && message_text.length() > 0 && message_text.length() <= 255;
+    }
+
+    /*
+     * Subscribe to the messages created, updated and deleted through this service.
+     *
+     * @param posted_by only receive changes to messages posted by this account, or null for all messages.
+     * @param sink receives each change as it happens.
+     * @param onDropped called if the subscriber is dropped for falling too far behind, or because sending to it 
+     *        failed or timed out.
+     * @return the subscription, which should be cancelled when the subscriber goes away.
+     */
+    public MessageEventBus.Subscription subscribeToMessages(Integer posted_by, Consumer<MessageEvent> sink, 
+            Runnable onDropped) {
+        return messageEventBus.subscribe(posted_by, sink, onDropped);
+    }
+
+    /*
+     * Run the DAO calls of one service call in a single transaction on one connection (see UnitOfWork), when the 
+     * stores are the H2 tables. The caches and subscribers are only told about a write once it has been committed.
+     */
+    private <T> T inUnitOfWork(Supplier<T> work) {
+        return useUnitOfWork ? UnitOfWork.run(database, work) : work.get();
+    }
+
+    /*
+     * Make readers arriving after a write to a message start new lookups rather than join ones that began before it.
+     */
+    private void forgetLookups(int message_id) {
+        messageLookups.forget(message_id);
+        allMessagesLookups.forget(ALL_MESSAGES);
+        messageSnapshot.invalidate();
+    }
+
+    /*
+     * Push a change to the message stream subscribers. Does nothing if the change did not happen.
+     */
+    private void publish(String event_type, Message message) {
+        if(message != null) {
+            messageEventBus.publish(new MessageEvent(event_type, message));
+        }
+    }
+
 }
@@ -0,0 +1,76 @@
+package Service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Finds the keys seen most often in a stream using a fixed number of counters (the Space-Saving algorithm of
+ * Metwally, Agrawal and El Abbadi).
+ *
+ * Each counter holds a key, its count and the most it may be over-counted by. A key without a counter takes over the
+ * counter with the smallest count, inheriting that count as its error. Any key seen more than total / capacity times
+ * is guaranteed to hold a counter, and a key's true count is between count - error and count.
+ *
+ * Memory and the cost of every operation are bounded by the capacity, however many distinct keys there are.
+ */
+public class SpaceSavingTopK {
+
+    private final int capacity;
+    private final Map<Integer, long[]> counters;
+
+    /*
+     * @param capacity the number of counters kept. A few times the number of top keys wanted gives accurate results.
+     */
+    public SpaceSavingTopK(int capacity) {
+        this.capacity = capacity;
+        this.counters = new HashMap<>(capacity * 2);
+    }
+
+    /*
+     * Count a key weight more times.
+     */
+    public synchronized void add(int key, long weight) {
+        long[] counter = counters.get(key);
+        if(counter != null) {
+            counter[0] += weight;
+            return;
+        }
+        if(counters.size() < capacity) {
+            counters.put(key, new long[] { weight, 0 });
+            return;
+        }
+        Map.Entry<Integer, long[]> smallest = null;
+        for(Map.Entry<Integer, long[]> entry : counters.entrySet()) {
+            if(smallest == null || entry.getValue()[0] < smallest.getValue()[0]) {
+                smallest = entry;
+            }
+        }
+        long[] replaced = counters.remove(smallest.getKey());
+        counters.put(key, new long[] { replaced[0] + weight, replaced[0] });
+    }
+
+    /*
+     * Count a key one fewer time, if it holds a counter. Keys that do not hold one are already counted as rarely
+     * as possible.
+     */
+    public synchronized void remove(int key) {
+        long[] counter = counters.get(key);
+        if(counter != null && counter[0] > 0) {
+            counter[0]--;
+            counter[1] = Math.min(counter[1], counter[0]);
+        }
+    }
+
+    /*
+     * @param limit the most keys to return.
+     * @return {key, count, error} for the keys with the largest counts, largest first.
+     */
+    public synchronized List<long[]> top(int limit) {
+        List<long[]> top = new ArrayList<>(counters.size());
+        counters.forEach((key, counter) -> top.add(new long[] { key, counter[0], counter[1] }));
+        top.sort((a, b) -> Long.compare(b[1], a[1]));
+        return top.size() > limit ? new ArrayList<>(top.subList(0, limit)) : top;
+    }
+}
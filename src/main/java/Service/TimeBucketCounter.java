@@ -0,0 +1,109 @@
+package Service;
+
+import java.util.Arrays;
+
+/*
+ * Counts messages per fixed-length time bucket (for example per minute) over a sliding window of the most recent
+ * buckets, in a ring of slots.
+ *
+ * Bucket b is counted in slot b % slots. Each slot remembers which bucket it is counting, so when time moves past
+ * the window a slot is simply reset and reused. Messages whose bucket has already left the window are not counted.
+ * Memory is fixed by the number of slots.
+ *
+ * Times are supplied by clients, so a time more than MAX_SKEW_SECONDS ahead of the server's clock is not counted (nor
+ * is its deletion while it is still that far ahead): otherwise one message dated far in the future would move the
+ * window past every real bucket, and the ones after it would no longer be counted.
+ */
+public class TimeBucketCounter {
+
+    public static final long MAX_SKEW_SECONDS = 5 * 60;
+
+    private final long bucketSeconds;
+    private final long[] bucketOfSlot;
+    private final long[] counts;
+    private long newestBucket = Long.MIN_VALUE;
+
+    /*
+     * @param bucketSeconds the length of a bucket, in seconds.
+     * @param slots the number of most recent buckets kept.
+     */
+    public TimeBucketCounter(long bucketSeconds, int slots) {
+        this.bucketSeconds = bucketSeconds;
+        this.bucketOfSlot = new long[slots];
+        this.counts = new long[slots];
+        Arrays.fill(bucketOfSlot, Long.MIN_VALUE);
+    }
+
+    /*
+     * Add to the count of the bucket holding a time.
+     *
+     * @param epochSeconds the time, in seconds since the epoch.
+     * @param delta the amount to add, negative for messages that have been deleted.
+     */
+    public void add(long epochSeconds, long delta) {
+        add(epochSeconds, delta, System.currentTimeMillis() / 1000);
+    }
+
+    /*
+     * Add to the count of the bucket holding a time, as seen from a given server time.
+     *
+     * @param epochSeconds the time, in seconds since the epoch.
+     * @param delta the amount to add, negative for messages that have been deleted.
+     * @param nowSeconds the server's time, in seconds since the epoch.
+     */
+    public synchronized void add(long epochSeconds, long delta, long nowSeconds) {
+        if(epochSeconds > nowSeconds + MAX_SKEW_SECONDS) {
+            return;
+        }
+        long bucket = Math.floorDiv(epochSeconds, bucketSeconds);
+        if(newestBucket != Long.MIN_VALUE && bucket <= newestBucket - bucketOfSlot.length) {
+            return;
+        }
+        newestBucket = Math.max(newestBucket, bucket);
+        int slot = (int) Math.floorMod(bucket, (long) bucketOfSlot.length);
+        if(bucketOfSlot[slot] != bucket) {
+            if(bucketOfSlot[slot] > bucket) {
+                return;
+            }
+            bucketOfSlot[slot] = bucket;
+            counts[slot] = 0;
+        }
+        counts[slot] += delta;
+    }
+
+    /*
+     * @return the length of a bucket, in seconds.
+     */
+    public long getBucketSeconds() {
+        return bucketSeconds;
+    }
+
+    /*
+     * @return the number of buckets kept.
+     */
+    public int getSlots() {
+        return bucketOfSlot.length;
+    }
+
+    /*
+     * @param toEpochSeconds a time in the last bucket wanted, or null for the newest bucket counted.
+     * @param buckets the number of buckets wanted, at most getSlots().
+     * @return {bucket start in seconds since the epoch, count} for each bucket, oldest first. Buckets with no
+     *         messages, or that have left the window, have a count of 0. Empty if nothing has been counted yet.
+     */
+    public synchronized long[][] getCounts(Long toEpochSeconds, int buckets) {
+        if(newestBucket == Long.MIN_VALUE) {
+            return new long[0][];
+        }
+        long last = toEpochSeconds == null ? newestBucket : Math.floorDiv(toEpochSeconds, bucketSeconds);
+        int size = Math.min(buckets, bucketOfSlot.length);
+        long[][] result = new long[size][];
+        for(int i = 0; i < size; i++) {
+            long bucket = last - size + 1 + i;
+            int slot = (int) Math.floorMod(bucket, (long) bucketOfSlot.length);
+            long count = bucketOfSlot[slot] == bucket ? counts[slot] : 0;
+            result[i] = new long[] { bucket * bucketSeconds, count };
+        }
+        return result;
+    }
+}
@@ -0,0 +1,518 @@
+package Util;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Model.Account;
+import Model.Message;
+import Service.SocialMediaService;
+
+/**
+ * Loads accounts and messages from NDJSON or CSV files straight into the database, much faster than registering and
+ * posting them one request at a time. It must be run while the application is stopped:
+ *
+ *   java -cp target/classes:$(cat cp.txt) Util.BulkImporter [--accounts file] [--messages file]
+ *
+ * Files ending in .csv are read as CSV with a header line naming the columns, in the format written by
+ * GET /export/messages?format=csv; any other file is read as NDJSON, one JSON object per line. Accounts are imported
+ * before messages. An account_id or message_id in the file is kept unless it is already taken, in which case the
+ * row is rejected, and rows without one are given new ids above the largest one in the table.
+ *
+ * Every row is checked with the same rules as SocialMediaService: accounts with SocialMediaService.isValidNewAccount
+ * and an unused username, messages with SocialMediaService.isValidMessageText and a posted_by that is an existing
+ * account. Rows that fail, or cannot be parsed, are written to a reject file next to the input (input + ".rejects"),
+ * one per line as: line number, tab, reason, tab, the original row.
+ *
+ * The file is read in chunks of CHUNK_ROWS rows, which are parsed and checked in parallel on a fork-join pool and
+ * then inserted in order, one JDBC batch and one transaction per chunk. The username unique constraint and the
+ * posted_by foreign key are dropped for the import and added back at the end, which the checks above make safe. They
+ * are added back even if the import fails, since every chunk committed before the failure was checked too.
+ *
+ * Each chunk's transaction also records how many rows of the file are done in the table import_checkpoint, so an
+ * import that is interrupted carries on from the last committed chunk when started again with the same file. The
+ * checkpoint is removed once the file is finished.
+ *
+ * The service's message counts and change log are not updated. The counts' checkpoint (the message_stats table) is
+ * dropped instead, so that they are recounted at the next startup.
+ */
+public class BulkImporter {
+
+	public static final int CHUNK_ROWS = 10000;
+	private static final int CHUNKS_IN_FLIGHT = Runtime.getRuntime().availableProcessors() * 2;
+
+	private static final ObjectMapper jsonMapper = new ObjectMapper();
+
+	public static void main(String[] args) throws Exception {
+		Path accounts = null;
+		Path messages = null;
+		for (int i = 0; i + 1 < args.length; i += 2) {
+			if (args[i].equals("--accounts")) {
+				accounts = Paths.get(args[i + 1]);
+			} else if (args[i].equals("--messages")) {
+				messages = Paths.get(args[i + 1]);
+			}
+		}
+		if (accounts == null && messages == null) {
+			System.out.println("usage: BulkImporter [--accounts file] [--messages file]");
+			return;
+		}
+		try (Connection connection = ConnectionUtil.getConnection()) {
+			if (accounts != null) {
+				System.out.println("accounts: " + importAccounts(connection, accounts));
+			}
+			if (messages != null) {
+				System.out.println("messages: " + importMessages(connection, messages));
+			}
+		}
+	}
+
+	/**
+	 * Import a file of accounts.
+	 *
+	 * @param connection a connection to the database, which is left open.
+	 * @param file the NDJSON or CSV file.
+	 * @return how many accounts were imported and rejected, and how fast.
+	 */
+	public static Result importAccounts(Connection connection, Path file)
+			throws IOException, SQLException, InterruptedException, ExecutionException {
+		Set<String> usernames = new HashSet<>();
+		BitSet accountIds = new BitSet();
+		try (Statement statement = connection.createStatement();
+				ResultSet rs = statement.executeQuery("SELECT account_id, username FROM account;")) {
+			while (rs.next()) {
+				accountIds.set(rs.getInt(1));
+				usernames.add(rs.getString(2));
+			}
+		}
+		RowType<Account> type = new RowType<Account>() {
+			public Account parse(Map<String, String> csv, String json) throws IOException {
+				if (json != null) {
+					return jsonMapper.readValue(json, Account.class);
+				}
+				return new Account(parseInt(csv.get("account_id")), csv.get("username"), csv.get("password"));
+			}
+
+			public String check(Account account) {
+				return SocialMediaService.isValidNewAccount(account) ? null : "username is blank or password is too short";
+			}
+
+			public String checkInOrder(Account account) {
+				return usernames.add(account.getUsername()) ? null : "username is already taken";
+			}
+
+			public int getId(Account account) {
+				return account.getAccount_id();
+			}
+
+			public String insert() {
+				return "INSERT INTO account (account_id, username, password) VALUES (?, ?, ?);";
+			}
+
+			public void bind(Account account, int id, PreparedStatement ps) throws SQLException {
+				ps.setInt(1, id);
+				ps.setString(2, account.getUsername());
+				ps.setString(3, account.getPassword());
+			}
+		};
+
+		dropConstraint(connection, "ACCOUNT", "UNIQUE");
+		try {
+			return run(connection, file, accountIds, type);
+		} finally {
+			if (findConstraint(connection, "ACCOUNT", "UNIQUE") == null) {
+				execute(connection, "ALTER TABLE account ADD CONSTRAINT account_username_unique UNIQUE (username);");
+			}
+			restartIdentity(connection, "account", "account_id");
+		}
+	}
+
+	/**
+	 * Import a file of messages. Their posters must already be in the account table.
+	 *
+	 * @param connection a connection to the database, which is left open.
+	 * @param file the NDJSON or CSV file.
+	 * @return how many messages were imported and rejected, and how fast.
+	 */
+	public static Result importMessages(Connection connection, Path file)
+			throws IOException, SQLException, InterruptedException, ExecutionException {
+		BitSet accountIds = readIds(connection, "SELECT account_id FROM account;");
+		BitSet messageIds = readIds(connection, "SELECT message_id FROM message;");
+		RowType<Message> type = new RowType<Message>() {
+			public Message parse(Map<String, String> csv, String json) throws IOException {
+				if (json != null) {
+					return jsonMapper.readValue(json, Message.class);
+				}
+				return new Message(parseInt(csv.get("message_id")), parseInt(csv.get("posted_by")),
+						csv.get("message_text"), Long.parseLong(csv.get("time_posted_epoch")));
+			}
+
+			public String check(Message message) {
+				if (!SocialMediaService.isValidMessageText(message.getMessage_text())) {
+					return "message_text is blank or over 255 characters";
+				}
+				return message.getPosted_by() > 0 && accountIds.get(message.getPosted_by()) ? null
+						: "posted_by is not an account";
+			}
+
+			public String checkInOrder(Message message) {
+				return null;
+			}
+
+			public int getId(Message message) {
+				return message.getMessage_id();
+			}
+
+			public String insert() {
+				return "INSERT INTO message (message_id, posted_by, message_text, time_posted_epoch) VALUES (?, ?, ?, ?);";
+			}
+
+			public void bind(Message message, int id, PreparedStatement ps) throws SQLException {
+				ps.setInt(1, id);
+				ps.setInt(2, message.getPosted_by());
+				ps.setString(3, message.getMessage_text());
+				ps.setLong(4, message.getTime_posted_epoch());
+			}
+		};
+
+		dropConstraint(connection, "MESSAGE", "FOREIGN KEY");
+		try {
+			return run(connection, file, messageIds, type);
+		} finally {
+			if (findConstraint(connection, "MESSAGE", "FOREIGN KEY") == null) {
+				execute(connection, "ALTER TABLE message ADD CONSTRAINT message_posted_by_fk "
+						+ "FOREIGN KEY (posted_by) REFERENCES account(account_id);");
+			}
+			restartIdentity(connection, "message", "message_id");
+			execute(connection, "DROP TABLE IF EXISTS message_stats;");
+		}
+	}
+
+	/**
+	 * How to read, check and insert one kind of row. parse and check run on the fork-join pool, checkInOrder and
+	 * bind on the importing thread, in file order.
+	 */
+	private interface RowType<T> {
+		T parse(Map<String, String> csv, String json) throws IOException;
+
+		String check(T row);
+
+		String checkInOrder(T row);
+
+		/** @return the id given in the file, or 0 if there was none. */
+		int getId(T row);
+
+		/** @return the INSERT statement, whose first parameter is the id. */
+		String insert();
+
+		void bind(T row, int id, PreparedStatement ps) throws SQLException;
+	}
+
+	/**
+	 * One row of the file: where it was, what it said, and either what it parsed to or why it was rejected.
+	 */
+	private static class Row<T> {
+		final long line;
+		final String text;
+		T value;
+		String reject;
+
+		Row(long line, String text) {
+			this.line = line;
+			this.text = text;
+		}
+	}
+
+	/**
+	 * Import a file, giving rows without an id new ids above every id in takenIds. A row whose id is already in
+	 * takenIds is rejected, so imported ids never collide with existing or generated ones.
+	 */
+	private static <T> Result run(Connection connection, Path file, BitSet takenIds, RowType<T> type)
+			throws IOException, SQLException, InterruptedException, ExecutionException {
+		String source = file.toAbsolutePath().toString();
+		boolean csv = source.toLowerCase().endsWith(".csv");
+		Path rejectFile = Paths.get(source + ".rejects");
+		long start = System.nanoTime();
+		long done = readCheckpoint(connection, source);
+		Result result = new Result();
+
+		ForkJoinPool pool = new ForkJoinPool();
+		boolean autoCommit = connection.getAutoCommit();
+		connection.setAutoCommit(false);
+		try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8);
+				BufferedWriter rejects = Files.newBufferedWriter(rejectFile, StandardCharsets.UTF_8,
+						StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+				PreparedStatement insert = connection.prepareStatement(type.insert());
+				PreparedStatement checkpoint = connection.prepareStatement(
+						"MERGE INTO import_checkpoint (source, rows_done) KEY (source) VALUES (?, ?);")) {
+			long[] line = { 0 };
+			String[] header = csv ? splitCsv(readRecord(reader, line, true)) : null;
+			long skipped = 0;
+			while (skipped < done && readRecord(reader, line, csv) != null) {
+				skipped++;
+			}
+
+			Deque<Future<List<Row<T>>>> inFlight = new ArrayDeque<>();
+			long rowsDone = done;
+			int nextId = Math.max(1, takenIds.length());
+			while (true) {
+				List<Row<T>> chunk = new ArrayList<>(CHUNK_ROWS);
+				String record;
+				while (chunk.size() < CHUNK_ROWS && (record = readRecord(reader, line, csv)) != null) {
+					chunk.add(new Row<>(line[0], record));
+				}
+				if (!chunk.isEmpty()) {
+					inFlight.add(pool.submit(() -> parseChunk(chunk, header, type)));
+				}
+				if (inFlight.isEmpty()) {
+					break;
+				}
+				if (chunk.isEmpty() || inFlight.size() >= CHUNKS_IN_FLIGHT) {
+					List<Row<T>> parsed = inFlight.poll().get();
+					for (Row<T> row : parsed) {
+						int id = row.reject == null ? type.getId(row.value) : 0;
+						if (row.reject == null && id > 0 && takenIds.get(id)) {
+							row.reject = "id " + id + " is already taken";
+						}
+						if (row.reject == null) {
+							row.reject = type.checkInOrder(row.value);
+						}
+						if (row.reject == null) {
+							if (id <= 0) {
+								id = nextId = takenIds.nextClearBit(nextId);
+							}
+							takenIds.set(id);
+							type.bind(row.value, id, insert);
+							insert.addBatch();
+							result.imported++;
+						} else {
+							rejects.write(row.line + "\t" + row.reject + "\t" + row.text.replace("\n", "\\n"));
+							rejects.newLine();
+							result.rejected++;
+						}
+					}
+					insert.executeBatch();
+					rowsDone += parsed.size();
+					checkpoint.setString(1, source);
+					checkpoint.setLong(2, rowsDone);
+					checkpoint.executeUpdate();
+					connection.commit();
+					rejects.flush();
+				}
+			}
+
+			execute(connection, "DELETE FROM import_checkpoint WHERE source = '" + source.replace("'", "''") + "';");
+			connection.commit();
+		} catch (SQLException | IOException | ExecutionException | InterruptedException e) {
+			connection.rollback();
+			throw e;
+		} finally {
+			connection.setAutoCommit(autoCommit);
+			pool.shutdown();
+		}
+		result.resumedAfter = done;
+		result.seconds = (System.nanoTime() - start) / 1e9;
+		return result;
+	}
+
+	private static <T> List<Row<T>> parseChunk(List<Row<T>> chunk, String[] header, RowType<T> type) {
+		for (Row<T> row : chunk) {
+			try {
+				Map<String, String> csv = null;
+				if (header != null) {
+					String[] fields = splitCsv(row.text);
+					if (fields.length != header.length) {
+						row.reject = "expected " + header.length + " columns but found " + fields.length;
+						continue;
+					}
+					csv = new HashMap<>();
+					for (int i = 0; i < header.length; i++) {
+						csv.put(header[i], fields[i]);
+					}
+				}
+				row.value = type.parse(csv, header == null ? row.text : null);
+				row.reject = row.value == null ? "row is null" : type.check(row.value);
+			} catch (IOException | RuntimeException e) {
+				String reason = e.getMessage() == null ? e.getClass().getSimpleName() : e.getMessage();
+				row.reject = "cannot be parsed: " + reason.replace('\n', ' ').replace('\t', ' ');
+			}
+		}
+		return chunk;
+	}
+
+	/**
+	 * Read the next row of the file, skipping blank lines. A CSV row continues onto the next line while it is
+	 * inside a quoted field.
+	 *
+	 * @param line the line number of the last line read, which is updated.
+	 */
+	private static String readRecord(BufferedReader reader, long[] line, boolean csv) throws IOException {
+		String record;
+		do {
+			record = reader.readLine();
+			line[0]++;
+		} while (record != null && record.isBlank());
+		while (csv && record != null && record.chars().filter(c -> c == '"').count() % 2 != 0) {
+			String next = reader.readLine();
+			if (next == null) {
+				break;
+			}
+			line[0]++;
+			record = record + "\n" + next;
+		}
+		return record;
+	}
+
+	/**
+	 * Split one CSV row into its fields, as written by MessageExportWriter: fields holding commas, quotes or line
+	 * breaks are quoted, and quotes inside them are doubled.
+	 */
+	static String[] splitCsv(String record) {
+		if (record == null) {
+			return new String[0];
+		}
+		List<String> fields = new ArrayList<>();
+		StringBuilder field = new StringBuilder();
+		boolean quoted = false;
+		for (int i = 0; i < record.length(); i++) {
+			char c = record.charAt(i);
+			if (quoted) {
+				if (c == '"' && i + 1 < record.length() && record.charAt(i + 1) == '"') {
+					field.append('"');
+					i++;
+				} else if (c == '"') {
+					quoted = false;
+				} else {
+					field.append(c);
+				}
+			} else if (c == '"') {
+				quoted = true;
+			} else if (c == ',') {
+				fields.add(field.toString());
+				field.setLength(0);
+			} else {
+				field.append(c);
+			}
+		}
+		fields.add(field.toString());
+		return fields.toArray(new String[0]);
+	}
+
+	private static BitSet readIds(Connection connection, String sql) throws SQLException {
+		BitSet ids = new BitSet();
+		try (Statement statement = connection.createStatement(); ResultSet rs = statement.executeQuery(sql)) {
+			while (rs.next()) {
+				ids.set(rs.getInt(1));
+			}
+		}
+		return ids;
+	}
+
+	private static int parseInt(String value) {
+		return value == null || value.isEmpty() ? 0 : Integer.parseInt(value);
+	}
+
+	private static long readCheckpoint(Connection connection, String source) throws SQLException {
+		execute(connection, "CREATE TABLE IF NOT EXISTS import_checkpoint (source varchar(1024) primary key, rows_done bigint);");
+		try (PreparedStatement ps = connection.prepareStatement("SELECT rows_done FROM import_checkpoint WHERE source = ?;")) {
+			ps.setString(1, source);
+			try (ResultSet rs = ps.executeQuery()) {
+				return rs.next() ? rs.getLong(1) : 0;
+			}
+		}
+	}
+
+	/**
+	 * Drop a table's constraint of the given type, if it has one. It is added back once the import is finished,
+	 * including by a later run that resumes an interrupted import.
+	 */
+	private static void dropConstraint(Connection connection, String table, String type) throws SQLException {
+		String name = findConstraint(connection, table, type);
+		if (name != null) {
+			execute(connection, "ALTER TABLE " + table + " DROP CONSTRAINT \"" + name + "\";");
+		}
+	}
+
+	/**
+	 * @return the name of a table's constraint of the given type, or null if it has none.
+	 */
+	private static String findConstraint(Connection connection, String table, String type) throws SQLException {
+		String name = null;
+		String sql = "SELECT constraint_name FROM information_schema.table_constraints "
+				+ "WHERE table_name = ? AND constraint_type = ?;";
+		try (PreparedStatement ps = connection.prepareStatement(sql)) {
+			ps.setString(1, table);
+			ps.setString(2, type);
+			try (ResultSet rs = ps.executeQuery()) {
+				if (rs.next()) {
+					name = rs.getString(1);
+				}
+			}
+		}
+		return name;
+	}
+
+	/**
+	 * Make the next generated id follow the largest id in the table, which may have been imported.
+	 */
+	private static void restartIdentity(Connection connection, String table, String column) throws SQLException {
+		long next;
+		try (Statement statement = connection.createStatement();
+				ResultSet rs = statement.executeQuery("SELECT COALESCE(MAX(" + column + "), 0) + 1 FROM " + table + ";")) {
+			rs.next();
+			next = rs.getLong(1);
+		}
+		execute(connection, "ALTER TABLE " + table + " ALTER COLUMN " + column + " RESTART WITH " + next + ";");
+	}
+
+	private static void execute(Connection connection, String sql) throws SQLException {
+		try (Statement statement = connection.createStatement()) {
+			statement.execute(sql);
+		}
+	}
+
+	/**
+	 * What an import did.
+	 */
+	public static class Result {
+		public long imported;
+		public long rejected;
+		public long resumedAfter;
+		public double seconds;
+
+		public double getRowsPerSecond() {
+			return seconds > 0 ? (imported + rejected) / seconds : 0;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%d imported, %d rejected%s in %.1f s (%.0f rows/s)", imported, rejected,
+					resumedAfter > 0 ? ", resumed after " + resumedAfter + " rows," : "", seconds,
+					getRowsPerSecond());
+		}
+	}
+}
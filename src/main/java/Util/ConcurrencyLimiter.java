@@ -0,0 +1,160 @@
+package Util;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Limits how many requests to one route may run at once, and adapts the limit to the latency the route shows, so that
+ * when the database slows down excess requests are turned away at once instead of queueing on server threads until
+ * they all time out.
+ *
+ * The limit follows a gradient: every completed request updates a recent average of the route's latency and the
+ * minimum latency seen over the last BASELINE_WINDOW_NANOS to twice that, which is what the route costs without any
+ * queueing. While the average stays within TOLERANCE times the minimum the limit grows by about the square root of
+ * itself; once the average climbs above it, which is what queueing looks like, the limit shrinks in proportion, by at
+ * most half. The limit never grows while fewer than half of it are in use, and always stays between the configured
+ * minimum and maximum.
+ *
+ * The minimum, initial and maximum limit of a route are read from the system properties
+ * socialmedia.limit.{route}.min, .initial and .max, where {route} is the name the limiter was created with, and fall
+ * back to socialmedia.limit.min, .initial and .max, and then to 4, 50 and 500.
+ */
+public class ConcurrencyLimiter {
+
+	public static final String PROPERTY_PREFIX = "socialmedia.limit.";
+	private static final double TOLERANCE = 1.5;
+	private static final double SHORT_SMOOTHING = 0.1;
+	private static final long BASELINE_WINDOW_NANOS = 10_000_000_000L;
+	private static final double LIMIT_SMOOTHING = 0.2;
+
+	private final String name;
+	private final int minLimit;
+	private final int maxLimit;
+	private final AtomicInteger inFlight = new AtomicInteger();
+	private final LongAdder accepted = new LongAdder();
+	private final LongAdder rejected = new LongAdder();
+	private volatile int limit;
+	private double estimatedLimit;
+	private double shortRttNanos;
+	private long windowStartNanos;
+	private long windowMinRttNanos = Long.MAX_VALUE;
+	private long previousMinRttNanos = Long.MAX_VALUE;
+
+	/**
+	 * @param name the name of the route, used for configuration and metrics.
+	 */
+	public ConcurrencyLimiter(String name) {
+		this(name, intProperty(name, "min", 4), intProperty(name, "initial", 50), intProperty(name, "max", 500));
+	}
+
+	public ConcurrencyLimiter(String name, int minLimit, int initialLimit, int maxLimit) {
+		this.name = name;
+		this.minLimit = minLimit;
+		this.maxLimit = maxLimit;
+		this.estimatedLimit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+		this.limit = (int) estimatedLimit;
+		this.windowStartNanos = System.nanoTime();
+	}
+
+	/**
+	 * Take a place for a request if fewer than the limit are in flight.
+	 *
+	 * @return whether the request may run. If it may, release must be called once it is done.
+	 */
+	public boolean tryAcquire() {
+		while (true) {
+			int current = inFlight.get();
+			if (current >= limit) {
+				rejected.increment();
+				return false;
+			}
+			if (inFlight.compareAndSet(current, current + 1)) {
+				accepted.increment();
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Give back the place taken by tryAcquire, and adapt the limit to how long the request took.
+	 *
+	 * @param latencyNanos how long the request took.
+	 */
+	public void release(long latencyNanos) {
+		int wasInFlight = inFlight.getAndDecrement();
+		update(latencyNanos, wasInFlight);
+	}
+
+	private synchronized void update(long latencyNanos, int wasInFlight) {
+		long now = System.nanoTime();
+		if (now - windowStartNanos > BASELINE_WINDOW_NANOS) {
+			previousMinRttNanos = windowMinRttNanos;
+			windowMinRttNanos = Long.MAX_VALUE;
+			windowStartNanos = now;
+		}
+		windowMinRttNanos = Math.min(windowMinRttNanos, latencyNanos);
+		if (shortRttNanos == 0) {
+			shortRttNanos = latencyNanos;
+			return;
+		}
+		shortRttNanos += (latencyNanos - shortRttNanos) * SHORT_SMOOTHING;
+		// A route that is not using half its limit gives no evidence that more would be fine.
+		if (wasInFlight < estimatedLimit / 2) {
+			return;
+		}
+		double gradient = Math.max(0.5, Math.min(1.0, TOLERANCE * getMinRttNanos() / shortRttNanos));
+		double newLimit = estimatedLimit * gradient + Math.sqrt(estimatedLimit);
+		newLimit = estimatedLimit * (1 - LIMIT_SMOOTHING) + newLimit * LIMIT_SMOOTHING;
+		estimatedLimit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+		limit = (int) estimatedLimit;
+	}
+
+	private long getMinRttNanos() {
+		return Math.min(windowMinRttNanos, previousMinRttNanos);
+	}
+
+	/**
+	 * @return how many seconds a rejected client should wait before trying again: the recent latency of the route,
+	 *         rounded up to at least a second.
+	 */
+	public synchronized long getRetryAfterSeconds() {
+		return Math.max(1, (long) Math.ceil(shortRttNanos / 1e9));
+	}
+
+	/**
+	 * @return the current limit, the requests in flight and how many have been accepted and rejected.
+	 */
+	public synchronized LimiterStats getStats() {
+		return new LimiterStats(name, limit, inFlight.get(), accepted.sum(), rejected.sum(),
+				shortRttNanos / 1e6, windowMinRttNanos == Long.MAX_VALUE ? 0 : getMinRttNanos() / 1e6);
+	}
+
+	private static int intProperty(String name, String key, int defaultValue) {
+		return Integer.getInteger(PROPERTY_PREFIX + name + "." + key,
+				Integer.getInteger(PROPERTY_PREFIX + key, defaultValue));
+	}
+
+	/**
+	 * How one route's limiter is doing, as reported by GET /debug/limits.
+	 */
+	public static class LimiterStats {
+		public final String route;
+		public final int limit;
+		public final int in_flight;
+		public final long accepted;
+		public final long rejected;
+		public final double rtt_ms;
+		public final double min_rtt_ms;
+
+		LimiterStats(String route, int limit, int in_flight, long accepted, long rejected, double rtt_ms,
+				double min_rtt_ms) {
+			this.route = route;
+			this.limit = limit;
+			this.in_flight = in_flight;
+			this.accepted = accepted;
+			this.rejected = rejected;
+			this.rtt_ms = rtt_ms;
+			this.min_rtt_ms = min_rtt_ms;
+		}
+	}
+}
@@ -2,9 +2,17 @@ package Util;
 
 import java.io.FileNotFoundException;
 import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.atomic.AtomicLong;
 
+import org.h2.jdbcx.JdbcConnectionPool;
 import org.h2.jdbcx.JdbcDataSource;
 import org.h2.tools.RunScript;
 
@@ -13,15 +21,38 @@ import org.h2.tools.RunScript;
  * our database. This class utilizes the singleton design pattern. We will be
  * utilizing an in-memory called h2database for the sql demos.
  *
- * DO NOT CHANGE ANYTHING IN THIS CLASS
+ * The database is stored the way the StorageProfile named by the socialmedia.storage.profile property says: on disk
+ * with delayed writes unless another profile is chosen.
+ *
+ * The DAOs route their work through two separate pools, so that long scans cannot take every connection away from
+ * short writes:
+ *   getReadConnection()    connections for queries, at most READ_POOL_SIZE_PROPERTY of them (default 8)
+ *   getWriteConnection()   connections for inserts, updates and deletes, at most WRITE_POOL_SIZE_PROPERTY (default 4)
+ * The pools only separate the work: H2 sets its access mode for a whole database, not per connection, so a connection
+ * from the read pool can still write, and the DAOs must only query with it. Connections from either pool must be
+ * closed to return them to the pool. While a UnitOfWork is running on the calling thread, both hand out its
+ * connection instead. A sample of the connections the pools hand out is tracked by a LeakDetector, which reports
+ * those that are held too long or never closed.
+ *
+ * The pools belong to a Database, and the static methods use the application's one. Work that must not touch it, such
+ * as the warmup, can give the DAOs an empty in-memory Database of its own from createMemoryDatabase().
+ *
+ * getConnection() and resetTestDatabase() are used by the tests and keep their original, unpooled behaviour.
  */
 public class ConnectionUtil {
 
+	public static final String READ_POOL_SIZE_PROPERTY = "socialmedia.pool.read.size";
+	public static final String WRITE_POOL_SIZE_PROPERTY = "socialmedia.pool.write.size";
+
+	/**
+	 * How the database is stored, selected by StorageProfile.PROFILE_PROPERTY.
+	 */
+	private static StorageProfile profile = StorageProfile.fromProperty();
 	/**
-	 * url will represent our connection string. Since this is an in-memory db, we
-	 * will represent a file location to store the data
+	 * url will represent our connection string. Unless the memory profile is selected,
+	 * we will represent a file location to store the data
 	 */
-	private static String url = "jdbc:h2:./h2/db;";
+	private static String url = profile.getUrl("./h2/db");
 	/**
 	 * Default username for connecting to h2
 	 */
@@ -36,6 +67,16 @@ public class ConnectionUtil {
 	 */
 	private static JdbcDataSource pool = new JdbcDataSource();
 
+	/**
+	 * The application's database, with the bounded pools the DAOs use for reads and for writes.
+	 */
+	private static Database database;
+
+	/**
+	 * Tracks a sample of the connections the read and write pools hand out.
+	 */
+	private static LeakDetector leakDetector = new LeakDetector();
+
 	/**
 	 * static initialization block to establish credentials for DataSoure Pool
 	 */
@@ -43,6 +84,8 @@ public class ConnectionUtil {
 		pool.setURL(url);
 		pool.setUser(username);
 		pool.setPassword(password);
+
+		database = new Database(pool);
 	}
 
 	/**
@@ -58,17 +101,238 @@ public class ConnectionUtil {
 		return null;
 	}
 
+	/**
+	 * @return a connection for queries from the read pool, waiting for one to be returned if they are all in use.
+	 * @throws SQLException if no connection became free before the pool's timeout.
+	 */
+	public static Connection getReadConnection() throws SQLException {
+		return database.getReadConnection();
+	}
+
+	/**
+	 * @return a connection from the write pool, waiting for one to be returned if they are all in use.
+	 * @throws SQLException if no connection became free before the pool's timeout.
+	 */
+	public static Connection getWriteConnection() throws SQLException {
+		return database.getWriteConnection();
+	}
+
+	/**
+	 * @return the application's database.
+	 */
+	public static Database getDatabase() {
+		return database;
+	}
+
+	/**
+	 * Create an empty in-memory database with the application's tables and read and write pools of its own.
+	 *
+	 * @param name the name of the database, which must not be in use already.
+	 * @return the new database, which the caller must close when it is finished with it.
+	 * @throws SQLException if the tables cannot be created.
+	 */
+	public static Database createMemoryDatabase(String name) throws SQLException {
+		JdbcDataSource source = new JdbcDataSource();
+		source.setURL("jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1");
+		source.setUser(username);
+		source.setPassword(password);
+		InputStream script = ConnectionUtil.class.getResourceAsStream("/SocialMedia.sql");
+		if (script == null) {
+			throw new SQLException("SocialMedia.sql is not on the classpath");
+		}
+		Database memory = new Database(source);
+		try (Connection connection = source.getConnection();
+				Reader sqlReader = new InputStreamReader(script, StandardCharsets.UTF_8)) {
+			RunScript.execute(connection, sqlReader);
+		} catch (IOException | SQLException e) {
+			memory.close();
+			throw new SQLException("could not create the tables of " + name, e);
+		}
+		return memory;
+	}
+
+	/**
+	 * Create a bounded connection pool for another H2 database, such as a message shard, with the same credentials
+	 * as the main database.
+	 *
+	 * @param url the JDBC url of the database.
+	 * @param size the most connections the pool will hand out at once.
+	 * @return the new pool, which the caller must dispose of when it is finished with it.
+	 */
+	public static JdbcConnectionPool createPool(String url, int size) {
+		JdbcConnectionPool connections = JdbcConnectionPool.create(url, username, password);
+		connections.setMaxConnections(size);
+		return connections;
+	}
+
+	/**
+	 * Open every connection the read and write pools may hand out, and return them to the pools, so that opening the
+	 * database and its connections is done before the first request rather than during it.
+	 *
+	 * @throws SQLException if the database cannot be opened.
+	 */
+	public static void openPools() throws SQLException {
+		database.readPool.open();
+		database.writePool.open();
+	}
+
+	/**
+	 * @return how busy the read and write pools are.
+	 */
+	public static PoolStats[] getPoolStats() {
+		return new PoolStats[] { database.readPool.getStats(), database.writePool.getStats() };
+	}
+
+	/**
+	 * @return the storage profile the database was opened with.
+	 */
+	public static StorageProfile getStorageProfile() {
+		return profile;
+	}
+
+	/**
+	 * @return the connections the leak detector has found held too long or never closed.
+	 */
+	public static LeakDetector.Report getLeakReport() {
+		return leakDetector.getReport();
+	}
+
 	/**
 	 * For the purpose of testing, we will need to drop and recreate our database
 	 * tables to keep it consistent across all tests. The method will read the sql
 	 * file in resources. This will be performed before every test.
 	 */
 	public static void resetTestDatabase() {
-		try {
+		try (Connection connection = getConnection()) {
 			FileReader sqlReader = new FileReader("src/main/resources/SocialMedia.sql");
-			RunScript.execute(getConnection(), sqlReader);
+			RunScript.execute(connection, sqlReader);
 		} catch (SQLException | FileNotFoundException e) {
 			e.printStackTrace();
 		}
 	}
+
+	/**
+	 * One H2 database and the read and write pools the DAOs using it take their connections from. While a UnitOfWork
+	 * is running on the calling thread, both hand out its connection instead.
+	 */
+	public static class Database {
+		private final JdbcDataSource source;
+		private final RoutedPool readPool;
+		private final RoutedPool writePool;
+
+		private Database(JdbcDataSource source) {
+			this.source = source;
+			this.readPool = new RoutedPool("read", source, Integer.getInteger(READ_POOL_SIZE_PROPERTY, 8));
+			this.writePool = new RoutedPool("write", source, Integer.getInteger(WRITE_POOL_SIZE_PROPERTY, 4));
+		}
+
+		/**
+		 * @return a connection for queries from the read pool, waiting for one to be returned if they are all in use.
+		 * @throws SQLException if no connection became free before the pool's timeout.
+		 */
+		public Connection getReadConnection() throws SQLException {
+			Connection ambient = UnitOfWork.currentConnection();
+			if (ambient != null) {
+				return ambient;
+			}
+			return readPool.getConnection();
+		}
+
+		/**
+		 * @return a connection from the write pool, waiting for one to be returned if they are all in use.
+		 * @throws SQLException if no connection became free before the pool's timeout.
+		 */
+		public Connection getWriteConnection() throws SQLException {
+			Connection ambient = UnitOfWork.currentConnection();
+			if (ambient != null) {
+				return ambient;
+			}
+			return writePool.getConnection();
+		}
+
+		/**
+		 * Close the pools and shut the database down, which drops it if it is in memory.
+		 */
+		public void close() {
+			readPool.connections.dispose();
+			writePool.connections.dispose();
+			try (Connection connection = source.getConnection();
+					Statement statement = connection.createStatement()) {
+				statement.execute("SHUTDOWN");
+			} catch (SQLException e) {
+				System.out.println(e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * A bounded H2 connection pool that counts how often callers had to wait for a connection.
+	 */
+	private static class RoutedPool {
+		private final String name;
+		private final JdbcConnectionPool connections;
+		private final AtomicLong checkouts = new AtomicLong();
+		private final AtomicLong waits = new AtomicLong();
+		private final AtomicLong waitNanos = new AtomicLong();
+
+		RoutedPool(String name, JdbcDataSource source, int size) {
+			this.name = name;
+			this.connections = JdbcConnectionPool.create(source);
+			this.connections.setMaxConnections(size);
+		}
+
+		Connection getConnection() throws SQLException {
+			boolean saturated = connections.getActiveConnections() >= connections.getMaxConnections();
+			long start = System.nanoTime();
+			Connection connection = connections.getConnection();
+			checkouts.incrementAndGet();
+			if (saturated) {
+				waits.incrementAndGet();
+				waitNanos.addAndGet(System.nanoTime() - start);
+			}
+			return leakDetector.track(connection, name);
+		}
+
+		void open() throws SQLException {
+			Connection[] opened = new Connection[connections.getMaxConnections()];
+			try {
+				for (int i = 0; i < opened.length; i++) {
+					opened[i] = connections.getConnection();
+				}
+			} finally {
+				for (Connection connection : opened) {
+					if (connection != null) {
+						connection.close();
+					}
+				}
+			}
+		}
+
+		PoolStats getStats() {
+			return new PoolStats(name, connections.getActiveConnections(), connections.getMaxConnections(),
+					checkouts.get(), waits.get(), waitNanos.get() / 1_000_000);
+		}
+	}
+
+	/**
+	 * A snapshot of how busy one pool is. A pool is saturated when active has reached max, and every checkout made
+	 * while it was saturated is counted in waits.
+	 */
+	public static class PoolStats {
+		public final String pool;
+		public final int active;
+		public final int max;
+		public final long checkouts;
+		public final long waits;
+		public final long wait_ms;
+
+		PoolStats(String pool, int active, int max, long checkouts, long waits, long wait_ms) {
+			this.pool = pool;
+			this.active = active;
+			this.max = max;
+			this.checkouts = checkouts;
+			this.waits = waits;
+			this.wait_ms = wait_ms;
+		}
+	}
 }
@@ -0,0 +1,285 @@
+package Util;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Finds the keys, such as message_ids, read most often over the last WINDOW_SECONDS_PROPERTY seconds (default 60), so
+ * that hot keys can be seen before the database struggles with them.
+ *
+ * Reads are counted in a count-min sketch: DEPTH rows of WIDTH counters, each row indexed by a different hash of the
+ * key, so a key's count is at least its true count and over-counts by at most about 1/WIDTH of all reads (the
+ * smallest of its counters is used). The window is split into BUCKETS sketches, one per slice of time, and the oldest
+ * is cleared and reused when a new slice starts, so counts fade out a slice at a time.
+ *
+ * The TOP_K_PROPERTY keys (default 32) with the highest counts in the current slice are kept as candidates. A key
+ * replaces the candidate with the lowest count once its own count is higher; a candidate's count is only written again
+ * when it has doubled or a new slice has started, so a hot key does not write on every read. The report estimates each
+ * candidate's count over the whole window from the sketches.
+ *
+ * Recording is lock-free: a handful of atomic increments, and a scan of the candidates only for a key counted at
+ * least as often as the lowest of them. Counts added while a slice is being cleared may be lost, and two threads may
+ * admit the same key at once; both only make the report slightly less exact. Only SAMPLE_RATE_PROPERTY of the reads
+ * (default 0.1) are recorded and the report scales the counts back up, which keeps the cost well under 1% of a
+ * request even when every thread reads the same hot key; set it to 1 for exact counts of small numbers of reads, or
+ * ENABLED_PROPERTY to false to record nothing.
+ */
+public class HotKeyTracker {
+
+	public static final String ENABLED_PROPERTY = "socialmedia.hotkeys.enabled";
+	public static final String SAMPLE_RATE_PROPERTY = "socialmedia.hotkeys.sampleRate";
+	public static final String WINDOW_SECONDS_PROPERTY = "socialmedia.hotkeys.windowSeconds";
+	public static final String TOP_K_PROPERTY = "socialmedia.hotkeys.topK";
+	public static final int DEPTH = 4;
+	public static final int WIDTH = 2048;
+	public static final int BUCKETS = 6;
+
+	private final String name;
+	private final double sampleRate;
+	private final long bucketMillis;
+	private final Bucket[] buckets = new Bucket[BUCKETS];
+	private final AtomicReferenceArray<Candidate> candidates;
+	private volatile Candidate floor = new Candidate(0, -1, -1);
+
+	/**
+	 * A tracker configured by SAMPLE_RATE_PROPERTY, WINDOW_SECONDS_PROPERTY and TOP_K_PROPERTY, or one that records
+	 * nothing if ENABLED_PROPERTY is false.
+	 *
+	 * @param name what the keys are, such as "message_id".
+	 */
+	public HotKeyTracker(String name) {
+		this(name, Boolean.parseBoolean(System.getProperty(ENABLED_PROPERTY, "true"))
+				? Double.parseDouble(System.getProperty(SAMPLE_RATE_PROPERTY, "0.1")) : 0,
+				Long.getLong(WINDOW_SECONDS_PROPERTY, 60) * 1000, Integer.getInteger(TOP_K_PROPERTY, 32));
+	}
+
+	public HotKeyTracker(String name, double sampleRate, long windowMillis, int topK) {
+		this.name = name;
+		this.sampleRate = sampleRate;
+		this.bucketMillis = Math.max(1, windowMillis / BUCKETS);
+		for (int i = 0; i < BUCKETS; i++) {
+			buckets[i] = new Bucket();
+		}
+		this.candidates = new AtomicReferenceArray<>(topK);
+	}
+
+	/**
+	 * Count one read of a key.
+	 */
+	public void record(int key) {
+		if (sampleRate <= 0 || (sampleRate < 1 && ThreadLocalRandom.current().nextDouble() >= sampleRate)) {
+			return;
+		}
+		record(key, System.currentTimeMillis());
+	}
+
+	/**
+	 * Count one read of a key at a given time, whether or not it would be sampled.
+	 */
+	public void record(int key, long nowMillis) {
+		long slice = nowMillis / bucketMillis;
+		Bucket bucket = bucketFor(slice);
+		long hash = mix(key);
+		long count = Long.MAX_VALUE;
+		for (int row = 0; row < DEPTH; row++) {
+			count = Math.min(count, bucket.counts.incrementAndGet(index(hash, row)));
+		}
+		Candidate lowest = floor;
+		if (lowest.slice != slice || count >= lowest.count) {
+			offer(key, count, slice);
+		}
+	}
+
+	/**
+	 * @param limit the most keys to report.
+	 * @return the keys read most often over the window, most first.
+	 */
+	public Report getReport(int limit) {
+		return getReport(limit, System.currentTimeMillis());
+	}
+
+	/**
+	 * @param limit the most keys to report.
+	 * @param nowMillis the time at the end of the window.
+	 * @return the keys read most often over the window ending at nowMillis, most first.
+	 */
+	public Report getReport(int limit, long nowMillis) {
+		long slice = nowMillis / bucketMillis;
+		List<Bucket> live = new ArrayList<>();
+		for (Bucket bucket : buckets) {
+			long epoch = bucket.epoch.get();
+			if (epoch > slice - BUCKETS && epoch <= slice) {
+				live.add(bucket);
+			}
+		}
+		double scale = sampleRate > 0 ? 1 / sampleRate : 0;
+
+		long reads = 0;
+		for (Bucket bucket : live) {
+			for (int i = 0; i < WIDTH; i++) {
+				reads += bucket.counts.get(i);
+			}
+		}
+		List<HotKey> keys = new ArrayList<>();
+		Set<Integer> seen = new HashSet<>();
+		for (int i = 0; i < candidates.length(); i++) {
+			Candidate candidate = candidates.get(i);
+			if (candidate == null || !seen.add(candidate.key)) {
+				continue;
+			}
+			long hash = mix(candidate.key);
+			long count = 0;
+			for (Bucket bucket : live) {
+				long smallest = Long.MAX_VALUE;
+				for (int row = 0; row < DEPTH; row++) {
+					smallest = Math.min(smallest, bucket.counts.get(index(hash, row)));
+				}
+				count += smallest;
+			}
+			if (count > 0) {
+				keys.add(new HotKey(candidate.key, Math.round(count * scale)));
+			}
+		}
+		keys.sort((a, b) -> Long.compare(b.reads, a.reads));
+		return new Report(name, sampleRate, bucketMillis * BUCKETS / 1000, Math.round(reads * scale),
+				keys.size() > limit ? new ArrayList<>(keys.subList(0, limit)) : keys);
+	}
+
+	/*
+	 * The sketch for a slice of time, cleared first if it still holds an older slice. The thread that moves its epoch
+	 * on clears it.
+	 */
+	private Bucket bucketFor(long slice) {
+		Bucket bucket = buckets[(int) (slice % BUCKETS)];
+		long epoch = bucket.epoch.get();
+		if (epoch < slice && bucket.epoch.compareAndSet(epoch, slice)) {
+			for (int i = 0; i < bucket.counts.length(); i++) {
+				bucket.counts.set(i, 0);
+			}
+		}
+		return bucket;
+	}
+
+	/*
+	 * Make a key a candidate if it is counted more than the lowest candidate in this slice, or refresh its count if it
+	 * is one already. Candidates counted in an older slice count as 0.
+	 */
+	private void offer(int key, long count, long slice) {
+		int lowest = -1;
+		long lowestCount = Long.MAX_VALUE;
+		Candidate lowestCandidate = null;
+		for (int i = 0; i < candidates.length(); i++) {
+			Candidate candidate = candidates.get(i);
+			if (candidate != null && candidate.key == key) {
+				if (candidate.slice != slice) {
+					if (candidates.compareAndSet(i, candidate, new Candidate(key, count, slice))) {
+						updateFloor(slice);
+					}
+				} else if (count >= candidate.count * 2) {
+					candidates.compareAndSet(i, candidate, new Candidate(key, count, slice));
+				}
+				return;
+			}
+			long current = candidate == null ? -1 : candidate.slice == slice ? candidate.count : 0;
+			if (current < lowestCount) {
+				lowest = i;
+				lowestCount = current;
+				lowestCandidate = candidate;
+			}
+		}
+		if (lowest >= 0 && count > lowestCount
+				&& candidates.compareAndSet(lowest, lowestCandidate, new Candidate(key, count, slice))) {
+			updateFloor(slice);
+		}
+	}
+
+	/*
+	 * Remember the lowest count of the candidates in this slice, below which a key can neither become a candidate nor
+	 * need its count refreshed, so that most reads of cold keys skip the scan. It stays -1 while a slot is free.
+	 */
+	private void updateFloor(long slice) {
+		long lowestCount = Long.MAX_VALUE;
+		for (int i = 0; i < candidates.length(); i++) {
+			Candidate candidate = candidates.get(i);
+			long current = candidate == null ? -1 : candidate.slice == slice ? candidate.count : 0;
+			lowestCount = Math.min(lowestCount, current);
+		}
+		floor = new Candidate(0, lowestCount, slice);
+	}
+
+	/*
+	 * Spread the bits of a key (the finalizer of MurmurHash3), so that its two halves can index the rows.
+	 */
+	private static long mix(int key) {
+		long hash = key * 0x9E3779B97F4A7C15L;
+		hash ^= hash >>> 33;
+		hash *= 0xFF51AFD7ED558CCDL;
+		hash ^= hash >>> 33;
+		hash *= 0xC4CEB9FE1A85EC53L;
+		return hash ^ (hash >>> 33);
+	}
+
+	/*
+	 * The counter for a key in a row, found by double hashing: the row's index is h1 + row * h2.
+	 */
+	private static int index(long hash, int row) {
+		int h1 = (int) hash;
+		int h2 = (int) (hash >>> 32) | 1;
+		return row * WIDTH + ((h1 + row * h2) & (WIDTH - 1));
+	}
+
+	private static class Bucket {
+		final AtomicLong epoch = new AtomicLong(-1);
+		final AtomicLongArray counts = new AtomicLongArray(DEPTH * WIDTH);
+	}
+
+	private static class Candidate {
+		final int key;
+		final long count;
+		final long slice;
+
+		Candidate(int key, long count, long slice) {
+			this.key = key;
+			this.count = count;
+			this.slice = slice;
+		}
+	}
+
+	/**
+	 * A key and about how many times it was read over the window. The count is never lower than the true count.
+	 */
+	public static class HotKey {
+		public final int key;
+		public final long reads;
+
+		HotKey(int key, long reads) {
+			this.key = key;
+			this.reads = reads;
+		}
+	}
+
+	/**
+	 * The hottest keys of one kind, as reported by GET /debug/hotkeys.
+	 */
+	public static class Report {
+		public final String key_type;
+		public final double sample_rate;
+		public final long window_seconds;
+		public final long reads;
+		public final List<HotKey> keys;
+
+		Report(String key_type, double sample_rate, long window_seconds, long reads, List<HotKey> keys) {
+			this.key_type = key_type;
+			this.sample_rate = sample_rate;
+			this.window_seconds = window_seconds;
+			this.reads = reads;
+			this.keys = keys;
+		}
+	}
+}
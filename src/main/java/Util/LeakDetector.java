@@ -0,0 +1,259 @@
+package Util;
+
+import java.lang.ref.Cleaner;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Finds pooled connections, and the statements made from them, that are not closed.
+ *
+ * A sample of the connections handed out by the pools, SAMPLE_RATE_PROPERTY of them (default 0.01), is wrapped in a
+ * tracking proxy that records where it was checked out. A tracked connection is reported while it is held for longer
+ * than THRESHOLD_MILLIS_PROPERTY milliseconds (default 30,000). One that becomes unreachable without being closed is
+ * counted as leaked, and its real connection is closed so that the pool gets it back. Statements still open when
+ * their connection is closed are counted too. Connections that are not sampled are handed out as
+ * they are and cost nothing, so the detector can stay on in production; set the sample rate to 1 while hunting a leak,
+ * or ENABLED_PROPERTY to false to turn it off.
+ */
+public class LeakDetector {
+
+	public static final String ENABLED_PROPERTY = "socialmedia.leaks.enabled";
+	public static final String SAMPLE_RATE_PROPERTY = "socialmedia.leaks.sampleRate";
+	public static final String THRESHOLD_MILLIS_PROPERTY = "socialmedia.leaks.thresholdMillis";
+	private static final int STACK_FRAMES = 16;
+	private static final int RECENT_LEAKS = 10;
+	private static final Cleaner cleaner = Cleaner.create();
+
+	private final double sampleRate;
+	private final long thresholdNanos;
+	private final Map<Long, Checkout> open = new ConcurrentHashMap<>();
+	private final AtomicLong nextId = new AtomicLong();
+	private final LongAdder tracked = new LongAdder();
+	private final LongAdder closed = new LongAdder();
+	private final LongAdder leaked = new LongAdder();
+	private final LongAdder statementsLeftOpen = new LongAdder();
+	private final Deque<Leak> recentLeaks = new ArrayDeque<>();
+
+	/**
+	 * A detector configured by SAMPLE_RATE_PROPERTY and THRESHOLD_MILLIS_PROPERTY, or one that tracks nothing if
+	 * ENABLED_PROPERTY is false.
+	 */
+	public LeakDetector() {
+		this(Boolean.parseBoolean(System.getProperty(ENABLED_PROPERTY, "true"))
+				? Double.parseDouble(System.getProperty(SAMPLE_RATE_PROPERTY, "0.01")) : 0,
+				Long.getLong(THRESHOLD_MILLIS_PROPERTY, 30_000));
+	}
+
+	public LeakDetector(double sampleRate, long thresholdMillis) {
+		this.sampleRate = sampleRate;
+		this.thresholdNanos = thresholdMillis * 1_000_000;
+	}
+
+	/**
+	 * @param connection a connection just checked out of a pool.
+	 * @param pool the name of the pool.
+	 * @return the connection itself, or, if it is sampled, a tracking proxy of it.
+	 */
+	public Connection track(Connection connection, String pool) {
+		if (sampleRate <= 0 || (sampleRate < 1 && ThreadLocalRandom.current().nextDouble() >= sampleRate)) {
+			return connection;
+		}
+		tracked.increment();
+		Checkout checkout = new Checkout(nextId.incrementAndGet(), pool, connection);
+		open.put(checkout.id, checkout);
+		Connection proxy = (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+				new Class<?>[] { Connection.class }, new TrackedConnection(checkout));
+		cleaner.register(proxy, () -> reclaim(checkout));
+		return proxy;
+	}
+
+	/*
+	 * Runs once the proxy of a checked-out connection is unreachable. Does nothing if it was closed.
+	 */
+	private void reclaim(Checkout checkout) {
+		if (open.remove(checkout.id) == null) {
+			return;
+		}
+		leaked.increment();
+		synchronized (recentLeaks) {
+			recentLeaks.addFirst(new Leak(checkout, System.nanoTime()));
+			if (recentLeaks.size() > RECENT_LEAKS) {
+				recentLeaks.removeLast();
+			}
+		}
+		try {
+			checkout.connection.close();
+		} catch (SQLException e) {
+			System.out.println(e.getMessage());
+		}
+	}
+
+	/**
+	 * @return the counts of tracked, closed and leaked connections, the tracked connections held past the threshold,
+	 *         and the most recent leaks, each with the stack that checked it out.
+	 */
+	public Report getReport() {
+		long now = System.nanoTime();
+		List<Leak> heldTooLong = new ArrayList<>();
+		for (Checkout checkout : open.values()) {
+			if (now - checkout.startNanos > thresholdNanos) {
+				heldTooLong.add(new Leak(checkout, now));
+			}
+		}
+		List<Leak> recent;
+		synchronized (recentLeaks) {
+			recent = new ArrayList<>(recentLeaks);
+		}
+		return new Report(sampleRate, tracked.sum(), open.size(), closed.sum(), leaked.sum(),
+				statementsLeftOpen.sum(), heldTooLong, recent);
+	}
+
+	private static List<String> stackOf(Throwable checkedOutAt) {
+		List<String> frames = new ArrayList<>();
+		for (StackTraceElement frame : checkedOutAt.getStackTrace()) {
+			String className = frame.getClassName();
+			if (className.startsWith(LeakDetector.class.getName()) || className.startsWith(ConnectionUtil.class.getName())) {
+				continue;
+			}
+			frames.add(frame.toString());
+			if (frames.size() == STACK_FRAMES) {
+				break;
+			}
+		}
+		return frames;
+	}
+
+	/**
+	 * One tracked checkout. It must not refer to the proxy, or the proxy could never become unreachable.
+	 */
+	private static class Checkout {
+		final long id;
+		final String pool;
+		final Connection connection;
+		final long startNanos = System.nanoTime();
+		final String thread = Thread.currentThread().getName();
+		final Throwable checkedOutAt = new Throwable();
+		final AtomicInteger openStatements = new AtomicInteger();
+
+		Checkout(long id, String pool, Connection connection) {
+			this.id = id;
+			this.pool = pool;
+			this.connection = connection;
+		}
+	}
+
+	/**
+	 * Passes every call through to the real connection, tracks the statements it makes, and records its close.
+	 */
+	private class TrackedConnection implements InvocationHandler {
+		private final Checkout checkout;
+		private boolean closedByCaller;
+
+		TrackedConnection(Checkout checkout) {
+			this.checkout = checkout;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			if (method.getName().equals("close")) {
+				if (!closedByCaller) {
+					closedByCaller = true;
+					open.remove(checkout.id);
+					closed.increment();
+					statementsLeftOpen.add(checkout.openStatements.getAndSet(0));
+				}
+			}
+			Object result = invokeOn(checkout.connection, method, args);
+			if (result instanceof Statement) {
+				return trackStatement(result, method.getReturnType(), checkout);
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * Wraps a statement so that its close is counted. Its result sets are closed with it, so they are not tracked.
+	 */
+	private static Object trackStatement(Object statement, Class<?> type, Checkout checkout) {
+		checkout.openStatements.incrementAndGet();
+		return Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[] { type },
+				new InvocationHandler() {
+					private boolean closedByCaller;
+
+					@Override
+					public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+						if (method.getName().equals("close") && !closedByCaller) {
+							closedByCaller = true;
+							checkout.openStatements.decrementAndGet();
+						}
+						return invokeOn(statement, method, args);
+					}
+				});
+	}
+
+	private static Object invokeOn(Object target, Method method, Object[] args) throws Throwable {
+		try {
+			return method.invoke(target, args);
+		} catch (InvocationTargetException e) {
+			throw e.getCause();
+		}
+	}
+
+	/**
+	 * A connection that was held too long or leaked, as reported by GET /debug/connections.
+	 */
+	public static class Leak {
+		public final String pool;
+		public final String thread;
+		public final long held_ms;
+		public final List<String> checked_out_at;
+
+		Leak(Checkout checkout, long now) {
+			this.pool = checkout.pool;
+			this.thread = checkout.thread;
+			this.held_ms = (now - checkout.startNanos) / 1_000_000;
+			this.checked_out_at = stackOf(checkout.checkedOutAt);
+		}
+	}
+
+	/**
+	 * What the detector has found, as reported by GET /debug/connections.
+	 */
+	public static class Report {
+		public final double sample_rate;
+		public final long tracked;
+		public final int open;
+		public final long closed;
+		public final long leaked;
+		public final long statements_left_open;
+		public final List<Leak> held_too_long;
+		public final List<Leak> recent_leaks;
+
+		Report(double sample_rate, long tracked, int open, long closed, long leaked, long statements_left_open,
+				List<Leak> held_too_long, List<Leak> recent_leaks) {
+			this.sample_rate = sample_rate;
+			this.tracked = tracked;
+			this.open = open;
+			this.closed = closed;
+			this.leaked = leaked;
+			this.statements_left_open = statements_left_open;
+			this.held_too_long = held_too_long;
+			this.recent_leaks = recent_leaks;
+		}
+	}
+}
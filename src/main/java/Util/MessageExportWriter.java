@@ -0,0 +1,117 @@
+package Util;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+import java.util.zip.GZIPOutputStream;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import Model.Message;
+
+/**
+ * Writes messages to an output stream one at a time, as they are read, in one of the export formats:
+ *   ndjson   one JSON object per line, with the same fields as the Message JSON
+ *   csv      a header line, then one line per message, quoted as in RFC 4180
+ *
+ * Output goes through a fixed-size buffer and, optionally, a gzip stream, so memory use does not depend on how many
+ * messages are written. Write failures, such as the client going away, are thrown as UncheckedIOException so that
+ * the writer can be used as the sink of MessageStore.forEachMessage.
+ */
+public class MessageExportWriter implements Consumer<Message>, Closeable {
+
+	public static final String NDJSON = "ndjson";
+	public static final String CSV = "csv";
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private final String format;
+	private final OutputStream out;
+	private final JsonGenerator json;
+	private long rows = 0;
+
+	/**
+	 * @param destination where the messages are written. It is closed when the writer is closed.
+	 * @param format NDJSON or CSV.
+	 * @param gzip whether to gzip the output.
+	 * @throws IOException if the output cannot be started.
+	 */
+	public MessageExportWriter(OutputStream destination, String format, boolean gzip) throws IOException {
+		if (!isFormat(format)) {
+			throw new IllegalArgumentException("unknown export format: " + format);
+		}
+		this.format = format;
+		this.out = new BufferedOutputStream(gzip ? new GZIPOutputStream(destination, BUFFER_SIZE) : destination,
+				BUFFER_SIZE);
+		if (NDJSON.equals(format)) {
+			this.json = new JsonFactory().createGenerator(out, JsonEncoding.UTF8);
+			this.json.configure(JsonGenerator.Feature.AUTO_CLOSE_TARGET, false);
+		} else {
+			this.json = null;
+			out.write("message_id,posted_by,message_text,time_posted_epoch\n".getBytes(StandardCharsets.UTF_8));
+		}
+	}
+
+	/**
+	 * @return true if format is one of the export formats.
+	 */
+	public static boolean isFormat(String format) {
+		return NDJSON.equals(format) || CSV.equals(format);
+	}
+
+	/**
+	 * Write one message.
+	 */
+	public void accept(Message message) {
+		try {
+			if (json != null) {
+				json.writeStartObject();
+				json.writeNumberField("message_id", message.getMessage_id());
+				json.writeNumberField("posted_by", message.getPosted_by());
+				json.writeStringField("message_text", message.getMessage_text());
+				json.writeNumberField("time_posted_epoch", message.getTime_posted_epoch());
+				json.writeEndObject();
+				json.writeRaw('\n');
+			} else {
+				String line = message.getMessage_id() + "," + message.getPosted_by() + ","
+						+ quote(message.getMessage_text()) + "," + message.getTime_posted_epoch() + "\n";
+				out.write(line.getBytes(StandardCharsets.UTF_8));
+			}
+			rows++;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * @return the number of messages written so far.
+	 */
+	public long getRows() {
+		return rows;
+	}
+
+	/**
+	 * Flush everything written, finish the gzip stream if there is one, and close the destination.
+	 */
+	public void close() throws IOException {
+		if (json != null) {
+			json.close();
+		}
+		out.close();
+	}
+
+	private static String quote(String text) {
+		if (text == null) {
+			return "";
+		}
+		if (text.indexOf(',') < 0 && text.indexOf('"') < 0 && text.indexOf('\n') < 0 && text.indexOf('\r') < 0) {
+			return text;
+		}
+		return '"' + text.replace("\"", "\"\"") + '"';
+	}
+}
@@ -0,0 +1,113 @@
+package Util;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import org.h2.jdbcx.JdbcConnectionPool;
+
+import DAO.ShardedMessageDAO;
+
+/**
+ * Moves messages between the shards of a ShardedMessageDAO after the shard count changes. It must be run while the
+ * application is stopped:
+ *
+ *   java -cp target/classes:$(cat cp.txt) Util.ShardRebalancer <shard dir> <old shard count> <new shard count>
+ *
+ * message_ids never change. Only the rows of buckets whose shard differs between the two counts are moved, BATCH_SIZE
+ * at a time: each batch is merged into its new shard and committed before it is deleted from the old one, so an
+ * interrupted run can simply be started again. When the count shrinks, the shards that are no longer used are left
+ * empty and can be deleted.
+ */
+public class ShardRebalancer {
+
+	public static final int BATCH_SIZE = 1000;
+
+	public static void main(String[] args) throws SQLException {
+		if (args.length != 3) {
+			System.out.println("usage: ShardRebalancer <shard dir> <old shard count> <new shard count>");
+			return;
+		}
+		long moved = rebalance(args[0], Integer.parseInt(args[1]), Integer.parseInt(args[2]));
+		System.out.println("moved " + moved + " messages");
+	}
+
+	/**
+	 * @param directory the directory holding the shard databases.
+	 * @param oldCount the number of shards the messages are currently spread across.
+	 * @param newCount the number of shards to spread them across.
+	 * @return the number of messages moved.
+	 */
+	public static long rebalance(String directory, int oldCount, int newCount) throws SQLException {
+		JdbcConnectionPool[] shards = new JdbcConnectionPool[Math.max(oldCount, newCount)];
+		try {
+			for (int shard = 0; shard < shards.length; shard++) {
+				shards[shard] = ConnectionUtil.createPool(ShardedMessageDAO.shardUrl(directory, shard), 2);
+				try (Connection connection = shards[shard].getConnection()) {
+					ShardedMessageDAO.createSchema(connection);
+				}
+			}
+
+			long moved = 0;
+			for (int source = 0; source < oldCount; source++) {
+				for (int target = 0; target < newCount; target++) {
+					if (target != source) {
+						moved += moveBuckets(shards[source], shards[target], target, newCount);
+					}
+				}
+			}
+			return moved;
+		} finally {
+			for (JdbcConnectionPool shard : shards) {
+				if (shard != null) {
+					shard.dispose();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Move every message in source that belongs on shard target under newCount shards.
+	 */
+	private static long moveBuckets(JdbcConnectionPool source, JdbcConnectionPool target, int targetShard,
+			int newCount) throws SQLException {
+		String select = "SELECT message_id, posted_by, message_text, time_posted_epoch FROM message "
+				+ "WHERE MOD(MOD(message_id, " + ShardedMessageDAO.BUCKETS + "), ?) = ? ORDER BY message_id LIMIT ?;";
+		String merge = "MERGE INTO message (message_id, posted_by, message_text, time_posted_epoch) "
+				+ "KEY (message_id) VALUES (?, ?, ?, ?);";
+		String delete = "DELETE FROM message WHERE message_id = ?;";
+
+		long moved = 0;
+		try (Connection from = source.getConnection(); Connection to = target.getConnection();
+				PreparedStatement selectBatch = from.prepareStatement(select);
+				PreparedStatement mergeBatch = to.prepareStatement(merge);
+				PreparedStatement deleteBatch = from.prepareStatement(delete)) {
+			while (true) {
+				selectBatch.setInt(1, newCount);
+				selectBatch.setInt(2, targetShard);
+				selectBatch.setInt(3, BATCH_SIZE);
+				int rows = 0;
+				try (ResultSet rs = selectBatch.executeQuery()) {
+					while (rs.next()) {
+						mergeBatch.setInt(1, rs.getInt("message_id"));
+						mergeBatch.setInt(2, rs.getInt("posted_by"));
+						mergeBatch.setString(3, rs.getString("message_text"));
+						mergeBatch.setLong(4, rs.getLong("time_posted_epoch"));
+						mergeBatch.addBatch();
+						deleteBatch.setInt(1, rs.getInt("message_id"));
+						deleteBatch.addBatch();
+						rows++;
+					}
+				}
+				if (rows == 0) {
+					return moved;
+				}
+				// the copy is durable in the target before it is removed from the source
+				mergeBatch.executeBatch();
+				deleteBatch.executeBatch();
+				moved += rows;
+			}
+		}
+	}
+}
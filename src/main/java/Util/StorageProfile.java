@@ -0,0 +1,85 @@
+package Util;
+
+import java.io.File;
+
+/**
+ * How the H2 database is stored, traded off between durability and speed. ConnectionUtil picks the profile named by
+ * PROFILE_PROPERTY when it is first used:
+ *   memory            in memory only; everything is lost when the process exits
+ *   file-sync         on disk, with every commit written to the file before it returns (WRITE_DELAY=0)
+ *   file-async        on disk, with commits written in the background within WRITE_DELAY_PROPERTY milliseconds
+ *                     (default 500, H2's own default), so a crash can lose the last moments of commits. The default.
+ *   file-large-cache  file-async with a page cache of CACHE_SIZE_PROPERTY kilobytes (default 262,144, four times
+ *                     H2's default), for data sets that do not fit the default cache
+ * Every profile waits up to LOCK_TIMEOUT_PROPERTY milliseconds (default 1,000, H2's own default) for a row another
+ * transaction has locked before failing.
+ */
+public enum StorageProfile {
+
+	MEMORY("memory"),
+	FILE_SYNC("file-sync"),
+	FILE_ASYNC("file-async"),
+	FILE_LARGE_CACHE("file-large-cache");
+
+	public static final String PROFILE_PROPERTY = "socialmedia.storage.profile";
+	public static final String LOCK_TIMEOUT_PROPERTY = "socialmedia.storage.lockTimeoutMillis";
+	public static final String WRITE_DELAY_PROPERTY = "socialmedia.storage.writeDelayMillis";
+	public static final String CACHE_SIZE_PROPERTY = "socialmedia.storage.cacheSizeKb";
+
+	private final String profileName;
+
+	StorageProfile(String profileName) {
+		this.profileName = profileName;
+	}
+
+	/**
+	 * @return the name the profile is selected by.
+	 */
+	public String getProfileName() {
+		return profileName;
+	}
+
+	/**
+	 * @return the profile named by PROFILE_PROPERTY, or file-async if it is not set.
+	 * @throws IllegalArgumentException if no profile has that name.
+	 */
+	public static StorageProfile fromProperty() {
+		return forName(System.getProperty(PROFILE_PROPERTY, FILE_ASYNC.profileName));
+	}
+
+	/**
+	 * @param profileName the name of a profile, such as file-sync.
+	 * @return the profile with that name.
+	 * @throws IllegalArgumentException if no profile has that name.
+	 */
+	public static StorageProfile forName(String profileName) {
+		for (StorageProfile profile : values()) {
+			if (profile.profileName.equals(profileName)) {
+				return profile;
+			}
+		}
+		throw new IllegalArgumentException("unknown storage profile: " + profileName);
+	}
+
+	/**
+	 * @param path the path of the database files, such as ./h2/db. The memory profile uses only its last part as the
+	 *        name of the in-memory database.
+	 * @return the JDBC url that opens the database with this profile's settings.
+	 */
+	public String getUrl(String path) {
+		StringBuilder url = new StringBuilder("jdbc:h2:");
+		if (this == MEMORY) {
+			// keep the database for as long as the process runs, not just while a connection is open
+			url.append("mem:").append(new File(path).getName()).append(";DB_CLOSE_DELAY=-1");
+		} else {
+			url.append(path);
+			long writeDelay = this == FILE_SYNC ? 0 : Long.getLong(WRITE_DELAY_PROPERTY, 500);
+			url.append(";WRITE_DELAY=").append(writeDelay);
+			if (this == FILE_LARGE_CACHE) {
+				url.append(";CACHE_SIZE=").append(Long.getLong(CACHE_SIZE_PROPERTY, 262_144));
+			}
+		}
+		url.append(";LOCK_TIMEOUT=").append(Long.getLong(LOCK_TIMEOUT_PROPERTY, 1000)).append(';');
+		return url.toString();
+	}
+}
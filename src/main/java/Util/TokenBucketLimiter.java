@@ -0,0 +1,173 @@
+package Util;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A token bucket for each account, limiting how fast one account may call a route while leaving others unaffected.
+ * Each bucket holds up to burst tokens and refills at perSecond tokens a second; every call takes one token, and a
+ * call that finds less than one token is refused.
+ *
+ * The buckets live in a fixed-size open-addressing table of two atomic arrays, one of account ids and one of bucket
+ * states, so checking is lock-free and allocates nothing. A state packs the time the bucket was last drawn from, in
+ * milliseconds, into its high 40 bits and the tokens left, in thousandths, into its low 24 bits, and is updated with
+ * compare-and-set. An account looks for its slot among PROBES slots from the hash of its id. A slot whose bucket has
+ * been idle long enough to refill completely holds nothing worth keeping, so it may be taken over by another account;
+ * that is how idle accounts are evicted, and it bounds memory to the table size. An account that finds all of its
+ * slots busy is let through and counted as untracked.
+ *
+ * A route's limits are read from the system properties socialmedia.ratelimit.{route}.perSecond (default 20),
+ * .burst (default 100, at most 16,000) and .accounts (the table size, default 65,536).
+ */
+public class TokenBucketLimiter {
+
+	public static final String PROPERTY_PREFIX = "socialmedia.ratelimit.";
+	private static final int PROBES = 8;
+	private static final int EMPTY = 0;
+	private static final int TOKEN_BITS = 24;
+	private static final long TOKEN_MASK = (1L << TOKEN_BITS) - 1;
+	private static final long MILLI_TOKENS = 1000;
+
+	private final int burst;
+	private final double perSecond;
+	private final long capacity;
+	private final long originNanos = System.nanoTime();
+	private final long clockOffsetMillis;
+	private final int mask;
+	private final AtomicIntegerArray keys;
+	private final AtomicLongArray states;
+	private final LongAdder untracked = new LongAdder();
+
+	/**
+	 * @param route the name of the route, which selects its configuration.
+	 */
+	public TokenBucketLimiter(String route) {
+		this(Double.parseDouble(System.getProperty(PROPERTY_PREFIX + route + ".perSecond", "20")),
+				Integer.getInteger(PROPERTY_PREFIX + route + ".burst", 100),
+				Integer.getInteger(PROPERTY_PREFIX + route + ".accounts", 65536));
+	}
+
+	public TokenBucketLimiter(double perSecond, int burst, int accounts) {
+		this.perSecond = perSecond;
+		this.burst = Math.max(1, Math.min(16_000, burst));
+		this.capacity = this.burst * MILLI_TOKENS;
+		int size = Integer.highestOneBit(Math.max(PROBES, accounts - 1)) << 1;
+		this.mask = size - 1;
+		this.keys = new AtomicIntegerArray(size);
+		this.states = new AtomicLongArray(size);
+		// Start the clock late enough that a state of 0, in a slot nobody has used, reads as a full bucket.
+		this.clockOffsetMillis = (long) Math.ceil(capacity / perSecond) + 1;
+	}
+
+	/**
+	 * Take a token from an account's bucket.
+	 *
+	 * @param key the account id. Ids of 0 are never limited.
+	 * @return if a token was taken, the tokens left in thousandths, which is 0 or more; otherwise minus one less than
+	 *         the number of milliseconds until a token will be there. See isAllowed, getRemaining and getRetryAfterSeconds.
+	 */
+	public long tryAcquire(int key) {
+		if (key == EMPTY) {
+			return capacity;
+		}
+		long now = nowMillis();
+		int home = mix(key) & mask;
+		while (true) {
+			int free = -1;
+			int freeOwner = EMPTY;
+			for (int probe = 0; probe < PROBES; probe++) {
+				int slot = (home + probe) & mask;
+				int owner = keys.get(slot);
+				if (owner == key) {
+					return take(slot, now);
+				}
+				if (free < 0 && (owner == EMPTY || isFull(states.get(slot), now))) {
+					free = slot;
+					freeOwner = owner;
+				}
+			}
+			if (free < 0) {
+				untracked.increment();
+				return capacity;
+			}
+			if (keys.compareAndSet(free, freeOwner, key)) {
+				return take(free, now);
+			}
+		}
+	}
+
+	/*
+	 * Take a token from the bucket in a slot. A bucket that was full when its slot was taken over may still hold the
+	 * previous account's state, which reads as full all the same.
+	 */
+	private long take(int slot, long now) {
+		while (true) {
+			long state = states.get(slot);
+			long tokens = tokensAt(state, now);
+			if (tokens < MILLI_TOKENS) {
+				return -(long) Math.ceil((MILLI_TOKENS - tokens) / perSecond) - 1;
+			}
+			long next = (Math.max(now, state >>> TOKEN_BITS) << TOKEN_BITS) | (tokens - MILLI_TOKENS);
+			if (states.compareAndSet(slot, state, next)) {
+				return tokens - MILLI_TOKENS;
+			}
+		}
+	}
+
+	private long tokensAt(long state, long now) {
+		long elapsed = Math.max(0, now - (state >>> TOKEN_BITS));
+		return Math.min(capacity, (state & TOKEN_MASK) + (long) (elapsed * perSecond));
+	}
+
+	private boolean isFull(long state, long now) {
+		return tokensAt(state, now) >= capacity;
+	}
+
+	private long nowMillis() {
+		return (System.nanoTime() - originNanos) / 1_000_000 + clockOffsetMillis;
+	}
+
+	private static int mix(int key) {
+		int h = key * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	/**
+	 * @return the most tokens a bucket holds.
+	 */
+	public int getBurst() {
+		return burst;
+	}
+
+	/**
+	 * @return how many calls were let through because the table had no room for their account.
+	 */
+	public long getUntracked() {
+		return untracked.sum();
+	}
+
+	/**
+	 * @param result a result of tryAcquire.
+	 * @return whether the call may go ahead.
+	 */
+	public static boolean isAllowed(long result) {
+		return result >= 0;
+	}
+
+	/**
+	 * @param result a result of tryAcquire.
+	 * @return the whole tokens left in the bucket.
+	 */
+	public static long getRemaining(long result) {
+		return result < 0 ? 0 : result / MILLI_TOKENS;
+	}
+
+	/**
+	 * @param result a result of tryAcquire that was not allowed.
+	 * @return how many seconds to wait before a token will be there, at least 1.
+	 */
+	public static long getRetryAfterSeconds(long result) {
+		return Math.max(1, (-result - 1 + 999) / 1000);
+	}
+}
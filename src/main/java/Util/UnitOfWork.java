@@ -0,0 +1,242 @@
+package Util;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Runs a piece of work, such as one service call, on a single pooled connection and in a single transaction, so that
+ * the DAO calls it makes either all take effect or none do, and the connection is checked out only once.
+ *
+ * While the work runs, the connection is the thread's ambient connection: ConnectionUtil.getReadConnection() and
+ * getWriteConnection() hand out a proxy of it instead of taking another from a pool. The proxy's close() does
+ * nothing, so DAOs can keep closing their connections as usual. Its commit() and setAutoCommit() do nothing either,
+ * because the transaction belongs to the unit of work; its rollback() marks the unit to be rolled back at the end.
+ * DAOs catch and print SQLExceptions rather than throwing them, so a statement of the unit that throws one also
+ * marks the unit to be rolled back, rather than the work done before it being committed without the rest.
+ * Work started inside another unit of work joins it. DAOs can ask to be told when the transaction has ended with
+ * afterCompletion(), for example to publish something only once it is visible to other connections.
+ *
+ * The transaction isolation level is read from ISOLATION_PROPERTY (READ_UNCOMMITTED, READ_COMMITTED, the default,
+ * REPEATABLE_READ or SERIALIZABLE). Pooled connections are left at READ_COMMITTED, H2's default, between units, so
+ * only other levels cost a round trip to set and reset. Service calls use units of work unless ENABLED_PROPERTY is
+ * set to false.
+ */
+public class UnitOfWork {
+
+	public static final String ENABLED_PROPERTY = "socialmedia.unitOfWork";
+	public static final String ISOLATION_PROPERTY = "socialmedia.unitOfWork.isolation";
+
+	private static final int DEFAULT_ISOLATION = Connection.TRANSACTION_READ_COMMITTED;
+	private static final ThreadLocal<UnitOfWork> current = new ThreadLocal<>();
+	private static final int isolation = parseIsolation(System.getProperty(ISOLATION_PROPERTY, "READ_COMMITTED"));
+
+	private final Connection connection;
+	private final Connection ambient;
+	private boolean rollbackOnly;
+	private final List<Runnable> completions = new ArrayList<>();
+
+	private UnitOfWork(Connection connection) {
+		this.connection = connection;
+		this.ambient = (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+				new Class<?>[] { Connection.class }, new AmbientConnection());
+	}
+
+	/**
+	 * @return whether service calls should run in units of work.
+	 */
+	public static boolean isEnabled() {
+		return Boolean.parseBoolean(System.getProperty(ENABLED_PROPERTY, "true"));
+	}
+
+	/**
+	 * Run work in a unit of work, joining the thread's current one if there is one. The transaction is committed if
+	 * the work returns, and rolled back if it throws, a DAO asked for a rollback, or a statement failed.
+	 *
+	 * @param work the work to run.
+	 * @return what the work returned, or null if the transaction could not be started or committed or was rolled back.
+	 */
+	public static <T> T run(Supplier<T> work) {
+		return run(ConnectionUtil.getDatabase(), work);
+	}
+
+	/**
+	 * Run work in a unit of work on a connection from a given database's write pool, joining the thread's current
+	 * unit of work if there is one.
+	 *
+	 * @param database the database whose DAOs the work calls.
+	 * @param work the work to run.
+	 * @return what the work returned, or null if the transaction could not be started or committed or was rolled back.
+	 */
+	public static <T> T run(ConnectionUtil.Database database, Supplier<T> work) {
+		if (current.get() != null) {
+			return work.get();
+		}
+		Connection connection;
+		try {
+			connection = database.getWriteConnection();
+			connection.setAutoCommit(false);
+			if (isolation != DEFAULT_ISOLATION) {
+				connection.setTransactionIsolation(isolation);
+			}
+		} catch (SQLException e) {
+			System.out.println(e.getMessage());
+			return null;
+		}
+
+		UnitOfWork unit = new UnitOfWork(connection);
+		current.set(unit);
+		boolean committed = false;
+		try {
+			T result = work.get();
+			if (!unit.rollbackOnly) {
+				connection.commit();
+				committed = true;
+				return result;
+			}
+			return null;
+		} catch (SQLException e) {
+			System.out.println(e.getMessage());
+			return null;
+		} finally {
+			current.remove();
+			try {
+				if (!committed) {
+					connection.rollback();
+				}
+				connection.setAutoCommit(true);
+				if (isolation != DEFAULT_ISOLATION) {
+					connection.setTransactionIsolation(DEFAULT_ISOLATION);
+				}
+			} catch (SQLException e) {
+				System.out.println(e.getMessage());
+			}
+			for (Runnable completion : unit.completions) {
+				completion.run();
+			}
+			try {
+				connection.close();
+			} catch (SQLException e) {
+				System.out.println(e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Run an action once the current unit of work's transaction has been committed or rolled back.
+	 *
+	 * @param action the action to run.
+	 * @return false if no unit of work is running on this thread, in which case the action is not run.
+	 */
+	public static boolean afterCompletion(Runnable action) {
+		UnitOfWork unit = current.get();
+		if (unit == null) {
+			return false;
+		}
+		unit.completions.add(action);
+		return true;
+	}
+
+	/**
+	 * @return a proxy of the thread's ambient connection, or null if no unit of work is running.
+	 */
+	static Connection currentConnection() {
+		UnitOfWork unit = current.get();
+		return unit == null ? null : unit.ambient;
+	}
+
+	private static int parseIsolation(String name) {
+		switch (name) {
+			case "READ_UNCOMMITTED":
+				return Connection.TRANSACTION_READ_UNCOMMITTED;
+			case "READ_COMMITTED":
+				return Connection.TRANSACTION_READ_COMMITTED;
+			case "REPEATABLE_READ":
+				return Connection.TRANSACTION_REPEATABLE_READ;
+			case "SERIALIZABLE":
+				return Connection.TRANSACTION_SERIALIZABLE;
+			default:
+				throw new IllegalArgumentException("unknown isolation level: " + name);
+		}
+	}
+
+	/**
+	 * Passes every call through to the unit's connection, except those that would end the connection's use or the
+	 * unit's transaction early. Statements it makes are wrapped by FailureWatcher.
+	 */
+	private class AmbientConnection implements InvocationHandler {
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			switch (method.getName()) {
+				case "close":
+				case "commit":
+				case "setAutoCommit":
+				case "setReadOnly":
+				case "setTransactionIsolation":
+					return null;
+				case "rollback":
+					if (args == null) {
+						rollbackOnly = true;
+						return null;
+					}
+					break;
+				case "isClosed":
+					return false;
+				case "unwrap":
+					return connection.unwrap((Class<?>) args[0]);
+				default:
+					break;
+			}
+			Object result = call(connection, method, args);
+			if (result instanceof Statement) {
+				return Proxy.newProxyInstance(Connection.class.getClassLoader(),
+						new Class<?>[] { method.getReturnType() }, new FailureWatcher((Statement) result, proxy));
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * Passes every call through to a statement of the unit's connection, marking the unit to be rolled back if one
+	 * throws an SQLException.
+	 */
+	private class FailureWatcher implements InvocationHandler {
+		private final Statement statement;
+		private final Object connectionProxy;
+
+		FailureWatcher(Statement statement, Object connectionProxy) {
+			this.statement = statement;
+			this.connectionProxy = connectionProxy;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			if (method.getName().equals("getConnection")) {
+				return connectionProxy;
+			}
+			return call(statement, method, args);
+		}
+	}
+
+	/**
+	 * Call a method of the unit's connection or one of its statements, marking the unit to be rolled back if it
+	 * throws an SQLException.
+	 */
+	private Object call(Object target, Method method, Object[] args) throws Throwable {
+		try {
+			return method.invoke(target, args);
+		} catch (InvocationTargetException e) {
+			if (e.getCause() instanceof SQLException) {
+				rollbackOnly = true;
+			}
+			throw e.getCause();
+		}
+	}
+}
@@ -0,0 +1,252 @@
+package Util;
+
+import java.io.IOException;
+import java.lang.management.CompilationMXBean;
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.SQLException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import DAO.AccountDAO;
+import DAO.MessageDAO;
+import Model.Account;
+import Model.Message;
+import Service.SocialMediaService;
+import io.javalin.Javalin;
+
+/**
+ * Warms up a freshly started process before it reports itself ready, so that class loading and JIT compilation do
+ * not happen on live traffic.
+ *
+ * Every SocialMediaController route, including the variants answered by different code (posted_by paging, fields=,
+ * Smile) and the message stream, is called over HTTP, round after round, on a scratch copy of the API that runs on
+ * its own port. The scratch API uses the same DAOs, units of work and connection pools as the live one, but on an
+ * empty in-memory H2 database of its own, so the warmup compiles the code live requests run without ever writing to
+ * the real database. Rounds continue until the JIT has gone quiet (less than QUIET_COMPILE_MS of compilation in each of
+ * two rounds in a row) or MAX_SECONDS_PROPERTY seconds (default 30) have passed. The live API is then called with read-only requests that touch the database until
+ * one is answered within FAST_REQUEST_MS_PROPERTY milliseconds (default 5), and the time from JVM start to that first
+ * fast request is reported.
+ */
+public class Warmup {
+
+	public static final String MAX_SECONDS_PROPERTY = "socialmedia.warmup.maxSeconds";
+	public static final String FAST_REQUEST_MS_PROPERTY = "socialmedia.warmup.fastMs";
+	private static final int MIN_ROUNDS = 5;
+	private static final long QUIET_COMPILE_MS = 5;
+	private static final int LIVE_PROBES = 1000;
+	private static final long STREAM_WAIT_MS = 1000;
+
+	private final HttpClient client = HttpClient.newHttpClient();
+	private final ObjectMapper jsonMapper = new ObjectMapper();
+
+	/**
+	 * Warm up with the budget and threshold set by MAX_SECONDS_PROPERTY and FAST_REQUEST_MS_PROPERTY.
+	 *
+	 * @param livePort the port the live API is listening on.
+	 * @return what the warmup did.
+	 */
+	public static Report run(int livePort) throws IOException, InterruptedException {
+		return new Warmup().run(livePort, Long.getLong(MAX_SECONDS_PROPERTY, 30) * 1000,
+				Long.getLong(FAST_REQUEST_MS_PROPERTY, 5));
+	}
+
+	/**
+	 * @param livePort the port the live API is listening on.
+	 * @param maxMillis the longest to spend on the scratch rounds.
+	 * @param fastRequestMillis a live request answered within this long counts as fast.
+	 * @return what the warmup did.
+	 */
+	public Report run(int livePort, long maxMillis, long fastRequestMillis) throws IOException, InterruptedException {
+		Report report = new Report();
+		long start = System.currentTimeMillis();
+		CompilationMXBean jit = ManagementFactory.getCompilationMXBean();
+		boolean canMeasureJit = jit != null && jit.isCompilationTimeMonitoringSupported();
+
+		ConnectionUtil.Database scratchDatabase;
+		try {
+			scratchDatabase = ConnectionUtil.createMemoryDatabase("warmup" + System.nanoTime());
+		} catch (SQLException e) {
+			throw new IOException(e);
+		}
+		SocialMediaService scratchService = new SocialMediaService(new AccountDAO(scratchDatabase),
+				new MessageDAO(scratchDatabase));
+		Javalin scratch = new SocialMediaController(scratchService).startAPI().start(0);
+		try {
+			String base = "http://localhost:" + scratch.port();
+			int quietRounds = 0;
+			while (System.currentTimeMillis() - start < maxMillis) {
+				long compiledBefore = canMeasureJit ? jit.getTotalCompilationTime() : 0;
+				round(base, report.rounds);
+				report.rounds++;
+				long compiled = canMeasureJit ? jit.getTotalCompilationTime() - compiledBefore : 0;
+				report.compile_ms += compiled;
+				quietRounds = compiled < QUIET_COMPILE_MS ? quietRounds + 1 : 0;
+				if (report.rounds >= MIN_ROUNDS && quietRounds >= 2) {
+					break;
+				}
+			}
+		} finally {
+			scratch.stop();
+			scratchDatabase.close();
+		}
+		report.warmup_ms = System.currentTimeMillis() - start;
+
+		String live = "http://localhost:" + livePort;
+		for (int i = 0; i < LIVE_PROBES; i++) {
+			long sent = System.nanoTime();
+			get(live + "/messages/0", false);
+			get(live + "/accounts/0/messages", false);
+			long elapsed = (System.nanoTime() - sent) / 2_000_000;
+			if (elapsed <= fastRequestMillis) {
+				report.first_fast_request_ms = elapsed;
+				report.time_to_first_fast_request_ms = System.currentTimeMillis()
+						- ManagementFactory.getRuntimeMXBean().getStartTime();
+				break;
+			}
+		}
+		return report;
+	}
+
+	/**
+	 * Call every route once: register, log in, follow, post while streaming, read in every way, poll the changes,
+	 * read the feed and the debug endpoints, update, delete and unfollow.
+	 */
+	private void round(String base, int round) throws IOException, InterruptedException {
+		Account account = jsonMapper.readValue(post(base + "/register",
+				"{\"username\":\"warmup" + round + "\",\"password\":\"password\"}"), Account.class);
+		int account_id = account.getAccount_id();
+		int follower_id = jsonMapper.readValue(post(base + "/register",
+				"{\"username\":\"warmup" + round + "follower\",\"password\":\"password\"}"), Account.class)
+				.getAccount_id();
+		post(base + "/login", "{\"username\":\"warmup" + round + "\",\"password\":\"password\"}");
+		post(base + "/accounts/" + follower_id + "/follows", "{\"followee_id\":" + account_id + "}");
+
+		int message_id = postWhileStreaming(base, "{\"posted_by\":" + account_id
+				+ ",\"message_text\":\"warming up\",\"time_posted_epoch\":" + (1669947792L + round) + "}");
+
+		get(base + "/messages", false);
+		get(base + "/messages", true);
+		get(base + "/messages?fields=message_id,message_text", false);
+		get(base + "/messages?posted_by=" + account_id + "," + follower_id + "&limit=10&per_account=5", false);
+		get(base + "/messages/" + message_id, false);
+		get(base + "/messages/" + message_id, true);
+		get(base + "/messages/" + message_id + "?fields=message_text", false);
+		post(base + "/messages/lookup", "[" + message_id + ",0]");
+		get(base + "/messages/changes?since=0&limit=10", false);
+		get(base + "/messages/count", false);
+		get(base + "/accounts/" + account_id + "/messages", false);
+		get(base + "/accounts/" + account_id + "/stats", false);
+		get(base + "/analytics/top-posters", false);
+		get(base + "/analytics/volume?interval=minute&buckets=10", false);
+		get(base + "/export/messages?format=ndjson", false);
+		get(base + "/export/messages?format=csv&gzip=true", false);
+		get(base + "/accounts/" + follower_id + "/feed?limit=10", false);
+		get(base + "/debug/pools", false);
+		get(base + "/debug/limits", false);
+		get(base + "/debug/coalescing", false);
+		get(base + "/debug/connections", false);
+		get(base + "/debug/hotkeys", false);
+		get(base + "/health/ready", false);
+		send(HttpRequest.newBuilder(URI.create(base + "/messages/" + message_id))
+				.method("PATCH", HttpRequest.BodyPublishers.ofString("{\"message_text\":\"warmed up\"}")));
+		send(HttpRequest.newBuilder(URI.create(base + "/messages/" + message_id)).DELETE());
+		send(HttpRequest.newBuilder(URI.create(base + "/accounts/" + follower_id + "/follows/" + account_id)).DELETE());
+	}
+
+	/**
+	 * Post a message while subscribed to the message stream, so that the event is serialized and sent. The stream is
+	 * waited on for at most STREAM_WAIT_MS to connect, and again to send the event, so it cannot hold up the warmup.
+	 *
+	 * @return the message_id of the message posted.
+	 */
+	private int postWhileStreaming(String base, String json) throws IOException, InterruptedException {
+		CompletableFuture<Void> connected = new CompletableFuture<>();
+		CompletableFuture<Void> created = new CompletableFuture<>();
+		CompletableFuture<Flow.Subscription> lines = new CompletableFuture<>();
+		client.sendAsync(HttpRequest.newBuilder(URI.create(base + "/messages/stream"))
+				.header("Accept", "text/event-stream").build(),
+				HttpResponse.BodyHandlers.fromLineSubscriber(new Flow.Subscriber<String>() {
+					public void onSubscribe(Flow.Subscription subscription) {
+						lines.complete(subscription);
+						subscription.request(Long.MAX_VALUE);
+					}
+
+					public void onNext(String line) {
+						// the stream is only subscribed once it says it is connected
+						if (line.startsWith(": connected")) {
+							connected.complete(null);
+						} else if (line.startsWith("data:")) {
+							created.complete(null);
+						}
+					}
+
+					public void onError(Throwable e) {
+						onComplete();
+					}
+
+					public void onComplete() {
+						connected.complete(null);
+						created.complete(null);
+					}
+				}));
+		try {
+			await(connected);
+			int message_id = jsonMapper.readValue(post(base + "/messages", json), Message.class).getMessage_id();
+			await(created);
+			return message_id;
+		} finally {
+			lines.thenAccept(Flow.Subscription::cancel);
+		}
+	}
+
+	private static void await(CompletableFuture<Void> event) throws InterruptedException {
+		try {
+			event.get(STREAM_WAIT_MS, TimeUnit.MILLISECONDS);
+		} catch (ExecutionException | TimeoutException e) {
+			// carry on warming the other routes
+		}
+	}
+
+	private String get(String uri, boolean smile) throws IOException, InterruptedException {
+		HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(uri));
+		if (smile) {
+			request.header("Accept", SocialMediaController.SMILE);
+		}
+		return send(request);
+	}
+
+	private String post(String uri, String json) throws IOException, InterruptedException {
+		return send(HttpRequest.newBuilder(URI.create(uri)).header("Content-Type", "application/json")
+				.POST(HttpRequest.BodyPublishers.ofString(json)));
+	}
+
+	private String send(HttpRequest.Builder request) throws IOException, InterruptedException {
+		return client.send(request.build(), HttpResponse.BodyHandlers.ofString()).body();
+	}
+
+	/**
+	 * What a warmup did, as reported by GET /health/ready.
+	 */
+	public static class Report {
+		/** the number of rounds of calls to every route. */
+		public int rounds;
+		/** how long the rounds took. */
+		public long warmup_ms;
+		/** how much of that the JIT spent compiling, where the JVM reports it. */
+		public long compile_ms;
+		/** how long the first fast live request took, or 0 if none was fast. */
+		public long first_fast_request_ms;
+		/** the time from JVM start until the first fast live request, or 0 if none was fast. */
+		public long time_to_first_fast_request_ms;
+	}
+}
@@ -1,3 +1,6 @@
+drop table if exists follow;
+drop table if exists message_change;
+drop table if exists message_stats;
 drop table if exists message;
 drop table if exists account;
 create table account (
@@ -12,6 +15,26 @@ create table message (
     time_posted_epoch bigint,
     foreign key (posted_by) references  account(account_id)
 );
+create table message_change (
+    change_seq bigint primary key auto_increment,
+    change_type varchar(8),
+    message_id int,
+    posted_by int,
+    message_text varchar(255),
+    time_posted_epoch bigint
+);
+create table message_stats (
+    account_id int primary key,
+    message_count bigint,
+    change_seq bigint
+);
+create table follow (
+    follower_id int,
+    followee_id int,
+    primary key (follower_id, followee_id),
+    foreign key (follower_id) references account(account_id),
+    foreign key (followee_id) references account(account_id)
+);
 
 insert into account (username, password) values ('testuser1', 'password');
 insert into message (posted_by, message_text, time_posted_epoch) values (1,'test message 1',1669947792);
@@ -0,0 +1,185 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.PosterCount;
+import Model.VolumeBucket;
+import Service.SpaceSavingTopK;
+import Service.TimeBucketCounter;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class AnalyticsTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Posting and deleting messages, then sending GET localhost:8080/analytics/top-posters and
+     * GET localhost:8080/analytics/volume?interval=minute&buckets=2
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  The seeded message and the new ones are counted per poster and per minute
+     */
+    @Test
+    public void aggregatesFollowWrites() throws IOException, InterruptedException {
+        post("/register", "{\"username\":\"testuser2\",\"password\":\"password\"}");
+        post("/messages", "{\"posted_by\":2,\"message_text\":\"one\",\"time_posted_epoch\":1669947792}");
+        post("/messages", "{\"posted_by\":2,\"message_text\":\"two\",\"time_posted_epoch\":1669947822}");
+        post("/messages", "{\"posted_by\":2,\"message_text\":\"three\",\"time_posted_epoch\":1669947882}");
+        HttpRequest delete = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/2"))
+                .DELETE()
+                .build();
+        webClient.send(delete, HttpResponse.BodyHandlers.ofString());
+
+        List<PosterCount> posters = objectMapper.readValue(get("/analytics/top-posters").body(),
+                new TypeReference<List<PosterCount>>(){});
+        Assert.assertEquals(2, posters.size());
+        Assert.assertEquals(2, posters.get(0).getPosted_by());
+        Assert.assertEquals(2L, posters.get(0).getMessage_count());
+        Assert.assertEquals(1, posters.get(1).getPosted_by());
+        Assert.assertEquals(1L, posters.get(1).getMessage_count());
+
+        List<VolumeBucket> volume = objectMapper.readValue(get("/analytics/volume?interval=minute&buckets=2").body(),
+                new TypeReference<List<VolumeBucket>>(){});
+        Assert.assertEquals(2, volume.size());
+        Assert.assertEquals(1669947780L, volume.get(0).getBucket_start_epoch());
+        Assert.assertEquals(2L, volume.get(0).getMessage_count());
+        Assert.assertEquals(1L, volume.get(1).getMessage_count());
+
+        Assert.assertEquals(400, get("/analytics/volume?interval=fortnight").statusCode());
+    }
+
+    /**
+     * Sending http requests to the analytics endpoints with a malformed limit, buckets or to
+     *
+     * Expected Response:
+     *  Status Code: 400
+     */
+    @Test
+    public void malformedAnalyticsParametersAreRejected() throws IOException, InterruptedException {
+        Assert.assertEquals(400, get("/analytics/top-posters?limit=x").statusCode());
+        Assert.assertEquals(400, get("/analytics/top-posters?limit=-1").statusCode());
+        Assert.assertEquals(400, get("/analytics/volume?buckets=x").statusCode());
+        Assert.assertEquals(400, get("/analytics/volume?buckets=0").statusCode());
+        Assert.assertEquals(400, get("/analytics/volume?to=soon").statusCode());
+    }
+
+    /**
+     * Starting the app on a database that already holds a message
+     *
+     * Expected Result:
+     *  The aggregates are rebuilt from the message table, without any writes through the API
+     */
+    @Test
+    public void aggregatesAreRebuiltAtStartup() throws IOException, InterruptedException {
+        List<VolumeBucket> volume = objectMapper.readValue(get("/analytics/volume?interval=hour&buckets=1").body(),
+                new TypeReference<List<VolumeBucket>>(){});
+        Assert.assertEquals(1, volume.size());
+        Assert.assertEquals(1669946400L, volume.get(0).getBucket_start_epoch());
+        Assert.assertEquals(1L, volume.get(0).getMessage_count());
+
+        List<PosterCount> posters = objectMapper.readValue(get("/analytics/top-posters").body(),
+                new TypeReference<List<PosterCount>>(){});
+        Assert.assertEquals(1, posters.get(0).getPosted_by());
+    }
+
+    /**
+     * Counting a skewed stream of many more keys than there are counters
+     *
+     * Expected Result:
+     *  The heavy keys are found, and their counts are within the reported error of the truth
+     */
+    @Test
+    public void spaceSavingFindsHeavyKeys() {
+        SpaceSavingTopK topK = new SpaceSavingTopK(100);
+        for(int i = 0; i < 10000; i++) {
+            topK.add(10000 + i, 1);
+            if(i % 10 == 0) {
+                topK.add(1, 1);
+            }
+            if(i % 20 == 0) {
+                topK.add(2, 1);
+            }
+        }
+        List<long[]> top = topK.top(2);
+        Assert.assertEquals(1L, top.get(0)[0]);
+        Assert.assertEquals(2L, top.get(1)[0]);
+        Assert.assertTrue(top.get(0)[1] - top.get(0)[2] <= 1000 && top.get(0)[1] >= 1000);
+        Assert.assertTrue(top.get(1)[1] - top.get(1)[2] <= 500 && top.get(1)[1] >= 500);
+    }
+
+    /**
+     * Counting a message dated a year ahead of the server's clock, then messages dated now
+     *
+     * Expected Result:
+     *  The future message is not counted, and the window stays on the current time so the later messages are
+     */
+    @Test
+    public void futureTimesDoNotMoveTheWindow() {
+        TimeBucketCounter counter = new TimeBucketCounter(60, 60);
+        long now = 1669947792;
+        counter.add(now + 365L * 24 * 60 * 60, 1, now);
+        counter.add(now, 1, now);
+        counter.add(now + TimeBucketCounter.MAX_SKEW_SECONDS, 1, now);
+        long[][] counts = counter.getCounts(null, 60);
+        Assert.assertEquals(Math.floorDiv(now + TimeBucketCounter.MAX_SKEW_SECONDS, 60) * 60, counts[59][0]);
+        long total = 0;
+        for(long[] bucket : counts) {
+            total += bucket[1];
+        }
+        Assert.assertEquals(2L, total);
+    }
+
+    private HttpResponse<String> get(String path) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private void post(String path, String body) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .header("Content-Type", "application/json")
+                .build();
+        Assert.assertEquals(200, webClient.send(request, HttpResponse.BodyHandlers.ofString()).statusCode());
+    }
+}
@@ -0,0 +1,143 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import DAO.AccountDAO;
+import DAO.MessageDAO;
+import Model.Message;
+import Util.BulkImporter;
+import Util.ConnectionUtil;
+
+public class BulkImporterTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Before
+    public void setUp() {
+        ConnectionUtil.resetTestDatabase();
+    }
+
+    /**
+     * Importing a CSV file of accounts and an NDJSON file of messages, some of them invalid
+     *
+     * Expected Result:
+     *  The valid rows are inserted, the others are written to the reject files, and the constraints are back in place
+     */
+    @Test
+    public void importsValidRowsAndRejectsTheRest() throws Exception {
+        Path accounts = write("accounts.csv",
+                "account_id,username,password\n" +
+                ",importer,password\n" +
+                ",testuser1,password\n" +
+                ",shortpass,abc\n");
+        Path messages = write("messages.ndjson",
+                "{\"posted_by\":2,\"message_text\":\"imported\",\"time_posted_epoch\":1669947800}\n" +
+                "{\"posted_by\":999,\"message_text\":\"nobody\",\"time_posted_epoch\":1669947801}\n" +
+                "{\"posted_by\":2,\"message_text\":\n" +
+                "{\"message_id\":1,\"posted_by\":2,\"message_text\":\"taken id\",\"time_posted_epoch\":1669947802}\n" +
+                "{\"message_id\":50,\"posted_by\":1,\"message_text\":\"kept id\",\"time_posted_epoch\":1669947803}\n" +
+                "null\n");
+
+        try(Connection connection = ConnectionUtil.getConnection()) {
+            BulkImporter.Result accountResult = BulkImporter.importAccounts(connection, accounts);
+            Assert.assertEquals(1, accountResult.imported);
+            Assert.assertEquals(2, accountResult.rejected);
+            BulkImporter.Result messageResult = BulkImporter.importMessages(connection, messages);
+            Assert.assertEquals(2, messageResult.imported);
+            Assert.assertEquals(4, messageResult.rejected);
+        }
+
+        Assert.assertNotNull(new AccountDAO().getAccountByUsername("importer"));
+        List<Message> imported = new MessageDAO().getAllMessages(2);
+        Assert.assertEquals(1, imported.size());
+        Assert.assertEquals("imported", imported.get(0).getMessage_text());
+        Assert.assertEquals("kept id", new MessageDAO().getMessage(50).getMessage_text());
+        Assert.assertEquals(51, new MessageDAO().insertMessage(new Message(1, "after import", 1669947804)));
+        try(Connection connection = ConnectionUtil.getConnection();
+            PreparedStatement ps = connection.prepareStatement(
+                    "INSERT INTO message (posted_by, message_text, time_posted_epoch) VALUES (999, 'x', 1);")) {
+            ps.executeUpdate();
+            Assert.fail("the posted_by foreign key should be back");
+        } catch(SQLException expected) {
+        }
+
+        List<String> rejects = Files.readAllLines(folder.getRoot().toPath().resolve("messages.ndjson.rejects"));
+        Assert.assertEquals(4, rejects.size());
+        Assert.assertTrue(rejects.get(0).startsWith("2\tposted_by is not an account\t"));
+        Assert.assertTrue(rejects.get(2).startsWith("4\tid 1 is already taken\t"));
+        Assert.assertEquals("6\trow is null\tnull", rejects.get(3));
+    }
+
+    /**
+     * Importing a CSV file of messages with a checkpoint left by an interrupted import of the same file
+     *
+     * Expected Result:
+     *  Only the rows after the checkpoint are imported, and quoted fields may hold commas and line breaks
+     */
+    @Test
+    public void resumesFromCheckpoint() throws Exception {
+        Path messages = write("messages.csv",
+                "message_id,posted_by,message_text,time_posted_epoch\n" +
+                ",1,already imported,1669947800\n" +
+                ",1,\"second, with a comma\nand a line break\",1669947801\n");
+
+        try(Connection connection = ConnectionUtil.getConnection()) {
+            connection.createStatement().execute(
+                    "CREATE TABLE IF NOT EXISTS import_checkpoint (source varchar(1024) primary key, rows_done bigint);");
+            try(PreparedStatement ps = connection.prepareStatement(
+                    "MERGE INTO import_checkpoint (source, rows_done) KEY (source) VALUES (?, 1);")) {
+                ps.setString(1, messages.toAbsolutePath().toString());
+                ps.executeUpdate();
+            }
+            BulkImporter.Result result = BulkImporter.importMessages(connection, messages);
+            Assert.assertEquals(1, result.imported);
+            Assert.assertEquals(1, result.resumedAfter);
+        }
+
+        List<Message> all = new MessageDAO().getAllMessages(1);
+        Assert.assertEquals(2, all.size());
+        Assert.assertEquals("second, with a comma\nand a line break", all.get(1).getMessage_text());
+    }
+
+    /**
+     * Importing a file of messages that cannot be read
+     *
+     * Expected Result:
+     *  The import fails and the posted_by foreign key is back in place
+     */
+    @Test
+    public void restoresConstraintsWhenImportFails() throws Exception {
+        Path missing = folder.getRoot().toPath().resolve("missing.ndjson");
+        try(Connection connection = ConnectionUtil.getConnection()) {
+            BulkImporter.importMessages(connection, missing);
+            Assert.fail("the import should fail");
+        } catch(IOException expected) {
+        }
+
+        try(Connection connection = ConnectionUtil.getConnection();
+            PreparedStatement ps = connection.prepareStatement(
+                    "INSERT INTO message (posted_by, message_text, time_posted_epoch) VALUES (999, 'x', 1);")) {
+            ps.executeUpdate();
+            Assert.fail("the posted_by foreign key should be back");
+        } catch(SQLException expected) {
+        }
+    }
+
+    private Path write(String name, String content) throws Exception {
+        Path file = folder.getRoot().toPath().resolve(name);
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+}
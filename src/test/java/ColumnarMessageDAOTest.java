@@ -0,0 +1,87 @@
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import DAO.ColumnarMessageDAO;
+import Model.Message;
+import Model.MessageChange;
+
+public class ColumnarMessageDAOTest {
+    ColumnarMessageDAO messageDAO;
+
+    @Before
+    public void setUp() {
+        messageDAO = new ColumnarMessageDAO();
+    }
+
+    /**
+     * Inserting messages, then reading them back by id, by account and by time range
+     *
+     * Expected Result:
+     *  Generated ids start at 1, and every scan returns the matching messages in message_id order
+     */
+    @Test
+    public void insertAndScan() {
+        Assert.assertEquals(1, messageDAO.insertMessage(new Message(1, "first", 100)));
+        Assert.assertEquals(2, messageDAO.insertMessage(new Message(2, "second \u00e9\u00e8", 200)));
+        Assert.assertEquals(3, messageDAO.insertMessage(new Message(1, "third", 300)));
+
+        Assert.assertEquals(new Message(2, 2, "second \u00e9\u00e8", 200), messageDAO.getMessage(2));
+        Assert.assertNull(messageDAO.getMessage(4));
+        Assert.assertEquals(List.of(new Message(1, 1, "first", 100), new Message(3, 1, "third", 300)),
+                messageDAO.getAllMessages(1));
+        Assert.assertEquals(List.of(new Message(2, 2, "second \u00e9\u00e8", 200), new Message(3, 1, "third", 300)),
+                messageDAO.getMessagesPostedBetween(150, 300));
+    }
+
+    /**
+     * Updating and deleting messages, then compacting
+     *
+     * Expected Result:
+     *  Deleted messages are gone before and after compaction, updated text is kept, and ids are not reused
+     */
+    @Test
+    public void updateDeleteAndCompact() {
+        for(int i = 1; i <= 100; i++) {
+            messageDAO.insertMessage(new Message(i % 3, "message " + i, i));
+        }
+        for(int i = 1; i <= 100; i += 2) {
+            Assert.assertTrue(messageDAO.deleteMessage(i));
+        }
+        Assert.assertFalse(messageDAO.deleteMessage(1));
+        Assert.assertEquals(10, messageDAO.updateMessageText(new Message(10, 0, "updated", 0)));
+        Assert.assertEquals(0, messageDAO.updateMessageText(new Message(11, 0, "updated", 0)));
+
+        messageDAO.compact();
+
+        List<Message> messages = messageDAO.getAllMessages();
+        Assert.assertEquals(50, messages.size());
+        Assert.assertEquals(2, messages.get(0).getMessage_id());
+        Assert.assertNull(messageDAO.getMessage(11));
+        Assert.assertEquals(new Message(10, 1, "updated", 10), messageDAO.getMessage(10));
+        Assert.assertEquals(101, messageDAO.insertMessage(new Message(1, "after compaction", 101)));
+    }
+
+    /**
+     * Making changes, then reading the change log
+     *
+     * Expected Result:
+     *  One change per insert, update and delete, in order
+     */
+    @Test
+    public void changesAreRecorded() {
+        messageDAO.insertMessage(new Message(1, "first", 100));
+        messageDAO.updateMessageText(new Message(1, 1, "changed", 100));
+        messageDAO.deleteMessage(1);
+
+        List<MessageChange> changes = messageDAO.getChangesSince(0, 10);
+        Assert.assertEquals(3, changes.size());
+        Assert.assertEquals("created", changes.get(0).getChange_type());
+        Assert.assertEquals("updated", changes.get(1).getChange_type());
+        Assert.assertEquals("deleted", changes.get(2).getChange_type());
+        Assert.assertEquals(new Message(1, 1, "changed", 100), changes.get(2).getMessage());
+        Assert.assertArrayEquals(new long[] {1, 3}, messageDAO.getChangeSequenceRange());
+    }
+}
@@ -0,0 +1,135 @@
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import DAO.InMemoryAccountDAO;
+import DAO.InMemoryMessageDAO;
+import Model.Message;
+import Service.SocialMediaService;
+import Util.ConcurrencyLimiter;
+import io.javalin.Javalin;
+
+public class ConcurrencyLimiterTest {
+    CountDownLatch release;
+    CountDownLatch entered;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, start the Javalin app on in-memory stores whose getMessage blocks until the test releases
+     * it, with the limit of GET /messages/{message_id} fixed at one request.
+     */
+    @Before
+    public void setUp() {
+        release = new CountDownLatch(1);
+        entered = new CountDownLatch(1);
+        InMemoryMessageDAO messages = new InMemoryMessageDAO() {
+            @Override
+            public Message getMessage(int message_id) {
+                entered.countDown();
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch(InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.getMessage(message_id);
+            }
+        };
+        System.setProperty("socialmedia.limit.getMessage.min", "1");
+        System.setProperty("socialmedia.limit.getMessage.max", "1");
+        app = new SocialMediaController(new SocialMediaService(new InMemoryAccountDAO(), messages)).startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+    }
+
+    @After
+    public void tearDown() {
+        release.countDown();
+        app.stop();
+        System.clearProperty("socialmedia.limit.getMessage.min");
+        System.clearProperty("socialmedia.limit.getMessage.max");
+    }
+
+    /**
+     * Sending a second GET /messages/{message_id} while the first is still running, with a limit of one
+     *
+     * Expected Response:
+     *  The second is turned away at once with status 503 and a Retry-After header, other endpoints still answer, and
+     *  GET /debug/limits counts the rejection
+     */
+    @Test
+    public void requestsOverTheLimitAreRejected() throws Exception {
+        CompletableFuture<HttpResponse<String>> first = webClient.sendAsync(get("/messages/1"),
+                HttpResponse.BodyHandlers.ofString());
+        Assert.assertTrue(entered.await(10, TimeUnit.SECONDS));
+
+        HttpResponse<String> second = webClient.send(get("/messages/1"), HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(503, second.statusCode());
+        Assert.assertEquals("1", second.headers().firstValue("Retry-After").orElse(null));
+        Assert.assertEquals(200, webClient.send(get("/messages"), HttpResponse.BodyHandlers.ofString()).statusCode());
+
+        release.countDown();
+        Assert.assertEquals(200, first.get(10, TimeUnit.SECONDS).statusCode());
+
+        JsonNode limits = objectMapper.readTree(
+                webClient.send(get("/debug/limits"), HttpResponse.BodyHandlers.ofString()).body());
+        for(JsonNode limit : limits) {
+            if(limit.get("route").asText().equals("getMessage")) {
+                Assert.assertEquals(1, limit.get("limit").asInt());
+                Assert.assertEquals(1, limit.get("accepted").asLong());
+                Assert.assertEquals(1, limit.get("rejected").asLong());
+                return;
+            }
+        }
+        Assert.fail("getMessage should have a limiter");
+    }
+
+    /**
+     * Completing requests at a steady latency with the limit in use, then briefly at a latency three times higher
+     *
+     * Expected Result:
+     *  The limit grows while latency holds steady and shrinks once latency climbs
+     */
+    @Test
+    public void limitFollowsLatency() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter("test", 2, 10, 100);
+        runAtLatency(limiter, 1_000_000, 200);
+        int grown = limiter.getStats().limit;
+        Assert.assertTrue(grown > 10);
+
+        runAtLatency(limiter, 3_000_000, 3);
+        Assert.assertTrue(limiter.getStats().limit < grown);
+    }
+
+    private void runAtLatency(ConcurrencyLimiter limiter, long latencyNanos, int rounds) {
+        for(int round = 0; round < rounds; round++) {
+            int inFlight = limiter.getStats().limit;
+            for(int i = 0; i < inFlight; i++) {
+                Assert.assertTrue(limiter.tryAcquire());
+            }
+            Assert.assertFalse(limiter.tryAcquire());
+            for(int i = 0; i < inFlight; i++) {
+                limiter.release(latencyNanos);
+            }
+        }
+    }
+
+    private HttpRequest get(String path) {
+        return HttpRequest.newBuilder().uri(URI.create("http://localhost:8080" + path)).build();
+    }
+}
@@ -0,0 +1,85 @@
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+
+import Controller.SocialMediaController;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+/**
+ * Measures the throughput of GET /export/messages, in rows per second, for each export format, and the heap in use
+ * once each export has finished, which should not grow with the number of rows.
+ *
+ * The benchmark resets the database in ./h2 and fills it with the requested number of messages (default 1,000,000).
+ *
+ * This is not run as part of the test suite. Run it by hand after mvn test-compile with:
+ *   mvn -q dependency:build-classpath -Dmdep.outputFile=cp.txt
+ *   java -cp target/classes:target/test-classes:$(cat cp.txt) ExportBenchmark [rows]
+ */
+public class ExportBenchmark {
+
+    private static final int PORT = 8091;
+    private static final int INSERT_BATCH = 10000;
+
+    public static void main(String[] args) throws Exception {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+
+        ConnectionUtil.resetTestDatabase();
+        try(Connection connection = ConnectionUtil.getConnection();
+            PreparedStatement ps = connection.prepareStatement(
+                    "INSERT INTO message (posted_by, message_text, time_posted_epoch) VALUES (1, ?, ?);")) {
+            connection.setAutoCommit(false);
+            for(int i = 1; i < rows; i++) {
+                ps.setString(1, "message number " + i + ", posted to the timeline");
+                ps.setLong(2, 1669947792L + i);
+                ps.addBatch();
+                if(i % INSERT_BATCH == 0) {
+                    ps.executeBatch();
+                    connection.commit();
+                }
+            }
+            ps.executeBatch();
+            connection.commit();
+        }
+
+        Javalin app = new SocialMediaController().startAPI();
+        app.start(PORT);
+        HttpClient client = HttpClient.newHttpClient();
+        try {
+            System.out.printf("%-14s %10s %14s %12s %10s%n", "export", "rows", "bytes", "rows/s", "heap MB");
+            for(String query : new String[] { "format=ndjson", "format=csv", "format=ndjson&gzip=true",
+                    "format=csv&gzip=true" }) {
+                run(client, query, rows);
+            }
+        } finally {
+            app.stop();
+        }
+    }
+
+    private static void run(HttpClient client, String query, int rows) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:" + PORT + "/export/messages?" + query))
+                .build();
+        byte[] buffer = new byte[64 * 1024];
+        long bytes = 0;
+
+        long start = System.nanoTime();
+        try(InputStream body = client.send(request, HttpResponse.BodyHandlers.ofInputStream()).body()) {
+            int read;
+            while((read = body.read(buffer)) > 0) {
+                bytes += read;
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        System.gc();
+        Runtime runtime = Runtime.getRuntime();
+        long heap = (runtime.totalMemory() - runtime.freeMemory()) / (1024 * 1024);
+        System.out.printf("%-14s %10d %14d %12.0f %10d%n", query.replace("format=", "").replace("&gzip=true", "+gzip"),
+                rows, bytes, rows / seconds, heap);
+    }
+}
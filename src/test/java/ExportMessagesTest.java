@@ -0,0 +1,136 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class ExportMessagesTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/export/messages
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: one JSON message per line, in message_id order
+     */
+    @Test
+    public void exportNdjson() throws IOException, InterruptedException {
+        postMessage("{\"posted_by\":1,\"message_text\":\"second, \\\"quoted\\\"\",\"time_posted_epoch\":1669947800}");
+
+        HttpResponse<String> response = get("/export/messages");
+        Assert.assertEquals(200, response.statusCode());
+        String[] lines = response.body().split("\n");
+        Assert.assertEquals(2, lines.length);
+        Assert.assertEquals(new Message(1, 1, "test message 1", 1669947792), objectMapper.readValue(lines[0], Message.class));
+        Assert.assertEquals(new Message(2, 1, "second, \"quoted\"", 1669947800), objectMapper.readValue(lines[1], Message.class));
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/export/messages?format=csv&from=1669947795
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: a header line and the messages in the time range, with text quoted as CSV
+     */
+    @Test
+    public void exportCsvInTimeRange() throws IOException, InterruptedException {
+        postMessage("{\"posted_by\":1,\"message_text\":\"second, \\\"quoted\\\"\",\"time_posted_epoch\":1669947800}");
+
+        HttpResponse<String> response = get("/export/messages?format=csv&from=1669947795");
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertEquals("message_id,posted_by,message_text,time_posted_epoch\n" +
+                "2,1,\"second, \"\"quoted\"\"\",1669947800\n", response.body());
+        Assert.assertEquals(400, get("/export/messages?format=xml").statusCode());
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/export/messages with a malformed posted_by, from or to
+     *
+     * Expected Response:
+     *  Status Code: 400
+     */
+    @Test
+    public void exportWithMalformedFiltersIsRejected() throws IOException, InterruptedException {
+        Assert.assertEquals(400, get("/export/messages?posted_by=me").statusCode());
+        Assert.assertEquals(400, get("/export/messages?from=yesterday").statusCode());
+        Assert.assertEquals(400, get("/export/messages?to=1669947800.5").statusCode());
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/export/messages?posted_by=1&gzip=true
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: the NDJSON export, gzipped
+     */
+    @Test
+    public void exportGzipped() throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/export/messages?posted_by=1&gzip=true"))
+                .build();
+        HttpResponse<InputStream> response = webClient.send(request, HttpResponse.BodyHandlers.ofInputStream());
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertEquals("application/gzip", response.headers().firstValue("Content-Type").orElse(null));
+        try(InputStream body = new GZIPInputStream(response.body())) {
+            String ndjson = new String(body.readAllBytes(), StandardCharsets.UTF_8);
+            Assert.assertEquals(new Message(1, 1, "test message 1", 1669947792),
+                    objectMapper.readValue(ndjson.trim(), Message.class));
+        }
+    }
+
+    private HttpResponse<String> get(String path) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private void postMessage(String body) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .header("Content-Type", "application/json")
+                .build();
+        Assert.assertEquals(200, webClient.send(request, HttpResponse.BodyHandlers.ofString()).statusCode());
+    }
+}
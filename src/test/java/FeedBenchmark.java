@@ -0,0 +1,152 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import DAO.AccountDAO;
+import DAO.MessageDAO;
+import Model.Message;
+import Service.HomeTimelines;
+import Service.SocialMediaService;
+import Util.ConnectionUtil;
+import Util.StorageProfile;
+
+/**
+ * Measures the latency of posting a message and of reading a feed page (GET /accounts/{account_id}/feed) for three
+ * fan-out strategies, under a uniform and a skewed follower distribution:
+ *   push     every message is pushed into its followers' inboxes (no account is over the fan-out threshold)
+ *   pull     every feed is merged from the store at query time (every account is over it)
+ *   hybrid   accounts with at least HYBRID_THRESHOLD followers are pulled and the rest pushed
+ *
+ * Every account follows FOLLOWS accounts. In the uniform distribution each is equally likely to be followed; in the
+ * skewed one the account of rank r is followed with probability proportional to 1 / r, so the first few are followed
+ * by nearly everyone. Each run starts from a fresh database, loads the accounts, follows and SEED_MESSAGES messages,
+ * reads the feeds of a sample of accounts to build their inboxes, and then measures posts by random accounts and
+ * feed reads of the sampled accounts, one at a time.
+ *
+ * The database is reset as the tests reset it, in memory unless -Dsocialmedia.storage.profile names another
+ * profile. This is not run as part of the test suite. Run it by hand after mvn test-compile with:
+ *   mvn -q dependency:build-classpath -Dmdep.outputFile=cp.txt
+ *   java -cp target/classes:target/test-classes:$(cat cp.txt) FeedBenchmark [accounts] [operations]
+ */
+public class FeedBenchmark {
+
+    static final int FOLLOWS = 50;
+    static final int SEED_MESSAGES = 20000;
+    static final int READERS = 500;
+    static final int FEED_LIMIT = 50;
+    static final long HYBRID_THRESHOLD = 100;
+
+    public static void main(String[] args) throws Exception {
+        if(System.getProperty(StorageProfile.PROFILE_PROPERTY) == null) {
+            System.setProperty(StorageProfile.PROFILE_PROPERTY, StorageProfile.MEMORY.getProfileName());
+        }
+        int accounts = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int operations = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+
+        System.out.printf("%-9s %-8s %12s %12s %12s %12s %12s%n", "followers", "strategy", "max followers",
+                "post p50 us", "post p99 us", "feed p50 us", "feed p99 us");
+        run("(warmup)", false, "hybrid", HYBRID_THRESHOLD, accounts, operations);
+        for(boolean skewed : new boolean[] { false, true }) {
+            run(skewed ? "skewed" : "uniform", skewed, "push", Long.MAX_VALUE, accounts, operations);
+            run(skewed ? "skewed" : "uniform", skewed, "pull", 0, accounts, operations);
+            run(skewed ? "skewed" : "uniform", skewed, "hybrid", HYBRID_THRESHOLD, accounts, operations);
+        }
+    }
+
+    private static void run(String label, boolean skewed, String strategy, long threshold, int accounts,
+            int operations) throws Exception {
+        Random random = new Random(42);
+        ConnectionUtil.resetTestDatabase();
+        int[] followers = load(random, skewed, accounts);
+
+        System.setProperty(HomeTimelines.FANOUT_THRESHOLD_PROPERTY, String.valueOf(threshold));
+        SocialMediaService service = new SocialMediaService(new AccountDAO(), new MessageDAO());
+        int[] readers = new int[READERS];
+        for(int i = 0; i < READERS; i++) {
+            readers[i] = 1 + random.nextInt(accounts);
+            service.getFeed(readers[i], FEED_LIMIT, Long.MAX_VALUE, Integer.MAX_VALUE);
+        }
+
+        long[] posts = new long[operations];
+        long[] reads = new long[operations];
+        for(int i = 0; i < operations; i++) {
+            long start = System.nanoTime();
+            service.addMessage(new Message(1 + random.nextInt(accounts), "benchmark post " + i, SEED_MESSAGES + i));
+            posts[i] = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            service.getFeed(readers[random.nextInt(READERS)], FEED_LIMIT, Long.MAX_VALUE, Integer.MAX_VALUE);
+            reads[i] = System.nanoTime() - start;
+        }
+        System.clearProperty(HomeTimelines.FANOUT_THRESHOLD_PROPERTY);
+
+        System.out.printf("%-9s %-8s %12d %12.0f %12.0f %12.0f %12.0f%n", label, strategy,
+                Arrays.stream(followers).max().getAsInt(), percentile(posts, 0.5), percentile(posts, 0.99),
+                percentile(reads, 0.5), percentile(reads, 0.99));
+    }
+
+    /*
+     * Insert the accounts, their follows and the seed messages in batches.
+     *
+     * @return the number of followers of each account, by account_id.
+     */
+    private static int[] load(Random random, boolean skewed, int accounts) throws Exception {
+        double[] cumulative = new double[accounts];
+        double total = 0;
+        for(int rank = 0; rank < accounts; rank++) {
+            total += skewed ? 1.0 / (rank + 1) : 1.0;
+            cumulative[rank] = total;
+        }
+        int[] followers = new int[accounts + 1];
+
+        try(Connection connection = ConnectionUtil.getConnection()) {
+            connection.setAutoCommit(false);
+            try(PreparedStatement ps = connection.prepareStatement(
+                    "INSERT INTO account (username, password) VALUES (?, 'password')")) {
+                for(int i = 2; i <= accounts; i++) {
+                    ps.setString(1, "benchmark" + i);
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+            }
+            try(PreparedStatement ps = connection.prepareStatement(
+                    "INSERT INTO follow (follower_id, followee_id) VALUES (?, ?)")) {
+                for(int follower = 1; follower <= accounts; follower++) {
+                    Set<Integer> followees = new HashSet<>();
+                    while(followees.size() < Math.min(FOLLOWS, accounts - 1)) {
+                        int rank = Arrays.binarySearch(cumulative, random.nextDouble() * total);
+                        int followee = 1 + (rank < 0 ? -rank - 1 : rank);
+                        if(followee != follower && followees.add(followee)) {
+                            ps.setInt(1, follower);
+                            ps.setInt(2, followee);
+                            ps.addBatch();
+                            followers[followee]++;
+                        }
+                    }
+                }
+                ps.executeBatch();
+            }
+            try(PreparedStatement ps = connection.prepareStatement(
+                    "INSERT INTO message (posted_by, message_text, time_posted_epoch) VALUES (?, ?, ?)")) {
+                for(int i = 0; i < SEED_MESSAGES; i++) {
+                    ps.setInt(1, 1 + random.nextInt(accounts));
+                    ps.setString(2, "seed message " + i);
+                    ps.setLong(3, i);
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+            }
+            connection.commit();
+        }
+        return followers;
+    }
+
+    private static double percentile(long[] latencies, double fraction) {
+        long[] sorted = latencies.clone();
+        Arrays.sort(sorted);
+        return sorted[(int) (sorted.length * fraction)] / 1000.0;
+    }
+}
@@ -0,0 +1,202 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import DAO.AccountDAO;
+import DAO.MessageDAO;
+import Model.Account;
+import Model.Follow;
+import Model.Message;
+import Service.HomeTimelines;
+import Service.SocialMediaService;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class FeedTest {
+    SocialMediaService socialMediaService;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, add users 2 and 3, and start the Javalin app.
+     */
+    @Before
+    public void setUp() {
+        ConnectionUtil.resetTestDatabase();
+        startApp();
+        socialMediaService.addAccount(new Account("testuser2", "password"));
+        socialMediaService.addAccount(new Account("testuser3", "password"));
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+        System.clearProperty(HomeTimelines.FANOUT_THRESHOLD_PROPERTY);
+        System.clearProperty(HomeTimelines.INBOX_SIZE_PROPERTY);
+    }
+
+    /**
+     * User 1 follows users 2 and 3 through POST localhost:8080/accounts/1/follows, they post, and user 1 reads
+     * GET localhost:8080/accounts/1/feed?limit=2, then the next page with the X-Next-Cursor it returned
+     *
+     * Expected Response:
+     *  The two newest messages of users 2 and 3 with a cursor, then the older one; user 1's own message is not shown
+     */
+    @Test
+    public void feedMergesFolloweesNewestFirst() throws IOException, InterruptedException {
+        Assert.assertEquals(new Follow(1, 2), objectMapper.readValue(follow(1, "{\"followee_id\":2}").body(), Follow.class));
+        Assert.assertEquals(200, follow(1, "{\"followee_id\":3}").statusCode());
+        Assert.assertEquals(List.of(), times(get("/accounts/1/feed")));
+        post(2, 100);
+        post(3, 200);
+        post(2, 300);
+        post(1, 400);
+
+        HttpResponse<String> first = get("/accounts/1/feed?limit=2");
+        Assert.assertEquals(List.of(300L, 200L), times(first));
+        String cursor = first.headers().firstValue("X-Next-Cursor").orElse(null);
+        HttpResponse<String> second = get("/accounts/1/feed?limit=2&cursor=" + cursor);
+        Assert.assertEquals(List.of(100L), times(second));
+        Assert.assertFalse(second.headers().firstValue("X-Next-Cursor").isPresent());
+    }
+
+    /**
+     * User 1 stops following user 2 through DELETE localhost:8080/accounts/1/follows/2
+     *
+     * Expected Response:
+     *  The follow is returned once, and user 2's messages leave the feed
+     */
+    @Test
+    public void unfollowRemovesMessages() throws IOException, InterruptedException {
+        follow(1, "{\"followee_id\":2}");
+        follow(1, "{\"followee_id\":3}");
+        post(2, 100);
+        post(3, 200);
+        Assert.assertEquals(List.of(200L, 100L), times(get("/accounts/1/feed")));
+
+        Assert.assertEquals(new Follow(1, 2), objectMapper.readValue(delete("/accounts/1/follows/2").body(), Follow.class));
+        Assert.assertEquals("", delete("/accounts/1/follows/2").body());
+        Assert.assertEquals(List.of(200L), times(get("/accounts/1/feed")));
+    }
+
+    /**
+     * With a fan-out threshold of 2 followers, user 2 is followed by users 1 and 3 and has its messages read at query
+     * time, while user 3's messages are pushed
+     *
+     * Expected Result:
+     *  Both kinds are merged into the same feed, before and after user 2 crosses the threshold
+     */
+    @Test
+    public void pulledAndPushedMessagesAreMerged() throws IOException, InterruptedException {
+        System.setProperty(HomeTimelines.FANOUT_THRESHOLD_PROPERTY, "2");
+        restartApp();
+        follow(1, "{\"followee_id\":2}");
+        follow(1, "{\"followee_id\":3}");
+        post(2, 100);
+        Assert.assertEquals(List.of(100L), times(get("/accounts/1/feed")));
+
+        follow(3, "{\"followee_id\":2}");
+        post(2, 200);
+        post(3, 300);
+        Assert.assertEquals(List.of(300L, 200L, 100L), times(get("/accounts/1/feed")));
+        Assert.assertEquals(List.of(200L, 100L), times(get("/accounts/3/feed")));
+    }
+
+    /**
+     * With inboxes of 2 messages, user 2 posts 4 messages and one is deleted
+     *
+     * Expected Result:
+     *  Pages reaching past the inbox are read from the store, and the deleted message is never returned
+     */
+    @Test
+    public void truncatedInboxFallsBackToStore() throws IOException, InterruptedException {
+        System.setProperty(HomeTimelines.INBOX_SIZE_PROPERTY, "2");
+        restartApp();
+        follow(1, "{\"followee_id\":2}");
+        Assert.assertEquals(List.of(), times(get("/accounts/1/feed")));
+        post(2, 100);
+        Message deleted = post(2, 200);
+        post(2, 300);
+        post(2, 400);
+        socialMediaService.deleteMessage(deleted.getMessage_id());
+
+        Assert.assertEquals(List.of(400L, 300L), times(get("/accounts/1/feed?limit=2")));
+        Assert.assertEquals(List.of(400L, 300L, 100L), times(get("/accounts/1/feed?limit=3")));
+    }
+
+    /**
+     * Following oneself, a missing user, and reading a page of 0 messages, a limit that is not a number, or a cursor
+     * that was never sent in X-Next-Cursor
+     *
+     * Expected Response:
+     *  Status Code: 400
+     */
+    @Test
+    public void invalidRequestsAreRejected() throws IOException, InterruptedException {
+        Assert.assertEquals(400, follow(1, "{\"followee_id\":1}").statusCode());
+        Assert.assertEquals(400, follow(1, "{\"followee_id\":99}").statusCode());
+        Assert.assertEquals(400, follow(99, "{\"followee_id\":1}").statusCode());
+        Assert.assertEquals(400, get("/accounts/1/feed?limit=0").statusCode());
+        Assert.assertEquals(400, get("/accounts/1/feed?limit=x").statusCode());
+        Assert.assertEquals(400, get("/accounts/1/feed?cursor=abc").statusCode());
+        Assert.assertEquals(400, get("/accounts/1/feed?cursor=1").statusCode());
+    }
+
+    private void startApp() {
+        socialMediaService = new SocialMediaService(new AccountDAO(), new MessageDAO());
+        app = new SocialMediaController(socialMediaService).startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+    }
+
+    private void restartApp() {
+        app.stop();
+        startApp();
+    }
+
+    private Message post(int posted_by, long time) {
+        return socialMediaService.addMessage(new Message(posted_by, "at " + time, time));
+    }
+
+    private List<Long> times(HttpResponse<String> response) throws IOException {
+        List<Long> times = new ArrayList<>();
+        for(Message message : objectMapper.readValue(response.body(), new TypeReference<List<Message>>(){})) {
+            times.add(message.getTime_posted_epoch());
+        }
+        return times;
+    }
+
+    private HttpResponse<String> follow(int account_id, String body) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/accounts/" + account_id + "/follows"))
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .header("Content-Type", "application/json")
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpResponse<String> delete(String path) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder().uri(URI.create("http://localhost:8080" + path)).DELETE().build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpResponse<String> get(String path) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder().uri(URI.create("http://localhost:8080" + path)).build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+}
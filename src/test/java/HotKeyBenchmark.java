@@ -0,0 +1,130 @@
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import Controller.SocialMediaController;
+import Util.ConnectionUtil;
+import Util.HotKeyTracker;
+import io.javalin.Javalin;
+
+/**
+ * Measures what hot-key tracking costs:
+ *   record    the time of one HotKeyTracker.record call, from 1 and from 4 threads, recording every read and at the
+ *             default sample rate, for keys drawn from a skewed distribution (the key of rank r is read with
+ *             probability proportional to 1 / r)
+ *   requests  GET /messages/1 from 4 client threads with tracking on and off, alternately, through Javalin
+ *
+ * The cost of a request divided into the cost of a record gives the share of request CPU spent tracking.
+ *
+ * This is not run as part of the test suite. Run it by hand after mvn test-compile with:
+ *   mvn -q dependency:build-classpath -Dmdep.outputFile=cp.txt
+ *   java -cp target/classes:target/test-classes:$(cat cp.txt) HotKeyBenchmark [records per thread] [requests]
+ */
+public class HotKeyBenchmark {
+
+    static final int KEYS = 100_000;
+
+    public static void main(String[] args) throws Exception {
+        int records = args.length > 0 ? Integer.parseInt(args[0]) : 5_000_000;
+        int requests = args.length > 1 ? Integer.parseInt(args[1]) : 20_000;
+
+        int[] keys = skewedKeys(1 << 20);
+        for(int round = 0; round < 2; round++) {
+            for(int threads : new int[] { 1, 4 }) {
+                for(HotKeyTracker tracker : new HotKeyTracker[] { new HotKeyTracker("message_id", 1, 60_000, 32),
+                        new HotKeyTracker("message_id") }) {
+                    double nanos = record(tracker, keys, records, threads);
+                    System.out.printf("record    %-9s %d threads %-8s %8.1f ns%n", round == 0 ? "(warmup)" : "",
+                            threads, tracker.getReport(0).sample_rate, nanos);
+                }
+            }
+        }
+
+        ConnectionUtil.resetTestDatabase();
+        for(int round = 0; round < 3; round++) {
+            for(boolean enabled : new boolean[] { false, true }) {
+                System.setProperty(HotKeyTracker.ENABLED_PROPERTY, String.valueOf(enabled));
+                double micros = requests(requests);
+                System.out.printf("requests  %-9s %-8s %8.1f us%n", round == 0 ? "(warmup)" : "",
+                        enabled ? "tracked" : "off", micros);
+            }
+        }
+        System.clearProperty(HotKeyTracker.ENABLED_PROPERTY);
+    }
+
+    /*
+     * @return the mean time of one record call, in nanoseconds.
+     */
+    private static double record(HotKeyTracker tracker, int[] keys, int records, int threads) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<Long>> results = new ArrayList<>();
+        for(int t = 0; t < threads; t++) {
+            int offset = t * 7919;
+            results.add(executor.submit(() -> {
+                long start = System.nanoTime();
+                for(int i = 0; i < records; i++) {
+                    tracker.record(keys[(i + offset) & (keys.length - 1)]);
+                }
+                return System.nanoTime() - start;
+            }));
+        }
+        long total = 0;
+        for(Future<Long> result : results) {
+            total += result.get();
+        }
+        executor.shutdown();
+        return total / (double) threads / records;
+    }
+
+    /*
+     * @return the mean time per request, in microseconds, of all client threads together.
+     */
+    private static double requests(int requests) throws Exception {
+        Javalin app = new SocialMediaController().startAPI();
+        app.start(8080);
+        HttpClient client = HttpClient.newHttpClient();
+        HttpRequest request = HttpRequest.newBuilder().uri(URI.create("http://localhost:8080/messages/1")).build();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<?>> results = new ArrayList<>();
+        long start = System.nanoTime();
+        for(int t = 0; t < 4; t++) {
+            results.add(executor.submit(() -> {
+                for(int i = 0; i < requests / 4; i++) {
+                    client.send(request, HttpResponse.BodyHandlers.discarding());
+                }
+                return null;
+            }));
+        }
+        for(Future<?> result : results) {
+            result.get();
+        }
+        double micros = (System.nanoTime() - start) / 1000.0 / requests;
+        executor.shutdown();
+        app.stop();
+        return micros;
+    }
+
+    private static int[] skewedKeys(int count) {
+        double[] cumulative = new double[KEYS];
+        double total = 0;
+        for(int rank = 0; rank < KEYS; rank++) {
+            total += 1.0 / (rank + 1);
+            cumulative[rank] = total;
+        }
+        Random random = new Random(42);
+        int[] keys = new int[count];
+        for(int i = 0; i < count; i++) {
+            int rank = Arrays.binarySearch(cumulative, random.nextDouble() * total);
+            keys[i] = rank < 0 ? -rank - 1 : rank;
+        }
+        return keys;
+    }
+}
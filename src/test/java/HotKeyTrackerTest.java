@@ -0,0 +1,166 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Util.ConnectionUtil;
+import Util.HotKeyTracker;
+import io.javalin.Javalin;
+
+public class HotKeyTrackerTest {
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database and start the Javalin app, recording every read.
+     */
+    @Before
+    public void setUp() {
+        System.setProperty(HotKeyTracker.SAMPLE_RATE_PROPERTY, "1");
+        ConnectionUtil.resetTestDatabase();
+        app = new SocialMediaController().startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+        System.clearProperty(HotKeyTracker.SAMPLE_RATE_PROPERTY);
+    }
+
+    /**
+     * Key 7 read 1000 times and key 8 500 times among 20000 other keys read once each
+     *
+     * Expected Result:
+     *  Keys 7 and 8 are reported first, counted at least as often as they were read and not much more
+     */
+    @Test
+    public void hottestKeysAreFoundAmongColdOnes() {
+        HotKeyTracker tracker = new HotKeyTracker("message_id", 1, 60_000, 8);
+        Random random = new Random(1);
+        for(int i = 0; i < 20000; i++) {
+            tracker.record(1000 + random.nextInt(1_000_000), 0);
+            if(i % 20 == 0) {
+                tracker.record(7, 0);
+            }
+            if(i % 40 == 0) {
+                tracker.record(8, 0);
+            }
+        }
+
+        HotKeyTracker.Report report = tracker.getReport(2, 0);
+        Assert.assertEquals(21500, report.reads);
+        Assert.assertEquals(7, report.keys.get(0).key);
+        Assert.assertEquals(8, report.keys.get(1).key);
+        Assert.assertTrue(report.keys.get(0).reads >= 1000 && report.keys.get(0).reads < 1100);
+        Assert.assertTrue(report.keys.get(1).reads >= 500 && report.keys.get(1).reads < 600);
+    }
+
+    /**
+     * Reads recorded at time 0 of a 60 second window, reported at 30 seconds and again at 70 seconds
+     *
+     * Expected Result:
+     *  They are counted within the window and forgotten once it has passed
+     */
+    @Test
+    public void readsFadeOutOfTheWindow() {
+        HotKeyTracker tracker = new HotKeyTracker("account_id", 1, 60_000, 8);
+        tracker.record(1, 0);
+        tracker.record(1, 0);
+        Assert.assertEquals(2, tracker.getReport(10, 30_000).keys.get(0).reads);
+        Assert.assertEquals(0, tracker.getReport(10, 70_000).reads);
+        Assert.assertTrue(tracker.getReport(10, 70_000).keys.isEmpty());
+    }
+
+    /**
+     * Four threads each reading key 1 100000 times
+     *
+     * Expected Result:
+     *  No read is lost
+     */
+    @Test
+    public void concurrentReadsAreAllCounted() throws InterruptedException {
+        HotKeyTracker tracker = new HotKeyTracker("message_id", 1, 60_000, 8);
+        List<Thread> threads = new ArrayList<>();
+        for(int t = 0; t < 4; t++) {
+            Thread thread = new Thread(() -> {
+                for(int i = 0; i < 100_000; i++) {
+                    tracker.record(1, 0);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for(Thread thread : threads) {
+            thread.join();
+        }
+        Assert.assertEquals(400_000, tracker.getReport(1, 0).keys.get(0).reads);
+    }
+
+    /**
+     * Sending GET localhost:8080/messages/1 three times and GET localhost:8080/accounts/1/messages twice, then
+     * GET localhost:8080/debug/hotkeys
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: message_id 1 read 3 times and account_id 1 read twice
+     */
+    @Test
+    public void readPathsAreReported() throws IOException, InterruptedException {
+        for(int i = 0; i < 3; i++) {
+            get("/messages/1");
+        }
+        get("/accounts/1/messages");
+        get("/accounts/1/messages");
+
+        HttpResponse<String> response = get("/debug/hotkeys");
+        Assert.assertEquals(200, response.statusCode());
+        JsonNode reports = objectMapper.readTree(response.body());
+        Assert.assertEquals("message_id", reports.get(0).get("key_type").asText());
+        Assert.assertEquals(1, reports.get(0).get("keys").get(0).get("key").asInt());
+        Assert.assertEquals(3, reports.get(0).get("keys").get(0).get("reads").asLong());
+        Assert.assertEquals("account_id", reports.get(1).get("key_type").asText());
+        Assert.assertEquals(2, reports.get(1).get("keys").get(0).get("reads").asLong());
+    }
+
+    /**
+     * Sending GET localhost:8080/messages?posted_by=7 with a malformed limit, per_account or cursor, then
+     * GET localhost:8080/debug/hotkeys, and GET localhost:8080/debug/hotkeys?limit=x
+     *
+     * Expected Response:
+     *  Status Code: 400 for each malformed request, and account_id 7 is not reported as read
+     */
+    @Test
+    public void rejectedReadsAreNotReported() throws IOException, InterruptedException {
+        Assert.assertEquals(400, get("/messages?posted_by=7&limit=x").statusCode());
+        Assert.assertEquals(400, get("/messages?posted_by=7&per_account=0").statusCode());
+        Assert.assertEquals(400, get("/messages?posted_by=7&cursor=bad").statusCode());
+
+        HttpResponse<String> response = get("/debug/hotkeys");
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertEquals(0, objectMapper.readTree(response.body()).get(1).get("keys").size());
+        Assert.assertEquals(400, get("/debug/hotkeys?limit=x").statusCode());
+        Assert.assertEquals(400, get("/debug/hotkeys?limit=0").statusCode());
+    }
+
+    private HttpResponse<String> get(String path) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder().uri(URI.create("http://localhost:8080" + path)).build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+}
@@ -0,0 +1,123 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import DAO.InMemoryAccountDAO;
+import DAO.InMemoryMessageDAO;
+import Model.Account;
+import Model.Message;
+import Service.SocialMediaService;
+import io.javalin.Javalin;
+
+public class InMemoryStoreTest {
+    SocialMediaService socialMediaService;
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, start the Javalin app on a service backed by empty in-memory stores. There is no database
+     * to reset, so nothing needs to wait for it.
+     */
+    @Before
+    public void setUp() {
+        socialMediaService = new SocialMediaService(new InMemoryAccountDAO(), new InMemoryMessageDAO());
+        socialMediaController = new SocialMediaController(socialMediaService);
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Registering an account, logging in, posting, updating and deleting messages through the API
+     *
+     * Expected Response:
+     *  The same responses as the API gives when backed by H2
+     */
+    @Test
+    public void fullApiOnInMemoryStores() throws IOException, InterruptedException {
+        Account account = objectMapper.readValue(post("/register", "{\"username\":\"memoryuser\",\"password\":\"password\"}").body(),
+                Account.class);
+        Assert.assertEquals(new Account(1, "memoryuser", "password"), account);
+        Assert.assertEquals(400, post("/register", "{\"username\":\"memoryuser\",\"password\":\"password\"}").statusCode());
+        Assert.assertEquals(200, post("/login", "{\"username\":\"memoryuser\",\"password\":\"password\"}").statusCode());
+        Assert.assertEquals(401, post("/login", "{\"username\":\"memoryuser\",\"password\":\"wrong\"}").statusCode());
+
+        Assert.assertEquals(400, post("/messages", "{\"posted_by\":2,\"message_text\":\"nobody\",\"time_posted_epoch\":1}").statusCode());
+        post("/messages", "{\"posted_by\":1,\"message_text\":\"first\",\"time_posted_epoch\":1669947792}");
+        post("/messages", "{\"posted_by\":1,\"message_text\":\"second\",\"time_posted_epoch\":1669947793}");
+
+        HttpRequest patch = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/1"))
+                .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"message_text\":\"first, edited\"}"))
+                .build();
+        Assert.assertEquals(200, webClient.send(patch, HttpResponse.BodyHandlers.ofString()).statusCode());
+        HttpRequest delete = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/2"))
+                .DELETE()
+                .build();
+        Assert.assertEquals(200, webClient.send(delete, HttpResponse.BodyHandlers.ofString()).statusCode());
+
+        HttpRequest get = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/accounts/1/messages"))
+                .build();
+        List<Message> messages = objectMapper.readValue(webClient.send(get, HttpResponse.BodyHandlers.ofString()).body(),
+                new TypeReference<List<Message>>(){});
+        Assert.assertEquals(List.of(new Message(1, 1, "first, edited", 1669947792)), messages);
+    }
+
+    /**
+     * Registering the same username from many threads at once
+     *
+     * Expected Result:
+     *  Exactly one registration succeeds
+     */
+    @Test
+    public void concurrentRegistrationOfSameUsername() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        List<Future<Account>> results = new ArrayList<>();
+        for(int i = 0; i < 64; i++) {
+            results.add(executor.submit(() -> socialMediaService.addAccount(new Account("racer", "password"))));
+        }
+        int registered = 0;
+        for(Future<Account> result : results) {
+            if(result.get() != null) {
+                registered++;
+            }
+        }
+        executor.shutdown();
+        Assert.assertEquals(1, registered);
+    }
+
+    private HttpResponse<String> post(String path, String body) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .header("Content-Type", "application/json")
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+}
@@ -0,0 +1,93 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Util.ConnectionUtil;
+import Util.LeakDetector;
+
+public class LeakDetectorTest {
+    LeakDetector leakDetector;
+
+    @Before
+    public void setUp() {
+        ConnectionUtil.resetTestDatabase();
+        leakDetector = new LeakDetector(1, 50);
+    }
+
+    /**
+     * Checking out a connection, using it, and closing it
+     *
+     * Expected Result:
+     *  The connection is counted as tracked and closed, and nothing is reported as held too long or leaked
+     */
+    @Test
+    public void closedConnectionIsNotReported() throws SQLException {
+        try(Connection connection = leakDetector.track(ConnectionUtil.getConnection(), "test");
+                PreparedStatement ps = connection.prepareStatement("SELECT COUNT(*) FROM message")) {
+            ResultSet rs = ps.executeQuery();
+            Assert.assertTrue(rs.next());
+        }
+        LeakDetector.Report report = leakDetector.getReport();
+        Assert.assertEquals(1, report.tracked);
+        Assert.assertEquals(1, report.closed);
+        Assert.assertEquals(0, report.open);
+        Assert.assertEquals(0, report.leaked);
+        Assert.assertEquals(0, report.statements_left_open);
+        Assert.assertTrue(report.held_too_long.isEmpty());
+    }
+
+    /**
+     * Holding a connection past the threshold, then closing it with a statement still open
+     *
+     * Expected Result:
+     *  While held it is reported with the stack that checked it out; once closed it is not, and the open statement
+     *  is counted
+     */
+    @Test
+    public void heldConnectionIsReportedWithItsStack() throws SQLException, InterruptedException {
+        Connection connection = leakDetector.track(ConnectionUtil.getConnection(), "test");
+        connection.prepareStatement("SELECT COUNT(*) FROM message");
+        Thread.sleep(100);
+
+        LeakDetector.Report report = leakDetector.getReport();
+        Assert.assertEquals(1, report.held_too_long.size());
+        Assert.assertEquals("test", report.held_too_long.get(0).pool);
+        Assert.assertTrue(report.held_too_long.get(0).held_ms >= 50);
+        Assert.assertTrue(report.held_too_long.get(0).checked_out_at.get(0).contains("heldConnectionIsReportedWithItsStack"));
+
+        connection.close();
+        report = leakDetector.getReport();
+        Assert.assertTrue(report.held_too_long.isEmpty());
+        Assert.assertEquals(1, report.statements_left_open);
+    }
+
+    /**
+     * Checking out a connection and dropping it without closing it
+     *
+     * Expected Result:
+     *  Once it has been garbage collected it is counted as leaked, with the stack that checked it out
+     */
+    @Test
+    public void unreachableConnectionIsCountedAsLeaked() throws InterruptedException {
+        checkOutAndDrop();
+        long deadline = System.currentTimeMillis() + 10000;
+        while(leakDetector.getReport().leaked == 0) {
+            Assert.assertTrue(System.currentTimeMillis() < deadline);
+            System.gc();
+            Thread.sleep(20);
+        }
+        LeakDetector.Report report = leakDetector.getReport();
+        Assert.assertEquals(1, report.leaked);
+        Assert.assertEquals(0, report.open);
+        Assert.assertTrue(report.recent_leaks.get(0).checked_out_at.get(0).contains("checkOutAndDrop"));
+    }
+
+    private void checkOutAndDrop() {
+        leakDetector.track(ConnectionUtil.getConnection(), "test");
+    }
+}
@@ -0,0 +1,94 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import DAO.AccountDAO;
+import DAO.MessageDAO;
+import Model.Message;
+import Model.MessageLookup;
+import Service.SocialMediaService;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class LookupMessagesTest {
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, add two more messages, and start the Javalin app.
+     */
+    @Before
+    public void setUp() {
+        ConnectionUtil.resetTestDatabase();
+        SocialMediaService socialMediaService = new SocialMediaService(new AccountDAO(), new MessageDAO());
+        socialMediaService.addMessage(new Message(1, "test message 2", 1669947793));
+        socialMediaService.addMessage(new Message(1, "test message 3", 1669947794));
+        app = new SocialMediaController(socialMediaService).startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Sending POST localhost:8080/messages/lookup with [3, 99, 1, 3]
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: messages 3 and 1 in that order, and 99 as missing, from one read of the database
+     */
+    @Test
+    public void messagesAreReturnedInRequestOrder() throws IOException, InterruptedException {
+        long readsBefore = ConnectionUtil.getPoolStats()[0].checkouts;
+        HttpResponse<String> response = lookup("[3, 99, 1, 3]");
+        long reads = ConnectionUtil.getPoolStats()[0].checkouts - readsBefore;
+
+        Assert.assertEquals(200, response.statusCode());
+        MessageLookup lookup = objectMapper.readValue(response.body(), MessageLookup.class);
+        Assert.assertEquals(List.of(new Message(3, 1, "test message 3", 1669947794),
+                new Message(1, 1, "test message 1", 1669947792)), lookup.getMessages());
+        Assert.assertEquals(List.of(99), lookup.getMissing_ids());
+        Assert.assertEquals(1, reads);
+    }
+
+    /**
+     * Sending POST localhost:8080/messages/lookup with more ids than allowed
+     *
+     * Expected Response:
+     *  Status Code: 400
+     */
+    @Test
+    public void tooManyIdsAreRejected() throws IOException, InterruptedException {
+        List<Integer> ids = new ArrayList<>();
+        for(int i = 0; i <= SocialMediaController.MAX_LOOKUP_IDS; i++) {
+            ids.add(i);
+        }
+        Assert.assertEquals(400, lookup(objectMapper.writeValueAsString(ids)).statusCode());
+    }
+
+    private HttpResponse<String> lookup(String body) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/lookup"))
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .header("Content-Type", "application/json")
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+}
@@ -0,0 +1,122 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import DAO.MappedLogMessageDAO;
+import Model.Message;
+
+public class MappedLogMessageDAOTest {
+
+    private static final int SEGMENT_SIZE = 4096;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Inserting, updating and deleting messages, then closing and reopening the store
+     *
+     * Expected Result:
+     *  The reopened store holds the same messages, its posted_by index is rebuilt, and ids are not reused
+     */
+    @Test
+    public void reopenRebuildsIndexes() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        MappedLogMessageDAO messageDAO = new MappedLogMessageDAO(directory, SEGMENT_SIZE);
+        messageDAO.insertMessage(new Message(1, "first", 100));
+        messageDAO.insertMessage(new Message(2, "second", 200));
+        messageDAO.insertMessage(new Message(1, "third", 300));
+        messageDAO.updateMessageText(new Message(1, 1, "first, edited", 100));
+        messageDAO.deleteMessage(3);
+        messageDAO.close();
+
+        messageDAO = new MappedLogMessageDAO(directory, SEGMENT_SIZE);
+        Assert.assertEquals(List.of(new Message(1, 1, "first, edited", 100), new Message(2, 2, "second", 200)),
+                messageDAO.getAllMessages());
+        Assert.assertEquals(List.of(new Message(1, 1, "first, edited", 100)), messageDAO.getAllMessages(1));
+        Assert.assertNull(messageDAO.getMessage(3));
+        Assert.assertEquals(4, messageDAO.insertMessage(new Message(1, "fourth", 400)));
+        messageDAO.close();
+    }
+
+    /**
+     * Writing half a record after the last good one, as a crash in the middle of an append would, then reopening
+     *
+     * Expected Result:
+     *  The torn record is ignored, new records are written over it, and they survive another reopen
+     */
+    @Test
+    public void tornWriteIsDiscarded() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        MappedLogMessageDAO messageDAO = new MappedLogMessageDAO(directory, SEGMENT_SIZE);
+        messageDAO.insertMessage(new Message(1, "first", 100));
+        messageDAO.insertMessage(new Message(1, "second", 200));
+        messageDAO.close();
+
+        File segment = directory.resolve("segment-000001.log").toFile();
+        try(RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+            long end = endOfData(file);
+            file.seek(end);
+            file.writeInt(60);
+            file.writeInt(0x12345678);
+            file.write(new byte[] { 1, 0, 0, 0, 0, 0, 0, 0, 9 });
+        }
+
+        messageDAO = new MappedLogMessageDAO(directory, SEGMENT_SIZE);
+        Assert.assertEquals(2, messageDAO.getAllMessages().size());
+        Assert.assertEquals(3, messageDAO.insertMessage(new Message(1, "third", 300)));
+        messageDAO.close();
+
+        messageDAO = new MappedLogMessageDAO(directory, SEGMENT_SIZE);
+        Assert.assertEquals(new Message(3, 1, "third", 300), messageDAO.getMessage(3));
+        Assert.assertEquals(3, messageDAO.getAllMessages().size());
+        messageDAO.close();
+    }
+
+    /**
+     * Filling several segments, deleting most messages including the newest, compacting, then reopening
+     *
+     * Expected Result:
+     *  Sealed segments are removed, the live messages survive, and the newest deleted id is not reused
+     */
+    @Test
+    public void compactionKeepsLiveMessages() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        MappedLogMessageDAO messageDAO = new MappedLogMessageDAO(directory, SEGMENT_SIZE);
+        for(int i = 1; i <= 300; i++) {
+            messageDAO.insertMessage(new Message(i % 7, "message number " + i, i));
+        }
+        for(int i = 1; i <= 300; i++) {
+            if(i % 10 != 0 || i == 300) {
+                messageDAO.deleteMessage(i);
+            }
+        }
+        int segmentsBefore = directory.toFile().list().length;
+        messageDAO.compact();
+        Assert.assertTrue(directory.toFile().list().length < segmentsBefore);
+        messageDAO.close();
+
+        messageDAO = new MappedLogMessageDAO(directory, SEGMENT_SIZE);
+        List<Message> messages = messageDAO.getAllMessages();
+        Assert.assertEquals(29, messages.size());
+        Assert.assertEquals(new Message(10, 3, "message number 10", 10), messages.get(0));
+        Assert.assertEquals(301, messageDAO.insertMessage(new Message(1, "after compaction", 301)));
+        messageDAO.close();
+    }
+
+    private long endOfData(RandomAccessFile file) throws IOException {
+        byte[] bytes = new byte[(int) file.length()];
+        file.readFully(bytes);
+        int end = bytes.length;
+        while(end > 0 && bytes[end - 1] == 0) {
+            end--;
+        }
+        return end;
+    }
+}
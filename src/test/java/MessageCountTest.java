@@ -0,0 +1,233 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import DAO.InMemoryMessageDAO;
+import DAO.MessageDAO;
+import Model.AccountStats;
+import Model.Message;
+import Service.MessageCounters;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class MessageCountTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Posting and deleting messages, then sending GET localhost:8080/messages/count, GET localhost:8080/accounts/1/stats
+     * and GET localhost:8080/accounts/1/messages
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  The counts, and the X-Total-Count header, follow every insert and delete
+     */
+    @Test
+    public void countsFollowWrites() throws IOException, InterruptedException {
+        Assert.assertEquals(1L, getMessageCount());
+        post("{\"posted_by\":1,\"message_text\":\"counted\",\"time_posted_epoch\":1669947793}");
+        post("{\"posted_by\":1,\"message_text\":\"counted again\",\"time_posted_epoch\":1669947794}");
+        Assert.assertEquals(3L, getMessageCount());
+
+        HttpRequest delete = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/1"))
+                .DELETE()
+                .build();
+        webClient.send(delete, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(2L, getMessageCount());
+
+        HttpResponse<String> stats = get("/accounts/1/stats");
+        Assert.assertEquals(200, stats.statusCode());
+        Assert.assertEquals(2L, objectMapper.readValue(stats.body(), AccountStats.class).getMessage_count());
+        Assert.assertEquals(0L, objectMapper.readValue(get("/accounts/2/stats").body(), AccountStats.class)
+                .getMessage_count());
+
+        HttpResponse<String> messages = get("/accounts/1/messages");
+        Assert.assertEquals("2", messages.headers().firstValue("X-Total-Count").orElse(null));
+        Assert.assertEquals("2", get("/messages").headers().firstValue("X-Total-Count").orElse(null));
+    }
+
+    /**
+     * Starting counters from a checkpoint, and from a checkpoint older than a message written since
+     *
+     * Expected Result:
+     *  A current checkpoint is used as saved, and an older one is brought up to date from the change log
+     */
+    @Test
+    public void countsAreReconciledAtStartup() {
+        MessageDAO messageDAO = new MessageDAO();
+        MessageCounters counters = new MessageCounters(messageDAO);
+        counters.checkpoint();
+        Assert.assertEquals(Map.of(1, 1L), messageDAO.loadCountCheckpoint());
+        Assert.assertEquals(1L, new MessageCounters(messageDAO).getCount(1));
+
+        messageDAO.insertMessage(new Message(1, "written behind the counters' back", 1669947795));
+        MessageCounters reconciled = new MessageCounters(messageDAO);
+        Assert.assertEquals(2L, reconciled.getTotal());
+        Assert.assertEquals(2L, reconciled.getCount(1));
+    }
+
+    /**
+     * Starting counters from a checkpoint whose total still matches the message table, but not its per-account counts
+     *
+     * Expected Result:
+     *  The checkpoint is brought up to date for each account
+     */
+    @Test
+    public void checkpointWithMatchingTotalIsRecounted() throws SQLException {
+        MessageDAO messageDAO = new MessageDAO();
+        new MessageCounters(messageDAO).checkpoint();
+        try(Connection connection = ConnectionUtil.getConnection();
+            Statement statement = connection.createStatement()) {
+            statement.executeUpdate("INSERT INTO account (username, password) VALUES ('testuser2', 'password');");
+        }
+        messageDAO.insertMessage(new Message(2, "written behind the counters' back", 1669947795));
+        messageDAO.deleteMessage(1);
+
+        MessageCounters reconciled = new MessageCounters(messageDAO);
+        Assert.assertEquals(1L, reconciled.getTotal());
+        Assert.assertEquals(0L, reconciled.getCount(1));
+        Assert.assertEquals(1L, reconciled.getCount(2));
+        reconciled.checkpoint();
+        Assert.assertEquals(Map.of(2, 1L), messageDAO.loadCountCheckpoint());
+    }
+
+    /**
+     * Starting counters from a checkpoint when the change log no longer holds every change made after it
+     *
+     * Expected Result:
+     *  The messages are counted again
+     */
+    @Test
+    public void checkpointIsRecountedWhenChangesAreTrimmed() throws SQLException {
+        MessageDAO messageDAO = new MessageDAO();
+        new MessageCounters(messageDAO);
+        messageDAO.insertMessage(new Message(1, "trimmed from the change log", 1669947795));
+        messageDAO.insertMessage(new Message(1, "still in the change log", 1669947796));
+        try(Connection connection = ConnectionUtil.getConnection();
+            Statement statement = connection.createStatement()) {
+            statement.executeUpdate("DELETE FROM message_change WHERE change_seq = " +
+                    "(SELECT MIN(change_seq) FROM message_change);");
+        }
+
+        Assert.assertNull(messageDAO.updateCountCheckpoint());
+        Assert.assertEquals(3L, new MessageCounters(messageDAO).getCount(1));
+        Assert.assertEquals(Map.of(1, 3L), messageDAO.loadCountCheckpoint());
+    }
+
+    /**
+     * Writing a message through counters that are checkpointing, then checkpointing
+     *
+     * Expected Result:
+     *  The saved counts include the new message
+     */
+    @Test
+    public void checkpointFoldsInNewChanges() {
+        MessageDAO messageDAO = new MessageDAO();
+        MessageCounters counters = new MessageCounters(messageDAO);
+        messageDAO.insertMessage(new Message(1, "counted", 1669947795));
+        counters.added(1);
+        counters.checkpoint();
+        Assert.assertEquals(Map.of(1, 2L), messageDAO.loadCountCheckpoint());
+    }
+
+    /**
+     * Checkpointing counts to a store that fails to save them, twice
+     *
+     * Expected Result:
+     *  The second checkpoint tries again
+     */
+    @Test
+    public void failedCheckpointIsRetried() {
+        AtomicInteger updates = new AtomicInteger();
+        MessageCounters counters = new MessageCounters(new InMemoryMessageDAO() {
+            @Override
+            public Map<Integer, Long> updateCountCheckpoint() {
+                updates.incrementAndGet();
+                return null;
+            }
+        });
+        counters.added(1);
+        counters.checkpoint();
+        counters.checkpoint();
+        Assert.assertEquals(3, updates.get());
+    }
+
+    /**
+     * Checkpointing counts on a database made before the message_stats table existed
+     *
+     * Expected Result:
+     *  The table is created, and the counts are saved and loaded back
+     */
+    @Test
+    public void checkpointTableIsCreatedOnExistingDatabase() throws SQLException {
+        try(Connection connection = ConnectionUtil.getConnection();
+            Statement statement = connection.createStatement()) {
+            statement.executeUpdate("DROP TABLE message_stats;");
+        }
+        MessageDAO messageDAO = new MessageDAO();
+        new MessageCounters(messageDAO).checkpoint();
+        Assert.assertEquals(Map.of(1, 1L), messageDAO.loadCountCheckpoint());
+    }
+
+    private long getMessageCount() throws IOException, InterruptedException {
+        Map<String, Long> count = objectMapper.readValue(get("/messages/count").body(),
+                new TypeReference<Map<String, Long>>(){});
+        return count.get("message_count");
+    }
+
+    private HttpResponse<String> get(String path) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private void post(String body) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .header("Content-Type", "application/json")
+                .build();
+        Assert.assertEquals(200, webClient.send(request, HttpResponse.BodyHandlers.ofString()).statusCode());
+    }
+}
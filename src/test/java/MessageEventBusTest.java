@@ -0,0 +1,64 @@
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import Model.Message;
+import Model.MessageEvent;
+import Service.MessageEventBus;
+
+public class MessageEventBusTest {
+
+    /**
+     * Publishing an event to a subscriber whose sink throws
+     *
+     * Expected Result:
+     *  The subscriber is dropped and told so
+     */
+    @Test
+    public void failingSinkIsDropped() throws InterruptedException {
+        MessageEventBus bus = new MessageEventBus();
+        CountDownLatch dropped = new CountDownLatch(1);
+        bus.subscribe(null, event -> { throw new IllegalStateException("client gone"); }, dropped::countDown);
+
+        bus.publish(event(1));
+
+        Assert.assertTrue(dropped.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals(0, bus.getSubscriberCount());
+    }
+
+    /**
+     * Publishing events to more stuck subscribers than there are dispatcher threads, and to one that reads
+     *
+     * Expected Result:
+     *  The stuck subscribers are dropped once their sends time out, and the reading subscriber still gets its event
+     */
+    @Test
+    public void stuckSinksTimeOutWithoutBlockingOthers() throws InterruptedException {
+        MessageEventBus bus = new MessageEventBus(MessageEventBus.DEFAULT_BUFFER_SIZE, 200);
+        CountDownLatch stuckDropped = new CountDownLatch(8);
+        for(int i = 0; i < 8; i++) {
+            bus.subscribe(1, event -> {
+                try {
+                    Thread.sleep(60000);
+                } catch(InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }, stuckDropped::countDown);
+        }
+        bus.publish(event(1));
+
+        CountDownLatch received = new CountDownLatch(1);
+        bus.subscribe(2, event -> received.countDown(), () -> {});
+        bus.publish(event(2));
+
+        Assert.assertTrue(stuckDropped.await(5, TimeUnit.SECONDS));
+        Assert.assertTrue(received.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals(1, bus.getSubscriberCount());
+    }
+
+    private MessageEvent event(int posted_by) {
+        return new MessageEvent("created", new Message(1, posted_by, "event message", 1669947792));
+    }
+}
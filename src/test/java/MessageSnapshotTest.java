@@ -0,0 +1,180 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import DAO.InMemoryAccountDAO;
+import DAO.InMemoryMessageDAO;
+import Model.Account;
+import Model.Message;
+import Service.MessageSnapshot;
+import Service.SocialMediaService;
+import io.javalin.Javalin;
+
+public class MessageSnapshotTest {
+    AtomicInteger queries = new AtomicInteger();
+    HttpClient webClient = HttpClient.newHttpClient();
+    ObjectMapper objectMapper = new ObjectMapper();
+    Javalin app;
+
+    /**
+     * Start the Javalin app on in-memory stores that count their getAllMessages queries, with one account and one
+     * message, and the snapshot settings in place.
+     */
+    private void start(long maxStaleMillis, long debounceMillis) {
+        System.setProperty(MessageSnapshot.MAX_STALE_MILLIS_PROPERTY, Long.toString(maxStaleMillis));
+        System.setProperty(MessageSnapshot.DEBOUNCE_MILLIS_PROPERTY, Long.toString(debounceMillis));
+        InMemoryMessageDAO messages = new InMemoryMessageDAO() {
+            @Override
+            public List<Message> getAllMessages() {
+                queries.incrementAndGet();
+                return super.getAllMessages();
+            }
+        };
+        SocialMediaService socialMediaService = new SocialMediaService(new InMemoryAccountDAO(), messages);
+        socialMediaService.addAccount(new Account("testuser1", "password"));
+        socialMediaService.addMessage(new Message(1, "test message 1", 1669947792));
+        app = new SocialMediaController(socialMediaService).startAPI();
+        app.start(8080);
+        queries.set(0);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+        System.clearProperty(MessageSnapshot.MAX_STALE_MILLIS_PROPERTY);
+        System.clearProperty(MessageSnapshot.DEBOUNCE_MILLIS_PROPERTY);
+    }
+
+    /**
+     * Sending GET localhost:8080/messages several times with no writes in between
+     *
+     * Expected Response:
+     *  The same bytes every time, from one query of the store
+     */
+    @Test
+    public void repeatedReadsShareOneSnapshot() throws IOException, InterruptedException {
+        start(0, 50);
+        HttpResponse<String> first = getMessages(null);
+        Assert.assertEquals(200, first.statusCode());
+        Assert.assertEquals("1", first.headers().firstValue("X-Total-Count").orElse(null));
+        for(int i = 0; i < 5; i++) {
+            Assert.assertEquals(first.body(), getMessages(null).body());
+        }
+        Assert.assertEquals(1, queries.get());
+        Assert.assertEquals(1, objectMapper.readValue(first.body(), new TypeReference<List<Message>>(){}).size());
+    }
+
+    /**
+     * Posting a message, then sending GET localhost:8080/messages with a staleness bound of zero
+     *
+     * Expected Response:
+     *  The new message is in the list
+     */
+    @Test
+    public void readsSeeCompletedWritesWithoutStaleness() throws IOException, InterruptedException {
+        start(0, 10000);
+        getMessages(null);
+        Assert.assertEquals(200, postMessage().statusCode());
+        Assert.assertEquals(2, parse(getMessages(null)).size());
+    }
+
+    /**
+     * Posting a message with a long staleness bound, then sending GET localhost:8080/messages without and with the
+     * X-Messages-Version the post returned
+     *
+     * Expected Response:
+     *  Without it the old snapshot is served; with it as X-Min-Messages-Version the new message is in the list
+     */
+    @Test
+    public void readYourWritesBypassesStaleSnapshot() throws IOException, InterruptedException {
+        start(60000, 10000);
+        getMessages(null);
+        HttpResponse<String> posted = postMessage();
+        String version = posted.headers().firstValue("X-Messages-Version").orElse(null);
+        Assert.assertNotNull(version);
+
+        Assert.assertEquals(1, parse(getMessages(null)).size());
+        HttpResponse<String> own = getMessages(version);
+        Assert.assertEquals(2, parse(own).size());
+        Assert.assertEquals(version, own.headers().firstValue("X-Messages-Version").orElse(null));
+    }
+
+    /**
+     * Posting a message with a long staleness bound and a short debounce, then waiting
+     *
+     * Expected Response:
+     *  The snapshot is rebuilt in the background and includes the new message
+     */
+    @Test
+    public void snapshotIsRebuiltAfterWrites() throws IOException, InterruptedException {
+        start(60000, 20);
+        getMessages(null);
+        postMessage();
+        long deadline = System.currentTimeMillis() + 10000;
+        while(parse(getMessages(null)).size() < 2) {
+            Assert.assertTrue(System.currentTimeMillis() < deadline);
+            Thread.sleep(20);
+        }
+    }
+
+    /**
+     * Sending GET localhost:8080/messages several times with an X-Min-Messages-Version past any write
+     *
+     * Expected Response:
+     *  The snapshot is built once and shared
+     */
+    @Test
+    public void futureMinVersionSharesSnapshot() throws IOException, InterruptedException {
+        start(60000, 10000);
+        for(int i = 0; i < 3; i++) {
+            Assert.assertEquals(1, parse(getMessages("1000")).size());
+        }
+        Assert.assertEquals(1, queries.get());
+    }
+
+    /**
+     * Sending GET localhost:8080/messages with an X-Min-Messages-Version that is not a number
+     *
+     * Expected Response:
+     *  Status Code: 400
+     */
+    @Test
+    public void malformedMinVersionIsRejected() throws IOException, InterruptedException {
+        start(0, 50);
+        Assert.assertEquals(400, getMessages("latest").statusCode());
+    }
+
+    private List<Message> parse(HttpResponse<String> response) throws IOException {
+        return objectMapper.readValue(response.body(), new TypeReference<List<Message>>(){});
+    }
+
+    private HttpResponse<String> getMessages(String minVersion) throws IOException, InterruptedException {
+        HttpRequest.Builder request = HttpRequest.newBuilder().uri(URI.create("http://localhost:8080/messages"));
+        if(minVersion != null) {
+            request.header("X-Min-Messages-Version", minVersion);
+        }
+        return webClient.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpResponse<String> postMessage() throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString(
+                        "{\"posted_by\":1,\"message_text\":\"hello message\",\"time_posted_epoch\":1669947793}"))
+                .header("Content-Type", "application/json")
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+}
@@ -0,0 +1,50 @@
+import java.util.ArrayList;
+import java.util.List;
+
+import DAO.ColumnarMessageDAO;
+import Model.Message;
+
+/**
+ * Compares the heap used to hold the same messages as a list of Message objects and in the ColumnarMessageDAO.
+ *
+ * This is not run as part of the test suite. The default of 10 million messages needs a large heap, so run it by
+ * hand after mvn test-compile with:
+ *   mvn -q dependency:build-classpath -Dmdep.outputFile=cp.txt
+ *   java -Xmx6g -cp target/classes:target/test-classes:$(cat cp.txt) MessageStoreHeapBenchmark [message count]
+ */
+public class MessageStoreHeapBenchmark {
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 10_000_000;
+
+        long baseline = usedHeap();
+        List<Message> objects = new ArrayList<>(count);
+        for(int i = 1; i <= count; i++) {
+            objects.add(new Message(i, i % 10000, "message number " + i + " posted to the timeline", 1669947792L + i));
+        }
+        long objectBytes = usedHeap() - baseline;
+        System.out.printf("Message objects: %,d bytes (%.1f bytes/message)%n", objectBytes, (double) objectBytes / count);
+        objects = null;
+
+        baseline = usedHeap();
+        ColumnarMessageDAO columnar = new ColumnarMessageDAO();
+        for(int i = 1; i <= count; i++) {
+            columnar.insertMessage(new Message(i % 10000, "message number " + i + " posted to the timeline", 1669947792L + i));
+        }
+        columnar.compact();
+        long columnarBytes = usedHeap() - baseline;
+        System.out.printf("columnar store:  %,d bytes (%.1f bytes/message)%n", columnarBytes, (double) columnarBytes / count);
+
+        if(columnar.getMessage(count) == null) {
+            System.out.println("missing message");
+        }
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for(int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,162 @@
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAdder;
+
+import Controller.SocialMediaController;
+import DAO.InMemoryAccountDAO;
+import DAO.InMemoryMessageDAO;
+import Model.Message;
+import Service.SocialMediaService;
+import io.javalin.Javalin;
+
+/**
+ * Measures goodput, the requests per second answered successfully within a deadline, of GET /messages/{message_id}
+ * as the number of concurrent clients grows past what the database can serve, with the adaptive concurrency limits
+ * off and on.
+ *
+ * The database is simulated by a store that serves at most DB_PARALLELISM queries at once and takes QUERY_MILLIS for
+ * each, so requests beyond that queue up the way they do on a slow H2. Clients give up on a request after
+ * DEADLINE_MILLIS, and wait BACKOFF_MILLIS after a 503 before trying again. Without limits the queue grows until
+ * almost every request misses its deadline; with them, excess requests are turned away at once and goodput should
+ * hold near the database's capacity.
+ *
+ * This is not run as part of the test suite. Run it by hand after mvn test-compile with:
+ *   mvn -q dependency:build-classpath -Dmdep.outputFile=cp.txt
+ *   java -cp target/classes:target/test-classes:$(cat cp.txt) OverloadBenchmark [seconds per step]
+ */
+public class OverloadBenchmark {
+
+    private static final int PORT = 8092;
+    private static final int DB_PARALLELISM = 4;
+    private static final long QUERY_MILLIS = 5;
+    private static final long DEADLINE_MILLIS = 50;
+    private static final long BACKOFF_MILLIS = 5;
+    private static final int[] CLIENTS = { 4, 16, 64, 128 };
+
+    public static void main(String[] args) throws Exception {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+
+        System.out.printf("%-7s %8s %12s %10s %10s %10s %10s%n", "limits", "clients", "goodput/s", "late/s",
+                "503/s", "p99 ms", "limit");
+        for(boolean limits : new boolean[] { false, true }) {
+            System.setProperty(SocialMediaController.LIMITS_ENABLED_PROPERTY, Boolean.toString(limits));
+            InMemoryMessageDAO messages = slowStore();
+            messages.insertMessage(new Message(1, "a popular message", 1669947792));
+            Javalin app = new SocialMediaController(new SocialMediaService(new InMemoryAccountDAO(), messages))
+                    .startAPI();
+            app.start(PORT);
+            try {
+                for(int clients : CLIENTS) {
+                    run(limits, clients, seconds);
+                }
+            } finally {
+                app.stop();
+            }
+        }
+        System.clearProperty(SocialMediaController.LIMITS_ENABLED_PROPERTY);
+    }
+
+    /**
+     * A store whose getMessage behaves like a database that can run DB_PARALLELISM queries at once.
+     */
+    private static InMemoryMessageDAO slowStore() {
+        Semaphore database = new Semaphore(DB_PARALLELISM, true);
+        return new InMemoryMessageDAO() {
+            @Override
+            public Message getMessage(int message_id) {
+                database.acquireUninterruptibly();
+                try {
+                    Thread.sleep(QUERY_MILLIS);
+                } catch(InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    database.release();
+                }
+                return super.getMessage(message_id);
+            }
+        };
+    }
+
+    private static void run(boolean limits, int clients, int seconds) throws Exception {
+        HttpClient client = HttpClient.newHttpClient();
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:" + PORT + "/messages/1"))
+                .timeout(Duration.ofMillis(DEADLINE_MILLIS))
+                .build();
+        LongAdder good = new LongAdder();
+        LongAdder late = new LongAdder();
+        LongAdder rejected = new LongAdder();
+        long[][] latencies = new long[clients][];
+        int[] counts = new int[clients];
+        long end = System.nanoTime() + seconds * 1_000_000_000L;
+
+        List<Thread> threads = new ArrayList<>();
+        for(int c = 0; c < clients; c++) {
+            int id = c;
+            latencies[id] = new long[1 << 16];
+            Thread thread = new Thread(() -> {
+                while(System.nanoTime() < end) {
+                    long start = System.nanoTime();
+                    try {
+                        HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+                        long elapsed = System.nanoTime() - start;
+                        if(response.statusCode() == 503) {
+                            rejected.increment();
+                            Thread.sleep(BACKOFF_MILLIS);
+                        } else if(elapsed > DEADLINE_MILLIS * 1_000_000) {
+                            late.increment();
+                        } else {
+                            good.increment();
+                            if(counts[id] < latencies[id].length) {
+                                latencies[id][counts[id]++] = elapsed;
+                            }
+                        }
+                    } catch(InterruptedException e) {
+                        return;
+                    } catch(Exception timedOut) {
+                        late.increment();
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        for(Thread thread : threads) {
+            thread.join();
+        }
+
+        int total = 0;
+        for(int count : counts) {
+            total += count;
+        }
+        long[] all = new long[total];
+        int next = 0;
+        for(int c = 0; c < clients; c++) {
+            System.arraycopy(latencies[c], 0, all, next, counts[c]);
+            next += counts[c];
+        }
+        Arrays.sort(all);
+        double p99 = all.length == 0 ? 0 : all[(int) (all.length * 0.99)] / 1e6;
+        String limit = limits ? limitOf("getMessage") : "-";
+        System.out.printf("%-7s %8d %12.0f %10.0f %10.0f %10.2f %10s%n", limits ? "on" : "off", clients,
+                good.sum() / (double) seconds, late.sum() / (double) seconds, rejected.sum() / (double) seconds, p99,
+                limit);
+    }
+
+    private static String limitOf(String route) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:" + PORT + "/debug/limits"))
+                .build();
+        String body = HttpClient.newHttpClient().send(request, HttpResponse.BodyHandlers.ofString()).body();
+        int at = body.indexOf("\"route\":\"" + route + "\"");
+        int limitAt = body.indexOf("\"limit\":", at) + "\"limit\":".length();
+        return body.substring(limitAt, body.indexOf(',', limitAt));
+    }
+}
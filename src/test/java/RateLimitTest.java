@@ -0,0 +1,155 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Controller.SocialMediaController;
+import DAO.InMemoryAccountDAO;
+import DAO.InMemoryMessageDAO;
+import Model.Account;
+import Model.Message;
+import Service.SocialMediaService;
+import Util.TokenBucketLimiter;
+import io.javalin.Javalin;
+
+public class RateLimitTest {
+    SocialMediaService socialMediaService;
+    AtomicInteger reads = new AtomicInteger();
+    HttpClient webClient;
+    Javalin app;
+
+    /**
+     * Before every test, start the Javalin app on empty in-memory stores that count their message reads, with two
+     * accounts and a burst of two posts and two updates per account.
+     */
+    @Before
+    public void setUp() {
+        System.setProperty("socialmedia.ratelimit.postMessage.burst", "2");
+        System.setProperty("socialmedia.ratelimit.postMessage.perSecond", "0.01");
+        System.setProperty("socialmedia.ratelimit.updateMessage.burst", "2");
+        System.setProperty("socialmedia.ratelimit.updateMessage.perSecond", "0.01");
+        InMemoryMessageDAO messages = new InMemoryMessageDAO() {
+            @Override
+            public Message getMessage(int ID) {
+                reads.incrementAndGet();
+                return super.getMessage(ID);
+            }
+        };
+        socialMediaService = new SocialMediaService(new InMemoryAccountDAO(), messages);
+        socialMediaService.addAccount(new Account("flooder", "password"));
+        socialMediaService.addAccount(new Account("bystander", "password"));
+        app = new SocialMediaController(socialMediaService).startAPI();
+        webClient = HttpClient.newHttpClient();
+        app.start(8080);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+        System.clearProperty("socialmedia.ratelimit.postMessage.burst");
+        System.clearProperty("socialmedia.ratelimit.postMessage.perSecond");
+        System.clearProperty("socialmedia.ratelimit.updateMessage.burst");
+        System.clearProperty("socialmedia.ratelimit.updateMessage.perSecond");
+    }
+
+    /**
+     * Posting three messages from one account with a burst of two, then one from another account
+     *
+     * Expected Response:
+     *  The first two succeed and count down X-RateLimit-Remaining, the third gets status 429 with a Retry-After
+     *  header, and the other account is unaffected
+     */
+    @Test
+    public void postingOverTheRateIsRejected() throws IOException, InterruptedException {
+        HttpResponse<String> first = postMessage(1);
+        Assert.assertEquals(200, first.statusCode());
+        Assert.assertEquals("2", first.headers().firstValue("X-RateLimit-Limit").orElse(null));
+        Assert.assertEquals("1", first.headers().firstValue("X-RateLimit-Remaining").orElse(null));
+        HttpResponse<String> second = postMessage(1);
+        Assert.assertEquals(200, second.statusCode());
+        Assert.assertEquals("0", second.headers().firstValue("X-RateLimit-Remaining").orElse(null));
+
+        HttpResponse<String> third = postMessage(1);
+        Assert.assertEquals(429, third.statusCode());
+        Assert.assertEquals("0", third.headers().firstValue("X-RateLimit-Remaining").orElse(null));
+        Assert.assertTrue(Long.parseLong(third.headers().firstValue("Retry-After").orElse("0")) >= 1);
+        Assert.assertEquals(2, socialMediaService.getAllMessages().size());
+
+        Assert.assertEquals(200, postMessage(2).statusCode());
+    }
+
+    /**
+     * Updating one message three times with a burst of two
+     *
+     * Expected Response:
+     *  The first two succeed and the third gets status 429 without changing the message; each update reads the
+     *  message from the store once, for both the rate limit and the response
+     */
+    @Test
+    public void updatingOverTheRateIsRejected() throws IOException, InterruptedException {
+        Assert.assertEquals(200, postMessage(1).statusCode());
+        reads.set(0);
+        Assert.assertEquals(200, updateMessage(1, "first edit").statusCode());
+        Assert.assertEquals(1, reads.get());
+        HttpResponse<String> second = updateMessage(1, "second edit");
+        Assert.assertEquals(200, second.statusCode());
+        Assert.assertTrue(second.body().contains("second edit"));
+
+        HttpResponse<String> third = updateMessage(1, "third edit");
+        Assert.assertEquals(429, third.statusCode());
+        Assert.assertTrue(Long.parseLong(third.headers().firstValue("Retry-After").orElse("0")) >= 1);
+        Assert.assertEquals("second edit", socialMediaService.getAllMessages().get(0).getMessage_text());
+    }
+
+    /**
+     * Drawing from far more accounts than the table has room for, a few at a time
+     *
+     * Expected Result:
+     *  Accounts whose buckets have refilled give up their slots to others, and only accounts that find no room are
+     *  let through untracked
+     */
+    @Test
+    public void idleBucketsAreEvicted() throws InterruptedException {
+        TokenBucketLimiter refilling = new TokenBucketLimiter(1_000_000, 1, 16);
+        for(int account = 1; account <= 100; account++) {
+            Assert.assertTrue(TokenBucketLimiter.isAllowed(refilling.tryAcquire(account)));
+            if(account % 4 == 0) {
+                Thread.sleep(2);
+            }
+        }
+        Assert.assertEquals(0, refilling.getUntracked());
+
+        TokenBucketLimiter draining = new TokenBucketLimiter(0.001, 1, 16);
+        for(int account = 1; account <= 100; account++) {
+            draining.tryAcquire(account);
+        }
+        Assert.assertTrue(draining.getUntracked() >= 100 - 16);
+    }
+
+    private HttpResponse<String> updateMessage(int message_id, String message_text)
+            throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/" + message_id))
+                .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"message_text\":\"" + message_text + "\"}"))
+                .header("Content-Type", "application/json")
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpResponse<String> postMessage(int posted_by) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString("{\"posted_by\":" + posted_by
+                        + ",\"message_text\":\"hello\",\"time_posted_epoch\":1669947792}"))
+                .header("Content-Type", "application/json")
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+}
@@ -0,0 +1,225 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import DAO.MessageDAO;
+import Model.Message;
+import Model.MessageChange;
+import Util.ConnectionUtil;
+import Util.UnitOfWork;
+import io.javalin.Javalin;
+
+public class RetrieveMessageChangesTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Creating, updating and deleting a message, then sending an http request to
+     * GET localhost:8080/messages/changes?since=0
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: JSON representation of the three changes, oldest first
+     *  X-Change-Sequence: the change_seq of the last change
+     */
+    @Test
+    public void getChangesSinceBeginning() throws IOException, InterruptedException {
+        makeChanges();
+
+        HttpResponse<String> response = getChanges(0);
+        Assert.assertEquals(200, response.statusCode());
+
+        List<MessageChange> changes = objectMapper.readValue(response.body(), new TypeReference<List<MessageChange>>(){});
+        Assert.assertEquals(3, changes.size());
+        Assert.assertEquals("created", changes.get(0).getChange_type());
+        Assert.assertEquals(new Message(2, 1, "hello message", 1669947792), changes.get(0).getMessage());
+        Assert.assertEquals("updated", changes.get(1).getChange_type());
+        Assert.assertEquals(new Message(2, 1, "updated message", 1669947792), changes.get(1).getMessage());
+        Assert.assertEquals("deleted", changes.get(2).getChange_type());
+        Assert.assertEquals(2, changes.get(2).getMessage().getMessage_id());
+        Assert.assertTrue(changes.get(0).getChange_seq() < changes.get(1).getChange_seq());
+        Assert.assertTrue(changes.get(1).getChange_seq() < changes.get(2).getChange_seq());
+        Assert.assertEquals(String.valueOf(changes.get(2).getChange_seq()),
+                response.headers().firstValue("X-Change-Sequence").get());
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages/changes?since={change_seq of the last change}
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: JSON representation of an empty list
+     */
+    @Test
+    public void getChangesSinceLatest() throws IOException, InterruptedException {
+        makeChanges();
+        String latest = getChanges(0).headers().firstValue("X-Change-Sequence").get();
+
+        HttpResponse<String> response = getChanges(Long.parseLong(latest));
+        Assert.assertEquals(200, response.statusCode());
+
+        List<MessageChange> changes = objectMapper.readValue(response.body(), new TypeReference<List<MessageChange>>(){});
+        Assert.assertTrue(changes.isEmpty());
+        Assert.assertEquals(latest, response.headers().firstValue("X-Change-Sequence").get());
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages/changes?since={a change_seq past the last change}
+     *
+     * Expected Response:
+     *  Status Code: 410
+     */
+    @Test
+    public void getChangesPastLatestIsGone() throws IOException, InterruptedException {
+        makeChanges();
+        long latest = Long.parseLong(getChanges(0).headers().firstValue("X-Change-Sequence").get());
+
+        Assert.assertEquals(410, getChanges(latest + 100).statusCode());
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages/changes with a malformed since or limit
+     *
+     * Expected Response:
+     *  Status Code: 400
+     */
+    @Test
+    public void getChangesWithMalformedParametersIsRejected() throws IOException, InterruptedException {
+        Assert.assertEquals(400, getChanges("since=abc").statusCode());
+        Assert.assertEquals(400, getChanges(-1).statusCode());
+        Assert.assertEquals(400, getChanges("since=0&limit=x").statusCode());
+        Assert.assertEquals(400, getChanges("since=0&limit=-1").statusCode());
+        Assert.assertEquals(400, getChanges("since=0&limit=0").statusCode());
+    }
+
+    /**
+     * Starting the app on a database made before the change log table existed, then making changes
+     *
+     * Expected Response:
+     *  The table is created, and GET localhost:8080/messages/changes?since=0 returns the three changes
+     */
+    @Test
+    public void changeLogIsCreatedOnExistingDatabase() throws IOException, InterruptedException, SQLException {
+        app.stop();
+        try(Connection connection = ConnectionUtil.getConnection();
+            Statement statement = connection.createStatement()) {
+            statement.executeUpdate("DROP TABLE message_change;");
+        }
+        app = new SocialMediaController().startAPI();
+        app.start(8080);
+        makeChanges();
+
+        List<MessageChange> changes = objectMapper.readValue(getChanges(0).body(), new TypeReference<List<MessageChange>>(){});
+        Assert.assertEquals(3, changes.size());
+    }
+
+    /**
+     * A change whose transaction is still open, followed by one committed straight away
+     *
+     * Expected Result:
+     *  Neither change is returned until the first commits, so a poller cannot move past the first
+     */
+    @Test
+    public void changesAreNotReturnedPastOneInFlight() throws Exception {
+        MessageDAO messageDAO = new MessageDAO();
+        CountDownLatch inserted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread slowWriter = new Thread(() -> UnitOfWork.run(() -> {
+            messageDAO.insertMessage(new Message(1, "committed late", 1669947793));
+            inserted.countDown();
+            try {
+                release.await();
+            } catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return null;
+        }));
+        slowWriter.start();
+        Assert.assertTrue(inserted.await(10, TimeUnit.SECONDS));
+        messageDAO.insertMessage(new Message(1, "committed early", 1669947794));
+
+        Assert.assertTrue(messageDAO.getChangesSince(0, 10).isEmpty());
+        release.countDown();
+        slowWriter.join();
+        List<MessageChange> changes = messageDAO.getChangesSince(0, 10);
+        Assert.assertEquals(2, changes.size());
+        Assert.assertEquals("committed late", changes.get(0).getMessage().getMessage_text());
+    }
+
+    private HttpResponse<String> getChanges(long since) throws IOException, InterruptedException {
+        return getChanges("since=" + since);
+    }
+
+    private HttpResponse<String> getChanges(String query) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/changes?" + query))
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private void makeChanges() throws IOException, InterruptedException {
+        HttpRequest postMessageRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString("{"+
+                        "\"posted_by\":1, " +
+                        "\"message_text\": \"hello message\", " +
+                        "\"time_posted_epoch\": 1669947792}"))
+                .header("Content-Type", "application/json")
+                .build();
+        Assert.assertEquals(200, webClient.send(postMessageRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+
+        HttpRequest patchMessageRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/2"))
+                .method("PATCH", HttpRequest.BodyPublishers.ofString("{"+
+                        "\"message_text\": \"updated message\" }"))
+                .header("Content-Type", "application/json")
+                .build();
+        Assert.assertEquals(200, webClient.send(patchMessageRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+
+        HttpRequest deleteMessageRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/2"))
+                .DELETE()
+                .build();
+        Assert.assertEquals(200, webClient.send(deleteMessageRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+    }
+}
@@ -0,0 +1,179 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import DAO.AccountDAO;
+import DAO.InMemoryAccountDAO;
+import DAO.InMemoryMessageDAO;
+import DAO.MessageDAO;
+import Model.Account;
+import Model.Message;
+import Service.SocialMediaService;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class RetrieveMessagesForAccountsTest {
+    SocialMediaService socialMediaService;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, add two more users with messages posted at times 100 to 300, and start
+     * the Javalin app.
+     */
+    @Before
+    public void setUp() {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaService = new SocialMediaService(new AccountDAO(), new MessageDAO());
+        addMessages(socialMediaService);
+        app = new SocialMediaController(socialMediaService).startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Sending GET localhost:8080/messages?posted_by=2,3&limit=3, then again with the X-Next-Cursor it returned
+     *
+     * Expected Response:
+     *  The three newest messages of users 2 and 3 with a cursor, then the two older ones without one
+     */
+    @Test
+    public void pagesAreMergedNewestFirst() throws IOException, InterruptedException {
+        HttpResponse<String> first = get("/messages?posted_by=2,3&limit=3");
+        Assert.assertEquals(200, first.statusCode());
+        Assert.assertEquals(List.of(300L, 250L, 200L), times(first));
+        String cursor = first.headers().firstValue("X-Next-Cursor").orElse(null);
+        Assert.assertNotNull(cursor);
+
+        HttpResponse<String> second = get("/messages?posted_by=2,3&limit=3&cursor=" + cursor);
+        Assert.assertEquals(List.of(150L, 100L), times(second));
+        Assert.assertFalse(second.headers().firstValue("X-Next-Cursor").isPresent());
+    }
+
+    /**
+     * Sending GET localhost:8080/messages?posted_by=1,2,3&per_account=1
+     *
+     * Expected Response:
+     *  The newest message of each user, and a cursor because users were capped
+     */
+    @Test
+    public void eachAccountIsCapped() throws IOException, InterruptedException {
+        HttpResponse<String> response = get("/messages?posted_by=1,2,3&per_account=1");
+        Assert.assertEquals(List.of(1669947792L, 300L, 250L), times(response));
+        Assert.assertTrue(response.headers().firstValue("X-Next-Cursor").isPresent());
+    }
+
+    /**
+     * Adding a second message of user 2 newer than user 3's newest, then sending
+     * GET localhost:8080/messages?posted_by=1,2,3&per_account=1 and following X-Next-Cursor to the end
+     *
+     * Expected Response:
+     *  Every message once, newest first, with no page holding two messages of one user
+     */
+    @Test
+    public void cappedPagesSkipNothing() throws IOException, InterruptedException {
+        socialMediaService.addMessage(new Message(2, "at 275", 275));
+        List<Long> seen = new ArrayList<>();
+        String path = "/messages?posted_by=1,2,3&per_account=1";
+        HttpResponse<String> page = get(path);
+        while(true) {
+            List<Message> messages = objectMapper.readValue(page.body(), new TypeReference<List<Message>>(){});
+            Set<Integer> posters = new HashSet<>();
+            for(Message message : messages) {
+                Assert.assertTrue(posters.add(message.getPosted_by()));
+            }
+            seen.addAll(times(page));
+            String cursor = page.headers().firstValue("X-Next-Cursor").orElse(null);
+            if(cursor == null) {
+                break;
+            }
+            page = get(path + "&cursor=" + cursor);
+        }
+        Assert.assertEquals(List.of(1669947792L, 300L, 275L, 250L, 200L, 150L, 100L), seen);
+    }
+
+    /**
+     * Sending GET localhost:8080/messages with an empty or non-numeric posted_by, a limit or per_account that is not a
+     * positive integer, and a cursor that was never sent in X-Next-Cursor
+     *
+     * Expected Response:
+     *  Status Code: 400
+     */
+    @Test
+    public void invalidPagesAreRejected() throws IOException, InterruptedException {
+        Assert.assertEquals(400, get("/messages?posted_by=").statusCode());
+        Assert.assertEquals(400, get("/messages?posted_by=x").statusCode());
+        Assert.assertEquals(400, get("/messages?posted_by=2&limit=0").statusCode());
+        Assert.assertEquals(400, get("/messages?posted_by=2&limit=x").statusCode());
+        Assert.assertEquals(400, get("/messages?posted_by=2&per_account=0").statusCode());
+        Assert.assertEquals(400, get("/messages?posted_by=2&per_account=-1").statusCode());
+        Assert.assertEquals(400, get("/messages?posted_by=2&cursor=abc").statusCode());
+        Assert.assertEquals(400, get("/messages?posted_by=2&cursor=1").statusCode());
+        Assert.assertEquals(400, get("/messages?posted_by=2&cursor=1_2_3").statusCode());
+    }
+
+    /**
+     * Asking the in-memory stores, which use MessageStore's default method, for the same pages as the H2 query
+     *
+     * Expected Result:
+     *  The same messages in the same order
+     */
+    @Test
+    public void defaultMethodMatchesQuery() {
+        SocialMediaService inMemory = new SocialMediaService(new InMemoryAccountDAO(), new InMemoryMessageDAO());
+        inMemory.addAccount(new Account("testuser1", "password"));
+        inMemory.addMessage(new Message(1, "test message 1", 1669947792));
+        addMessages(inMemory);
+        List<Integer> accounts = List.of(1, 2, 3);
+        for(int perAccount = 1; perAccount <= 3; perAccount++) {
+            for(int limit = 1; limit <= 6; limit++) {
+                Assert.assertEquals(socialMediaService.getRecentMessages(accounts, perAccount, limit, 300, 6),
+                        inMemory.getRecentMessages(accounts, perAccount, limit, 300, 6));
+            }
+        }
+    }
+
+    private static void addMessages(SocialMediaService service) {
+        service.addAccount(new Account("testuser2", "password"));
+        service.addAccount(new Account("testuser3", "password"));
+        long[][] messages = { { 2, 100 }, { 3, 150 }, { 2, 200 }, { 3, 250 }, { 2, 300 } };
+        for(long[] message : messages) {
+            service.addMessage(new Message((int) message[0], "at " + message[1], message[1]));
+        }
+    }
+
+    private List<Long> times(HttpResponse<String> response) throws IOException {
+        List<Long> times = new ArrayList<>();
+        for(Message message : objectMapper.readValue(response.body(), new TypeReference<List<Message>>(){})) {
+            times.add(message.getTime_posted_epoch());
+        }
+        return times;
+    }
+
+    private HttpResponse<String> get(String path) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder().uri(URI.create("http://localhost:8080" + path)).build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+}
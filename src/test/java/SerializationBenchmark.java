@@ -0,0 +1,70 @@
+import java.util.ArrayList;
+import java.util.List;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper;
+
+import Model.Message;
+
+/**
+ * Compares the payload size and encode/decode cost of JSON and Smile for a single Message and for a large list of
+ * messages, as returned by GET /messages.
+ *
+ * This is not run as part of the test suite. Run it by hand after mvn test-compile with:
+ *   mvn -q dependency:build-classpath -Dmdep.outputFile=cp.txt
+ *   java -cp target/classes:target/test-classes:$(cat cp.txt) SerializationBenchmark
+ */
+public class SerializationBenchmark {
+
+    private static final int WARMUP_ROUNDS = 2000;
+    private static final int MEASURED_ROUNDS = 5000;
+    private static final int LIST_SIZE = 10000;
+
+    public static void main(String[] args) throws Exception {
+        ObjectMapper json = new ObjectMapper();
+        ObjectMapper smile = new SmileMapper();
+
+        Message single = new Message(12345, 678, "a typical short post about nothing in particular", 1669947792L);
+        List<Message> list = new ArrayList<>();
+        for(int i = 1; i <= LIST_SIZE; i++) {
+            list.add(new Message(i, i % 500, "message number " + i + " posted to the timeline", 1669947792L + i));
+        }
+        TypeReference<List<Message>> listType = new TypeReference<List<Message>>(){};
+
+        System.out.printf("%-8s %-7s %12s %14s %14s%n", "payload", "format", "bytes", "encode ns/op", "decode ns/op");
+        run("single", "json", json, single, Message.class, null, MEASURED_ROUNDS);
+        run("single", "smile", smile, single, Message.class, null, MEASURED_ROUNDS);
+        run("list", "json", json, list, null, listType, MEASURED_ROUNDS / 100);
+        run("list", "smile", smile, list, null, listType, MEASURED_ROUNDS / 100);
+    }
+
+    private static void run(String payload, String format, ObjectMapper mapper, Object value, Class<?> type,
+            TypeReference<?> typeReference, int rounds) throws Exception {
+        byte[] bytes = mapper.writeValueAsBytes(value);
+        long sink = 0;
+
+        for(int i = 0; i < WARMUP_ROUNDS; i++) {
+            sink += mapper.writeValueAsBytes(value).length;
+            sink += (type != null ? mapper.readValue(bytes, type) : mapper.readValue(bytes, typeReference)).hashCode();
+        }
+
+        long start = System.nanoTime();
+        for(int i = 0; i < rounds; i++) {
+            sink += mapper.writeValueAsBytes(value).length;
+        }
+        long encode = (System.nanoTime() - start) / rounds;
+
+        start = System.nanoTime();
+        for(int i = 0; i < rounds; i++) {
+            Object decoded = type != null ? mapper.readValue(bytes, type) : mapper.readValue(bytes, typeReference);
+            sink += decoded.hashCode();
+        }
+        long decode = (System.nanoTime() - start) / rounds;
+
+        System.out.printf("%-8s %-7s %12d %14d %14d%n", payload, format, bytes.length, encode, decode);
+        if(sink == 42) {
+            System.out.println();
+        }
+    }
+}
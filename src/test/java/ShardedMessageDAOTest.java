@@ -0,0 +1,159 @@
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import DAO.ShardedMessageDAO;
+import Model.Message;
+import Util.ShardRebalancer;
+
+public class ShardedMessageDAOTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Posting messages for several accounts across three shards
+     *
+     * Expected Result:
+     *  Each account's messages are found on the shard its bucket maps to, and all messages come back in message_id order
+     */
+    @Test
+    public void messagesAreRoutedAndMerged() throws Exception {
+        String dir = folder.getRoot().getAbsolutePath();
+        try(ShardedMessageDAO dao = new ShardedMessageDAO(dir, 3)) {
+            List<Integer> ids = postMessages(dao, 8, 5);
+            for(int id : ids) {
+                Message message = dao.getMessage(id);
+                Assert.assertEquals(ShardedMessageDAO.bucketOf(message.getPosted_by()), id % ShardedMessageDAO.BUCKETS);
+            }
+            List<Message> all = dao.getAllMessages();
+            Assert.assertEquals(40, all.size());
+            for(int i = 1; i < all.size(); i++) {
+                Assert.assertTrue(all.get(i - 1).getMessage_id() < all.get(i).getMessage_id());
+            }
+            Assert.assertEquals(5, dao.getAllMessages(3).size());
+            List<Message> streamed = new ArrayList<>();
+            dao.forEachMessage(null, Long.MIN_VALUE, Long.MAX_VALUE, streamed::add);
+            Assert.assertEquals(all, streamed);
+            Assert.assertTrue(dao.deleteMessage(ids.get(0)));
+            Assert.assertNull(dao.getMessage(ids.get(0)));
+        }
+    }
+
+    /**
+     * Growing from three shards to five with the rebalancer, then reopening
+     *
+     * Expected Result:
+     *  Every message keeps its message_id and is found again, and new ids do not collide with old ones
+     */
+    @Test
+    public void rebalanceKeepsEveryMessage() throws Exception {
+        String dir = folder.getRoot().getAbsolutePath();
+        List<Integer> ids;
+        try(ShardedMessageDAO dao = new ShardedMessageDAO(dir, 3)) {
+            ids = postMessages(dao, 12, 4);
+        }
+
+        Assert.assertTrue(ShardRebalancer.rebalance(dir, 3, 5) > 0);
+
+        try(ShardedMessageDAO dao = new ShardedMessageDAO(dir, 5)) {
+            for(int id : ids) {
+                Assert.assertNotNull(dao.getMessage(id));
+            }
+            Assert.assertEquals(ids.size(), dao.getAllMessages().size());
+            for(int account = 1; account <= 12; account++) {
+                Assert.assertEquals(4, dao.getAllMessages(account).size());
+            }
+            int id = dao.insertMessage(new Message(1, "after rebalance", 1669947800));
+            Assert.assertFalse(ids.contains(id));
+        }
+        Assert.assertTrue(new File(dir, "shard-4.mv.db").exists());
+    }
+
+    /**
+     * Deleting the newest message, then reopening the shards and posting again
+     *
+     * Expected Result:
+     *  The new message does not get the deleted message's message_id, or any lower one
+     */
+    @Test
+    public void deletedIdIsNotReusedAfterReopening() throws Exception {
+        String dir = folder.getRoot().getAbsolutePath();
+        int newest;
+        try(ShardedMessageDAO dao = new ShardedMessageDAO(dir, 3)) {
+            List<Integer> ids = postMessages(dao, 1, 3);
+            newest = ids.get(ids.size() - 1);
+            Assert.assertTrue(dao.deleteMessage(newest));
+        }
+        try(ShardedMessageDAO dao = new ShardedMessageDAO(dir, 3)) {
+            int id = dao.insertMessage(new Message(1, "after reopening", 1669947800));
+            Assert.assertTrue(id > newest);
+            Assert.assertEquals(1, dao.getMessagesPostedBetween(1669947800, 1669947800).size());
+        }
+    }
+
+    /**
+     * Making changes, then reopening the shards and making another
+     *
+     * Expected Result:
+     *  The change made after reopening gets a change_seq past every one handed out before
+     */
+    @Test
+    public void changeSequenceIsNotReusedAfterReopening() throws Exception {
+        String dir = folder.getRoot().getAbsolutePath();
+        long newest;
+        try(ShardedMessageDAO dao = new ShardedMessageDAO(dir, 3)) {
+            postMessages(dao, 2, 2);
+            newest = dao.getChangeSequenceRange()[1];
+        }
+        try(ShardedMessageDAO dao = new ShardedMessageDAO(dir, 3)) {
+            Assert.assertEquals(0, dao.getChangeSequenceRange()[1]);
+            dao.insertMessage(new Message(1, "after reopening", 1669947800));
+            Assert.assertTrue(dao.getChangeSequenceRange()[0] > newest);
+        }
+    }
+
+    /**
+     * Reading every message when one of three shards has lost its table
+     *
+     * Expected Result:
+     *  The read fails instead of returning the other shards' messages as if they were all of them
+     */
+    @Test
+    public void failedShardFailsTheRead() throws Exception {
+        String dir = folder.getRoot().getAbsolutePath();
+        try(ShardedMessageDAO dao = new ShardedMessageDAO(dir, 3)) {
+            postMessages(dao, 8, 2);
+            try(Connection connection = DriverManager.getConnection(ShardedMessageDAO.shardUrl(dir, 1), "sa", "sa");
+                Statement statement = connection.createStatement()) {
+                statement.execute("DROP TABLE message;");
+            }
+            try {
+                dao.getAllMessages();
+                Assert.fail("expected the read to fail");
+            } catch(IllegalStateException e) {
+                Assert.assertFalse(Thread.currentThread().isInterrupted());
+            }
+        }
+    }
+
+    private List<Integer> postMessages(ShardedMessageDAO dao, int accounts, int perAccount) {
+        List<Integer> ids = new ArrayList<>();
+        for(int i = 0; i < perAccount; i++) {
+            for(int account = 1; account <= accounts; account++) {
+                int id = dao.insertMessage(new Message(account, "message " + i, 1669947792 + i));
+                Assert.assertTrue(id > 0);
+                ids.add(id);
+            }
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,131 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import DAO.InMemoryAccountDAO;
+import DAO.InMemoryMessageDAO;
+import Model.Account;
+import Model.Message;
+import Service.SingleFlight;
+import Service.SocialMediaService;
+
+public class SingleFlightTest {
+    static final int CALLERS = 64;
+
+    AtomicInteger queries;
+    volatile boolean holding;
+    CountDownLatch release;
+    SocialMediaService socialMediaService;
+    ExecutorService executor;
+
+    /**
+     * Before every test, create a service on in-memory stores that, once the service has started, count their
+     * getMessage and getAllMessages queries and hold each query until the test releases it.
+     */
+    @Before
+    public void setUp() {
+        queries = new AtomicInteger();
+        release = new CountDownLatch(1);
+        InMemoryMessageDAO messages = new InMemoryMessageDAO() {
+            @Override
+            public Message getMessage(int message_id) {
+                await();
+                return super.getMessage(message_id);
+            }
+
+            @Override
+            public List<Message> getAllMessages() {
+                await();
+                return super.getAllMessages();
+            }
+        };
+        socialMediaService = new SocialMediaService(new InMemoryAccountDAO(), messages);
+        socialMediaService.addAccount(new Account("viral", "password"));
+        messages.insertMessage(new Message(1, "gone viral", 1669947792));
+        executor = Executors.newFixedThreadPool(CALLERS);
+        holding = true;
+    }
+
+    @After
+    public void tearDown() {
+        release.countDown();
+        executor.shutdownNow();
+    }
+
+    /**
+     * A thundering herd of concurrent reads of the same message
+     *
+     * Expected Result:
+     *  The store is queried once, every caller gets the message, and one leader and the rest coalesced are counted
+     */
+    @Test
+    public void herdOfGetMessageRunsOneQuery() throws Exception {
+        List<Future<Message>> results = new ArrayList<>();
+        for(int i = 0; i < CALLERS; i++) {
+            results.add(executor.submit(() -> socialMediaService.getMessage(1)));
+        }
+        waitForCoalesced(0, CALLERS - 1);
+        release.countDown();
+
+        for(Future<Message> result : results) {
+            Assert.assertEquals("gone viral", result.get(10, TimeUnit.SECONDS).getMessage_text());
+        }
+        Assert.assertEquals(1, queries.get());
+        SingleFlight.Stats stats = socialMediaService.getCoalescingStats().get(0);
+        Assert.assertEquals(1, stats.leaders);
+        Assert.assertEquals(CALLERS - 1, stats.coalesced);
+    }
+
+    /**
+     * A thundering herd of concurrent reads of all messages, followed by one more read after they finish
+     *
+     * Expected Result:
+     *  The herd runs one query, and the read after it runs its own, because nothing is cached
+     */
+    @Test
+    public void herdOfGetAllMessagesRunsOneQuery() throws Exception {
+        List<Future<List<Message>>> results = new ArrayList<>();
+        for(int i = 0; i < CALLERS; i++) {
+            results.add(executor.submit(() -> socialMediaService.getAllMessages()));
+        }
+        waitForCoalesced(1, CALLERS - 1);
+        release.countDown();
+
+        for(Future<List<Message>> result : results) {
+            Assert.assertEquals(1, result.get(10, TimeUnit.SECONDS).size());
+        }
+        Assert.assertEquals(1, queries.get());
+        socialMediaService.getAllMessages();
+        Assert.assertEquals(2, queries.get());
+    }
+
+    private void waitForCoalesced(int lookup, long coalesced) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while(socialMediaService.getCoalescingStats().get(lookup).coalesced < coalesced) {
+            Assert.assertTrue(System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    private void await() {
+        if(!holding) {
+            return;
+        }
+        queries.incrementAndGet();
+        try {
+            release.await(10, TimeUnit.SECONDS);
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
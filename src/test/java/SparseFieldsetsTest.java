@@ -0,0 +1,109 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import DAO.MessageDAO;
+import Model.Message;
+import Model.MessageFields;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class SparseFieldsetsTest {
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database and start the Javalin app.
+     */
+    @Before
+    public void setUp() {
+        ConnectionUtil.resetTestDatabase();
+        app = new SocialMediaController().startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Sending GET localhost:8080/messages?fields=message_text,message_id
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: each message with only its message_id and message_text
+     */
+    @Test
+    public void allMessagesWithOnlyRequestedFields() throws IOException, InterruptedException {
+        HttpResponse<String> response = get("/messages?fields=message_text,message_id");
+        Assert.assertEquals(200, response.statusCode());
+        List<Map<String, Object>> messages = objectMapper.readValue(response.body(),
+                new TypeReference<List<Map<String, Object>>>(){});
+        Assert.assertEquals(List.of(Map.of("message_id", 1, "message_text", "test message 1")), messages);
+    }
+
+    /**
+     * Sending GET localhost:8080/messages/1?fields=posted_by and GET localhost:8080/accounts/1/messages?fields=message_id
+     *
+     * Expected Response:
+     *  Only the requested property of each message
+     */
+    @Test
+    public void singleAndAccountMessagesWithOnlyRequestedFields() throws IOException, InterruptedException {
+        Assert.assertEquals(Map.of("posted_by", 1), objectMapper.readValue(get("/messages/1?fields=posted_by").body(),
+                new TypeReference<Map<String, Object>>(){}));
+        Assert.assertEquals(List.of(Map.of("message_id", 1)),
+                objectMapper.readValue(get("/accounts/1/messages?fields=message_id").body(),
+                        new TypeReference<List<Map<String, Object>>>(){}));
+    }
+
+    /**
+     * Sending GET localhost:8080/messages?fields=password and GET localhost:8080/messages/1?fields=
+     *
+     * Expected Response:
+     *  Status Code: 400
+     */
+    @Test
+    public void unknownFieldsAreRejected() throws IOException, InterruptedException {
+        Assert.assertEquals(400, get("/messages?fields=password").statusCode());
+        Assert.assertEquals(400, get("/messages/1?fields=").statusCode());
+    }
+
+    /**
+     * Reading message 1 from the DAO with a projection
+     *
+     * Expected Result:
+     *  Only the selected columns are set; the others keep their defaults
+     */
+    @Test
+    public void daoReadsOnlySelectedColumns() {
+        Message message = new MessageDAO().getMessage(1, MessageFields.parse("time_posted_epoch"));
+        Assert.assertEquals(1669947792, message.getTime_posted_epoch());
+        Assert.assertEquals(0, message.getMessage_id());
+        Assert.assertEquals(0, message.getPosted_by());
+        Assert.assertNull(message.getMessage_text());
+        Assert.assertSame(MessageFields.parse("message_text,message_id"), MessageFields.parse("message_id, message_text"));
+    }
+
+    private HttpResponse<String> get(String path) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder().uri(URI.create("http://localhost:8080" + path)).build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+}
@@ -0,0 +1,95 @@
+import java.io.File;
+import java.io.FileReader;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.h2.jdbcx.JdbcConnectionPool;
+import org.h2.tools.DeleteDbFiles;
+import org.h2.tools.RunScript;
+
+import Util.ConnectionUtil;
+import Util.StorageProfile;
+
+/**
+ * Measures the write throughput and latency of each storage profile: every thread inserts messages one at a time,
+ * each in its own committed transaction, as POST /messages does.
+ *
+ * Each profile gets a fresh database under target/storage-benchmark, so ./h2 is left alone.
+ *
+ * This is not run as part of the test suite. Run it by hand after mvn test-compile with:
+ *   mvn -q dependency:build-classpath -Dmdep.outputFile=cp.txt
+ *   java -cp target/classes:target/test-classes:$(cat cp.txt) StorageProfileBenchmark [writes per thread] [threads]
+ */
+public class StorageProfileBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int writes = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+
+        System.out.printf("%-18s %8s %12s %10s %10s%n", "profile", "threads", "writes/s", "mean us", "p99 us");
+        for(int round = 0; round < 2; round++) {
+            for(StorageProfile profile : StorageProfile.values()) {
+                String label = round == 0 ? "(warmup)" : profile.getProfileName();
+                run(label, profile, writes, threads);
+            }
+        }
+    }
+
+    private static void run(String label, StorageProfile profile, int writes, int threads) throws Exception {
+        String path = "./target/storage-benchmark/" + profile.getProfileName();
+        DeleteDbFiles.execute(new File(path).getParent(), new File(path).getName(), true);
+        JdbcConnectionPool pool = ConnectionUtil.createPool(profile.getUrl(path), threads);
+        try(Connection connection = pool.getConnection()) {
+            RunScript.execute(connection, new FileReader("src/main/resources/SocialMedia.sql"));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<long[]>> results = new ArrayList<>();
+        long start = System.nanoTime();
+        for(int t = 0; t < threads; t++) {
+            results.add(executor.submit(() -> {
+                long[] latencies = new long[writes];
+                try(Connection connection = pool.getConnection();
+                        PreparedStatement ps = connection.prepareStatement(
+                                "INSERT INTO message (posted_by, message_text, time_posted_epoch) VALUES (?, ?, ?)")) {
+                    for(int i = 0; i < writes; i++) {
+                        long writeStart = System.nanoTime();
+                        ps.setInt(1, 1);
+                        ps.setString(2, "benchmark message " + i);
+                        ps.setLong(3, 1669947792L + i);
+                        ps.executeUpdate();
+                        latencies[i] = System.nanoTime() - writeStart;
+                    }
+                }
+                return latencies;
+            }));
+        }
+        long[] all = new long[0];
+        for(Future<long[]> result : results) {
+            long[] latencies = result.get();
+            int at = all.length;
+            all = Arrays.copyOf(all, at + latencies.length);
+            System.arraycopy(latencies, 0, all, at, latencies.length);
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        executor.shutdown();
+        try(Connection connection = pool.getConnection()) {
+            connection.createStatement().execute(profile == StorageProfile.MEMORY ? "DROP ALL OBJECTS" : "SHUTDOWN");
+        }
+        pool.dispose();
+
+        Arrays.sort(all);
+        long sum = 0;
+        for(long latency : all) {
+            sum += latency;
+        }
+        System.out.printf("%-18s %8d %12.0f %10.0f %10.0f%n", label, threads, all.length / seconds,
+                sum / (double) all.length / 1000, all[(int) (all.length * 0.99)] / 1000.0);
+    }
+}
@@ -0,0 +1,68 @@
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import Util.StorageProfile;
+
+public class StorageProfileTest {
+
+    /**
+     * Building the url of each profile
+     *
+     * Expected Result:
+     *  Each url sets the lock timeout, and the file profiles set the write delay and cache size they stand for
+     */
+    @Test
+    public void urlsCarryTheProfileSettings() {
+        Assert.assertEquals("jdbc:h2:mem:db;DB_CLOSE_DELAY=-1;LOCK_TIMEOUT=1000;",
+                StorageProfile.MEMORY.getUrl("./h2/db"));
+        Assert.assertEquals("jdbc:h2:./h2/db;WRITE_DELAY=0;LOCK_TIMEOUT=1000;",
+                StorageProfile.FILE_SYNC.getUrl("./h2/db"));
+        Assert.assertEquals("jdbc:h2:./h2/db;WRITE_DELAY=500;LOCK_TIMEOUT=1000;",
+                StorageProfile.FILE_ASYNC.getUrl("./h2/db"));
+        Assert.assertEquals("jdbc:h2:./h2/db;WRITE_DELAY=500;CACHE_SIZE=262144;LOCK_TIMEOUT=1000;",
+                StorageProfile.FILE_LARGE_CACHE.getUrl("./h2/db"));
+    }
+
+    /**
+     * Selecting profiles by name
+     *
+     * Expected Result:
+     *  Known names select their profile, and an unknown name is refused
+     */
+    @Test
+    public void profilesAreSelectedByName() {
+        Assert.assertEquals(StorageProfile.FILE_SYNC, StorageProfile.forName("file-sync"));
+        Assert.assertEquals(StorageProfile.FILE_ASYNC, StorageProfile.fromProperty());
+        try {
+            StorageProfile.forName("tape");
+            Assert.fail("an unknown profile should be refused");
+        } catch(IllegalArgumentException expected) {
+        }
+    }
+
+    /**
+     * Opening a database with the memory profile url
+     *
+     * Expected Result:
+     *  The lock timeout is set, and the database outlives the connection that created it
+     */
+    @Test
+    public void memoryDatabaseOutlivesItsConnections() throws SQLException {
+        String url = StorageProfile.MEMORY.getUrl("./h2/storage-profile-test");
+        try(Connection connection = DriverManager.getConnection(url, "sa", "sa")) {
+            connection.createStatement().execute("CREATE TABLE kept (id INT)");
+            ResultSet rs = connection.createStatement().executeQuery("CALL LOCK_TIMEOUT()");
+            rs.next();
+            Assert.assertEquals(1000, rs.getInt(1));
+        }
+        try(Connection connection = DriverManager.getConnection(url, "sa", "sa")) {
+            connection.createStatement().execute("INSERT INTO kept VALUES (1)");
+            connection.createStatement().execute("DROP TABLE kept");
+        }
+    }
+}
@@ -0,0 +1,146 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class StreamMessagesTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Subscribing to GET localhost:8080/messages/stream, then sending an http request to POST localhost:8080/messages
+     *
+     * Expected Response:
+     *  Stream: a "created" event whose data is the JSON representation of the new message
+     */
+    @Test
+    public void streamReceivesCreatedMessage() throws Exception {
+        Iterator<String> lines = openStream("http://localhost:8080/messages/stream");
+
+        postMessage(1, "streamed message");
+
+        Assert.assertEquals("event: created", nextLineStartingWith(lines, "event:"));
+        String data = nextLineStartingWith(lines, "data:").substring("data:".length()).trim();
+        Message expectedResult = new Message(2, 1, "streamed message", 1669947792);
+        Assert.assertEquals(expectedResult, objectMapper.readValue(data, Message.class));
+    }
+
+    /**
+     * Subscribing to GET localhost:8080/messages/stream?posted_by=2, then creating a message for account 1 and
+     * one for account 2
+     *
+     * Expected Response:
+     *  Stream: only the event for the message posted by account 2
+     */
+    @Test
+    public void streamFiltersByPostedBy() throws Exception {
+        HttpRequest registerRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/register"))
+                .POST(HttpRequest.BodyPublishers.ofString("{\"username\":\"streamuser\",\"password\":\"password\"}"))
+                .header("Content-Type", "application/json")
+                .build();
+        webClient.send(registerRequest, HttpResponse.BodyHandlers.ofString());
+
+        Iterator<String> lines = openStream("http://localhost:8080/messages/stream?posted_by=2");
+
+        postMessage(1, "not for this stream");
+        postMessage(2, "for this stream");
+
+        String data = nextLineStartingWith(lines, "data:").substring("data:".length()).trim();
+        Message actualResult = objectMapper.readValue(data, Message.class);
+        Assert.assertEquals(2, actualResult.getPosted_by());
+        Assert.assertEquals("for this stream", actualResult.getMessage_text());
+    }
+
+    /**
+     * Subscribing to GET localhost:8080/messages/stream?posted_by=someone
+     *
+     * Expected Response:
+     *  Status Code: 400
+     */
+    @Test
+    public void streamRejectsMalformedPostedBy() throws Exception {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/stream?posted_by=someone"))
+                .header("Accept", "text/event-stream")
+                .build();
+        HttpResponse<String> response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(400, response.statusCode());
+    }
+
+    private Iterator<String> openStream(String uri) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create(uri))
+                .header("Accept", "text/event-stream")
+                .build();
+        HttpResponse<Stream<String>> response = webClient.sendAsync(request, HttpResponse.BodyHandlers.ofLines())
+                .get(5, TimeUnit.SECONDS);
+        Assert.assertEquals(200, response.statusCode());
+        Iterator<String> lines = response.body().iterator();
+        nextLineStartingWith(lines, ": connected");
+        return lines;
+    }
+
+    private void postMessage(int posted_by, String message_text) throws IOException, InterruptedException {
+        HttpRequest postMessageRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString("{"+
+                        "\"posted_by\":" + posted_by + ", " +
+                        "\"message_text\": \"" + message_text + "\", " +
+                        "\"time_posted_epoch\": 1669947792}"))
+                .header("Content-Type", "application/json")
+                .build();
+        HttpResponse response = webClient.send(postMessageRequest, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, response.statusCode());
+    }
+
+    private String nextLineStartingWith(Iterator<String> lines, String prefix) {
+        while(lines.hasNext()) {
+            String line = lines.next();
+            if(line.startsWith(prefix)) {
+                return line;
+            }
+        }
+        Assert.fail("stream ended before a line starting with " + prefix);
+        return null;
+    }
+}
@@ -0,0 +1,101 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import DAO.AccountDAO;
+import DAO.MessageDAO;
+import Model.Message;
+import Service.SocialMediaService;
+import Util.ConnectionUtil;
+import Util.UnitOfWork;
+
+/**
+ * Measures the throughput and latency of the service's write calls (addMessage, updateMessage, deleteMessage) on H2,
+ * with each DAO call taking its own pooled connection in autocommit, and with each service call run as one unit of
+ * work on one connection and in one transaction.
+ *
+ * The benchmark resets the database in ./h2. Each thread posts, updates and deletes its own messages.
+ *
+ * This is not run as part of the test suite. Run it by hand after mvn test-compile with:
+ *   mvn -q dependency:build-classpath -Dmdep.outputFile=cp.txt
+ *   java -cp target/classes:target/test-classes:$(cat cp.txt) UnitOfWorkBenchmark [calls per thread] [threads]
+ */
+public class UnitOfWorkBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int calls = args.length > 0 ? Integer.parseInt(args[0]) : 3000;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+
+        System.out.printf("%-14s %8s %12s %10s %10s %10s%n", "connections", "threads", "calls/s", "mean us",
+                "p99 us", "checkouts");
+        for(int round = 0; round < 2; round++) {
+            for(boolean unitOfWork : new boolean[] { false, true }) {
+                System.setProperty(UnitOfWork.ENABLED_PROPERTY, Boolean.toString(unitOfWork));
+                ConnectionUtil.resetTestDatabase();
+                SocialMediaService service = new SocialMediaService(new AccountDAO(), new MessageDAO());
+                run(round == 0 ? "(warmup)" : unitOfWork ? "unit of work" : "per DAO call", service, calls, threads);
+            }
+        }
+        System.clearProperty(UnitOfWork.ENABLED_PROPERTY);
+    }
+
+    private static void run(String label, SocialMediaService service, int calls, int threads) throws Exception {
+        long checkoutsBefore = checkouts();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<long[]>> results = new ArrayList<>();
+        long start = System.nanoTime();
+        for(int t = 0; t < threads; t++) {
+            results.add(executor.submit(() -> {
+                long[] latencies = new long[calls];
+                for(int i = 0; i < calls; i++) {
+                    long callStart = System.nanoTime();
+                    switch(i % 3) {
+                        case 0:
+                            service.addMessage(new Message(1, "benchmark message " + i, 1669947792L + i));
+                            break;
+                        case 1:
+                            Message posted = service.addMessage(new Message(1, "to update " + i, 1669947792L + i));
+                            Message update = new Message();
+                            update.setMessage_id(posted.getMessage_id());
+                            update.setMessage_text("updated " + i);
+                            service.updateMessage(update);
+                            service.deleteMessage(posted.getMessage_id());
+                            break;
+                        default:
+                            service.getMessageCount();
+                    }
+                    latencies[i] = System.nanoTime() - callStart;
+                }
+                return latencies;
+            }));
+        }
+        long[] all = new long[0];
+        for(Future<long[]> result : results) {
+            long[] latencies = result.get();
+            int at = all.length;
+            all = Arrays.copyOf(all, at + latencies.length);
+            System.arraycopy(latencies, 0, all, at, latencies.length);
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        executor.shutdown();
+
+        Arrays.sort(all);
+        long sum = 0;
+        for(long latency : all) {
+            sum += latency;
+        }
+        System.out.printf("%-14s %8d %12.0f %10.0f %10.0f %10d%n", label, threads, all.length / seconds,
+                sum / (double) all.length / 1000, all[(int) (all.length * 0.99)] / 1000.0, checkouts() - checkoutsBefore);
+    }
+
+    private static long checkouts() {
+        long checkouts = 0;
+        for(ConnectionUtil.PoolStats stats : ConnectionUtil.getPoolStats()) {
+            checkouts += stats.checkouts;
+        }
+        return checkouts;
+    }
+}
@@ -0,0 +1,79 @@
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import DAO.AccountDAO;
+import DAO.MessageDAO;
+import Model.Message;
+import Service.SocialMediaService;
+import Util.ConnectionUtil;
+import Util.UnitOfWork;
+
+public class UnitOfWorkTest {
+
+    @Before
+    public void setUp() {
+        ConnectionUtil.resetTestDatabase();
+    }
+
+    /**
+     * Inserting a message in a unit of work that then fails
+     *
+     * Expected Result:
+     *  Neither the message nor its change log entry is kept, and the failure reaches the caller
+     */
+    @Test
+    public void failedWorkIsRolledBack() {
+        MessageDAO messageDAO = new MessageDAO();
+        long changesBefore = messageDAO.getChangeSequenceRange()[1];
+        try {
+            UnitOfWork.run(() -> {
+                int id = messageDAO.insertMessage(new Message(1, "never kept", 1669947800));
+                Assert.assertNotNull(messageDAO.getMessage(id));
+                throw new IllegalStateException("fails after the insert");
+            });
+            Assert.fail("the failure should reach the caller");
+        } catch(IllegalStateException expected) {
+        }
+        Assert.assertEquals(1, messageDAO.getAllMessages().size());
+        Assert.assertEquals(changesBefore, messageDAO.getChangeSequenceRange()[1]);
+    }
+
+    /**
+     * A unit of work whose first insert succeeds and whose second fails on the database, which the DAO catches
+     *
+     * Expected Result:
+     *  The first insert is rolled back too, and the unit returns null
+     */
+    @Test
+    public void failedStatementRollsBackTheUnit() {
+        MessageDAO messageDAO = new MessageDAO();
+        String result = UnitOfWork.run(() -> {
+            Assert.assertTrue(messageDAO.insertMessage(new Message(1, "never kept", 1669947800)) > 0);
+            Assert.assertEquals(0, messageDAO.insertMessage(new Message(99, "no such account", 1669947801)));
+            return "done";
+        });
+        Assert.assertNull(result);
+        Assert.assertEquals(1, messageDAO.getAllMessages().size());
+        Assert.assertTrue(messageDAO.getChangesSince(0, 10).isEmpty());
+    }
+
+    /**
+     * Posting a message through the service, which reads the account, inserts the message and reads it back
+     *
+     * Expected Result:
+     *  The whole call checks out one connection from the write pool and none from the read pool
+     */
+    @Test
+    public void serviceCallUsesOneConnection() {
+        SocialMediaService socialMediaService = new SocialMediaService(new AccountDAO(), new MessageDAO());
+        ConnectionUtil.PoolStats[] before = ConnectionUtil.getPoolStats();
+        Message posted = socialMediaService.addMessage(new Message(1, "in one transaction", 1669947800));
+        ConnectionUtil.PoolStats[] after = ConnectionUtil.getPoolStats();
+
+        Assert.assertNotNull(posted);
+        Assert.assertEquals(0, after[0].checkouts - before[0].checkouts);
+        Assert.assertEquals(1, after[1].checkouts - before[1].checkouts);
+        Assert.assertEquals("in one transaction", new MessageDAO().getMessage(posted.getMessage_id()).getMessage_text());
+    }
+}
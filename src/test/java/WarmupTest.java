@@ -0,0 +1,85 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import DAO.AccountDAO;
+import DAO.MessageDAO;
+import Util.ConnectionUtil;
+import Util.Warmup;
+import io.javalin.Javalin;
+
+public class WarmupTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Warming up a controller that has been marked not ready
+     *
+     * Expected Result:
+     *  GET /health/ready answers 503 until the warmup is done and 200 with the warmup report afterwards, and the
+     *  warmup has not written to the database
+     */
+    @Test
+    public void readyOnlyOnceWarm() throws IOException, InterruptedException {
+        int messagesBefore = new MessageDAO().getAllMessages().size();
+        int accountsBefore = new AccountDAO().getAllAccounts().size();
+        socialMediaController.setReady(false, null);
+        HttpResponse<String> notReady = getReady();
+        Assert.assertEquals(503, notReady.statusCode());
+        Assert.assertFalse(objectMapper.readTree(notReady.body()).get("ready").asBoolean());
+
+        Warmup.Report report = new Warmup().run(8080, 2000, 1000);
+        Assert.assertTrue(report.rounds > 0);
+        Assert.assertTrue(report.time_to_first_fast_request_ms > 0);
+        socialMediaController.setReady(true, report);
+
+        HttpResponse<String> ready = getReady();
+        Assert.assertEquals(200, ready.statusCode());
+        JsonNode body = objectMapper.readTree(ready.body());
+        Assert.assertTrue(body.get("ready").asBoolean());
+        Assert.assertEquals(report.rounds, body.get("warmup").get("rounds").asInt());
+        Assert.assertEquals(messagesBefore, new MessageDAO().getAllMessages().size());
+        Assert.assertEquals(accountsBefore, new AccountDAO().getAllAccounts().size());
+    }
+
+    private HttpResponse<String> getReady() throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/health/ready"))
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+}